@@ -21,6 +21,7 @@ import com.swe.core.Analytics.ScreenVideoTelemetryModel;
 import com.swe.core.serialize.DataSerializer;
 import com.swe.core.logging.SweLogger;
 import com.swe.core.logging.SweLoggerFactory;
+import com.swe.core.metrics.MetricsReporter;
 import com.swe.networking.Networking;
 import com.swe.cloud.functionlibrary.CloudFunctionLibrary;
 import com.swe.cloud.functionlibrary.CloudLogger;
@@ -87,6 +88,12 @@ public class Init {
         SweLoggerFactory.setConsoleLevel(consoleLevel);
         LOG.info("Console log level set to " + consoleLevel.getName());
 
+        // Off unless -Dswecomm.metrics.file is given
+        final MetricsReporter metricsReporter = MetricsReporter.fromSystemProperty();
+        if (metricsReporter != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(metricsReporter::close));
+        }
+
         final SweLogger chatLogger = SweLoggerFactory.getLogger("CHAT");
         final SweLogger canvasLogger = SweLoggerFactory.getLogger("CANVAS");
         final SweLogger screenLogger = SweLoggerFactory.getLogger("SCREEN-VIDEO");
@@ -0,0 +1,56 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: BenchmarkLogs.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.benchmarks;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.swe.core.logging.SweLoggerFactory;
+
+/**
+ * Raises the networking log level for a benchmark run. The hot paths log at
+ * INFO on every packet, through the module logger and through the global
+ * logger used by {@code NetworkLogger}, which would otherwise dominate what
+ * is measured.
+ */
+final class BenchmarkLogs {
+
+    /**
+     * Tag of the networking loggers.
+     */
+    private static final String NETWORKING = "NETWORKING";
+
+    /**
+     * Logger of the networking module, held so the level is not lost.
+     */
+    private static Logger networking;
+
+    /**
+     * Global logger, held so the level is not lost.
+     */
+    private static Logger global;
+
+    private BenchmarkLogs() {
+    }
+
+    /**
+     * Function to keep only warnings and errors of the networking module.
+     * Call after the benchmarked classes are loaded, as creating a logger
+     * resets its level.
+     */
+    static synchronized void quiet() {
+        SweLoggerFactory.getLogger(NETWORKING);
+        networking = Logger.getLogger("com.swe.core." + NETWORKING);
+        networking.setLevel(Level.WARNING);
+        global = Logger.getGlobal();
+        global.setLevel(Level.WARNING);
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: BenchmarkMain.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Takes the usual JMH command line and always
+ * adds the GC profiler, so every result reports bytes allocated per
+ * operation next to its throughput.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    /**
+     * Function to run the benchmarks selected on the command line.
+     *
+     * @param args JMH command line options, e.g. a benchmark regex
+     * @throws CommandLineOptionException when the options are invalid
+     * @throws RunnerException when a benchmark fails
+     */
+    public static void main(final String[] args) throws CommandLineOptionException, RunnerException {
+        final CommandLineOptions cli = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder().parent(cli).addProfiler(GCProfiler.class).build()).run();
+    }
+}
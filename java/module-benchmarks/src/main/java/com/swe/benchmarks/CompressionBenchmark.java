@@ -0,0 +1,208 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: CompressionBenchmark.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.swe.core.ClientNode;
+import com.swe.networking.NetworkSerializer;
+import com.swe.networking.NetworkStructure;
+import com.swe.networking.PacketCompressor;
+import com.swe.networking.PacketParser;
+
+/**
+ * Payload compression of the traffic that compresses well: canvas shape
+ * updates, chat messages and topology snapshots. The setup prints the
+ * bytes each sample takes on the wire with and without compression, the
+ * benchmarks measure the cost of compressing and restoring it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+    /**
+     * The kind of payload.
+     */
+    @Param({"CANVAS_STROKE", "CANVAS_SCENE", "CHAT", "TOPOLOGY"})
+    private String sample;
+
+    private final PacketCompressor compressor = new PacketCompressor(true, PacketCompressor.DEFAULT_THRESHOLD);
+    private byte[] raw;
+    private ByteBuffer compressed;
+
+    /**
+     * Function to build the sample and report its bytes on the wire.
+     */
+    @Setup
+    public void setup() {
+        BenchmarkLogs.quiet();
+        raw = sample(sample, new Random(sample.hashCode()));
+        final byte[] packed = compressor.compress(raw);
+        int wire = raw.length;
+        if (packed != null) {
+            wire = packed.length;
+            compressed = ByteBuffer.wrap(packed);
+        } else {
+            compressed = ByteBuffer.wrap(raw);
+        }
+        final int header = PacketParser.getHeaderSize();
+        System.out.printf("%s: %d bytes on the wire uncompressed, %d compressed (%.1f%%)%n", sample,
+                header + raw.length, header + wire, 100.0 * (header + wire) / (header + raw.length));
+    }
+
+    /**
+     * Function to build a sample payload.
+     *
+     * @param kind the kind of payload
+     * @param random the source of the varying fields
+     * @return the payload
+     */
+    static byte[] sample(final String kind, final Random random) {
+        switch (kind) {
+            case "CANVAS_STROKE":
+                return shape(random, 40).getBytes(StandardCharsets.UTF_8);
+            case "CANVAS_SCENE":
+                final StringBuilder scene = new StringBuilder("[");
+                for (int i = 0; i < 20; i++) {
+                    if (i > 0) {
+                        scene.append(',');
+                    }
+                    scene.append(shape(random, 2 + random.nextInt(30)));
+                }
+                return scene.append(']').toString().getBytes(StandardCharsets.UTF_8);
+            case "CHAT":
+                return chat(random);
+            default:
+                return topology();
+        }
+    }
+
+    /**
+     * Function to build a canvas shape in the JSON shape of the canvas.
+     *
+     * @param random the source of the points
+     * @param points the number of points
+     * @return the JSON
+     */
+    private static String shape(final Random random, final int points) {
+        final StringBuilder json = new StringBuilder();
+        json.append("{\"Action\":\"CREATE\",\"ShapeId\":\"").append(UUID.randomUUID().toString(), 0, 8)
+                .append("\",\"Type\":\"FREEHAND\",\"Points\":[");
+        int x = 200 + random.nextInt(400);
+        int y = 150 + random.nextInt(300);
+        for (int i = 0; i < points; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            x += random.nextInt(7) - 3;
+            y += random.nextInt(7) - 3;
+            json.append("{\"X\":").append(x).append(",\"Y\":").append(y).append('}');
+        }
+        json.append("],\"Color\":\"#FF000000\",\"Thickness\":2,\"CreatedBy\":\"user_12\","
+                + "\"LastModifiedBy\":\"user_12\",\"IsDeleted\":false}");
+        return json.toString();
+    }
+
+    /**
+     * Function to build a chat message laid out like the chat serializer
+     * does: length prefixed id, user, name and text, a timestamp and the
+     * id of the message replied to.
+     *
+     * @param random the source of the text
+     * @return the serialized message
+     */
+    private static byte[] chat(final Random random) {
+        final String[] words = {"the", "meeting", "slides", "can", "you", "share", "screen", "again", "please",
+            "I", "think", "we", "should", "move", "on", "to", "next", "agenda", "item", "thanks"};
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            text.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        final String[] fields = {UUID.randomUUID().toString(), "student112201021@smail.iitpkd.ac.in",
+            "Asaduddin ahmed", text.toString()};
+        final String reply = UUID.randomUUID().toString();
+        int size = Long.BYTES + Integer.BYTES + reply.length();
+        for (String field : fields) {
+            size += Integer.BYTES + field.getBytes(StandardCharsets.UTF_8).length;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (String field : fields) {
+            final byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(bytes.length).put(bytes);
+        }
+        buffer.putLong(System.currentTimeMillis() / 1000);
+        buffer.putInt(reply.length()).put(reply.getBytes(StandardCharsets.UTF_8));
+        return buffer.array();
+    }
+
+    /**
+     * Function to build the topology snapshot of a meeting of 100 devices
+     * in clusters of 10.
+     *
+     * @return the serialized snapshot
+     */
+    private static byte[] topology() {
+        final List<List<ClientNode>> clusters = new ArrayList<>();
+        final List<ClientNode> servers = new ArrayList<>();
+        for (int c = 0; c < 10; c++) {
+            final List<ClientNode> cluster = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                cluster.add(new ClientNode("10.32." + c + "." + (i + 10), 8000));
+            }
+            clusters.add(cluster);
+            servers.add(cluster.get(0));
+        }
+        return NetworkSerializer.getNetworkSerializer()
+                .serializeNetworkStructure(new NetworkStructure(clusters, servers), 42);
+    }
+
+    /**
+     * Function to compress the sample.
+     *
+     * @return the compressed payload
+     */
+    @Benchmark
+    public byte[] compress() {
+        return compressor.compress(raw);
+    }
+
+    /**
+     * Function to restore the compressed sample.
+     *
+     * @return the restored payload
+     */
+    @Benchmark
+    public byte[] decompress() {
+        return compressor.decompress(compressed);
+    }
+}
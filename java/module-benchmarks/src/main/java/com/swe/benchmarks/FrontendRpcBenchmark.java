@@ -0,0 +1,203 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: FrontendRpcBenchmark.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.swe.core.RPCinterface.AbstractRPC;
+import com.swe.networking.FrontendBatcher;
+import com.swe.networking.ModuleType;
+import com.swe.networking.TimingWheel;
+
+/**
+ * Canvas drawing bursts handed to the frontend with and without batching.
+ * One invocation submits a burst of small canvas messages back to back and
+ * waits until the frontend received all of them, so the score is the time
+ * to deliver a burst. The frontend is a single thread spending
+ * {@value #CALL_COST_NANOS} ns per call, standing in for the IPC round
+ * trip, before it unbatches the call. Every iteration prints the calls per
+ * second and the mean and worst time from submit to frontend of a message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrontendRpcBenchmark {
+
+    /**
+     * Nanoseconds the frontend spends on one call.
+     */
+    private static final long CALL_COST_NANOS = 50_000;
+
+    /**
+     * Bytes of one canvas message, a stroke segment.
+     */
+    private static final int MESSAGE_SIZE = 120;
+
+    /**
+     * Nanoseconds to park while waiting for the frontend.
+     */
+    private static final long WAIT_NANOS = 10_000;
+
+    /**
+     * Nanoseconds in a microsecond.
+     */
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    /**
+     * Whether the messages are batched, {@code off} or {@code on}.
+     */
+    @Param({"off", "on"})
+    private String batch;
+
+    /**
+     * Messages in a burst.
+     */
+    @Param({"100", "1000"})
+    private int burst;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong latencyNanos = new AtomicLong();
+    private final AtomicLong worstNanos = new AtomicLong();
+    private final AtomicLong calls = new AtomicLong();
+    private ExecutorService frontend;
+    private FrontendBatcher batcher;
+    private long expected;
+    private long iterationStart;
+    private long callsAtStart;
+    private long deliveredAtStart;
+    private long latencyAtStart;
+
+    /**
+     * The frontend, taking calls in order on its own thread.
+     */
+    private final class FrontendRPC implements AbstractRPC {
+        @Override
+        public void subscribe(final String methodName, final Function<byte[], byte[]> method) {
+        }
+
+        @Override
+        public Thread connect(final int portNumber) {
+            return null;
+        }
+
+        @Override
+        public CompletableFuture<byte[]> call(final String methodName, final byte[] data) {
+            return CompletableFuture.supplyAsync(() -> {
+                final long until = System.nanoTime() + CALL_COST_NANOS;
+                while (System.nanoTime() < until) {
+                    Thread.onSpinWait();
+                }
+                calls.incrementAndGet();
+                if (FrontendBatcher.BATCH_METHOD.equals(methodName)) {
+                    for (byte[] args : FrontendBatcher.unbatch(data)) {
+                        receive(args);
+                    }
+                } else {
+                    receive(data);
+                }
+                return null;
+            }, frontend);
+        }
+    }
+
+    private void receive(final byte[] args) {
+        final long latency = System.nanoTime() - ByteBuffer.wrap(args).getLong(Integer.BYTES);
+        latencyNanos.addAndGet(latency);
+        worstNanos.accumulateAndGet(latency, Math::max);
+        delivered.incrementAndGet();
+    }
+
+    /**
+     * Function to start the frontend and the batcher.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkLogs.quiet();
+        frontend = Executors.newSingleThreadExecutor();
+        final AbstractRPC rpc = new FrontendRPC();
+        batcher = new FrontendBatcher("on".equals(batch), TimingWheel.DEFAULT_TICK_MILLIS,
+                64 * 1024, () -> rpc, TimingWheel.getTimingWheel());
+    }
+
+    /**
+     * Function to note the counters at the start of an iteration.
+     */
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        iterationStart = System.nanoTime();
+        callsAtStart = calls.get();
+        deliveredAtStart = delivered.get();
+        latencyAtStart = latencyNanos.get();
+        worstNanos.set(0);
+    }
+
+    /**
+     * Function to print the calls per second and message latency of an
+     * iteration.
+     */
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        final double seconds = (System.nanoTime() - iterationStart) / 1e9;
+        final long messages = Math.max(1, delivered.get() - deliveredAtStart);
+        System.out.printf("batch=%s burst=%d: %.0f calls/s, latency mean %.0f us worst %.0f us%n", batch, burst,
+                (calls.get() - callsAtStart) / seconds,
+                (latencyNanos.get() - latencyAtStart) / NANOS_PER_MICRO / messages,
+                worstNanos.get() / NANOS_PER_MICRO);
+    }
+
+    /**
+     * Function to stop the frontend.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        frontend.shutdownNow();
+    }
+
+    /**
+     * Function to submit one burst and wait until the frontend has it.
+     */
+    @Benchmark
+    public void canvasBurst() {
+        for (int i = 0; i < burst; i++) {
+            final byte[] message = new byte[MESSAGE_SIZE];
+            ByteBuffer.wrap(message).putLong(System.nanoTime());
+            batcher.submit(ModuleType.CANVAS.ordinal(), message);
+        }
+        expected += burst;
+        while (delivered.get() < expected) {
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+    }
+}
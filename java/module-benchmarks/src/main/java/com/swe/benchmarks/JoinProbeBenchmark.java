@@ -0,0 +1,188 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: JoinProbeBenchmark.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.benchmarks;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.swe.networking.MainServerProber;
+import com.swe.networking.TimingWheel;
+
+/**
+ * Time the join path spends asking whether the network is up when every
+ * probed endpoint drops connects, as on a restricted network. The eight
+ * endpoints of the real probe are stood in for by loopback listeners that
+ * never accept and whose accept queue is full, so a connect only ends at
+ * its timeout. {@code sequential} is the former check, one endpoint after
+ * the other; {@code cold} is the first question to a new prober;
+ * {@code cached} is a question once the prober has its answer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class JoinProbeBenchmark {
+
+    /**
+     * Endpoints probed, four servers on two ports each.
+     */
+    private static final int ENDPOINTS = 8;
+
+    /**
+     * Connections queued on a black hole to fill its accept queue.
+     */
+    private static final int FILLERS = 3;
+
+    /**
+     * Connect timeout of a filler in milliseconds.
+     */
+    private static final int FILLER_TIMEOUT_MILLIS = 200;
+
+    /**
+     * How long an answer is kept in milliseconds, longer than a trial.
+     */
+    private static final long TTL_MILLIS = 60_000;
+
+    /**
+     * How long the join path waits for an unknown answer in milliseconds.
+     */
+    private static final long WAIT_MILLIS = 300;
+
+    /**
+     * How the network is checked.
+     */
+    @Param({"sequential", "cold", "cached"})
+    private String check;
+
+    private final List<ServerSocket> holes = new ArrayList<>();
+    private final List<Socket> fillers = new ArrayList<>();
+    private final List<InetSocketAddress> targets = new ArrayList<>();
+    private MainServerProber prober;
+
+    /**
+     * Function to open the black holes.
+     *
+     * @throws IOException when a listener cannot be opened
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        BenchmarkLogs.quiet();
+        final InetAddress loopback = InetAddress.getLoopbackAddress();
+        for (int i = 0; i < ENDPOINTS; i++) {
+            final ServerSocket hole = new ServerSocket(0, 1, loopback);
+            holes.add(hole);
+            final InetSocketAddress address = new InetSocketAddress(loopback, hole.getLocalPort());
+            targets.add(address);
+            for (int j = 0; j < FILLERS; j++) {
+                final Socket filler = new Socket();
+                fillers.add(filler);
+                try {
+                    filler.connect(address, FILLER_TIMEOUT_MILLIS);
+                } catch (IOException ex) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Function to create the prober asked by an invocation, with its answer
+     * ready for {@code cached}.
+     *
+     * @throws InterruptedException when interrupted while probing
+     * @throws ExecutionException never, a probe does not fail
+     */
+    @Setup(Level.Invocation)
+    public void createProber() throws InterruptedException, ExecutionException {
+        prober = new MainServerProber(targets, MainServerProber.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                TTL_MILLIS, WAIT_MILLIS, TimingWheel.getTimingWheel());
+        if ("cached".equals(check)) {
+            prober.probe().get();
+        }
+    }
+
+    /**
+     * Function to stop the prober of an invocation.
+     */
+    @TearDown(Level.Invocation)
+    public void closeProber() {
+        prober.close();
+    }
+
+    /**
+     * Function to close the black holes.
+     *
+     * @throws IOException when a socket cannot be closed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (Socket filler : fillers) {
+            filler.close();
+        }
+        for (ServerSocket hole : holes) {
+            hole.close();
+        }
+    }
+
+    /**
+     * Function to ask whether the network is down as the join path does.
+     *
+     * @return true if the network is taken as down
+     */
+    @Benchmark
+    public boolean join() {
+        if ("sequential".equals(check)) {
+            return sequential();
+        }
+        return prober.isNetworkDown();
+    }
+
+    /**
+     * Function to check the endpoints one after the other as the former
+     * check did.
+     *
+     * @return true once every endpoint failed, false on the first success
+     */
+    private boolean sequential() {
+        for (InetSocketAddress target : targets) {
+            try (Socket socket = new Socket()) {
+                socket.connect(target, MainServerProber.DEFAULT_CONNECT_TIMEOUT_MILLIS);
+                return false;
+            } catch (IOException ex) {
+                // try the next endpoint
+            }
+        }
+        return true;
+    }
+}
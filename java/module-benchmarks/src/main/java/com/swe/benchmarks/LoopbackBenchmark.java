@@ -0,0 +1,177 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: LoopbackBenchmark.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.benchmarks;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.ClosedSelectorException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.swe.core.ClientNode;
+import com.swe.networking.ModuleType;
+import com.swe.networking.PacketInfo;
+import com.swe.networking.PacketParser;
+import com.swe.networking.ProtocolBase;
+import com.swe.networking.TCPCommunicator;
+
+/**
+ * End to end throughput between two TCP communicators on loopback. Every
+ * invocation sends {@value #BATCH} packets and waits until the receiver
+ * decoded all of them, so the score is delivered packets per second;
+ * multiply by the packet size for bytes per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackBenchmark {
+
+    /**
+     * Packets sent per invocation, well inside the peer send queue.
+     */
+    static final int BATCH = 128;
+
+    /**
+     * Port of the first trial, each trial takes the next two.
+     */
+    private static final int BASE_PORT = 18_000;
+
+    /**
+     * Trials started in this fork.
+     */
+    private static final AtomicInteger TRIALS = new AtomicInteger();
+
+    /**
+     * Nanoseconds to park while waiting for the receiver.
+     */
+    private static final long WAIT_NANOS = 10_000;
+
+    /**
+     * Nanoseconds after which a batch is considered lost.
+     */
+    private static final long BATCH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * Payload bytes of each packet.
+     */
+    @Param({"1024", "16384"})
+    private int payloadSize;
+
+    private final AtomicLong received = new AtomicLong();
+    private TCPCommunicator sender;
+    private TCPCommunicator receiver;
+    private Thread senderThread;
+    private Thread receiverThread;
+    private ClientNode destination;
+    private byte[] packet;
+    private long expected;
+
+    /**
+     * Function to open both ends, start their selector threads and connect.
+     *
+     * @throws UnknownHostException never, the address is a literal
+     * @throws InterruptedException when interrupted while connecting
+     */
+    @Setup(Level.Trial)
+    public void setup() throws UnknownHostException, InterruptedException {
+        final int port = BASE_PORT + 2 * TRIALS.getAndIncrement();
+        sender = new TCPCommunicator(port);
+        receiver = new TCPCommunicator(port + 1);
+        destination = new ClientNode("127.0.0.1", port + 1);
+        senderThread = selectorThread(sender, "Bench-Sender");
+        receiverThread = selectorThread(receiver, "Bench-Receiver");
+        final PacketInfo info = new PacketInfo();
+        info.setModule(ModuleType.SCREENSHARING.ordinal());
+        info.setIpAddress(InetAddress.getByName(destination.hostName()));
+        info.setPortNum(destination.port());
+        info.setChunkLength(1);
+        info.setPayload(new byte[payloadSize]);
+        info.setLength(PacketParser.getHeaderSize() + payloadSize);
+        packet = PacketParser.getPacketParser().createPkt(info);
+        BenchmarkLogs.quiet();
+        sender.sendData(packet, destination);
+        expected = 1;
+        awaitReceived();
+    }
+
+    private Thread selectorThread(final ProtocolBase protocol, final String name) {
+        final Thread thread = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    protocol.receiveFrames((source, frame) -> received.incrementAndGet());
+                }
+            } catch (ClosedSelectorException ex) {
+                // closed by the tear down
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private void awaitReceived() {
+        final long deadline = System.nanoTime() + BATCH_TIMEOUT_NANOS;
+        while (received.get() < expected) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Receiver stalled at " + received.get() + " of " + expected);
+            }
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+    }
+
+    /**
+     * Function to close both ends.
+     *
+     * @throws InterruptedException when interrupted while joining
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        senderThread.interrupt();
+        receiverThread.interrupt();
+        sender.close();
+        receiver.close();
+        senderThread.join();
+        receiverThread.join();
+    }
+
+    /**
+     * Function to send a batch and wait for its delivery.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void sendBatch() {
+        for (int i = 0; i < BATCH; i++) {
+            sender.sendData(packet, destination);
+        }
+        expected += BATCH;
+        awaitReceived();
+    }
+}
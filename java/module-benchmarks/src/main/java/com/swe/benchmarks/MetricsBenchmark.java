@@ -0,0 +1,124 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: MetricsBenchmark.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.swe.core.metrics.Counter;
+import com.swe.core.metrics.LatencyHistogram;
+import com.swe.core.metrics.MetricsRegistry;
+
+/**
+ * Cost of the metric updates made on the send and receive paths, a counter
+ * add and a latency histogram record, from one thread and from four threads
+ * sharing the metrics the way the module threads do. The GC profiler shows
+ * the updates allocate nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+    /**
+     * Mask keeping the recorded values within a few hundred microseconds.
+     */
+    private static final int VALUE_MASK = 0xFFFFF;
+
+    private Counter counter;
+    private LatencyHistogram histogram;
+
+    /**
+     * Function to create the metrics once.
+     */
+    @Setup
+    public void setup() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        counter = registry.counter("bench.count");
+        histogram = registry.histogram("bench.latency");
+    }
+
+    /**
+     * Per thread value to record, so every thread records a spread of
+     * values without sharing state.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        /**
+         * The next value.
+         */
+        private int next;
+
+        private int take() {
+            next = (next + 1) & VALUE_MASK;
+            return next;
+        }
+    }
+
+    /**
+     * Function to add to the counter from one thread.
+     *
+     * @param cursor the thread's cursor
+     */
+    @Benchmark
+    @Threads(1)
+    public void counterAdd(final Cursor cursor) {
+        counter.add(cursor.take());
+    }
+
+    /**
+     * Function to add to the counter from four threads at once.
+     *
+     * @param cursor the thread's cursor
+     */
+    @Benchmark
+    @Threads(4)
+    public void counterAddContended(final Cursor cursor) {
+        counter.add(cursor.take());
+    }
+
+    /**
+     * Function to record a latency from one thread.
+     *
+     * @param cursor the thread's cursor
+     */
+    @Benchmark
+    @Threads(1)
+    public void histogramRecord(final Cursor cursor) {
+        histogram.record(cursor.take());
+    }
+
+    /**
+     * Function to record a latency from four threads at once.
+     *
+     * @param cursor the thread's cursor
+     */
+    @Benchmark
+    @Threads(4)
+    public void histogramRecordContended(final Cursor cursor) {
+        histogram.record(cursor.take());
+    }
+}
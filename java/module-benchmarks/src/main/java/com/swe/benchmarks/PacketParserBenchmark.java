@@ -0,0 +1,144 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: PacketParserBenchmark.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.benchmarks;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.swe.networking.ChunkManager;
+import com.swe.networking.ModuleType;
+import com.swe.networking.PacketInfo;
+import com.swe.networking.PacketParser;
+import com.swe.networking.PacketView;
+
+/**
+ * Header encoding and decoding, and the chunking done for every message
+ * sent through the networking module.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketParserBenchmark {
+
+    /**
+     * Payload bytes of the packet.
+     */
+    @Param({"64", "1024", "16384"})
+    private int payloadSize;
+
+    /**
+     * Bytes of the message to chunk.
+     */
+    @Param({"65536"})
+    private int messageSize;
+
+    private final PacketParser parser = PacketParser.getPacketParser();
+    private final PacketView view = new PacketView();
+    private PacketInfo info;
+    private PacketInfo message;
+    private byte[] messageData;
+    private byte[] packet;
+    private ChunkManager chunkManager;
+
+    /**
+     * Function to build the packet and message once.
+     *
+     * @throws UnknownHostException never, the address is a literal
+     */
+    @Setup
+    public void setup() throws UnknownHostException {
+        info = packetInfo(new byte[payloadSize]);
+        packet = parser.createPkt(info);
+        messageData = new byte[messageSize];
+        message = packetInfo(messageData);
+        chunkManager = ChunkManager.getChunkManager(payloadSize);
+        BenchmarkLogs.quiet();
+    }
+
+    private static PacketInfo packetInfo(final byte[] payload) throws UnknownHostException {
+        final PacketInfo pkt = new PacketInfo();
+        pkt.setModule(ModuleType.SCREENSHARING.ordinal());
+        pkt.setPriority(1);
+        pkt.setIpAddress(InetAddress.getByName("10.0.0.1"));
+        pkt.setPortNum(8000);
+        pkt.setMessageId(7);
+        pkt.setChunkLength(1);
+        pkt.setPayload(payload);
+        pkt.setLength(PacketParser.getHeaderSize() + payload.length);
+        return pkt;
+    }
+
+    /**
+     * Function to encode a packet.
+     *
+     * @return the packet
+     */
+    @Benchmark
+    public byte[] create() {
+        return parser.createPkt(info);
+    }
+
+    /**
+     * Function to decode a packet into a packet info.
+     *
+     * @return the decoded packet
+     * @throws UnknownHostException never, the address is encoded
+     */
+    @Benchmark
+    public PacketInfo parse() throws UnknownHostException {
+        return parser.parsePacket(packet);
+    }
+
+    /**
+     * Function to read the routing fields through a view.
+     *
+     * @param blackhole sink of the fields
+     */
+    @Benchmark
+    public void view(final Blackhole blackhole) {
+        view.wrap(packet);
+        blackhole.consume(view.getModule());
+        blackhole.consume(view.getPriority());
+        blackhole.consume(view.getClientNode());
+        blackhole.consume(view.getMessageId());
+        blackhole.consume(view.getChunkNum());
+    }
+
+    /**
+     * Function to chunk a message the way the send path does. Chunking
+     * leaves the last chunk as the payload, so the message is put back.
+     *
+     * @return the chunks
+     */
+    @Benchmark
+    public Vector<byte[]> chunk() {
+        message.setPayload(messageData);
+        return chunkManager.chunk(message, payloadSize);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: ReassemblyBenchmark.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.benchmarks;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.swe.networking.ModuleType;
+import com.swe.networking.PacketInfo;
+import com.swe.networking.PacketParser;
+import com.swe.networking.Reassembler;
+
+/**
+ * Reassembling a chunked message when its chunks arrive in order, shuffled,
+ * or shuffled with duplicates. The score is messages per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReassemblyBenchmark {
+
+    /**
+     * Seed of the chunk order, fixed so runs compare.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Chunks per message.
+     */
+    @Param({"4", "64"})
+    private int chunks;
+
+    /**
+     * Payload bytes of each chunk.
+     */
+    @Param({"1024"})
+    private int chunkSize;
+
+    /**
+     * Arrival order: IN_ORDER, SHUFFLED or DUPLICATED (shuffled with a
+     * quarter of the chunks delivered twice).
+     */
+    @Param({"IN_ORDER", "SHUFFLED", "DUPLICATED"})
+    private String order;
+
+    private final Reassembler reassembler = new Reassembler();
+    private byte[][] arrivals;
+
+    /**
+     * Function to encode the chunks and fix their arrival order once. The
+     * last arrival is always a chunk not seen before, so the message
+     * completes exactly on it and no partial message is left behind.
+     *
+     * @throws UnknownHostException never, the address is a literal
+     */
+    @Setup
+    public void setup() throws UnknownHostException {
+        final PacketParser parser = PacketParser.getPacketParser();
+        final PacketInfo info = new PacketInfo();
+        info.setModule(ModuleType.SCREENSHARING.ordinal());
+        info.setIpAddress(InetAddress.getByName("10.0.0.3"));
+        info.setPortNum(8000);
+        info.setMessageId(1);
+        info.setChunkLength(chunks);
+        final byte[][] encoded = new byte[chunks][];
+        for (int i = 0; i < chunks; i++) {
+            info.setChunkNum(i);
+            info.setPayload(new byte[chunkSize]);
+            info.setLength(PacketParser.getHeaderSize(info) + chunkSize);
+            encoded[i] = parser.createPkt(info);
+        }
+        final Random random = new Random(SEED);
+        final List<byte[]> sequence = new ArrayList<>();
+        for (int i = 0; i < chunks - 1; i++) {
+            sequence.add(encoded[i]);
+        }
+        if ("DUPLICATED".equals(order)) {
+            for (int i = 0; i < chunks / 4; i++) {
+                sequence.add(encoded[random.nextInt(chunks - 1)]);
+            }
+        }
+        if (!"IN_ORDER".equals(order)) {
+            Collections.shuffle(sequence, random);
+        }
+        sequence.add(encoded[chunks - 1]);
+        arrivals = sequence.toArray(new byte[0][]);
+        BenchmarkLogs.quiet();
+    }
+
+    /**
+     * Function to feed every chunk of one message.
+     *
+     * @return the merged message
+     */
+    @Benchmark
+    public byte[] reassemble() {
+        byte[] merged = null;
+        for (byte[] chunk : arrivals) {
+            merged = reassembler.addChunk(chunk, 0);
+        }
+        if (merged == null) {
+            throw new IllegalStateException("Message did not complete");
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: SchedulerBenchmark.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.benchmarks;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.swe.networking.DrrScheduler;
+import com.swe.networking.ModuleType;
+import com.swe.networking.PacketInfo;
+import com.swe.networking.PacketParser;
+import com.swe.networking.PriorityQueue;
+import com.swe.networking.SendScheduler;
+
+/**
+ * Enqueue and dequeue through the send schedulers, from one thread and from
+ * four threads sharing the scheduler the way the module threads do. Each
+ * operation queues one packet and takes one packet, so the queue stays
+ * bounded whatever the thread count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulerBenchmark {
+
+    /**
+     * Number of distinct priorities cycled through.
+     */
+    private static final int PRIORITIES = 7;
+
+    /**
+     * Scheduler under test: mlfq (PriorityQueue) or drr (DrrScheduler).
+     */
+    @Param({"mlfq", "drr"})
+    private String scheduler;
+
+    private SendScheduler queue;
+    private byte[][] packets;
+
+    /**
+     * Function to create the scheduler and one packet per priority.
+     *
+     * @throws UnknownHostException never, the address is a literal
+     */
+    @Setup(Level.Trial)
+    public void setup() throws UnknownHostException {
+        if ("mlfq".equals(scheduler)) {
+            queue = PriorityQueue.getPriorityQueue();
+        } else {
+            queue = new DrrScheduler();
+        }
+        final PacketInfo info = new PacketInfo();
+        info.setModule(ModuleType.CHAT.ordinal());
+        info.setIpAddress(InetAddress.getByName("10.0.0.4"));
+        info.setPortNum(8000);
+        info.setChunkLength(1);
+        info.setPayload(new byte[256]);
+        info.setLength(PacketParser.getHeaderSize() + 256);
+        packets = new byte[PRIORITIES][];
+        for (int priority = 0; priority < PRIORITIES; priority++) {
+            info.setPriority(priority);
+            packets[priority] = PacketParser.getPacketParser().createPkt(info);
+        }
+        BenchmarkLogs.quiet();
+    }
+
+    /**
+     * Function to empty the shared queue between trials.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        queue.clear();
+    }
+
+    /**
+     * Per thread position in the priority cycle.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        /**
+         * Index of the next packet.
+         */
+        private int next;
+    }
+
+    private byte[] addThenTake(final Cursor cursor) {
+        queue.addPacket(packets[cursor.next]);
+        cursor.next = (cursor.next + 1) % PRIORITIES;
+        return queue.nextPacket();
+    }
+
+    /**
+     * Function to queue and take a packet from one thread.
+     *
+     * @param cursor the thread's cursor
+     * @return the packet taken
+     */
+    @Benchmark
+    @Threads(1)
+    public byte[] uncontended(final Cursor cursor) {
+        return addThenTake(cursor);
+    }
+
+    /**
+     * Function to queue and take a packet from four threads at once.
+     *
+     * @param cursor the thread's cursor
+     * @return the packet taken
+     */
+    @Benchmark
+    @Threads(4)
+    public byte[] contended(final Cursor cursor) {
+        return addThenTake(cursor);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: ScreenLatencyBenchmark.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.benchmarks;
+
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.swe.core.ClientNode;
+import com.swe.networking.ChunkFanout;
+import com.swe.networking.DrrScheduler;
+import com.swe.networking.ModuleType;
+import com.swe.networking.PacketInfo;
+import com.swe.networking.PacketView;
+import com.swe.networking.Reassembler;
+import com.swe.networking.Supersession;
+
+/**
+ * Glass to glass latency of screen frames over a link slower than the
+ * frames, as on a congested uplink. One second of frames is captured at
+ * 40 frames a second and queued on the send path of the networking
+ * module, a send thread drains the queue at the link bandwidth into the
+ * reassembler of the viewer. The score is the time from the first capture
+ * to the display of the last frame, so the score less one second is how
+ * late the last frame was shown. {@code latest} sends the frames latest
+ * only, a newer frame superseding the queued chunks of older ones.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ScreenLatencyBenchmark {
+
+    /**
+     * Frames captured, one second of them.
+     */
+    private static final int FRAMES = 40;
+
+    /**
+     * Time between two captures in nanoseconds.
+     */
+    private static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / FRAMES;
+
+    /**
+     * Bytes of an encoded frame.
+     */
+    private static final int FRAME_BYTES = 40 * 1024;
+
+    /**
+     * Payload bytes of a chunk, as sent by the networking module.
+     */
+    private static final int PAYLOAD_SIZE = 10 * 1024;
+
+    /**
+     * Link bandwidth in bytes a second, half the bytes captured.
+     */
+    private static final long LINK_BYTES_PER_SECOND = FRAMES * FRAME_BYTES / 2;
+
+    /**
+     * Priority of the frames, as sent by the screen share.
+     */
+    private static final int PRIORITY = 2;
+
+    /**
+     * How long the last frame is awaited in seconds.
+     */
+    private static final long DISPLAY_TIMEOUT_SECONDS = 30;
+
+    /**
+     * Whether the frames are sent latest only.
+     */
+    @Param({"false", "true"})
+    private boolean latest;
+
+    private final ClientNode viewer = new ClientNode("10.0.0.2", 7000);
+    private final ClientNode[] viewers = {viewer};
+    private final int module = ModuleType.SCREENSHARING.ordinal();
+    private byte[] frame;
+    private DrrScheduler scheduler;
+    private Supersession supersession;
+    private ChunkFanout fanout;
+    private Reassembler reassembler;
+    private CountDownLatch displayed;
+    private Thread link;
+
+    /**
+     * Function to build the frame and quiet the logs.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkLogs.quiet();
+        frame = new byte[FRAME_BYTES];
+    }
+
+    /**
+     * Function to start an empty send path and link for an invocation.
+     */
+    @Setup(Level.Invocation)
+    public void startLink() {
+        scheduler = new DrrScheduler();
+        supersession = new Supersession();
+        fanout = new ChunkFanout();
+        reassembler = new Reassembler();
+        displayed = new CountDownLatch(1);
+        link = Thread.ofPlatform().name("Screen-Latency-Link").daemon().start(this::drain);
+    }
+
+    /**
+     * Function to stop the link of an invocation.
+     *
+     * @throws InterruptedException when interrupted while joining the link
+     */
+    @TearDown(Level.Invocation)
+    public void stopLink() throws InterruptedException {
+        link.interrupt();
+        link.join();
+    }
+
+    /**
+     * Function to capture the frames at the frame rate and wait for the
+     * last one to be shown.
+     *
+     * @return true if the last frame was shown in time
+     * @throws UnknownHostException never, the viewer is an address
+     * @throws InterruptedException when interrupted while waiting
+     */
+    @Benchmark
+    public boolean share() throws UnknownHostException, InterruptedException {
+        final long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            LockSupport.parkNanos(start + i * FRAME_NANOS - System.nanoTime());
+            send(i);
+        }
+        return displayed.await(DISPLAY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Function to queue a frame as the networking module does.
+     *
+     * @param number the number of the frame, written at its start
+     * @throws UnknownHostException never, the viewer is an address
+     */
+    private void send(final int number) throws UnknownHostException {
+        ByteBuffer.wrap(frame).putInt(0, number);
+        final PacketInfo info = new PacketInfo();
+        info.setModule(module);
+        info.setPriority(PRIORITY);
+        info.setPayload(frame);
+        if (latest) {
+            info.setLatest(1);
+        }
+        final List<byte[]> headers = fanout.encode(info, viewers, client -> 0, number, PAYLOAD_SIZE);
+        if (latest) {
+            supersession.track(number, module, 0, viewers, headers.size());
+        }
+        for (byte[] header : headers) {
+            scheduler.addPacket(header);
+        }
+    }
+
+    /**
+     * Function to send the queued packets at the link bandwidth and hand
+     * them to the reassembler of the viewer, as the send thread of the
+     * networking module does.
+     */
+    private void drain() {
+        final PacketView view = new PacketView();
+        final PacketView shown = new PacketView();
+        long linkFree = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            final byte[] packet;
+            try {
+                packet = scheduler.takePacket();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (latest && supersession.isSuperseded(view.wrap(packet))) {
+                fanout.release(packet);
+                continue;
+            }
+            final ByteBuffer[] parts = fanout.resolve(packet);
+            final ByteBuffer wire = ByteBuffer.allocate(packet.length + parts[1].remaining());
+            wire.put(parts[0]).put(parts[1]);
+            linkFree = Math.max(linkFree, System.nanoTime())
+                    + TimeUnit.SECONDS.toNanos(wire.capacity()) / LINK_BYTES_PER_SECOND;
+            LockSupport.parkNanos(linkFree - System.nanoTime());
+            final byte[] merged = reassembler.addChunk(wire.array());
+            if (merged != null && shown.wrap(merged).payload().getInt(0) == FRAMES - 1) {
+                displayed.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: SimpleRelayBenchmark.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.swe.core.ClientNode;
+import com.swe.core.logging.SweLogger;
+import com.swe.core.logging.SweLoggerFactory;
+import com.swe.networking.ModuleType;
+import com.swe.networking.NetworkConnectionType;
+import com.swe.networking.PacketInfo;
+import com.swe.networking.PacketParser;
+import com.swe.networking.ProtocolBase;
+import com.swe.networking.ReceivePacket;
+import com.swe.networking.SimpleNetworking.Server;
+import com.swe.networking.SimpleNetworking.SimpleChunkManager;
+import com.swe.networking.SimpleNetworking.SimpleNetworking;
+
+/**
+ * Host CPU of the simple networking server relaying screen share chunks
+ * of a meeting of {@value #MEMBERS} clients. One invocation relays one
+ * chunk from a presenter, to one viewer for {@code unicast} and to every
+ * other client for {@code broadcast}. The {@code legacy} path is the
+ * former handler, which parsed every packet fully and had a broadcast
+ * uploaded as one unicast copy per receiver, the {@code relay} path is
+ * {@link Server#onFrame}. Sent packets are discarded, so only the server
+ * is measured, and every iteration prints the process CPU time per
+ * forwarded MB.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimpleRelayBenchmark {
+
+    /**
+     * Clients of the meeting, the presenter included.
+     */
+    private static final int MEMBERS = 8;
+
+    /**
+     * Payload bytes of a chunk, the chunk size of the simple networking.
+     */
+    private static final int PAYLOAD_SIZE = 15 * 1024;
+
+    /**
+     * Bytes in a MB.
+     */
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+    /**
+     * Nanoseconds in a microsecond.
+     */
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    /**
+     * The logger the former handler logged through.
+     */
+    private static final SweLogger LOG = SweLoggerFactory.getLogger("NETWORKING");
+
+    /**
+     * The relay path, {@code legacy} or {@code relay}.
+     */
+    @Param({"legacy", "relay"})
+    private String path;
+
+    /**
+     * The traffic, {@code unicast} or {@code broadcast}.
+     */
+    @Param({"unicast", "broadcast"})
+    private String traffic;
+
+    private final DiscardCommunicator communicator = new DiscardCommunicator();
+    private final ClientNode serverNode = new ClientNode("127.0.0.1", 40_000);
+    private final PacketParser parser = PacketParser.getPacketParser();
+    private Server server;
+    private SimpleChunkManager chunkManager;
+    private SimpleNetworking simpleNetworking;
+    private ByteBuffer[] legacyFrames;
+    private ByteBuffer relayFrame;
+    private long cpuAtStart;
+    private long bytesAtStart;
+
+    /**
+     * Sender of the server, counting the bytes it would have written.
+     */
+    private static final class DiscardCommunicator implements ProtocolBase {
+        private long bytes;
+
+        @Override
+        public SocketChannel openSocket() {
+            return null;
+        }
+
+        @Override
+        public void printKeys() {
+        }
+
+        @Override
+        public void closeSocket(final ClientNode client) {
+        }
+
+        @Override
+        public void sendData(final byte[] data, final ClientNode dest) {
+            bytes += data.length;
+        }
+
+        @Override
+        public ReceivePacket receiveData() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Function to create the server, register the clients and build the
+     * chunks each path receives.
+     *
+     * @throws UnknownHostException never, the addresses are literals
+     */
+    @Setup(Level.Trial)
+    public void setup() throws UnknownHostException {
+        SimpleNetworking.getSimpleNetwork().resetSimpleNetworking();
+        simpleNetworking = SimpleNetworking.getSimpleNetwork();
+        simpleNetworking.subscribe(ModuleType.SCREENSHARING, data -> { });
+        server = new Server(serverNode, communicator);
+        chunkManager = SimpleChunkManager.getChunkManager(PAYLOAD_SIZE);
+        final ClientNode[] clients = new ClientNode[MEMBERS];
+        for (int i = 0; i < MEMBERS; i++) {
+            clients[i] = new ClientNode("127.0.0.1", serverNode.port() + 1 + i);
+            server.onFrame(clients[i], ByteBuffer.wrap(chunk(clients[i], NetworkConnectionType.HELLO, 0, 0)));
+        }
+        if ("unicast".equals(traffic)) {
+            legacyFrames = new ByteBuffer[] {ByteBuffer.wrap(chunk(clients[1], NetworkConnectionType.MODULE, 0,
+                    PAYLOAD_SIZE))};
+            relayFrame = legacyFrames[0];
+        } else {
+            legacyFrames = new ByteBuffer[MEMBERS];
+            legacyFrames[0] = ByteBuffer.wrap(chunk(serverNode, NetworkConnectionType.MODULE, 0, PAYLOAD_SIZE));
+            for (int i = 1; i < MEMBERS; i++) {
+                legacyFrames[i] = ByteBuffer.wrap(chunk(clients[i], NetworkConnectionType.MODULE, 0,
+                        PAYLOAD_SIZE));
+            }
+            relayFrame = ByteBuffer.wrap(chunk(clients[0], NetworkConnectionType.MODULE, 1, PAYLOAD_SIZE));
+        }
+        BenchmarkLogs.quiet();
+    }
+
+    private byte[] chunk(final ClientNode addr, final NetworkConnectionType type, final int broadcast,
+            final int size) throws UnknownHostException {
+        final PacketInfo info = new PacketInfo();
+        info.setModule(ModuleType.SCREENSHARING.ordinal());
+        info.setConnectionType(type.ordinal());
+        info.setBroadcast(broadcast);
+        info.setIpAddress(InetAddress.getByName(addr.hostName()));
+        info.setPortNum(addr.port());
+        info.setChunkLength(1);
+        info.setPayload(new byte[size]);
+        info.setLength(PacketParser.getHeaderSize() + size);
+        return parser.createPkt(info);
+    }
+
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+
+    /**
+     * Function to note the CPU time and forwarded bytes at the start of an
+     * iteration.
+     */
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        cpuAtStart = processCpuNanos();
+        bytesAtStart = communicator.bytes;
+    }
+
+    /**
+     * Function to print the CPU time per forwarded MB of an iteration.
+     */
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        final double megabytes = Math.max(1, communicator.bytes - bytesAtStart) / BYTES_PER_MB;
+        System.out.printf("%s %s: %.1f us CPU per forwarded MB%n", path, traffic,
+                (processCpuNanos() - cpuAtStart) / NANOS_PER_MICRO / megabytes);
+    }
+
+    /**
+     * Function to relay one chunk to its receivers.
+     */
+    @Benchmark
+    public void relay() {
+        if ("legacy".equals(path)) {
+            for (ByteBuffer frame : legacyFrames) {
+                legacyHandle(frame.duplicate());
+            }
+            return;
+        }
+        server.onFrame(serverNode, relayFrame.duplicate());
+    }
+
+    /**
+     * Function to handle a packet as the server did before the relay path:
+     * copy it, parse every header field and the payload, and forward or
+     * deliver it.
+     *
+     * @param frame the received packet
+     */
+    private void legacyHandle(final ByteBuffer frame) {
+        final byte[] packet = new byte[frame.remaining()];
+        frame.get(packet);
+        try {
+            final PacketInfo pktInfo = parser.parsePacket(packet);
+            final ModuleType type = ModuleType.NETWORKING.getType(pktInfo.getModule());
+            final InetAddress address = pktInfo.getIpAddress();
+            final int port = pktInfo.getPortNum();
+            final String addr = address.getHostAddress();
+            if (addr.equals(serverNode.hostName()) && port == serverNode.port()) {
+                LOG.info("Server Module received : " + type);
+                final byte[] message = chunkManager.addChunk(packet);
+                if (message != null) {
+                    simpleNetworking.callSubscriber(parser.parsePacket(message).getPayload(), type);
+                }
+            } else {
+                final ClientNode dest = new ClientNode(address.getHostAddress(), port);
+                LOG.info("Redirecting data to : " + dest);
+                communicator.sendData(packet, dest);
+                LOG.info("Sent data succesfully...");
+            }
+        } catch (UnknownHostException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
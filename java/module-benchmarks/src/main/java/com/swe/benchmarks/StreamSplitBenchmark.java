@@ -0,0 +1,177 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: StreamSplitBenchmark.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.benchmarks;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.swe.core.ClientNode;
+import com.swe.networking.FrameDecoder;
+import com.swe.networking.ModuleType;
+import com.swe.networking.PacketInfo;
+import com.swe.networking.PacketParser;
+import com.swe.networking.ReceivePacket;
+import com.swe.networking.SplitPackets;
+
+/**
+ * Splitting a TCP byte stream back into packets when the socket hands it
+ * over in reads of a given size. Every invocation splits a stream of
+ * {@value #PACKETS} packets, so the score is packets per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamSplitBenchmark {
+
+    /**
+     * Packets in the stream.
+     */
+    static final int PACKETS = 256;
+
+    /**
+     * Bytes handed over by each socket read.
+     */
+    @Param({"64", "1500", "16384"})
+    private int readSize;
+
+    /**
+     * Payload bytes of each packet.
+     */
+    @Param({"1024"})
+    private int payloadSize;
+
+    private final ClientNode peer = new ClientNode("10.0.0.2", 8000);
+    private byte[] stream;
+    private List<ReceivePacket> reads;
+    private SplitPackets splitPackets;
+    private FrameDecoder decoder;
+    private SlicedChannel channel;
+
+    /**
+     * Function to encode the stream and cut it into reads once.
+     *
+     * @throws UnknownHostException never, the address is a literal
+     */
+    @Setup
+    public void setup() throws UnknownHostException {
+        final PacketInfo info = new PacketInfo();
+        info.setModule(ModuleType.CHAT.ordinal());
+        info.setIpAddress(InetAddress.getByName(peer.hostName()));
+        info.setPortNum(peer.port());
+        info.setChunkLength(1);
+        info.setPayload(new byte[payloadSize]);
+        info.setLength(PacketParser.getHeaderSize() + payloadSize);
+        final byte[] packet = PacketParser.getPacketParser().createPkt(info);
+        stream = new byte[packet.length * PACKETS];
+        for (int i = 0; i < PACKETS; i++) {
+            System.arraycopy(packet, 0, stream, i * packet.length, packet.length);
+        }
+        reads = new ArrayList<>();
+        for (int start = 0; start < stream.length; start += readSize) {
+            final int end = Math.min(stream.length, start + readSize);
+            final byte[] read = new byte[end - start];
+            System.arraycopy(stream, start, read, 0, read.length);
+            reads.add(new ReceivePacket(peer, read));
+        }
+        splitPackets = SplitPackets.getSplitPackets();
+        decoder = new FrameDecoder(peer);
+        channel = new SlicedChannel();
+        BenchmarkLogs.quiet();
+    }
+
+    /**
+     * Function to split the stream with the copying splitter.
+     *
+     * @param blackhole sink of the packets
+     */
+    @Benchmark
+    @OperationsPerInvocation(PACKETS)
+    public void splitPackets(final Blackhole blackhole) {
+        for (ReceivePacket read : reads) {
+            blackhole.consume(splitPackets.split(read));
+        }
+    }
+
+    /**
+     * Function to split the stream with the ring buffer decoder reading
+     * straight from the channel.
+     *
+     * @param blackhole sink of the frames
+     * @throws IOException never, the channel is in memory
+     */
+    @Benchmark
+    @OperationsPerInvocation(PACKETS)
+    public void frameDecoder(final Blackhole blackhole) throws IOException {
+        channel.rewind();
+        while (decoder.readFrom(channel) > 0) {
+            decoder.drain((sender, frame) -> blackhole.consume(frame));
+        }
+    }
+
+    /**
+     * In memory channel over the stream returning at most one read size per
+     * call, like a socket draining its receive buffer.
+     */
+    private final class SlicedChannel implements ReadableByteChannel {
+
+        /**
+         * Position of the next byte of the stream.
+         */
+        private int position;
+
+        void rewind() {
+            position = 0;
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) {
+            if (position == stream.length) {
+                return 0;
+            }
+            final int length = Math.min(Math.min(readSize, dst.remaining()), stream.length - position);
+            dst.put(stream, position, length);
+            position += length;
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: TransportBenchmark.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.ClosedSelectorException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.swe.core.ClientNode;
+import com.swe.networking.ModuleType;
+import com.swe.networking.PacketInfo;
+import com.swe.networking.PacketParser;
+import com.swe.networking.ProtocolBase;
+import com.swe.networking.TCPCommunicator;
+import com.swe.networking.VirtualThreadCommunicator;
+
+/**
+ * The selector transport against the virtual thread transport on loopback,
+ * with one hub connected to 10, 50 or 200 peers. A fan in round has every
+ * peer send one packet to the hub, a fan out round has the hub send one
+ * packet to every peer, and each round ends when all packets are
+ * delivered, so the score is the latency of a round and the peer count
+ * divided by it the throughput. Every iteration prints the process CPU
+ * time spent per delivered packet and the live thread count.
+ * Each transport drives its receive loops the way the application does:
+ * a platform thread per selector, a virtual thread per virtual thread
+ * communicator.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransportBenchmark {
+
+    /**
+     * Port of the hub of the first trial, each trial takes the next
+     * {@link #PORTS_PER_TRIAL}.
+     */
+    private static final int BASE_PORT = 20_000;
+
+    /**
+     * Ports reserved per trial, the hub and the most peers.
+     */
+    private static final int PORTS_PER_TRIAL = 201;
+
+    /**
+     * Payload bytes of each packet.
+     */
+    private static final int PAYLOAD_SIZE = 1024;
+
+    /**
+     * Trials started in this fork.
+     */
+    private static final AtomicInteger TRIALS = new AtomicInteger();
+
+    /**
+     * Nanoseconds to park while waiting for delivery.
+     */
+    private static final long WAIT_NANOS = 10_000;
+
+    /**
+     * Nanoseconds after which a round is considered lost.
+     */
+    private static final long ROUND_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * The transport, {@code nio} or {@code virtual}.
+     */
+    @Param({"nio", "virtual"})
+    private String transport;
+
+    /**
+     * Number of peers connected to the hub.
+     */
+    @Param({"10", "50", "200"})
+    private int peers;
+
+    private final AtomicLong hubReceived = new AtomicLong();
+    private final AtomicLong peersReceived = new AtomicLong();
+    private ProtocolBase hub;
+    private ClientNode hubNode;
+    private ProtocolBase[] peerProtocols;
+    private ClientNode[] peerNodes;
+    private Thread[] loops;
+    private byte[] packet;
+    private long hubExpected;
+    private long peersExpected;
+    private long cpuAtStart;
+    private long packetsAtStart;
+
+    /**
+     * Function to open the hub and the peers, start their receive loops and
+     * connect every peer in both directions.
+     *
+     * @throws UnknownHostException never, the address is a literal
+     */
+    @Setup(Level.Trial)
+    public void setup() throws UnknownHostException {
+        BenchmarkLogs.quiet();
+        final int port = BASE_PORT + PORTS_PER_TRIAL * TRIALS.getAndIncrement();
+        hub = open(port);
+        hubNode = new ClientNode("127.0.0.1", port);
+        peerProtocols = new ProtocolBase[peers];
+        peerNodes = new ClientNode[peers];
+        loops = new Thread[peers + 1];
+        loops[0] = receiveLoop(hub, hubReceived, "Bench-Hub");
+        for (int i = 0; i < peers; i++) {
+            peerProtocols[i] = open(port + 1 + i);
+            peerNodes[i] = new ClientNode("127.0.0.1", port + 1 + i);
+            loops[i + 1] = receiveLoop(peerProtocols[i], peersReceived, "Bench-Peer-" + i);
+        }
+        final PacketInfo info = new PacketInfo();
+        info.setModule(ModuleType.CHAT.ordinal());
+        info.setIpAddress(InetAddress.getByName(hubNode.hostName()));
+        info.setPortNum(hubNode.port());
+        info.setChunkLength(1);
+        info.setPayload(new byte[PAYLOAD_SIZE]);
+        info.setLength(PacketParser.getHeaderSize() + PAYLOAD_SIZE);
+        packet = PacketParser.getPacketParser().createPkt(info);
+        fanIn();
+        fanOut();
+    }
+
+    private ProtocolBase open(final int port) {
+        if ("virtual".equals(transport)) {
+            return new VirtualThreadCommunicator(port);
+        }
+        return new TCPCommunicator(port);
+    }
+
+    private Thread receiveLoop(final ProtocolBase protocol, final AtomicLong counter, final String name) {
+        final Runnable loop = () -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    protocol.receiveFrames((source, frame) -> counter.incrementAndGet());
+                }
+            } catch (ClosedSelectorException ex) {
+                // closed by the tear down
+            }
+        };
+        if ("virtual".equals(transport)) {
+            return Thread.ofVirtual().name(name).start(loop);
+        }
+        final Thread thread = new Thread(loop, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void await(final AtomicLong counter, final long expected) {
+        final long deadline = System.nanoTime() + ROUND_TIMEOUT_NANOS;
+        while (counter.get() < expected) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Stalled at " + counter.get() + " of " + expected);
+            }
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+    }
+
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+
+    /**
+     * Function to note the CPU time and packets at the start of an
+     * iteration.
+     */
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        cpuAtStart = processCpuNanos();
+        packetsAtStart = hubReceived.get() + peersReceived.get();
+    }
+
+    /**
+     * Function to print the CPU time per packet and the thread count of an
+     * iteration.
+     */
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        final long packets = Math.max(1, hubReceived.get() + peersReceived.get() - packetsAtStart);
+        System.out.printf("%s peers=%d: %.2f us CPU per packet, %d live platform threads%n", transport, peers,
+                (processCpuNanos() - cpuAtStart) / 1000.0 / packets,
+                ManagementFactory.getThreadMXBean().getThreadCount());
+    }
+
+    /**
+     * Function to close the hub and the peers and stop their loops.
+     *
+     * @throws InterruptedException when interrupted while joining
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        for (Thread loop : loops) {
+            loop.interrupt();
+        }
+        hub.close();
+        for (ProtocolBase peer : peerProtocols) {
+            peer.close();
+        }
+        for (Thread loop : loops) {
+            loop.join();
+        }
+    }
+
+    /**
+     * Function to have every peer send one packet to the hub and wait for
+     * all of them.
+     */
+    @Benchmark
+    public void fanIn() {
+        for (ProtocolBase peer : peerProtocols) {
+            peer.sendData(packet, hubNode);
+        }
+        hubExpected += peers;
+        await(hubReceived, hubExpected);
+    }
+
+    /**
+     * Function to have the hub send one packet to every peer and wait for
+     * all of them.
+     */
+    @Benchmark
+    public void fanOut() {
+        for (ClientNode peer : peerNodes) {
+            hub.sendData(packet, peer);
+        }
+        peersExpected += peers;
+        await(peersReceived, peersExpected);
+    }
+}
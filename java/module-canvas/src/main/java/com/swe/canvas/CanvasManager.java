@@ -10,6 +10,8 @@ import com.swe.networking.ModuleType;
 import com.swe.networking.Networking;
 import com.swe.networking.Topology;
 import com.swe.core.logging.SweLogger;
+import com.swe.core.metrics.Counter;
+import com.swe.core.metrics.MetricsRegistry;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -24,6 +26,12 @@ public class CanvasManager {
     private ClientNode selfClientNode;
     private final SweLogger logger;
 
+    // Metrics: looked up once, updated on every canvas message
+    private final Counter updatesSent = MetricsRegistry.getMetricsRegistry().counter("canvas.updates.sent");
+    private final Counter bytesSent = MetricsRegistry.getMetricsRegistry().counter("canvas.bytes.sent");
+    private final Counter updatesReceived = MetricsRegistry.getMetricsRegistry().counter("canvas.updates.received");
+    private final Counter bytesReceived = MetricsRegistry.getMetricsRegistry().counter("canvas.bytes.received");
+
     public CanvasManager(Networking networking, SweLogger logger) {
         this.logger = logger;
         this.networking = networking;
@@ -117,6 +125,8 @@ public class CanvasManager {
             // The Host Node will receive it via 'handleNetworkMessage'.
             logger.info("Sending data to host " + hostClientNode);
             networking.sendData(data, new ClientNode[]{hostClientNode}, ModuleType.CANVAS.ordinal(), 1); // Module 2, Priority 1
+            updatesSent.increment();
+            bytesSent.add(data.length);
             
             return new byte[0];
         } catch (Exception e) {
@@ -128,6 +138,8 @@ public class CanvasManager {
     private void handleNetworkMessage(byte[] data) {
         try {
             logger.debug("Everyone received broadcast from host");
+            updatesReceived.increment();
+            bytesReceived.add(data.length);
             rpc.call("canvas:update", data);
         } catch (Exception e) {
             logger.error("Failed to handle network message", e);
@@ -140,6 +152,8 @@ public class CanvasManager {
             // Broadcast to all clients
             logger.info("Host broadcasting verified data to all clients");
             networking.broadcast(data, ModuleType.CANVAS.ordinal(), 1);
+            updatesSent.increment();
+            bytesSent.add(data.length);
             
             return new byte[0];
         } catch (Exception e) {
@@ -170,6 +184,8 @@ public class CanvasManager {
             byte[] payload = DataSerializer.serialize(payloadData);
             
             networking.sendData(payload, new ClientNode[]{target}, ModuleType.CANVAS.ordinal(), 1);
+            updatesSent.increment();
+            bytesSent.add(payload.length);
             
             return new byte[0];
         } catch (Exception e) {
@@ -8,6 +8,9 @@ import com.swe.aiinsights.aiinstance.AiInstance;
 import com.swe.aiinsights.apiendpoints.AiClientService;
 import com.swe.chat.IChatFileCache.FileCacheEntry;
 import com.swe.core.logging.SweLogger;
+import com.swe.core.metrics.Counter;
+import com.swe.core.metrics.LatencyHistogram;
+import com.swe.core.metrics.MetricsRegistry;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -44,6 +47,14 @@ public class ChatManager implements IChatService { // Adapter for IChatService
     private final IChatProcessor processor; // DIP: Message logic delegated
     private final IAiAnalyticsService aiAnalyticsService;
 
+    // Metrics: looked up once, updated on every message
+    private final Counter textMessagesSent = MetricsRegistry.getMetricsRegistry().counter("chat.text.sent");
+    private final Counter fileMessagesSent = MetricsRegistry.getMetricsRegistry().counter("chat.files.sent");
+    private final Counter bytesSent = MetricsRegistry.getMetricsRegistry().counter("chat.bytes.sent");
+    private final Counter messagesReceived = MetricsRegistry.getMetricsRegistry().counter("chat.messages.received");
+    private final LatencyHistogram processNanos =
+            MetricsRegistry.getMetricsRegistry().histogram("chat.receive.process.nanos");
+
     /**
      * CONSTRUCTOR: Injects all necessary services and wires events.
      * @param network The networking service.
@@ -81,6 +92,8 @@ public class ChatManager implements IChatService { // Adapter for IChatService
 
     private byte[] handleFrontendTextMessage(byte[] messageBytes) {
         try {
+            textMessagesSent.increment();
+            bytesSent.add(messageBytes.length);
             // 1. Standard processing (Broadcast, Persistence, History)
             byte[] response = processor.processFrontendTextMessage(messageBytes);
 
@@ -104,6 +117,8 @@ public class ChatManager implements IChatService { // Adapter for IChatService
 
     private byte[] handleFrontendFileMessage(byte[] messageBytes) {
         try {
+            fileMessagesSent.increment();
+            bytesSent.add(messageBytes.length);
             return processor.processFrontendFileMessage(messageBytes);
         } catch (Exception e) {
             logger.error("[Core] Error processing file: " + e.getMessage());
@@ -141,7 +156,10 @@ public class ChatManager implements IChatService { // Adapter for IChatService
      * ============================================================================
      */
     private void handleNetworkMessage(byte[] networkPacket) {
+        messagesReceived.increment();
+        final long start = System.nanoTime();
         processor.processNetworkMessage(networkPacket);
+        processNanos.recordSince(start);
     }
 
     // ============================================================================
@@ -0,0 +1,43 @@
+package com.swe.core.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter safe to update from any number of threads.
+ * <p>
+ * Updates go to a {@link LongAdder}, so concurrent writers spread over
+ * striped cells instead of contending on one cache line. Reads sum the cells
+ * and are only meant for snapshots.
+ */
+public final class Counter {
+
+    private final LongAdder value = new LongAdder();
+
+    Counter() {
+    }
+
+    /**
+     * Adds one to the counter.
+     */
+    public void increment() {
+        value.increment();
+    }
+
+    /**
+     * Adds an amount to the counter.
+     *
+     * @param amount the amount, expected to be non-negative
+     */
+    public void add(final long amount) {
+        value.add(amount);
+    }
+
+    /**
+     * Returns the current total.
+     *
+     * @return the sum of every update so far
+     */
+    public long get() {
+        return value.sum();
+    }
+}
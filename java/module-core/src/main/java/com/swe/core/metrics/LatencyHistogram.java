@@ -0,0 +1,155 @@
+package com.swe.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of non-negative values, typically latencies in
+ * nanoseconds or sizes in bytes.
+ * <p>
+ * Like an HDR histogram, values below {@value #SUB_BUCKETS} get a bucket of
+ * their own and every higher power of two is split into {@value #SUB_BUCKETS}
+ * equal buckets, so any recorded value is reported within about 3% over the
+ * whole {@code long} range with a fixed array of counts. Recording is one
+ * shift, one leading-zero count and one atomic increment; there is no lock
+ * and no allocation.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Bits of precision kept below the leading one bit.
+     */
+    private static final int SUB_BITS = 5;
+
+    /**
+     * Buckets per power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * Highest bit index of a positive long.
+     */
+    private static final int TOP_BIT = Long.SIZE - 2;
+
+    /**
+     * Number of buckets needed to cover every non-negative long.
+     */
+    private static final int BUCKET_COUNT = (TOP_BIT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private static final double P50 = 0.50;
+    private static final double P90 = 0.90;
+    private static final double P99 = 0.99;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    LatencyHistogram() {
+    }
+
+    /**
+     * Records one value. Negative values are recorded as zero.
+     *
+     * @param value the value
+     */
+    public void record(final long value) {
+        counts.incrementAndGet(indexOf(Math.max(0, value)));
+    }
+
+    /**
+     * Records the time elapsed since a {@link System#nanoTime()} reading.
+     *
+     * @param startNanos the earlier reading
+     */
+    public void recordSince(final long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Takes a consistent-enough copy of the counts and summarises it. Counts
+     * recorded while the copy is taken may or may not be included.
+     *
+     * @return the summary
+     */
+    public Snapshot snapshot() {
+        final long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        double sum = 0;
+        int highest = -1;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+            if (copy[i] != 0) {
+                count += copy[i];
+                sum += copy[i] * (double) midpointOf(i);
+                highest = i;
+            }
+        }
+        if (count == 0) {
+            return new Snapshot(0, 0, 0, 0, 0, 0);
+        }
+        return new Snapshot(count, sum / count, percentile(copy, count, P50), percentile(copy, count, P90),
+                percentile(copy, count, P99), highestOf(highest));
+    }
+
+    /**
+     * Clears every count.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    static int indexOf(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = TOP_BIT + 1 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long lowestOf(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        return (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    static long highestOf(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        return lowestOf(index) + (1L << shift) - 1;
+    }
+
+    private static long midpointOf(final int index) {
+        final long low = lowestOf(index);
+        return low + (highestOf(index) - low) / 2;
+    }
+
+    private static long percentile(final long[] copy, final long count, final double quantile) {
+        final long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < copy.length; i++) {
+            seen += copy[i];
+            if (seen >= rank) {
+                return highestOf(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Summary of a histogram. Percentiles and the maximum are the upper
+     * bounds of their buckets.
+     *
+     * @param count number of recorded values
+     * @param mean approximate mean
+     * @param p50 median
+     * @param p90 90th percentile
+     * @param p99 99th percentile
+     * @param max largest recorded value
+     */
+    public record Snapshot(long count, double mean, long p50, long p90, long p99, long max) {
+    }
+}
@@ -0,0 +1,133 @@
+package com.swe.core.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide registry of named counters, gauges and histograms shared by
+ * every module.
+ * <p>
+ * Looking a metric up goes through a concurrent map, so hot paths are
+ * expected to look their metrics up once and keep the returned object in a
+ * field; updating it afterwards never touches the registry. Gauges are read
+ * through a supplier only when a snapshot is taken, so they cost nothing
+ * between snapshots. Names are dot separated, starting with the module,
+ * e.g. {@code networking.bytes.out.chat}.
+ */
+public final class MetricsRegistry {
+
+    private static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a registry of its own, for tests and benchmarks. Production
+     * code uses {@link #getMetricsRegistry()}.
+     */
+    public MetricsRegistry() {
+    }
+
+    /**
+     * Returns the registry shared by the process.
+     *
+     * @return the shared registry
+     */
+    public static MetricsRegistry getMetricsRegistry() {
+        return REGISTRY;
+    }
+
+    /**
+     * Returns the counter of a name, creating it on first use.
+     *
+     * @param name the metric name
+     * @return the counter
+     */
+    public Counter counter(final String name) {
+        return counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    /**
+     * Returns the histogram of a name, creating it on first use.
+     *
+     * @param name the metric name
+     * @return the histogram
+     */
+    public LatencyHistogram histogram(final String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Registers a gauge read when snapshots are taken, replacing any gauge
+     * of the same name. The supplier must be cheap and thread safe.
+     *
+     * @param name the metric name
+     * @param supplier the source of the current value
+     */
+    public void gauge(final String name, final LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * Removes a gauge, typically when the object it reads is closed.
+     *
+     * @param name the metric name
+     */
+    public void removeGauge(final String name) {
+        gauges.remove(name);
+    }
+
+    /**
+     * Returns a metric name component for an enum constant or module name,
+     * lower cased so names read the same whatever their source.
+     *
+     * @param part the name component
+     * @return the lower cased component
+     */
+    public static String name(final Object part) {
+        return String.valueOf(part).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Reads every metric. Counters and gauges map to their value and
+     * histograms to their {@link LatencyHistogram.Snapshot}, sorted by name.
+     *
+     * @return the current values
+     */
+    public Map<String, Object> snapshot() {
+        final Map<String, Object> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.get()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        histograms.forEach((name, histogram) -> values.put(name, histogram.snapshot()));
+        return values;
+    }
+
+    /**
+     * Formats a snapshot as one line of JSON, with the time it was taken.
+     *
+     * @param timestampMillis the wall clock time of the snapshot
+     * @return the JSON object, without a trailing newline
+     */
+    public String toJson(final long timestampMillis) {
+        final StringBuilder json = new StringBuilder();
+        json.append("{\"timestamp\":").append(timestampMillis);
+        for (Map.Entry<String, Object> entry : snapshot().entrySet()) {
+            json.append(",\"").append(entry.getKey()).append("\":");
+            if (entry.getValue() instanceof LatencyHistogram.Snapshot histogram) {
+                json.append("{\"count\":").append(histogram.count())
+                        .append(",\"mean\":").append(Math.round(histogram.mean()))
+                        .append(",\"p50\":").append(histogram.p50())
+                        .append(",\"p90\":").append(histogram.p90())
+                        .append(",\"p99\":").append(histogram.p99())
+                        .append(",\"max\":").append(histogram.max()).append('}');
+            } else {
+                json.append(entry.getValue());
+            }
+        }
+        return json.append('}').toString();
+    }
+}
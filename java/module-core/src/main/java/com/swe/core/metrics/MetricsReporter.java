@@ -0,0 +1,104 @@
+package com.swe.core.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.swe.core.logging.SweLogger;
+import com.swe.core.logging.SweLoggerFactory;
+
+/**
+ * Appends a JSON line snapshot of a {@link MetricsRegistry} to a local file
+ * at a fixed period, on a daemon thread of its own.
+ * <p>
+ * Reporting is off unless the {@value #FILE_PROPERTY} system property names
+ * the output file; {@value #INTERVAL_PROPERTY} sets the period in
+ * milliseconds.
+ */
+public final class MetricsReporter implements AutoCloseable {
+
+    /**
+     * System property naming the file snapshots are appended to.
+     */
+    public static final String FILE_PROPERTY = "swecomm.metrics.file";
+
+    /**
+     * System property with the snapshot period in milliseconds.
+     */
+    public static final String INTERVAL_PROPERTY = "swecomm.metrics.interval";
+
+    /**
+     * Default snapshot period in milliseconds.
+     */
+    public static final long DEFAULT_INTERVAL_MILLIS = 10_000;
+
+    private static final SweLogger LOG = SweLoggerFactory.getLogger("CORE");
+
+    private final MetricsRegistry registry;
+    private final Path file;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Starts reporting a registry to a file.
+     *
+     * @param metrics the registry to report
+     * @param output the file snapshots are appended to
+     * @param intervalMillis the snapshot period in milliseconds
+     */
+    public MetricsReporter(final MetricsRegistry metrics, final Path output, final long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        this.registry = metrics;
+        this.file = output;
+        this.executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            final Thread thread = new Thread(task, "Metrics-Reporter-Thread");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::report, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts reporting the shared registry if {@value #FILE_PROPERTY} is set.
+     *
+     * @return the reporter, or null when reporting is off
+     */
+    public static MetricsReporter fromSystemProperty() {
+        final String path = System.getProperty(FILE_PROPERTY, "").trim();
+        if (path.isEmpty()) {
+            return null;
+        }
+        final long interval = Long.getLong(INTERVAL_PROPERTY, DEFAULT_INTERVAL_MILLIS);
+        LOG.info("Writing metrics to " + path + " every " + interval + " ms");
+        return new MetricsReporter(MetricsRegistry.getMetricsRegistry(), Paths.get(path), interval);
+    }
+
+    /**
+     * Appends one snapshot to the file now.
+     */
+    public void report() {
+        final String line = registry.toJson(System.currentTimeMillis()) + System.lineSeparator();
+        try {
+            Files.writeString(file, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException ex) {
+            LOG.error("Failed to write metrics to " + file, ex);
+        }
+    }
+
+    /**
+     * Stops reporting after writing a last snapshot.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        report();
+    }
+}
@@ -0,0 +1,113 @@
+package com.swe.core.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+
+    private static final double PRECISION = 1.0 / 32;
+
+    @Test
+    public void counterSumsConcurrentUpdates() throws InterruptedException {
+        final Counter counter = new MetricsRegistry().counter("test.count");
+        final Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 100_000; j++) {
+                    counter.increment();
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(800_000, counter.get());
+    }
+
+    @Test
+    public void sameNameReturnsSameMetric() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        assertSame(registry.counter("a"), registry.counter("a"));
+        assertSame(registry.histogram("b"), registry.histogram("b"));
+    }
+
+    @Test
+    public void bucketsBoundEveryValueWithinPrecision() {
+        final long[] values = {0, 1, 31, 32, 33, 63, 64, 65, 1000, 123_456_789, 1L << 40, Long.MAX_VALUE};
+        for (long value : values) {
+            final int index = LatencyHistogram.indexOf(value);
+            final long low = LatencyHistogram.lowestOf(index);
+            final long high = LatencyHistogram.highestOf(index);
+            assertTrue("bucket of " + value, low <= value && value <= high);
+            assertTrue("width of " + value, high - low <= Math.max(0, low * PRECISION));
+        }
+        for (int index = 1; index < LatencyHistogram.indexOf(Long.MAX_VALUE); index++) {
+            assertEquals(LatencyHistogram.highestOf(index - 1) + 1, LatencyHistogram.lowestOf(index));
+        }
+    }
+
+    @Test
+    public void histogramPercentilesWithinPrecision() {
+        final LatencyHistogram histogram = new MetricsRegistry().histogram("test.latency");
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value);
+        }
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100_000, snapshot.count());
+        assertEquals(50_000, snapshot.mean(), 50_000 * PRECISION);
+        assertEquals(50_000, snapshot.p50(), 50_000 * PRECISION);
+        assertEquals(90_000, snapshot.p90(), 90_000 * PRECISION);
+        assertEquals(99_000, snapshot.p99(), 99_000 * PRECISION);
+        assertTrue(snapshot.max() >= 100_000 && snapshot.max() <= 100_000 * (1 + PRECISION));
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().count());
+    }
+
+    @Test
+    public void snapshotReadsGaugesAndFormatsJson() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final AtomicLong depth = new AtomicLong(7);
+        registry.gauge("test.depth", depth::get);
+        registry.counter("test.bytes").add(1500);
+        registry.histogram("test.nanos").record(250);
+        final Map<String, Object> values = registry.snapshot();
+        assertEquals(7L, values.get("test.depth"));
+        depth.set(9);
+        assertEquals(9L, registry.snapshot().get("test.depth"));
+        final String json = registry.toJson(42);
+        assertTrue(json, json.startsWith("{\"timestamp\":42,"));
+        assertTrue(json, json.contains("\"test.bytes\":1500"));
+        assertTrue(json, json.contains("\"test.depth\":9"));
+        assertTrue(json, json.contains("\"test.nanos\":{\"count\":1,"));
+        registry.removeGauge("test.depth");
+        assertTrue(!registry.snapshot().containsKey("test.depth"));
+    }
+
+    @Test
+    public void reporterAppendsOneLinePerSnapshot() throws Exception {
+        final MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("test.count").increment();
+        final Path file = Files.createTempFile("metrics", ".jsonl");
+        try {
+            final MetricsReporter reporter = new MetricsReporter(registry, file, 20);
+            Thread.sleep(110);
+            reporter.close();
+            final List<String> lines = Files.readAllLines(file);
+            assertTrue("lines " + lines.size(), lines.size() >= 3);
+            for (String line : lines) {
+                assertTrue(line, line.contains("\"test.count\":1"));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
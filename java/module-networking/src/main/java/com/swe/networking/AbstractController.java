@@ -10,6 +10,8 @@
 
 package com.swe.networking;
 
+import java.util.concurrent.CompletableFuture;
+
 import com.swe.core.ClientNode;
 import com.swe.core.RPCinterface.AbstractRPC;
 
@@ -59,4 +61,14 @@ public interface AbstractController {
      * @return true if connection fails (network appears down), false if connection succeeds
      */
     boolean isMainServerLive();
+
+    /**
+     * Function to get the result of {@link #isMainServerLive()} without
+     * waiting for it.
+     *
+     * @return completes with true if the network appears down
+     */
+    default CompletableFuture<Boolean> isMainServerLiveAsync() {
+        return CompletableFuture.completedFuture(isMainServerLive());
+    }
 }
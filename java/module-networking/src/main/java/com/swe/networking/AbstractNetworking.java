@@ -52,5 +52,37 @@ public interface AbstractNetworking {
      */
     void removeSubscription(int name);
 
-    
+    /**
+     * Function to send the newest message of a stream, such as a screen
+     * frame, to given list of destination. Where a newer message makes the
+     * older ones worthless, the packets of older messages of the stream
+     * still queued for a destination are dropped. The default sends the
+     * data as is and never drops anything.
+     *
+     * @param data     the data to be sent
+     * @param dest     the destination to send the data
+     * @param module   the module to send to
+     * @param priority the priority of the data
+     * @param stream   the stream within the module, 16 bits carried in the
+     *                 header
+     * @return the destinations whose older message of the stream was cut short
+     */
+    default ClientNode[] sendLatest(final byte[] data, final ClientNode[] dest, final int module,
+            final int priority, final int stream) {
+        sendData(data, dest, module, priority);
+        return new ClientNode[0];
+    }
+
+    /**
+     * Function to check whether the newest message of a stream is still
+     * queued for a destination. The default never queues.
+     *
+     * @param dest   the destination
+     * @param module the module
+     * @param stream the stream within the module
+     * @return true while some of its packets are not sent
+     */
+    default boolean isLatestQueued(final ClientNode dest, final int module, final int stream) {
+        return false;
+    }
 }
@@ -0,0 +1,203 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: AdaptiveClusterPolicy.java
+ *  Owner: Vishal
+ *  Roll Number : 112201049
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Sizes every cluster from the uplink and round trip time of its server.
+ * A server relays each broadcast once per member, and the main server also
+ * once per other cluster server, so its capacity is the number of streams
+ * its uplink carries, reduced as its round trip time grows. Joining clients
+ * go to the cluster with the lowest load, a well connected client opens a
+ * new cluster when every cluster is busy, and rebalancing moves members
+ * from the busiest cluster to the one least loaded after the move.
+ */
+public final class AdaptiveClusterPolicy implements ClusterPolicy {
+
+    /**
+     * Default upload rate of one relayed stream in bytes per second.
+     */
+    public static final long DEFAULT_STREAM_BYTES_PER_SECOND = 128 * 1024;
+
+    /**
+     * Capacity of a server whose link is unknown, the fixed cluster size.
+     */
+    private static final int UNKNOWN_CAPACITY = FixedClusterPolicy.DEFAULT_CLUSTER_SIZE - 1;
+
+    /**
+     * Smallest capacity given to a server.
+     */
+    private static final int MIN_CAPACITY = 1;
+
+    /**
+     * Largest capacity given to a server.
+     */
+    private static final int MAX_CAPACITY = 64;
+
+    /**
+     * Round trip time in milliseconds at which the capacity is halved.
+     */
+    private static final double RTT_SCALE_MILLIS = 100;
+
+    /**
+     * Load above which a well connected joining client opens a new cluster.
+     */
+    private static final double OPEN_CLUSTER_LOAD = 0.75;
+
+    /**
+     * Smallest load difference worth moving a member for, so rebalancing
+     * settles instead of moving members back and forth.
+     */
+    private static final double MIN_LOAD_GAP = 0.25;
+
+    /**
+     * Upload rate of one relayed stream in bytes per second.
+     */
+    private final long streamBytesPerSecond;
+
+    /**
+     * Creates a policy for the default stream rate.
+     */
+    public AdaptiveClusterPolicy() {
+        this(DEFAULT_STREAM_BYTES_PER_SECOND);
+    }
+
+    /**
+     * Creates a policy for the given stream rate.
+     *
+     * @param streamRate upload rate of one relayed stream in bytes per second
+     */
+    public AdaptiveClusterPolicy(final long streamRate) {
+        if (streamRate <= 0) {
+            throw new IllegalArgumentException("Stream rate must be positive");
+        }
+        this.streamBytesPerSecond = streamRate;
+    }
+
+    /**
+     * Function to get the number of streams a device can relay.
+     *
+     * @param device the device
+     * @param metrics the known link metrics
+     * @return the capacity
+     */
+    public int capacity(final ClientNode device, final Map<ClientNode, LinkMetrics> metrics) {
+        final LinkMetrics link = metrics.get(device);
+        if (link == null || link.uplinkBytesPerSecond() <= 0) {
+            return UNKNOWN_CAPACITY;
+        }
+        final double streams = (double) link.uplinkBytesPerSecond() / streamBytesPerSecond;
+        final double capacity = streams / (1 + Math.max(0, link.rttMillis()) / RTT_SCALE_MILLIS);
+        return (int) Math.max(MIN_CAPACITY, Math.min(MAX_CAPACITY, Math.floor(capacity)));
+    }
+
+    /**
+     * Function to get the number of streams the server of a cluster relays.
+     *
+     * @param index the cluster index
+     * @param size the number of clients of the cluster
+     * @param clusterCount the number of clusters
+     * @return the relayed streams
+     */
+    private static int relayed(final int index, final int size, final int clusterCount) {
+        if (index == 0) {
+            return size - 1 + clusterCount - 1;
+        }
+        return size - 1;
+    }
+
+    @Override
+    public int chooseCluster(final List<List<ClientNode>> clusters, final List<ClientNode> servers,
+            final ClientNode client, final Map<ClientNode, LinkMetrics> metrics) {
+        int best = -1;
+        double bestLoad = Double.MAX_VALUE;
+        for (int i = 0; i < clusters.size(); i++) {
+            final int capacity = capacity(servers.get(i), metrics);
+            final int after = relayed(i, clusters.get(i).size() + 1, clusters.size());
+            final double load = (double) after / capacity;
+            if (after <= capacity && load < bestLoad) {
+                best = i;
+                bestLoad = load;
+            }
+        }
+        if (best < 0) {
+            return clusters.size();
+        }
+        if (bestLoad > OPEN_CLUSTER_LOAD && capacity(client, metrics) >= UNKNOWN_CAPACITY) {
+            return clusters.size();
+        }
+        return best;
+    }
+
+    @Override
+    public List<ClientNetworkRecord> rebalance(final List<List<ClientNode>> clusters,
+            final List<ClientNode> servers, final Map<ClientNode, LinkMetrics> metrics, final int maxMoves) {
+        final List<ClientNetworkRecord> moves = new ArrayList<>();
+        final int count = clusters.size();
+        final List<List<ClientNode>> members = new ArrayList<>();
+        final int[] capacities = new int[count];
+        for (int i = 0; i < count; i++) {
+            members.add(new ArrayList<>(clusters.get(i)));
+            capacities[i] = capacity(servers.get(i), metrics);
+        }
+        while (moves.size() < maxMoves) {
+            int busiest = -1;
+            double busiestLoad = -1;
+            int target = -1;
+            double targetLoad = Double.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                final int size = members.get(i).size();
+                final double load = (double) relayed(i, size, count) / capacities[i];
+                final double loadAfter = (double) relayed(i, size + 1, count) / capacities[i];
+                if (load > busiestLoad && movableMember(members.get(i), servers.get(i)) != null) {
+                    busiest = i;
+                    busiestLoad = load;
+                }
+                if (loadAfter < targetLoad) {
+                    target = i;
+                    targetLoad = loadAfter;
+                }
+            }
+            // every move lowers the busiest load without raising another
+            // load to it, so the rounds settle
+            if (busiest < 0 || target < 0 || busiest == target || busiestLoad - targetLoad < MIN_LOAD_GAP) {
+                break;
+            }
+            final ClientNode member = movableMember(members.get(busiest), servers.get(busiest));
+            members.get(busiest).remove(member);
+            members.get(target).add(member);
+            moves.add(new ClientNetworkRecord(member, target));
+        }
+        return moves;
+    }
+
+    /**
+     * Function to pick the member of a cluster to move, the latest joined
+     * client that is not the server.
+     *
+     * @param cluster the clients of the cluster
+     * @param server the server of the cluster
+     * @return the member, null if only the server is left
+     */
+    private static ClientNode movableMember(final List<ClientNode> cluster, final ClientNode server) {
+        for (int i = cluster.size() - 1; i >= 0; i--) {
+            if (!cluster.get(i).equals(server)) {
+                return cluster.get(i);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: ChunkFanout.java
+ *  Owner: Shubham Yadav
+ *  Roll Number : 112201032
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Encode once fan out of one message to many destinations.
+ * The payload is split into chunks a single time and every chunk payload is
+ * shared by all the destinations. Only a header is built per destination
+ * and chunk, stamped with the address, port and type of that destination.
+ * The headers travel through the send scheduler as header only packets,
+ * their length field still describes the whole packet. The send thread
+ * resolves a header back to the header and the shared payload and hands
+ * both to the gathering writer, so the payload is never copied again.
+ */
+public final class ChunkFanout {
+
+    /**
+     * Bits of the message id in a shared chunk key.
+     */
+    private static final int ID_BITS = 32;
+
+    /**
+     * Mask to read an int as unsigned.
+     */
+    private static final long UNSIGNED_INT_MASK = 0xFFFFFFFFL;
+
+    /**
+     * Empty payload used to build headers.
+     */
+    private static final byte[] NO_PAYLOAD = new byte[0];
+
+    /**
+     * Shared chunk payloads keyed by message id and chunk number.
+     */
+    private final Map<Long, SharedChunk> shared = new ConcurrentHashMap<>();
+
+    /**
+     * Parser used to build the first header of each chunk.
+     */
+    private final PacketParser parser = PacketParser.getPacketParser();
+
+    /**
+     * View used by the send thread to read headers.
+     */
+    private final PacketView view = new PacketView();
+
+    /**
+     * Function to chunk a message once and build the headers of every
+     * destination. The header fields other than the destination, type,
+     * message id and chunk fields are taken from the packet info. The
+     * payload is copied once so the caller may reuse its array.
+     *
+     * @param info the packet info holding the payload and common fields
+     * @param dests the destinations
+     * @param typeOf the network type of each destination
+     * @param messageId the message id of the message
+     * @param payloadSize the payload size of a chunk
+     * @return the header only packets, grouped by chunk
+     * @throws UnknownHostException when a destination cannot be resolved
+     */
+    public List<byte[]> encode(final PacketInfo info, final ClientNode[] dests,
+            final ToIntFunction<ClientNode> typeOf, final int messageId, final int payloadSize)
+            throws UnknownHostException {
+        final byte[] data = info.getPayload().clone();
+        final int numChunks = (data.length + payloadSize - 1) / payloadSize;
+        final List<byte[]> headers = new ArrayList<>(numChunks * dests.length);
+        if (numChunks == 0 || dests.length == 0) {
+            return headers;
+        }
+        final int[] addresses = new int[dests.length];
+        final int[] types = new int[dests.length];
+        for (int i = 0; i < dests.length; i++) {
+            addresses[i] = ByteBuffer.wrap(InetAddress.getByName(dests[i].hostName()).getAddress()).getInt();
+            types[i] = typeOf.applyAsInt(dests[i]);
+        }
+        info.setIpAddress(InetAddress.getByName(dests[0].hostName()));
+        info.setPortNum(dests[0].port());
+        info.setType(types[0]);
+        info.setMessageId(messageId);
+        info.setChunkLength(numChunks);
+        info.setPayload(NO_PAYLOAD);
+        final int headerSize = PacketParser.getHeaderSize(info);
+
+        final PacketView stamp = new PacketView();
+        for (int chunkNum = 0; chunkNum < numChunks; chunkNum++) {
+            final int start = chunkNum * payloadSize;
+            final int size = Math.min(payloadSize, data.length - start);
+            final ByteBuffer payload = ByteBuffer.wrap(data, start, size).slice().asReadOnlyBuffer();
+            shared.put(key(messageId, chunkNum), new SharedChunk(payload, dests.length));
+            info.setChunkNum(chunkNum);
+            info.setLength(headerSize + size);
+            final byte[] first = parser.createPkt(info);
+            headers.add(first);
+            for (int i = 1; i < dests.length; i++) {
+                final byte[] header = first.clone();
+                stamp.wrap(header);
+                stamp.setIpAddress(addresses[i]);
+                stamp.setPortNum(dests[i].port());
+                stamp.setType(types[i]);
+                headers.add(header);
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * Function to resolve a packet taken from the scheduler. Must only be
+     * called from the send thread.
+     *
+     * @param packet the packet
+     * @return the header and the shared payload, or null if the packet is
+     *         not a fan out header
+     */
+    public ByteBuffer[] resolve(final byte[] packet) {
+        if (packet.length != view.wrap(packet).getHeaderLength()) {
+            return null;
+        }
+        final long chunkKey = key(view.getMessageId(), view.getChunkNum());
+        final SharedChunk chunk = shared.get(chunkKey);
+        if (chunk == null || view.getLength() != packet.length + chunk.payload.remaining()) {
+            return null;
+        }
+        if (chunk.remaining.decrementAndGet() <= 0) {
+            shared.remove(chunkKey);
+        }
+        return new ByteBuffer[] {ByteBuffer.wrap(packet), chunk.payload.duplicate()};
+    }
+
+    /**
+     * Function to release the shared payload of a packet taken from the
+     * scheduler that will not be sent. Must only be called from the send
+     * thread.
+     *
+     * @param packet the packet
+     */
+    public void release(final byte[] packet) {
+        resolve(packet);
+    }
+
+    /**
+     * Function to get the number of chunk payloads still shared.
+     *
+     * @return the shared chunk count
+     */
+    public int getSharedChunks() {
+        return shared.size();
+    }
+
+    /**
+     * Function to drop every shared payload, used when the queue is cleared.
+     */
+    public void clear() {
+        shared.clear();
+    }
+
+    /**
+     * Function to build the key of a shared chunk.
+     *
+     * @param messageId the message id
+     * @param chunkNum the chunk number
+     * @return the key
+     */
+    private static long key(final int messageId, final int chunkNum) {
+        return ((long) messageId << ID_BITS) | (chunkNum & UNSIGNED_INT_MASK);
+    }
+
+    /**
+     * A chunk payload and the number of headers still referring to it.
+     */
+    private static final class SharedChunk {
+
+        /**
+         * The read only payload.
+         */
+        private final ByteBuffer payload;
+
+        /**
+         * Headers not yet resolved.
+         */
+        private final AtomicInteger remaining;
+
+        /**
+         * Creates a shared chunk.
+         *
+         * @param chunkPayload the payload
+         * @param references the number of headers
+         */
+        SharedChunk(final ByteBuffer chunkPayload, final int references) {
+            this.payload = chunkPayload;
+            this.remaining = new AtomicInteger(references);
+        }
+    }
+}
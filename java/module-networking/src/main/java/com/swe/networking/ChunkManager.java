@@ -14,13 +14,11 @@ import com.swe.core.logging.SweLogger;
 import com.swe.core.logging.SweLoggerFactory;
 
 import com.swe.core.ClientNode;
+import com.swe.core.metrics.MetricsRegistry;
 
+import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.ByteBuffer;
 import java.util.Vector;
 
 /**
@@ -49,8 +47,42 @@ public class ChunkManager {
      */
     private final int headerSize = PacketParser.getHeaderSize();
 
+    /**
+     * Milliseconds between sweeps dropping expired partial messages.
+     */
+    private static final long EXPIRY_SWEEP_MILLIS = 250;
+
+    /**
+     * The wheel the expiry sweep is scheduled on.
+     */
+    private TimingWheel sweepWheel = null;
+
+    /**
+     * The metrics of the module.
+     */
+    private final NetworkMetrics metrics = NetworkMetrics.getNetworkMetrics();
+
     private ChunkManager(final int payloadSize) {
         defaultPayloadSize = payloadSize;
+        final MetricsRegistry registry = MetricsRegistry.getMetricsRegistry();
+        registry.gauge("networking.reassembly.messages", this::getPendingMessages);
+        registry.gauge("networking.reassembly.bytes", this::getPendingBytes);
+        registry.gauge("networking.reassembly.superseded", reassembler::getSupersededMessages);
+        scheduleSweep();
+    }
+
+    /**
+     * Function to run the expiry sweep on the shared timing wheel. Closing
+     * the networking module closes the wheel, so the sweep is scheduled
+     * again on the wheel started after a restart.
+     */
+    private synchronized void scheduleSweep() {
+        final TimingWheel wheel = TimingWheel.getTimingWheel();
+        if (wheel != sweepWheel) {
+            sweepWheel = wheel;
+            wheel.scheduleAtFixedRate(() -> reassembler.evictExpired(System.currentTimeMillis()),
+                    EXPIRY_SWEEP_MILLIS);
+        }
     }
 
     /**
@@ -64,6 +96,7 @@ public class ChunkManager {
             chunkManager = new ChunkManager(payloadSize);
             return chunkManager;
         }
+        chunkManager.scheduleSweep();
         return chunkManager;
     }
 
@@ -73,9 +106,14 @@ public class ChunkManager {
     private int messageId = 0;
 
     /**
-     * chunkListMap maps message id to list of chunks.
+     * Bounded reassembly of incoming chunks.
+     */
+    private final Reassembler reassembler = new Reassembler();
+
+    /**
+     * Reusable view to read chunk headers without parsing.
      */
-    private final Map<String, Vector<byte[]>> chunkListMap = new HashMap<>();
+    private final PacketView view = new PacketView();
 
     /**
      * Add chunk function.
@@ -84,59 +122,60 @@ public class ChunkManager {
      * @return the combined chunk if present
      * @throws UnknownHostException the issue from packet parser.
      */
-    public byte[] addChunk(final byte[] chunk) throws UnknownHostException {
-        final PacketInfo info = parser.parsePacket(chunk);
-        final String msgId = String.valueOf(info.getMessageId()) + ":" + info.getIpAddress().toString();
-        final int maxNumChunks = info.getChunkLength();
-        final int chunkId = info.getChunkNum();
-        LOG.info("Chunk id / total chunks " + chunkId + " / " + maxNumChunks);
-        if (chunkListMap.containsKey(msgId)) {
-            chunkListMap.get(msgId).add(chunk);
-        } else {
-            chunkListMap.put(msgId, new Vector<byte[]>());
-            chunkListMap.get(msgId).add(chunk);
-        }
-        if (chunkListMap.get(msgId).size() == maxNumChunks) {
-            final byte[] messageChunk = mergeChunks(chunkListMap.get(msgId));
-            chunkListMap.remove(msgId);
-            return messageChunk;
-        }
-        return null;
+    public synchronized byte[] addChunk(final byte[] chunk) throws UnknownHostException {
+        view.wrap(chunk);
+        LOG.info("Chunk id / total chunks " + view.getChunkNum() + " / " + view.getChunkLength());
+        metrics.recordPacketIn(view.getModule(), chunk.length);
+        return reassembler.addChunk(chunk);
     }
 
     /**
-     * Merge Chunks function.
+     * Function to add a chunk read through a view of storage the caller
+     * reuses, such as the receive buffer of a connection. The chunk is not
+     * copied on its own, its payload goes straight into the message.
+     * Messages are told apart by the connection and their message id.
      *
-     * @param chunks The list of incoming chunks.
-     * @return merged packet.
+     * @param chunk the view over the chunk
+     * @param sender the connection the chunk was read from
+     * @return the payload of the message once every chunk arrived, else null
      */
-    private byte[] mergeChunks(final Vector<byte[]> chunks) throws UnknownHostException {
-        int dataSize = 0;
-        for (byte[] chunk : chunks) {
-            dataSize += chunk.length - headerSize;
-        }
-        final byte[] completePayload = new byte[dataSize];
-        PacketInfo info = parser.parsePacket(chunks.get(0));
-        final int lastChunkNum = info.getChunkLength() - 1;
-        final Vector<byte[]> sortedChunks = new Vector<>(Collections.nCopies(chunks.size(), null));
-        for (byte[] chunk : chunks) {
-            info = parser.parsePacket(chunk);
-            final int i = info.getChunkNum();
-            sortedChunks.set(i, chunk);
+    public synchronized byte[] receiveChunk(final PacketView chunk, final ClientNode sender) {
+        LOG.info("Chunk id / total chunks " + chunk.getChunkNum() + " / " + chunk.getChunkLength());
+        metrics.recordPacketIn(chunk.getModule(), chunk.size());
+        final PacketView message = reassembler.addChunk(chunk, sender, System.currentTimeMillis());
+        if (message == null) {
+            return null;
         }
-        int i = 0;
-        for (byte[] chunk : sortedChunks) {
-            info = parser.parsePacket(chunk);
-            final int chunkSize = chunk.length - headerSize;
-            final byte[] chunkPayload = info.getPayload();
-            System.arraycopy(chunkPayload, 0, completePayload, i, chunkSize);
-            i += chunkSize;
-        }
-        info = parser.parsePacket(chunks.get(0));
-        info.setChunkLength(1);
-        info.setChunkNum(0);
-        info.setPayload(completePayload);
-        return parser.createPkt(info);
+        return PacketCompressor.getPacketCompressor().payloadOf(message);
+    }
+
+    /**
+     * Function to get the number of messages waiting for chunks.
+     *
+     * @return the partial message count
+     */
+    public long getPendingMessages() {
+        return reassembler.getPendingMessages();
+    }
+
+    /**
+     * Function to get the bytes held by messages waiting for chunks.
+     *
+     * @return the partial message bytes
+     */
+    public long getPendingBytes() {
+        return reassembler.getPendingBytes();
+    }
+
+    /**
+     * Function to set how long partial messages of a module wait for their
+     * missing chunks before they are dropped.
+     *
+     * @param module the module
+     * @param deadlineMillis the milliseconds a partial message may wait
+     */
+    public void setMessageDeadline(final int module, final long deadlineMillis) {
+        reassembler.setTtl(module, deadlineMillis);
     }
 
     /**
@@ -154,8 +193,7 @@ public class ChunkManager {
         final int numChunks = (data.length + payloadSize - 1) / payloadSize;
         LOG.info("chunk length " + numChunks);
         info.setChunkLength(numChunks);
-        info.setMessageId(messageId);
-        messageId++;
+        info.setMessageId(nextMessageId());
         // reset message id to zero once it exceed limit
         for (int i = 0; i < data.length; i += payloadSize) {
             final int pSize = Math.min(payloadSize, data.length - i);
@@ -165,7 +203,7 @@ public class ChunkManager {
             final int chunkNumber = i / payloadSize;
             info.setChunkNum(chunkNumber);
             info.setPayload(payloadChunk);
-            info.setLength(PacketParser.getHeaderSize() + pSize);
+            info.setLength(PacketParser.getHeaderSize(info) + pSize);
             final byte[] pkt = parser.createPkt(info);
             chunks.add(pkt);
         }
@@ -177,6 +215,15 @@ public class ChunkManager {
         return chunk(info, defaultPayloadSize);
     }
 
+    /**
+     * Function to take the next message id.
+     *
+     * @return the message id
+     */
+    public synchronized int nextMessageId() {
+        return messageId++;
+    }
+
     /**
      * get last message id.
      *
@@ -191,24 +238,12 @@ public class ChunkManager {
      *
      * @param client the client to remove
      */
-    public void cleanChunk(final ClientNode client) {
-        final String targetIp = client.hostName();
-
-        final List<String> keysToRemove = new ArrayList<>();
-
-        for (String key : chunkListMap.keySet()) {
-            final int idx = key.lastIndexOf(':');
-            if (idx != -1) {
-                final String ip = key.substring(idx + 1);
-
-                if (ip.equals(targetIp)) {
-                    keysToRemove.add(key);
-                }
-            }
-        }
-
-        for (String key : keysToRemove) {
-            chunkListMap.remove(key);
+    public synchronized void cleanChunk(final ClientNode client) {
+        try {
+            final byte[] address = InetAddress.getByName(client.hostName()).getAddress();
+            reassembler.removeAddress(ByteBuffer.wrap(address).getInt());
+        } catch (UnknownHostException ex) {
+            LOG.warn("Cannot clean chunks of " + client.hostName());
         }
     }
 
@@ -0,0 +1,79 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: ClusterPolicy.java
+ *  Owner: Vishal
+ *  Roll Number : 112201049
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Decides which cluster a joining client goes to and which members move
+ * between clusters to even out the relay load of the cluster servers. Only
+ * used on the main server, the other devices follow its ADD changes.
+ */
+public interface ClusterPolicy {
+
+    /**
+     * System property used to select the policy.
+     */
+    String POLICY_PROPERTY = "swecomm.network.cluster.policy";
+
+    /**
+     * System property with the upload bandwidth of this device in bytes per
+     * second, sent to the main server with the HELLO packet.
+     */
+    String UPLINK_PROPERTY = "swecomm.network.uplink";
+
+    /**
+     * Function to choose the cluster of a joining client.
+     *
+     * @param clusters the clients of every cluster, the first being the
+     *        cluster of the main server
+     * @param servers the server of every cluster
+     * @param client the joining client
+     * @param metrics the known link metrics
+     * @return the cluster index, or the number of clusters to open a new
+     *         cluster served by the client
+     */
+    int chooseCluster(List<List<ClientNode>> clusters, List<ClientNode> servers, ClientNode client,
+            Map<ClientNode, LinkMetrics> metrics);
+
+    /**
+     * Function to plan moves of members between clusters. Cluster servers
+     * never move so no device changes its role.
+     *
+     * @param clusters the clients of every cluster
+     * @param servers the server of every cluster
+     * @param metrics the known link metrics
+     * @param maxMoves the most moves to plan
+     * @return the members to move with their new cluster index, in order
+     */
+    List<ClientNetworkRecord> rebalance(List<List<ClientNode>> clusters, List<ClientNode> servers,
+            Map<ClientNode, LinkMetrics> metrics, int maxMoves);
+
+    /**
+     * Function to create the policy selected by the {@value #POLICY_PROPERTY}
+     * system property. Accepts {@code fixed} (default) for
+     * {@link FixedClusterPolicy} and {@code adaptive} for
+     * {@link AdaptiveClusterPolicy}.
+     *
+     * @return the policy
+     */
+    static ClusterPolicy fromSystemProperty() {
+        final String name = System.getProperty(POLICY_PROPERTY, "fixed").toLowerCase(Locale.ROOT);
+        return switch (name) {
+            case "adaptive" -> new AdaptiveClusterPolicy();
+            default -> new FixedClusterPolicy();
+        };
+    }
+}
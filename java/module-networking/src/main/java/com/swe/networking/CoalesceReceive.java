@@ -23,6 +23,11 @@ public class CoalesceReceive {
      */
     private static final String MODULENAME = "[COALESCERECEIVE]";
 
+    /**
+     * Size of the size and module prefix of each entry.
+     */
+    private static final int ENTRY_HEADER_SIZE = 4 + 1;
+
     /**
      * function to parse coalesce packet and pass to corresponding listener.
      *
@@ -32,13 +37,16 @@ public class CoalesceReceive {
         while (coalescedData.hasRemaining()) {
             // Get the size of the packet
             final int packetSize = coalescedData.getInt();
+            if (packetSize < ENTRY_HEADER_SIZE || packetSize - Integer.BYTES > coalescedData.remaining()) {
+                return;
+            }
 
             // Get the module type
             final byte moduleTypeByte = coalescedData.get();
             final int moduleTypeInt = moduleTypeByte;
 
             // Get the payload
-            final int payloadSize = packetSize - 4 - 1;
+            final int payloadSize = packetSize - ENTRY_HEADER_SIZE;
             final byte[] payload = new byte[payloadSize];
             coalescedData.get(payload);
 
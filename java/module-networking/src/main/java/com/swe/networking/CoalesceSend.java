@@ -16,12 +16,19 @@ import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
+import com.swe.core.ClientNode;
 import com.swe.core.logging.SweLogger;
 import com.swe.core.logging.SweLoggerFactory;
 
 /**
  * The class implementing coalescing before data is sent.
+ * Small single chunk module packets going to the same destination are
+ * batched and sent as one COALESCED packet: a network header followed by
+ * entries of size, module and data, the format read by
+ * {@link CoalesceReceive}. The header, the entry prefixes and the payloads
+ * stay separate buffers and are handed to a gathering write.
  */
 public class CoalesceSend {
 
@@ -34,6 +41,22 @@ public class CoalesceSend {
      * The module name.
      */
     private static final String MODULENAME = "[COALESCESEND]";
+
+    /**
+     * Size of the size and module prefix of each entry.
+     */
+    private static final int ENTRY_HEADER_SIZE = 4 + 1;
+
+    /**
+     * Number of module ids the header can carry.
+     */
+    private static final int MODULE_COUNT = 16;
+
+    /**
+     * Number of priority levels the header can carry.
+     */
+    private static final int PRIORITY_COUNT = 8;
+
     /**
      * Map which stores a list of packets corresponding to the same destination.
      */
@@ -49,11 +72,125 @@ public class CoalesceSend {
      */
     private final int maxTime = 10; // 10 ms
 
+    /**
+     * Modules and priorities whose packets may be held back for a batch.
+     */
+    private final boolean[][] enabled = new boolean[MODULE_COUNT][PRIORITY_COUNT];
+
+    /**
+     * Where finished batches are sent.
+     */
+    private final BiConsumer<ByteBuffer[], ClientNode> sink;
+
+    /**
+     * Wheel flushing batches on timeout, null when the caller polls
+     * {@link #checkTimeout()} itself.
+     */
+    private final TimingWheel timer;
+
+    /**
+     * View used to classify offered packets.
+     */
+    private final PacketView view = new PacketView();
+
+    /**
+     * The packet parser to build batch headers.
+     */
+    private final PacketParser parser = PacketParser.getPacketParser();
+
+    /**
+     * Number of batches sent.
+     */
+    private long batchesSent;
+
+    /**
+     * Number of packets taken into batches.
+     */
+    private long packetsCoalesced;
+
+    /**
+     * Creates a coalescer sending batches through the topology, whose
+     * timeouts are checked by the caller.
+     */
     public CoalesceSend() {
+        this(Topology.getTopology()::sendPacket, null);
+    }
+
+    /**
+     * Creates a coalescer.
+     *
+     * @param batchSink where finished batches are sent
+     * @param timingWheel wheel used to flush a batch once its time is up,
+     *        or null to rely on {@link #checkTimeout()}
+     */
+    public CoalesceSend(final BiConsumer<ByteBuffer[], ClientNode> batchSink,
+            final TimingWheel timingWheel) {
         this.coalescedPackets = new HashMap<>();
+        this.sink = batchSink;
+        this.timer = timingWheel;
+        for (int module = 0; module < MODULE_COUNT; module++) {
+            if (module == ModuleType.SCREENSHARING.ordinal()) {
+                continue;
+            }
+            for (int priority = 0; priority < PRIORITY_COUNT; priority++) {
+                enabled[module][priority] = true;
+            }
+        }
         LOG.info("CoalesceSend initialized...");
     }
 
+    /**
+     * Function to choose whether packets of a module and priority are
+     * coalesced. Every module except screen sharing is coalesced by default.
+     *
+     * @param module the module
+     * @param priority the priority
+     * @param flag true to coalesce
+     */
+    public synchronized void setEnabled(final int module, final int priority, final boolean flag) {
+        enabled[module][priority] = flag;
+    }
+
+    /**
+     * Function to check whether packets of a module and priority are
+     * coalesced.
+     *
+     * @param module the module
+     * @param priority the priority
+     * @return true if coalesced
+     */
+    public synchronized boolean isEnabled(final int module, final int priority) {
+        return enabled[module][priority];
+    }
+
+    /**
+     * Function to offer an encoded packet for coalescing. Packets of enabled
+     * modules and priorities that fit one chunk and are neither broadcast
+     * nor compressed are kept for a batch. Any other packet is refused,
+     * after flushing the batch of its destination so the order towards a
+     * peer is kept.
+     *
+     * @param packet the encoded packet
+     * @return true if the packet was taken, false if the caller sends it
+     */
+    public synchronized boolean offer(final byte[] packet) {
+        view.wrap(packet);
+        final String destination = view.getHostAddress() + ":" + view.getPortNum();
+        final int payloadLength = view.getPayloadLength();
+        if (view.getConnectionType() != NetworkConnectionType.MODULE.ordinal()
+                || view.getBroadcast() != 0 || view.getChunkLength() != 1 || view.getCompressed() != 0
+                || !enabled[view.getModule()][view.getPriority()]
+                || ENTRY_HEADER_SIZE + payloadLength >= maxSize) {
+            final CoalescedPacket pending = coalescedPackets.remove(destination);
+            if (pending != null) {
+                sendCoalescedPacket(destination, pending);
+            }
+            return false;
+        }
+        addEntry(destination, view.payload(), (byte) view.getModule(), view.getType(), view.getPriority());
+        return true;
+    }
+
     /**
      * Adds packets to coalescing lists based on their destination.
      *
@@ -62,34 +199,45 @@ public class CoalesceSend {
      * @param destPort The port of the destination.
      * @param module The module where the data is to be sent.
      */
-    public void handlePacket(final byte[] data, final InetAddress destIP, final int destPort, final byte module) {
+    public synchronized void handlePacket(final byte[] data, final InetAddress destIP, final int destPort,
+            final byte module) {
         final String destination = destIP.getHostAddress() + ":" + destPort;
-        LOG.info("Handling packet for destination: " + destination);
+        addEntry(destination, ByteBuffer.wrap(data), module, NetworkType.USE.ordinal(), 0);
+    }
 
+    /**
+     * Function to add one entry to the batch of a destination, sending the
+     * batch once it is full.
+     *
+     * @param destination the destination key
+     * @param data the entry data
+     * @param module the module of the entry
+     * @param type the network type of the packet
+     * @param priority the priority of the packet
+     */
+    private void addEntry(final String destination, final ByteBuffer data, final byte module,
+            final int type, final int priority) {
         CoalescedPacket coalescedPacket = coalescedPackets.get(destination);
         if (coalescedPacket == null) {
-            LOG.info("No existing coalesced packet for "
-                    + destination + ". Creating new one.");
             coalescedPacket = new CoalescedPacket();
             coalescedPackets.put(destination, coalescedPacket);
+            if (timer != null) {
+                timer.schedule(this::checkTimeout, maxTime);
+            }
         }
 
-        final int packetSize = 4 + 1 + data.length; // packetSize + module + data
-
-        final ByteBuffer buffer = ByteBuffer.allocate(packetSize);
-        buffer.putInt(packetSize); // 4 bytes
-        buffer.put(module); // 1 byte
-        buffer.put(data); // data.length bytes
-
-        final byte[] packet = new byte[buffer.position()];
-        buffer.flip();
-        buffer.get(packet);
+        final int packetSize = ENTRY_HEADER_SIZE + data.remaining(); // packetSize + module + data
+        final ByteBuffer prefix = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+        prefix.putInt(packetSize); // 4 bytes
+        prefix.put(module); // 1 byte
+        prefix.flip();
 
-        coalescedPacket.addToQueue(packet);
-        LOG.info("Added packet of size " + packet.length + " to queue for " + destination);
+        coalescedPacket.addPart(prefix);
+        coalescedPacket.addPart(data);
+        coalescedPacket.addRoute(type, priority);
+        packetsCoalesced++;
 
         if (coalescedPacket.getTotalSize() >= maxSize) {
-            LOG.info("Max size reached for " + destination + ". Sending coalesced packet.");
             sendCoalescedPacket(destination, coalescedPacket);
             coalescedPackets.remove(destination);
         }
@@ -100,22 +248,27 @@ public class CoalesceSend {
         final int port = Integer.parseInt(destination.split(":")[1]);
         try {
             final InetAddress destIP = InetAddress.getByName(ip);
-            LOG.info("Sending coalesced packet to " + destination);
 
-            final ByteBuffer buffer = ByteBuffer.allocate(coalescedPacket.getTotalSize());
-
-            while (coalescedPacket.getTotalSize() > 0) {
-                buffer.put(coalescedPacket.getQueueHead());
-            }
+            final PacketInfo info = new PacketInfo();
+            info.setLength(PacketParser.getHeaderSize() + coalescedPacket.getTotalSize());
+            info.setType(coalescedPacket.getType());
+            info.setPriority(coalescedPacket.getPriority());
+            info.setModule(ModuleType.NETWORKING.ordinal());
+            info.setConnectionType(NetworkConnectionType.COALESCED.ordinal());
+            info.setBroadcast(0);
+            info.setIpAddress(destIP);
+            info.setPortNum(port);
+            info.setChunkNum(0);
+            info.setChunkLength(1);
+            info.setPayload(new byte[0]);
 
-            final byte[] payload = new byte[buffer.position()];
-            buffer.flip();
-            buffer.get(payload);
+            final ByteBuffer[] entries = coalescedPacket.drain();
+            final ByteBuffer[] parts = new ByteBuffer[entries.length + 1];
+            parts[0] = ByteBuffer.wrap(parser.createPkt(info));
+            System.arraycopy(entries, 0, parts, 1, entries.length);
 
-            LOG.info("Coalesced packet of size "
-                    + payload.length + " sent to " + destination);
-            // Todo: Send the module: networking, destIP, port and payload to the chunk
-            // manager.
+            sink.accept(parts, new ClientNode(ip, port));
+            batchesSent++;
         } catch (UnknownHostException e) {
             LOG.error("Error sending coalesced packet: " + e.getMessage());
             throw new RuntimeException(e);
@@ -126,7 +279,7 @@ public class CoalesceSend {
      * Function to check timeout of each coalesced packet i.e., coalescedPacket.
      * It should be invoked by a scheduled executor or timer.
      */
-    public void checkTimeout() {
+    public synchronized void checkTimeout() {
         final long now = System.currentTimeMillis();
 
         final Iterator<Map.Entry<String, CoalescedPacket>> iterator = coalescedPackets.entrySet().iterator();
@@ -137,11 +290,37 @@ public class CoalesceSend {
             final CoalescedPacket coalescedPacket = entry.getValue();
 
             if (now - coalescedPacket.getStartTime() >= maxTime) {
-                LOG.info("Timeout reached for "
-                        + entry.getKey() + ". Sending coalesced packet.");
                 sendCoalescedPacket(entry.getKey(), coalescedPacket);
                 iterator.remove();
             }
         }
     }
+
+    /**
+     * Function to send every pending batch at once.
+     */
+    public synchronized void flushAll() {
+        for (Map.Entry<String, CoalescedPacket> entry : coalescedPackets.entrySet()) {
+            sendCoalescedPacket(entry.getKey(), entry.getValue());
+        }
+        coalescedPackets.clear();
+    }
+
+    /**
+     * Function to get the number of batches sent.
+     *
+     * @return the batch count
+     */
+    public synchronized long getBatchesSent() {
+        return batchesSent;
+    }
+
+    /**
+     * Function to get the number of packets taken into batches.
+     *
+     * @return the packet count
+     */
+    public synchronized long getPacketsCoalesced() {
+        return packetsCoalesced;
+    }
 }
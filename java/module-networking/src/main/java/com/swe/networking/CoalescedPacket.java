@@ -13,6 +13,7 @@ package com.swe.networking;
 import com.swe.core.logging.SweLogger;
 import com.swe.core.logging.SweLoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.util.LinkedList;
 import java.util.Queue;
 
@@ -31,7 +32,7 @@ class CoalescedPacket {
     /**
      * Queue storing packets to be coalesced.
      */
-    private final Queue<byte[]> queue = new LinkedList<byte[]>();
+    private final Queue<ByteBuffer> queue = new LinkedList<ByteBuffer>();
     /**
      * Current total size of the queue in bytes.
      */
@@ -40,6 +41,14 @@ class CoalescedPacket {
      * The time at which the coalescedPacket is created.
      */
     private long startTime;
+    /**
+     * Network type of the container, taken from the first packet.
+     */
+    private int type = NetworkType.USE.ordinal();
+    /**
+     * Priority of the container, the highest of the packets.
+     */
+    private int priority = Integer.MAX_VALUE;
 
     CoalescedPacket() {
         LOG.info("New coalesced packet created.");
@@ -50,16 +59,50 @@ class CoalescedPacket {
             LOG.info("Attempted to add null or empty packet to queue. Ignoring.");
             return;
         }
+        addPart(ByteBuffer.wrap(packet));
+    }
+
+    /**
+     * Adds a buffer to the queue without copying it.
+     *
+     * @param part the bytes between position and limit are queued
+     */
+    public void addPart(final ByteBuffer part) {
+        if (part == null || !part.hasRemaining()) {
+            LOG.info("Attempted to add null or empty packet to queue. Ignoring.");
+            return;
+        }
 
         if (totalSize == 0) {
             this.startTime = System.currentTimeMillis();
-            LOG.info("Setting start time for coalesced packet: " + startTime);
         }
 
-        queue.add(packet);
-        totalSize += packet.length;
-        LOG.info("Packet of size " + packet.length 
-            + " added to queue. New total size: " + totalSize);
+        queue.add(part);
+        totalSize += part.remaining();
+    }
+
+    /**
+     * Records the routing fields of a packet added to the container.
+     *
+     * @param packetType the network type of the packet
+     * @param packetPriority the priority of the packet
+     */
+    public void addRoute(final int packetType, final int packetPriority) {
+        if (priority == Integer.MAX_VALUE) {
+            type = packetType;
+        }
+        priority = Math.min(priority, packetPriority);
+    }
+
+    public int getType() {
+        return this.type;
+    }
+
+    public int getPriority() {
+        if (priority == Integer.MAX_VALUE) {
+            return 0;
+        }
+        return this.priority;
     }
 
     public long getStartTime() {
@@ -71,14 +114,30 @@ class CoalescedPacket {
     }
 
     public byte[] getQueueHead() {
-        final byte[] head = this.queue.poll();
-        if (head != null) {
-            this.totalSize -= head.length;
-            LOG.info("Packet of size " + head.length 
-                + " retrieved from queue. New total size: " + totalSize);
-        } else {
+        final ByteBuffer head = this.queue.poll();
+        if (head == null) {
             LOG.info("Attempted to retrieve packet from empty queue.");
+            return null;
+        }
+        this.totalSize -= head.remaining();
+        if (head.hasArray() && head.arrayOffset() == 0 && head.position() == 0
+                && head.remaining() == head.array().length) {
+            return head.array();
         }
-        return head;
+        final byte[] bytes = new byte[head.remaining()];
+        head.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Removes every queued buffer, in order.
+     *
+     * @return the queued buffers
+     */
+    public ByteBuffer[] drain() {
+        final ByteBuffer[] parts = queue.toArray(new ByteBuffer[0]);
+        queue.clear();
+        totalSize = 0;
+        return parts;
     }
 }
@@ -0,0 +1,361 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: DrrScheduler.java
+ *  Owner: Vishwaa
+ *  Roll Number : 112201030
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.swe.networking.PriorityQueue.PacketPriority;
+
+/**
+ * Event driven deficit round robin scheduler.
+ * Every priority level of {@link PacketPriority} is a class whose quantum is
+ * proportional to its budget share. Classes are visited in priority order on
+ * each round, and inside a class the destinations take turns so one busy
+ * peer cannot hold back the others. Producers only touch lock free queues,
+ * the single consumer owns all the scheduling state and parks when there is
+ * nothing to send.
+ */
+public final class DrrScheduler implements SendScheduler {
+
+    /**
+     * Bytes of quantum given per share point on each round.
+     */
+    private static final int BYTES_PER_SHARE = 1024;
+
+    /**
+     * Bits used by the port in a destination key.
+     */
+    private static final int PORT_BITS = 16;
+
+    /**
+     * Mask to read an int as unsigned.
+     */
+    private static final long UNSIGNED_INT_MASK = 0xFFFFFFFFL;
+
+    /**
+     * The scheduling classes indexed by priority level.
+     */
+    private final TrafficClass[] classes;
+
+    /**
+     * Packets queued and not yet returned.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * Thread parked in {@link #takePacket()}, if any.
+     */
+    private volatile Thread waiter;
+
+    /**
+     * Per producer view used to classify packets.
+     */
+    private final ThreadLocal<PacketView> producerView = ThreadLocal.withInitial(PacketView::new);
+
+    /**
+     * Consumer view used to key packets by destination.
+     */
+    private final PacketView consumerView = new PacketView();
+
+    /**
+     * Packets moved into flows and not yet returned, owned by the consumer.
+     */
+    private int backlog;
+
+    /**
+     * Index of the class visited by the consumer.
+     */
+    private int cursor;
+
+    /**
+     * Total packets returned by the scheduler.
+     */
+    private long packetsSent;
+
+    /**
+     * Creates a scheduler with one class per priority level.
+     */
+    public DrrScheduler() {
+        final PacketPriority[] priorities = PacketPriority.values();
+        classes = new TrafficClass[priorities.length];
+        for (PacketPriority priority : priorities) {
+            final int share = Math.max(1, priority.getShare());
+            classes[priority.ordinal()] = new TrafficClass(share * BYTES_PER_SHARE);
+        }
+    }
+
+    /**
+     * Adds a packet to the queue of its priority and wakes the sender.
+     *
+     * @param data the encoded packet
+     */
+    @Override
+    public void addPacket(final byte[] data) {
+        final int priority = producerView.get().wrap(data).getPriority();
+        classes[priority].inbox.add(data);
+        pending.incrementAndGet();
+        final Thread parked = waiter;
+        if (parked != null) {
+            LockSupport.unpark(parked);
+        }
+    }
+
+    /**
+     * Returns the next packet in deficit round robin order. Must only be
+     * called from the single sender thread.
+     *
+     * @return the packet or null if none is queued
+     */
+    @Override
+    public byte[] nextPacket() {
+        if (pending.get() <= 0) {
+            return null;
+        }
+        for (TrafficClass trafficClass : classes) {
+            drainInbox(trafficClass);
+        }
+        if (backlog == 0) {
+            return null;
+        }
+        while (true) {
+            final TrafficClass current = classes[cursor];
+            if (current.active.isEmpty()) {
+                current.deficit = 0;
+                current.visited = false;
+                advance();
+                continue;
+            }
+            if (!current.visited) {
+                current.deficit += current.quantum;
+                current.visited = true;
+            }
+            final Flow flow = current.active.peek();
+            final byte[] head = flow.packets.peek();
+            final int cost = wireLength(head);
+            if (cost > current.deficit) {
+                current.visited = false;
+                advance();
+                continue;
+            }
+            current.deficit -= cost;
+            flow.packets.poll();
+            current.active.poll();
+            if (flow.packets.isEmpty()) {
+                current.flows.remove(flow.key);
+            } else {
+                current.active.add(flow);
+            }
+            if (current.active.isEmpty()) {
+                current.deficit = 0;
+                current.visited = false;
+                advance();
+            }
+            pending.decrementAndGet();
+            backlog--;
+            packetsSent++;
+            return head;
+        }
+    }
+
+    /**
+     * Returns the next packet, parking the caller until a producer adds one.
+     *
+     * @return the packet
+     * @throws InterruptedException when the waiting thread is interrupted
+     */
+    @Override
+    public byte[] takePacket() throws InterruptedException {
+        while (true) {
+            final byte[] packet = nextPacket();
+            if (packet != null) {
+                return packet;
+            }
+            waiter = Thread.currentThread();
+            if (pending.get() <= 0) {
+                LockSupport.park(this);
+            }
+            waiter = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Function to check if there is anything queued.
+     *
+     * @return true if no packets are queued
+     */
+    @Override
+    public boolean isEmpty() {
+        return pending.get() == 0;
+    }
+
+    /**
+     * Function to drop every queued packet. Must not race with the sender.
+     */
+    @Override
+    public void clear() {
+        for (TrafficClass trafficClass : classes) {
+            trafficClass.inbox.clear();
+            trafficClass.flows.clear();
+            trafficClass.active.clear();
+            trafficClass.deficit = 0;
+            trafficClass.visited = false;
+        }
+        cursor = 0;
+        backlog = 0;
+        pending.set(0);
+    }
+
+    /**
+     * Function to get the number of packets queued.
+     *
+     * @return the queued packet count
+     */
+    @Override
+    public int size() {
+        return pending.get();
+    }
+
+    /**
+     * Function to get the number of packets returned so far.
+     *
+     * @return the packet count
+     */
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    /**
+     * Function to move newly added packets of a class into their flows.
+     *
+     * @param trafficClass the class to drain
+     */
+    private void drainInbox(final TrafficClass trafficClass) {
+        byte[] packet = trafficClass.inbox.poll();
+        while (packet != null) {
+            consumerView.wrap(packet);
+            final long key = ((consumerView.getIpAddress() & UNSIGNED_INT_MASK) << PORT_BITS)
+                    | consumerView.getPortNum();
+            Flow flow = trafficClass.flows.get(key);
+            if (flow == null) {
+                flow = new Flow(key);
+                trafficClass.flows.put(key, flow);
+                trafficClass.active.add(flow);
+            }
+            flow.packets.add(packet);
+            backlog++;
+            packet = trafficClass.inbox.poll();
+        }
+    }
+
+    /**
+     * Function to get the bytes a packet puts on the wire. A fan out header
+     * is queued without its shared payload, its length field still counts
+     * the payload.
+     *
+     * @param packet the queued packet
+     * @return the wire length
+     */
+    private int wireLength(final byte[] packet) {
+        if (packet.length > consumerView.wrap(packet).getHeaderLength()) {
+            return packet.length;
+        }
+        return Math.max(packet.length, consumerView.getLength());
+    }
+
+    /**
+     * Function to move the cursor to the next class.
+     */
+    private void advance() {
+        cursor++;
+        if (cursor == classes.length) {
+            cursor = 0;
+        }
+    }
+
+    /**
+     * One priority level with its flows and deficit counter.
+     */
+    private static final class TrafficClass {
+
+        /**
+         * Lock free queue the producers add to.
+         */
+        private final Queue<byte[]> inbox = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Flows of this class keyed by destination.
+         */
+        private final Map<Long, Flow> flows = new HashMap<>();
+
+        /**
+         * Flows with packets, in round robin order.
+         */
+        private final ArrayDeque<Flow> active = new ArrayDeque<>();
+
+        /**
+         * Bytes added to the deficit on each round.
+         */
+        private final int quantum;
+
+        /**
+         * Bytes the class may still send on this round.
+         */
+        private long deficit;
+
+        /**
+         * Whether the quantum was already added on this visit.
+         */
+        private boolean visited;
+
+        /**
+         * Creates a class with the given quantum.
+         *
+         * @param quantumBytes the quantum in bytes
+         */
+        TrafficClass(final int quantumBytes) {
+            this.quantum = quantumBytes;
+        }
+    }
+
+    /**
+     * Packets of one class going to one destination.
+     */
+    private static final class Flow {
+
+        /**
+         * The destination key.
+         */
+        private final long key;
+
+        /**
+         * The queued packets in arrival order.
+         */
+        private final ArrayDeque<byte[]> packets = new ArrayDeque<>();
+
+        /**
+         * Creates a flow for a destination.
+         *
+         * @param flowKey the destination key
+         */
+        Flow(final long flowKey) {
+            this.key = flowKey;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: FixedClusterPolicy.java
+ *  Owner: Vishal
+ *  Roll Number : 112201049
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Clusters of a fixed size filled in join order, ignoring link metrics.
+ */
+public final class FixedClusterPolicy implements ClusterPolicy {
+
+    /**
+     * The default maximum size of a cluster.
+     */
+    public static final int DEFAULT_CLUSTER_SIZE = 10;
+
+    /**
+     * The maximum size of a cluster.
+     */
+    private final int singleClusterSize;
+
+    /**
+     * Creates a policy with clusters of the default size.
+     */
+    public FixedClusterPolicy() {
+        this(DEFAULT_CLUSTER_SIZE);
+    }
+
+    /**
+     * Creates a policy with clusters of the given size.
+     *
+     * @param clusterSize the maximum size of a cluster
+     */
+    public FixedClusterPolicy(final int clusterSize) {
+        this.singleClusterSize = clusterSize;
+    }
+
+    @Override
+    public int chooseCluster(final List<List<ClientNode>> clusters, final List<ClientNode> servers,
+            final ClientNode client, final Map<ClientNode, LinkMetrics> metrics) {
+        if (!clusters.isEmpty() && clusters.get(clusters.size() - 1).size() < singleClusterSize) {
+            return clusters.size() - 1;
+        }
+        return clusters.size();
+    }
+
+    @Override
+    public List<ClientNetworkRecord> rebalance(final List<List<ClientNode>> clusters,
+            final List<ClientNode> servers, final Map<ClientNode, LinkMetrics> metrics, final int maxMoves) {
+        return new ArrayList<>();
+    }
+}
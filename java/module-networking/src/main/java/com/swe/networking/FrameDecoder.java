@@ -0,0 +1,276 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: FrameDecoder.java
+ *  Owner: Vishal
+ *  Roll Number : 112201049
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+
+import com.swe.core.ClientNode;
+import com.swe.core.logging.SweLogger;
+import com.swe.core.logging.SweLoggerFactory;
+
+/**
+ * Per connection decoder for the 16 bit length framed packet stream.
+ * The socket is read directly into a reusable direct ring buffer and every
+ * complete packet is handed out as a view into that ring. Bytes are only
+ * copied when a packet wraps around the end of the ring.
+ */
+public final class FrameDecoder {
+
+    /**
+     * The logger for the module.
+     */
+    private static final SweLogger LOG = SweLoggerFactory.getLogger("NETWORKING");
+
+    /**
+     * Largest frame that the 16 bit length field can describe.
+     */
+    private static final int MAX_FRAME_SIZE = 0xFFFF;
+
+    /**
+     * Number of bytes used by the length field.
+     */
+    private static final int LENGTH_BYTES = 2;
+
+    /**
+     * Mask to read a byte as unsigned.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * Shift for the upper byte of the little endian length.
+     */
+    private static final int BYTE_SHIFT = 8;
+
+    /**
+     * Ring capacity. Power of two and larger than two frames so a full frame
+     * always fits behind a partially received one.
+     */
+    private static final int RING_CAPACITY = 1 << 17;
+
+    /**
+     * Mask to map the running indices into the ring.
+     */
+    private static final int RING_MASK = RING_CAPACITY - 1;
+
+    /**
+     * The peer this decoder reads from.
+     */
+    private final ClientNode peer;
+
+    /**
+     * The ring holding bytes received but not yet emitted.
+     */
+    private final ByteBuffer ring = ByteBuffer.allocateDirect(RING_CAPACITY);
+
+    /**
+     * Read only view of the ring handed to the listener.
+     */
+    private final ByteBuffer view = ring.asReadOnlyBuffer();
+
+    /**
+     * View of the ring used to peek the length field, its limit never moves.
+     */
+    private final ByteBuffer peekView = ring.asReadOnlyBuffer();
+
+    /**
+     * Scratch buffer used only to linearise frames that wrap the ring.
+     */
+    private final ByteBuffer wrapScratch = ByteBuffer.allocateDirect(MAX_FRAME_SIZE);
+
+    /**
+     * Read only view of the scratch buffer handed to the listener.
+     */
+    private final ByteBuffer wrapView = wrapScratch.asReadOnlyBuffer();
+
+    /**
+     * Running index of the next byte to be emitted.
+     */
+    private long readIndex = 0;
+
+    /**
+     * Running index of the next byte to be written from the socket.
+     */
+    private long writeIndex = 0;
+
+    /**
+     * Total bytes read from the channel.
+     */
+    private long bytesRead = 0;
+
+    /**
+     * Total bytes copied by the decoder to emit wrapped frames.
+     */
+    private long bytesCopied = 0;
+
+    /**
+     * Total frames emitted.
+     */
+    private long framesDecoded = 0;
+
+    /**
+     * Creates a decoder for the given peer.
+     *
+     * @param peerNode the peer the decoder reads from
+     */
+    public FrameDecoder(final ClientNode peerNode) {
+        this.peer = peerNode;
+    }
+
+    /**
+     * Function to read from the channel straight into the ring. A blocking
+     * channel is read once, so the frames that arrived can be drained
+     * before the next read waits for more.
+     *
+     * @param channel the channel to read from
+     * @return the number of bytes read, -1 on end of stream
+     * @throws IOException when the read fails
+     */
+    public int readFrom(final ReadableByteChannel channel) throws IOException {
+        int total = 0;
+        while (buffered() < RING_CAPACITY) {
+            final int start = (int) (writeIndex & RING_MASK);
+            final int free = RING_CAPACITY - buffered();
+            final int contiguous = Math.min(free, RING_CAPACITY - start);
+            ring.limit(start + contiguous).position(start);
+            final int read = channel.read(ring);
+            if (read < 0) {
+                if (total == 0) {
+                    return -1;
+                }
+                break;
+            }
+            writeIndex += read;
+            total += read;
+            if (read < contiguous || isBlocking(channel)) {
+                break;
+            }
+        }
+        bytesRead += total;
+        return total;
+    }
+
+    /**
+     * Function to check whether reads of a channel wait for data.
+     *
+     * @param channel the channel
+     * @return true for a blocking selectable channel
+     */
+    private static boolean isBlocking(final ReadableByteChannel channel) {
+        return channel instanceof SelectableChannel selectable && selectable.isBlocking();
+    }
+
+    /**
+     * Function to emit every complete frame currently buffered.
+     *
+     * @param listener the listener to hand each frame to
+     * @return the number of frames emitted
+     */
+    public int drain(final FrameListener listener) {
+        int frames = 0;
+        while (buffered() >= LENGTH_BYTES) {
+            final int len = byteAt(readIndex) | (byteAt(readIndex + 1) << BYTE_SHIFT);
+            if (len <= LENGTH_BYTES) {
+                LOG.warn("Invalid packet length " + len + " from " + peer + ", dropping buffered data");
+                readIndex = writeIndex;
+                break;
+            }
+            if (buffered() < len) {
+                break;
+            }
+            final int start = (int) (readIndex & RING_MASK);
+            final ByteBuffer frame;
+            if (start + len <= RING_CAPACITY) {
+                view.limit(start + len).position(start);
+                frame = view;
+            } else {
+                final int head = RING_CAPACITY - start;
+                wrapScratch.clear();
+                ring.limit(RING_CAPACITY).position(start);
+                wrapScratch.put(ring);
+                ring.limit(len - head).position(0);
+                wrapScratch.put(ring);
+                wrapView.limit(len).position(0);
+                frame = wrapView;
+                bytesCopied += len;
+            }
+            readIndex += len;
+            framesDecoded++;
+            frames++;
+            listener.onFrame(peer, frame);
+        }
+        return frames;
+    }
+
+    /**
+     * Function to drop all buffered bytes.
+     */
+    public void reset() {
+        readIndex = writeIndex;
+    }
+
+    /**
+     * Function to get the number of bytes buffered but not yet emitted.
+     *
+     * @return the buffered byte count
+     */
+    public int buffered() {
+        return (int) (writeIndex - readIndex);
+    }
+
+    /**
+     * Function to get the peer of this decoder.
+     *
+     * @return the peer
+     */
+    public ClientNode getPeer() {
+        return peer;
+    }
+
+    /**
+     * Function to get the total bytes read from the channel.
+     *
+     * @return the bytes read
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Function to get the total bytes the decoder copied to emit frames.
+     *
+     * @return the bytes copied
+     */
+    public long getBytesCopied() {
+        return bytesCopied;
+    }
+
+    /**
+     * Function to get the total frames emitted.
+     *
+     * @return the frame count
+     */
+    public long getFramesDecoded() {
+        return framesDecoded;
+    }
+
+    /**
+     * Function to read one unsigned byte at a running index.
+     *
+     * @param index the running index
+     * @return the byte value
+     */
+    private int byteAt(final long index) {
+        return peekView.get((int) (index & RING_MASK)) & BYTE_MASK;
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: FrameListener.java
+ *  Owner: Vishal
+ *  Roll Number : 112201049
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Callback invoked for every complete length-framed packet read from a
+ * connection.
+ */
+@FunctionalInterface
+public interface FrameListener {
+
+    /**
+     * Function called with a view of one complete packet. The view is only
+     * valid for the duration of the call, it is reused for the next packet.
+     * Copy the bytes if they must be retained.
+     *
+     * @param sender the peer the packet was read from
+     * @param frame the packet bytes between position and limit
+     */
+    void onFrame(ClientNode sender, ByteBuffer frame);
+}
@@ -0,0 +1,397 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: FrontendBatcher.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.swe.core.RPCinterface.AbstractRPC;
+import com.swe.core.logging.SweLogger;
+import com.swe.core.logging.SweLoggerFactory;
+import com.swe.core.metrics.MetricsRegistry;
+
+/**
+ * Hands received messages to the frontend over the RPC. Without batching
+ * every message is one {@value #CALL_METHOD} call carrying the module id
+ * and the data. With batching a message goes out at once while the
+ * frontend has no call of its module outstanding, and waits otherwise.
+ * Waiting messages are sent together when that call returns, when
+ * {@link #getMaxBytes()} bytes are waiting or when
+ * {@link #getDelayMillis()} passed since the first of them, so a burst
+ * costs a few calls and a lone message no delay. A batch is one
+ * {@value #BATCH_METHOD} call: the module id, the message count and every
+ * message prefixed by its length, a batch of one message is a plain call.
+ * The frontend splits a batch back into plain call payloads with
+ * {@link #unbatch}.
+ */
+public final class FrontendBatcher {
+
+    /**
+     * Frontend method receiving one message.
+     */
+    public static final String CALL_METHOD = "networkFrontCallSubscriber";
+
+    /**
+     * Frontend method receiving a batch of messages of one module.
+     */
+    public static final String BATCH_METHOD = "networkFrontCallSubscriberBatch";
+
+    /**
+     * System property turning batching on.
+     */
+    static final String BATCH_PROPERTY = "swecomm.network.rpc.batch";
+
+    /**
+     * System property holding the longest a message waits in milliseconds.
+     */
+    static final String DELAY_PROPERTY = "swecomm.network.rpc.batch.delay";
+
+    /**
+     * System property holding the bytes of a batch that send it at once.
+     */
+    static final String BYTES_PROPERTY = "swecomm.network.rpc.batch.bytes";
+
+    /**
+     * Default longest wait of a message, one tick of the timing wheel.
+     */
+    static final long DEFAULT_DELAY_MILLIS = TimingWheel.DEFAULT_TICK_MILLIS;
+
+    /**
+     * Default bytes of a batch that send it at once.
+     */
+    static final int DEFAULT_MAX_BYTES = 64 * 1024;
+
+    /**
+     * Number of module ids the header can carry.
+     */
+    private static final int MODULE_COUNT = 16;
+
+    /**
+     * Size of the module id and message count of a batch.
+     */
+    private static final int BATCH_HEADER_SIZE = 2 * Integer.BYTES;
+
+    /**
+     * The logger for the module.
+     */
+    private static final SweLogger LOG = SweLoggerFactory.getLogger("NETWORKING");
+
+    /**
+     * Whether messages are batched.
+     */
+    private final boolean enabled;
+
+    /**
+     * Longest a message waits in milliseconds.
+     */
+    private final long delayMillis;
+
+    /**
+     * Bytes of a batch that send it at once.
+     */
+    private final int maxBytes;
+
+    /**
+     * Source of the RPC, read on every call as it is set after start up.
+     */
+    private final Supplier<AbstractRPC> rpcSource;
+
+    /**
+     * Wheel sending a batch once its first message waited long enough.
+     */
+    private final TimingWheel timer;
+
+    /**
+     * The waiting messages of each module.
+     */
+    private final Batch[] batches = new Batch[MODULE_COUNT];
+
+    /**
+     * Calls made to the frontend.
+     */
+    private final AtomicLong calls = new AtomicLong();
+
+    /**
+     * Messages handed to the frontend.
+     */
+    private final AtomicLong messages = new AtomicLong();
+
+    /**
+     * Messages of one module waiting to be sent.
+     */
+    private static final class Batch {
+        /**
+         * The messages in arrival order.
+         */
+        private final List<byte[]> pending = new ArrayList<>();
+
+        /**
+         * Bytes the messages take in a batch.
+         */
+        private int bytes;
+
+        /**
+         * The timeout sending the batch, null while it is empty.
+         */
+        private TimingWheel.Timeout timeout;
+
+        /**
+         * Whether the last call of the module has not returned yet.
+         */
+        private boolean inFlight;
+    }
+
+    /**
+     * Creates a batcher.
+     *
+     * @param batch true to batch messages
+     * @param delay the longest a message waits in milliseconds
+     * @param bytes the bytes of a batch that send it at once
+     * @param rpc the source of the RPC to call
+     * @param timingWheel the wheel sending batches on time
+     */
+    public FrontendBatcher(final boolean batch, final long delay, final int bytes,
+            final Supplier<AbstractRPC> rpc, final TimingWheel timingWheel) {
+        this.enabled = batch;
+        this.delayMillis = Math.max(0, delay);
+        this.maxBytes = Math.max(1, bytes);
+        this.rpcSource = rpc;
+        this.timer = timingWheel;
+        for (int module = 0; module < MODULE_COUNT; module++) {
+            batches[module] = new Batch();
+        }
+    }
+
+    /**
+     * Function to create the batcher configured by the
+     * {@value #BATCH_PROPERTY}, {@value #DELAY_PROPERTY} and
+     * {@value #BYTES_PROPERTY} system properties, reporting its calls and
+     * messages in the shared registry.
+     *
+     * @param rpc the source of the RPC to call
+     * @return the batcher
+     */
+    static FrontendBatcher fromSystemProperty(final Supplier<AbstractRPC> rpc) {
+        final FrontendBatcher batcher = new FrontendBatcher(Boolean.getBoolean(BATCH_PROPERTY),
+                Long.getLong(DELAY_PROPERTY, DEFAULT_DELAY_MILLIS),
+                Integer.getInteger(BYTES_PROPERTY, DEFAULT_MAX_BYTES), rpc, TimingWheel.getTimingWheel());
+        final MetricsRegistry registry = MetricsRegistry.getMetricsRegistry();
+        registry.gauge("networking.rpc.front.calls", batcher::getCalls);
+        registry.gauge("networking.rpc.front.messages", batcher::getMessages);
+        return batcher;
+    }
+
+    /**
+     * Function to check whether messages are batched.
+     *
+     * @return true if batching is on
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Function to get the longest a message waits.
+     *
+     * @return the delay in milliseconds
+     */
+    public long getDelayMillis() {
+        return delayMillis;
+    }
+
+    /**
+     * Function to get the bytes of a batch that send it at once.
+     *
+     * @return the byte budget
+     */
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Function to get the calls made to the frontend.
+     *
+     * @return the call count
+     */
+    public long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * Function to get the messages handed to the frontend.
+     *
+     * @return the message count
+     */
+    public long getMessages() {
+        return messages.get();
+    }
+
+    /**
+     * Function to hand a received message to the frontend, at once when
+     * batching is off and with the next batch of its module otherwise.
+     * The data is kept until sent and must not be changed.
+     *
+     * @param module the module id
+     * @param data the message
+     */
+    public void submit(final int module, final byte[] data) {
+        if (!enabled) {
+            call(CALL_METHOD, single(module, data));
+            messages.incrementAndGet();
+            return;
+        }
+        final Batch batch = batches[module & (MODULE_COUNT - 1)];
+        synchronized (batch) {
+            batch.pending.add(data);
+            batch.bytes += Integer.BYTES + data.length;
+            if (!batch.inFlight || batch.bytes >= maxBytes) {
+                send(module, batch);
+            } else if (batch.timeout == null) {
+                batch.timeout = timer.scheduleBlocking(() -> flush(module), delayMillis);
+            }
+        }
+    }
+
+    /**
+     * Function to send the waiting messages of a module.
+     *
+     * @param module the module id
+     */
+    public void flush(final int module) {
+        final Batch batch = batches[module & (MODULE_COUNT - 1)];
+        synchronized (batch) {
+            send(module, batch);
+        }
+    }
+
+    /**
+     * Function to send the waiting messages of every module.
+     */
+    public void flushAll() {
+        for (int module = 0; module < MODULE_COUNT; module++) {
+            flush(module);
+        }
+    }
+
+    /**
+     * Function to send the messages of a batch, called holding its lock so
+     * the batches of a module leave in order.
+     *
+     * @param module the module id
+     * @param batch the batch
+     */
+    private void send(final int module, final Batch batch) {
+        if (batch.timeout != null) {
+            batch.timeout.cancel();
+            batch.timeout = null;
+        }
+        final int count = batch.pending.size();
+        if (count == 0) {
+            return;
+        }
+        final String method;
+        final byte[] args;
+        if (count == 1) {
+            method = CALL_METHOD;
+            args = single(module, batch.pending.get(0));
+        } else {
+            final ByteBuffer buffer = ByteBuffer.allocate(BATCH_HEADER_SIZE + batch.bytes);
+            buffer.putInt(module);
+            buffer.putInt(count);
+            for (byte[] data : batch.pending) {
+                buffer.putInt(data.length);
+                buffer.put(data);
+            }
+            method = BATCH_METHOD;
+            args = buffer.array();
+        }
+        messages.addAndGet(count);
+        batch.pending.clear();
+        batch.bytes = 0;
+        final CompletableFuture<byte[]> reply = call(method, args);
+        if (reply != null && !reply.isDone()) {
+            batch.inFlight = true;
+            reply.whenComplete((result, error) -> returned(module, batch));
+        }
+    }
+
+    /**
+     * Function called when a call of a module returned, sending what
+     * waited meanwhile.
+     *
+     * @param module the module id
+     * @param batch the batch of the module
+     */
+    private void returned(final int module, final Batch batch) {
+        synchronized (batch) {
+            batch.inFlight = false;
+            send(module, batch);
+        }
+    }
+
+    /**
+     * Function to make one call to the frontend.
+     *
+     * @param method the frontend method
+     * @param args the arguments
+     * @return the reply of the frontend, null if there is no RPC
+     */
+    private CompletableFuture<byte[]> call(final String method, final byte[] args) {
+        final AbstractRPC rpc = rpcSource.get();
+        if (rpc == null) {
+            LOG.warn("No RPC to hand module data to the frontend...");
+            return null;
+        }
+        calls.incrementAndGet();
+        return rpc.call(method, args);
+    }
+
+    /**
+     * Function to build the arguments of a plain call.
+     *
+     * @param module the module id
+     * @param data the message
+     * @return the module id followed by the message
+     */
+    private static byte[] single(final int module, final byte[] data) {
+        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + data.length);
+        buffer.putInt(module);
+        buffer.put(data);
+        return buffer.array();
+    }
+
+    /**
+     * Function for the frontend to split the arguments of a
+     * {@value #BATCH_METHOD} call into the arguments of the
+     * {@value #CALL_METHOD} calls it replaces, in order.
+     *
+     * @param batch the arguments of the batch call
+     * @return the arguments of each plain call
+     */
+    public static List<byte[]> unbatch(final byte[] batch) {
+        final ByteBuffer buffer = ByteBuffer.wrap(batch);
+        final int module = buffer.getInt();
+        final int count = buffer.getInt();
+        final List<byte[]> plainCalls = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int length = buffer.getInt();
+            final byte[] args = new byte[Integer.BYTES + length];
+            ByteBuffer.wrap(args).putInt(module);
+            buffer.get(args, Integer.BYTES, length);
+            plainCalls.add(args);
+        }
+        return plainCalls;
+    }
+}
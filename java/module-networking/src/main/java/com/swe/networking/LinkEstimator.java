@@ -0,0 +1,485 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: LinkEstimator.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Estimates the round trip time, jitter, loss and throughput of the link to
+ * every peer from timestamped ALIVE packets. A probe carries a sequence
+ * number, the sender's clock and the bytes sent so far to the receiver,
+ * which answers with an echo of the same fields, so round trip times only
+ * use the prober's clock. Probes never echoed within the loss timeout count
+ * as lost. An ALIVE with an empty payload is a plain keep alive.
+ */
+public final class LinkEstimator {
+
+    /**
+     * System property with the milliseconds between two ALIVE probes, 0 or
+     * unset keeps the periodic ALIVE packets off.
+     */
+    public static final String PROBE_INTERVAL_PROPERTY = "swecomm.network.probe.interval";
+
+    /**
+     * Size of a probe or echo payload: kind, sequence, timestamp, bytes
+     * sent and the sender's round trip time in microseconds.
+     */
+    public static final int PAYLOAD_SIZE = 1 + Integer.BYTES + Long.BYTES + Long.BYTES + Integer.BYTES;
+
+    /**
+     * Kind of a probe payload.
+     */
+    private static final byte PROBE = 0;
+
+    /**
+     * Kind of an echo payload.
+     */
+    private static final byte ECHO = 1;
+
+    /**
+     * Gain of the smoothed round trip time, as in RFC 6298.
+     */
+    private static final double RTT_GAIN = 1.0 / 8;
+
+    /**
+     * Gain of the round trip time deviation, as in RFC 6298.
+     */
+    private static final double JITTER_GAIN = 1.0 / 4;
+
+    /**
+     * Number of recent probes the loss rate is computed over.
+     */
+    private static final int LOSS_WINDOW = 32;
+
+    /**
+     * Smallest time a probe is waited for before it counts as lost.
+     */
+    private static final long MIN_LOSS_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Multiple of the deviation added to the round trip time to get the
+     * loss timeout.
+     */
+    private static final int LOSS_TIMEOUT_DEVIATIONS = 4;
+
+    /**
+     * Time span throughput is averaged over.
+     */
+    private static final long THROUGHPUT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * Microseconds in a millisecond.
+     */
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    /**
+     * Nanoseconds in a millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    /**
+     * Nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    /**
+     * The shared estimator.
+     */
+    private static LinkEstimator linkEstimator = null;
+
+    /**
+     * The state of every peer.
+     */
+    private final Map<ClientNode, Peer> peers = new ConcurrentHashMap<>();
+
+    /**
+     * Function to get the estimator shared by the networking module.
+     *
+     * @return the shared estimator
+     */
+    public static synchronized LinkEstimator getLinkEstimator() {
+        if (linkEstimator == null) {
+            linkEstimator = new LinkEstimator();
+        }
+        return linkEstimator;
+    }
+
+    /**
+     * Function to get the configured milliseconds between two probes.
+     *
+     * @return the probe interval, 0 when probing is off
+     */
+    public static long getProbeInterval() {
+        return Long.getLong(PROBE_INTERVAL_PROPERTY, 0);
+    }
+
+    /**
+     * Function to get the state of a peer, creating it on first use.
+     *
+     * @param peer the peer
+     * @return the state
+     */
+    private Peer peer(final ClientNode peer) {
+        return peers.computeIfAbsent(peer, p -> new Peer());
+    }
+
+    /**
+     * Function to count bytes sent to a peer.
+     *
+     * @param peer the peer
+     * @param bytes the number of bytes
+     */
+    public void recordSent(final ClientNode peer, final long bytes) {
+        peer(peer).bytesSent.addAndGet(bytes);
+    }
+
+    /**
+     * Function to build the payload of a probe to a peer.
+     *
+     * @param peer the peer
+     * @return the probe payload
+     */
+    public byte[] probe(final ClientNode peer) {
+        return probe(peer, System.nanoTime());
+    }
+
+    /**
+     * Function to build the payload of a probe to a peer at a given time.
+     *
+     * @param peer the peer
+     * @param nowNanos the current time in nanoseconds
+     * @return the probe payload
+     */
+    public byte[] probe(final ClientNode peer, final long nowNanos) {
+        final Peer state = peer(peer);
+        final int seq;
+        synchronized (state) {
+            seq = state.nextSeq++;
+            final int slot = Math.floorMod(seq, LOSS_WINDOW);
+            state.probeSeq[slot] = seq;
+            state.probeSent[slot] = nowNanos;
+            state.probeEchoed[slot] = false;
+            state.probes++;
+            state.sent.sample(nowNanos, state.bytesSent.get());
+        }
+        return encode(PROBE, seq, nowNanos, state.bytesSent.get(), state.rttMicros());
+    }
+
+    /**
+     * Function to handle the payload of an ALIVE packet from a peer.
+     *
+     * @param peer the peer that sent the ALIVE packet
+     * @param payload the payload
+     * @return the echo payload to send back for a probe, else null
+     */
+    public byte[] onAlive(final ClientNode peer, final ByteBuffer payload) {
+        return onAlive(peer, payload, System.nanoTime());
+    }
+
+    /**
+     * Function to handle the payload of an ALIVE packet from a peer at a
+     * given time.
+     *
+     * @param peer the peer that sent the ALIVE packet
+     * @param payload the payload
+     * @param nowNanos the current time in nanoseconds
+     * @return the echo payload to send back for a probe, else null
+     */
+    public byte[] onAlive(final ClientNode peer, final ByteBuffer payload, final long nowNanos) {
+        if (payload.remaining() < PAYLOAD_SIZE) {
+            return null;
+        }
+        final ByteBuffer in = payload.duplicate();
+        final byte kind = in.get();
+        final int seq = in.getInt();
+        final long timestamp = in.getLong();
+        final long peerBytesSent = in.getLong();
+        final int peerRttMicros = in.getInt();
+        final Peer state = peer(peer);
+        synchronized (state) {
+            state.received.sample(nowNanos, peerBytesSent);
+            state.sent.sample(nowNanos, state.bytesSent.get());
+            if (peerRttMicros > 0) {
+                state.reportedRttMicros = peerRttMicros;
+            }
+            if (kind == ECHO) {
+                onEcho(state, seq, timestamp, nowNanos);
+                return null;
+            }
+        }
+        return encode(ECHO, seq, timestamp, state.bytesSent.get(), state.rttMicros());
+    }
+
+    /**
+     * Function to update the round trip time and loss from an echo.
+     *
+     * @param state the peer state
+     * @param seq the echoed sequence number
+     * @param sentNanos the echoed probe time
+     * @param nowNanos the current time in nanoseconds
+     */
+    private static void onEcho(final Peer state, final int seq, final long sentNanos, final long nowNanos) {
+        final int slot = Math.floorMod(seq, LOSS_WINDOW);
+        if (state.probeSeq[slot] != seq || state.probeEchoed[slot]) {
+            return;
+        }
+        state.probeEchoed[slot] = true;
+        final double sample = (nowNanos - sentNanos) / NANOS_PER_MILLI;
+        if (state.samples == 0) {
+            state.srtt = sample;
+            state.rttvar = sample / 2;
+        } else {
+            state.rttvar += JITTER_GAIN * (Math.abs(state.srtt - sample) - state.rttvar);
+            state.srtt += RTT_GAIN * (sample - state.srtt);
+        }
+        state.samples++;
+    }
+
+    /**
+     * Function to write a probe or echo payload.
+     *
+     * @param kind probe or echo
+     * @param seq the sequence number
+     * @param timestamp the probe time
+     * @param bytesSent the bytes sent to the receiver so far
+     * @param rttMicros the sender's round trip time to the receiver
+     * @return the payload
+     */
+    private static byte[] encode(final byte kind, final int seq, final long timestamp, final long bytesSent,
+            final int rttMicros) {
+        return ByteBuffer.allocate(PAYLOAD_SIZE).put(kind).putInt(seq).putLong(timestamp).putLong(bytesSent)
+                .putInt(rttMicros).array();
+    }
+
+    /**
+     * Function to get the current estimate of the link to a peer.
+     *
+     * @param peer the peer
+     * @return the estimate, null if nothing was exchanged with the peer
+     */
+    public LinkEstimate getEstimate(final ClientNode peer) {
+        return getEstimate(peer, System.nanoTime());
+    }
+
+    /**
+     * Function to get the estimate of the link to a peer at a given time.
+     *
+     * @param peer the peer
+     * @param nowNanos the current time in nanoseconds
+     * @return the estimate, null if nothing was exchanged with the peer
+     */
+    public LinkEstimate getEstimate(final ClientNode peer, final long nowNanos) {
+        final Peer state = peers.get(peer);
+        if (state == null) {
+            return null;
+        }
+        synchronized (state) {
+            state.sent.sample(nowNanos, state.bytesSent.get());
+            double rtt = Double.NaN;
+            double jitter = Double.NaN;
+            if (state.samples > 0) {
+                rtt = state.srtt;
+                jitter = state.rttvar;
+            } else if (state.reportedRttMicros > 0) {
+                rtt = state.reportedRttMicros / MICROS_PER_MILLI;
+            }
+            return new LinkEstimate(rtt, jitter, state.lossRate(nowNanos), state.sent.rate(),
+                    state.received.rate(), state.samples);
+        }
+    }
+
+    /**
+     * Function to forget a peer.
+     *
+     * @param peer the peer
+     */
+    public void removePeer(final ClientNode peer) {
+        peers.remove(peer);
+    }
+
+    /**
+     * Estimate of the link to a peer.
+     *
+     * @param rttMillis smoothed round trip time, NaN if unknown
+     * @param jitterMillis smoothed round trip time deviation, NaN if unknown
+     * @param lossRate fraction of recent probes never echoed
+     * @param sendBytesPerSecond bytes sent to the peer per second
+     * @param receiveBytesPerSecond bytes the peer sent here per second
+     * @param samples number of round trip samples
+     */
+    public record LinkEstimate(double rttMillis, double jitterMillis, double lossRate, double sendBytesPerSecond,
+            double receiveBytesPerSecond, long samples) {
+    }
+
+    /**
+     * Cumulative byte counts sampled over the throughput window.
+     */
+    private static final class Throughput {
+
+        /**
+         * Times and counts of the samples, oldest first.
+         */
+        private final Deque<long[]> samples = new ArrayDeque<>();
+
+        /**
+         * Function to add a sample and drop those out of the window. The
+         * oldest sample still in the window is kept as the base.
+         *
+         * @param nowNanos the sample time
+         * @param cumulative the byte count so far
+         */
+        void sample(final long nowNanos, final long cumulative) {
+            final long[] last = samples.peekLast();
+            if (last != null && last[0] == nowNanos) {
+                last[1] = cumulative;
+            } else {
+                samples.addLast(new long[] {nowNanos, cumulative});
+            }
+            while (samples.size() > 2) {
+                final long[] base = samples.pollFirst();
+                if (nowNanos - samples.peekFirst()[0] < THROUGHPUT_WINDOW_NANOS) {
+                    samples.addFirst(base);
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Function to get the bytes per second over the window.
+         *
+         * @return the rate, 0 with fewer than two samples
+         */
+        double rate() {
+            if (samples.size() < 2) {
+                return 0;
+            }
+            final long[] first = samples.peekFirst();
+            final long[] last = samples.peekLast();
+            final long span = last[0] - first[0];
+            if (span <= 0) {
+                return 0;
+            }
+            return (last[1] - first[1]) * NANOS_PER_SECOND / span;
+        }
+    }
+
+    /**
+     * State of the link to one peer, guarded by itself.
+     */
+    private static final class Peer {
+
+        /**
+         * Bytes sent to the peer so far.
+         */
+        private final AtomicLong bytesSent = new AtomicLong();
+
+        /**
+         * Send throughput samples.
+         */
+        private final Throughput sent = new Throughput();
+
+        /**
+         * Receive throughput samples, from the counts the peer reports.
+         */
+        private final Throughput received = new Throughput();
+
+        /**
+         * Sequence numbers of the recent probes by slot.
+         */
+        private final int[] probeSeq = new int[LOSS_WINDOW];
+
+        /**
+         * Send times of the recent probes by slot.
+         */
+        private final long[] probeSent = new long[LOSS_WINDOW];
+
+        /**
+         * Whether each recent probe was echoed.
+         */
+        private final boolean[] probeEchoed = new boolean[LOSS_WINDOW];
+
+        /**
+         * Next probe sequence number.
+         */
+        private int nextSeq;
+
+        /**
+         * Number of probes sent.
+         */
+        private long probes;
+
+        /**
+         * Number of round trip samples.
+         */
+        private long samples;
+
+        /**
+         * Smoothed round trip time in milliseconds.
+         */
+        private double srtt;
+
+        /**
+         * Smoothed round trip time deviation in milliseconds.
+         */
+        private double rttvar;
+
+        /**
+         * Round trip time the peer measured to here, in microseconds.
+         */
+        private int reportedRttMicros;
+
+        /**
+         * Function to get the round trip time to send in payloads.
+         *
+         * @return the round trip time in microseconds, 0 if unknown
+         */
+        int rttMicros() {
+            return (int) Math.round(srtt * MICROS_PER_MILLI);
+        }
+
+        /**
+         * Function to get the fraction of the recent probes never echoed,
+         * ignoring those still within the loss timeout.
+         *
+         * @param nowNanos the current time in nanoseconds
+         * @return the loss rate
+         */
+        double lossRate(final long nowNanos) {
+            long timeout = MIN_LOSS_TIMEOUT_NANOS;
+            if (samples > 0) {
+                timeout = Math.max(timeout, (long) ((srtt + LOSS_TIMEOUT_DEVIATIONS * rttvar) * NANOS_PER_MILLI));
+            }
+            int resolved = 0;
+            int lost = 0;
+            final long window = Math.min(probes, LOSS_WINDOW);
+            for (int i = 0; i < window; i++) {
+                if (probeEchoed[i]) {
+                    resolved++;
+                } else if (nowNanos - probeSent[i] >= timeout) {
+                    resolved++;
+                    lost++;
+                }
+            }
+            if (resolved == 0) {
+                return 0;
+            }
+            return (double) lost / resolved;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: LinkMetrics.java
+ *  Owner: Vishal
+ *  Roll Number : 112201049
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+/**
+ * Measured link quality of a device, used to size clusters and choose
+ * cluster servers.
+ *
+ * @param uplinkBytesPerSecond the upload bandwidth of the device, 0 when
+ *        unknown
+ * @param rttMillis the round trip time to the main server in
+ *        milliseconds, 0 when unknown
+ */
+public record LinkMetrics(long uplinkBytesPerSecond, double rttMillis) {
+}
@@ -0,0 +1,59 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: LinkProfile.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+/**
+ * Shape of one direction of a simulated link.
+ *
+ * @param latencyMicros the one way propagation delay in microseconds
+ * @param jitterMicros the most extra delay added to a packet, drawn
+ *        uniformly, in microseconds
+ * @param lossRate the probability that a packet is lost
+ * @param reorderRate the probability that a packet is held back and
+ *        overtaken by the packets sent after it
+ * @param bytesPerSecond the bandwidth of the link, 0 for unlimited
+ */
+public record LinkProfile(long latencyMicros, long jitterMicros, double lossRate, double reorderRate,
+        long bytesPerSecond) {
+
+    /**
+     * A link that delivers every packet instantly and in order.
+     */
+    public static final LinkProfile IDEAL = new LinkProfile(0, 0, 0, 0, 0);
+
+    /**
+     * Creates a profile, rejecting values the fabric cannot apply.
+     *
+     * @param latencyMicros the one way propagation delay in microseconds
+     * @param jitterMicros the most extra delay added to a packet
+     * @param lossRate the probability that a packet is lost
+     * @param reorderRate the probability that a packet is reordered
+     * @param bytesPerSecond the bandwidth of the link, 0 for unlimited
+     */
+    public LinkProfile {
+        if (latencyMicros < 0 || jitterMicros < 0 || bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Link delays and bandwidth must not be negative");
+        }
+        if (lossRate < 0 || lossRate > 1 || reorderRate < 0 || reorderRate > 1) {
+            throw new IllegalArgumentException("Link loss and reorder rates must be probabilities");
+        }
+    }
+
+    /**
+     * Function to get a profile with only a fixed latency.
+     *
+     * @param latencyMillis the one way delay in milliseconds
+     * @return the profile
+     */
+    public static LinkProfile ofLatency(final long latencyMillis) {
+        return new LinkProfile(latencyMillis * SimulatedNetwork.MICROS_PER_MILLI, 0, 0, 0, 0);
+    }
+}
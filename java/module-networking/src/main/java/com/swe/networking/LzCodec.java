@@ -0,0 +1,326 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: LzCodec.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Byte oriented LZ77 codec in the style of LZ4, with a preset dictionary.
+ * The data is a run of sequences, each a token byte holding a literal
+ * length and a match length in its two nibbles, the literal length
+ * continued in extra bytes when the nibble is full, the literals, and then
+ * a two byte little endian match offset and the continued match length.
+ * The last sequence holds only literals. A match may reach back into the
+ * dictionary as if it preceded the data, so short messages built from the
+ * same field names compress from the first byte.
+ * A single greedy pass with a small hash table, no entropy coding: it
+ * trades ratio for a few nanoseconds per byte.
+ */
+public final class LzCodec {
+
+    /**
+     * Most bytes a single byte of encoded data can decode to, each extra
+     * length byte adding at most 255 bytes of match.
+     */
+    public static final int MAX_RATIO = 255;
+
+    /**
+     * Shortest match worth encoding.
+     */
+    private static final int MIN_MATCH = 4;
+
+    /**
+     * Bits of the hash table index.
+     */
+    private static final int HASH_BITS = 12;
+
+    /**
+     * Multiplier of the hash, Knuth's golden ratio constant.
+     */
+    private static final int HASH_PRIME = 0x9E3779B1;
+
+    /**
+     * Furthest a match may reach back.
+     */
+    private static final int MAX_OFFSET = 0xFFFF;
+
+    /**
+     * Largest value of a length nibble, longer lengths continue in extra
+     * bytes.
+     */
+    private static final int NIBBLE_MAX = 0xF;
+
+    /**
+     * Shift of the literal length nibble in the token.
+     */
+    private static final int LITERAL_SHIFT = 4;
+
+    /**
+     * Largest value of an extra length byte, longer lengths continue.
+     */
+    private static final int BYTE_MAX = 0xFF;
+
+    /**
+     * Bits in a byte.
+     */
+    private static final int BYTE_BITS = 8;
+
+    /**
+     * Number of bytes of a match offset.
+     */
+    private static final int OFFSET_BYTES = 2;
+
+    /**
+     * Literals scanned without a match before the scan starts skipping,
+     * as a shift of the distance from the last match.
+     */
+    private static final int SKIP_SHIFT = 6;
+
+    /**
+     * The preset dictionary.
+     */
+    private final byte[] dictionary;
+
+    /**
+     * Hash table already holding the positions of the dictionary.
+     */
+    private final int[] seededTable;
+
+    /**
+     * Working hash table of each thread.
+     */
+    private final ThreadLocal<int[]> tables;
+
+    /**
+     * Creates a codec with a preset dictionary. The dictionary must be the
+     * same on every device and no longer than a match may reach.
+     *
+     * @param dict the preset dictionary
+     */
+    public LzCodec(final byte[] dict) {
+        if (dict.length > MAX_OFFSET) {
+            throw new IllegalArgumentException("Dictionary longer than " + MAX_OFFSET + " bytes");
+        }
+        this.dictionary = dict.clone();
+        this.seededTable = new int[1 << HASH_BITS];
+        Arrays.fill(seededTable, -1);
+        for (int i = 0; i + MIN_MATCH <= dictionary.length; i++) {
+            seededTable[hash(readInt(dictionary, i))] = i;
+        }
+        this.tables = ThreadLocal.withInitial(() -> new int[1 << HASH_BITS]);
+    }
+
+    /**
+     * Function to compress data into a buffer, giving up when the output
+     * would not fit.
+     *
+     * @param src the data
+     * @param dst the buffer to write to
+     * @param dstOffset the position to start writing at
+     * @param maxLength the most bytes to write
+     * @return the bytes written, -1 if they did not fit
+     */
+    public int compress(final byte[] src, final byte[] dst, final int dstOffset, final int maxLength) {
+        final int base = dictionary.length;
+        final byte[] window = new byte[base + src.length];
+        System.arraycopy(dictionary, 0, window, 0, base);
+        System.arraycopy(src, 0, window, base, src.length);
+        final int[] table = tables.get();
+        System.arraycopy(seededTable, 0, table, 0, table.length);
+
+        final int end = window.length;
+        final int limit = Math.min(dst.length, dstOffset + maxLength);
+        int out = dstOffset;
+        int anchor = base;
+        int ip = base;
+        while (ip + MIN_MATCH <= end) {
+            final int h = hash(readInt(window, ip));
+            final int ref = table[h];
+            table[h] = ip;
+            if (ref < 0 || ip - ref > MAX_OFFSET || readInt(window, ref) != readInt(window, ip)) {
+                ip += 1 + ((ip - anchor) >>> SKIP_SHIFT);
+                continue;
+            }
+            int length = MIN_MATCH;
+            while (ip + length < end && window[ref + length] == window[ip + length]) {
+                length++;
+            }
+            out = writeSequence(window, anchor, ip - anchor, ip - ref, length, dst, out, limit);
+            if (out < 0) {
+                return -1;
+            }
+            ip += length;
+            anchor = ip;
+        }
+        out = writeSequence(window, anchor, end - anchor, 0, 0, dst, out, limit);
+        if (out < 0) {
+            return -1;
+        }
+        return out - dstOffset;
+    }
+
+    /**
+     * Function to restore data.
+     *
+     * @param src the compressed data between position and limit, the
+     *        position is left unchanged
+     * @param dst the buffer to restore into, exactly as long as the data
+     * @return true if the data filled the buffer exactly, false if it is
+     *         corrupt
+     */
+    public boolean decompress(final ByteBuffer src, final byte[] dst) {
+        final ByteBuffer in = src.duplicate();
+        int out = 0;
+        try {
+            while (true) {
+                final int token = in.get() & BYTE_MAX;
+                final int literals = readLength(in, token >>> LITERAL_SHIFT);
+                if (literals < 0 || literals > dst.length - out) {
+                    return false;
+                }
+                in.get(dst, out, literals);
+                out += literals;
+                if (!in.hasRemaining()) {
+                    return out == dst.length;
+                }
+                final int offset = (in.get() & BYTE_MAX) | ((in.get() & BYTE_MAX) << BYTE_BITS);
+                int length = readLength(in, token & NIBBLE_MAX) + MIN_MATCH;
+                int from = out - offset;
+                if (offset == 0 || from < -dictionary.length || length < MIN_MATCH || length > dst.length - out) {
+                    return false;
+                }
+                if (from < 0) {
+                    final int fromDictionary = Math.min(length, -from);
+                    System.arraycopy(dictionary, dictionary.length + from, dst, out, fromDictionary);
+                    out += fromDictionary;
+                    from += fromDictionary;
+                    length -= fromDictionary;
+                }
+                if (length == 0) {
+                    continue;
+                }
+                if (out - from >= length) {
+                    System.arraycopy(dst, from, dst, out, length);
+                    out += length;
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        dst[out++] = dst[from++];
+                    }
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Function to write one sequence.
+     *
+     * @param window the dictionary followed by the data
+     * @param literalStart the position of the literals in the window
+     * @param literals the number of literals
+     * @param offset the distance back to the match, unused when the
+     *        length is 0
+     * @param length the match length, 0 for the last sequence
+     * @param dst the buffer to write to
+     * @param position the position to write at
+     * @param limit the end of the space to write in
+     * @return the position after the sequence, -1 if it did not fit
+     */
+    private static int writeSequence(final byte[] window, final int literalStart, final int literals,
+            final int offset, final int length, final byte[] dst, final int position, final int limit) {
+        int out = position;
+        final int matchCode = Math.max(0, length - MIN_MATCH);
+        if (out + 1 + literals / BYTE_MAX + 1 + literals + OFFSET_BYTES + matchCode / BYTE_MAX + 1 > limit) {
+            return -1;
+        }
+        final int token = out++;
+        dst[token] = (byte) (Math.min(literals, NIBBLE_MAX) << LITERAL_SHIFT);
+        out = writeLength(dst, out, literals);
+        System.arraycopy(window, literalStart, dst, out, literals);
+        out += literals;
+        if (length == 0) {
+            return out;
+        }
+        dst[token] |= (byte) Math.min(matchCode, NIBBLE_MAX);
+        dst[out++] = (byte) offset;
+        dst[out++] = (byte) (offset >>> BYTE_BITS);
+        return writeLength(dst, out, matchCode);
+    }
+
+    /**
+     * Function to write the extra bytes of a length whose nibble is full.
+     *
+     * @param dst the buffer to write to
+     * @param position the position to write at
+     * @param value the length
+     * @return the position after the extra bytes
+     */
+    private static int writeLength(final byte[] dst, final int position, final int value) {
+        int out = position;
+        if (value < NIBBLE_MAX) {
+            return out;
+        }
+        int rest = value - NIBBLE_MAX;
+        while (rest >= BYTE_MAX) {
+            dst[out++] = (byte) BYTE_MAX;
+            rest -= BYTE_MAX;
+        }
+        dst[out++] = (byte) rest;
+        return out;
+    }
+
+    /**
+     * Function to read a length continued in extra bytes.
+     *
+     * @param in the compressed data
+     * @param nibble the length nibble of the token
+     * @return the length
+     */
+    private static int readLength(final ByteBuffer in, final int nibble) {
+        int value = nibble;
+        if (nibble < NIBBLE_MAX) {
+            return value;
+        }
+        int next;
+        do {
+            next = in.get() & BYTE_MAX;
+            value += next;
+        } while (next == BYTE_MAX);
+        return value;
+    }
+
+    /**
+     * Function to read four bytes as a little endian int.
+     *
+     * @param data the bytes
+     * @param position the position of the first byte
+     * @return the int
+     */
+    private static int readInt(final byte[] data, final int position) {
+        return (data[position] & BYTE_MAX)
+                | (data[position + 1] & BYTE_MAX) << BYTE_BITS
+                | (data[position + 2] & BYTE_MAX) << (2 * BYTE_BITS)
+                | (data[position + 3] & BYTE_MAX) << (3 * BYTE_BITS);
+    }
+
+    /**
+     * Function to hash four bytes into the table.
+     *
+     * @param value the four bytes
+     * @return the table index
+     */
+    private static int hash(final int value) {
+        return (value * HASH_PRIME) >>> (Integer.SIZE - HASH_BITS);
+    }
+}
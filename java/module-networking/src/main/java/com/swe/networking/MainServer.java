@@ -12,6 +12,7 @@ package com.swe.networking;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import com.swe.core.ClientNode;
@@ -21,7 +22,7 @@ import com.swe.core.logging.SweLoggerFactory;
 /**
  * The mainserver across all clusters.
  */
-public class MainServer implements P2PUser {
+public final class MainServer implements P2PUser {
 
     /**
      * Communicator object to send and receive data.
@@ -87,11 +88,52 @@ public class MainServer implements P2PUser {
      */
     private final ChunkManager chunkManager;
 
+    /**
+     * The estimator of the links to the cluster servers and clients.
+     */
+    private final LinkEstimator linkEstimator = LinkEstimator.getLinkEstimator();
+
+    /**
+     * The multicast tree broadcasts are relayed along when enabled.
+     */
+    private final MulticastTree multicastTree = MulticastTree.fromSystemProperty();
+
+    /**
+     * Demultiplexer of coalesced packets.
+     */
+    private final CoalesceReceive coalesceReceive = new CoalesceReceive();
+
+    /**
+     * View over the received packet, reused by the receive thread.
+     */
+    private final PacketView receiveView = new PacketView();
+
+    /**
+     * View over the copies of a received packet, reused by the receive
+     * thread.
+     */
+    private final PacketView copyView = new PacketView();
+
     /**
      * Variable to store the chunksize.
      */
     private final int payloadSize = 10 * 1024;
 
+    /**
+     * Milliseconds between two rebalancing rounds of the clusters.
+     */
+    private static final long REBALANCE_INTERVAL_MILLIS = 10 * 1000;
+
+    /**
+     * Most clients moved in one rebalancing round, to limit disruption.
+     */
+    private static final int MAX_MOVES_PER_REBALANCE = 4;
+
+    /**
+     * The periodic rebalancing task.
+     */
+    private final TimingWheel.Timeout rebalanceTask;
+
     /**
      * Constructor function for the main server class.
      *
@@ -100,6 +142,19 @@ public class MainServer implements P2PUser {
      */
     public MainServer(final ClientNode deviceAddress,
             final ClientNode mainServerAddress) {
+        this(deviceAddress, mainServerAddress, ModuleRoutedCommunicator.forPort(deviceAddress.port()));
+    }
+
+    /**
+     * Constructor function for the main server class on a given
+     * communicator, such as one of a simulated network.
+     *
+     * @param deviceAddress the IP address of the device
+     * @param mainServerAddress the IP address of the main server
+     * @param protocol the communicator to send and receive with
+     */
+    public MainServer(final ClientNode deviceAddress,
+            final ClientNode mainServerAddress, final ProtocolBase protocol) {
         LOG.info("Creating a new Main Server...");
         serverPort = deviceAddress.port();
         mainserver = mainServerAddress;
@@ -107,8 +162,11 @@ public class MainServer implements P2PUser {
         serializer = NetworkSerializer.getNetworkSerializer();
         chunkManager = ChunkManager.getChunkManager(packetHeaderSize);
         timer = new Timer(timerTimeoutMilliSeconds, this::handleClientTimeout);
+        topology.setAuthority(true);
+        rebalanceTask = TimingWheel.getTimingWheel().scheduleBlockingAtFixedRate(this::rebalance,
+                REBALANCE_INTERVAL_MILLIS);
         LOG.info("Listening at port:" + serverPort + " ...");
-        communicator = new TCPCommunicator(serverPort);
+        communicator = protocol;
         receiveThread = new Thread(() -> receive());
         receiveThread.start();
     }
@@ -141,92 +199,108 @@ public class MainServer implements P2PUser {
         communicator.sendData(data, sendDest); // check of this should be dest
     }
 
+    /**
+     * Function to send a packet made of several buffers to a single
+     * destination, routed like {@link #send(byte[], ClientNode)}.
+     *
+     * @param parts the buffers of the packet in order
+     * @param destIp the destination to which the data is sent
+     */
+    @Override
+    public void send(final ByteBuffer[] parts, final ClientNode destIp) {
+        final ClientNode sendDest = topology.getDestination(mainserver, destIp);
+        communicator.sendData(parts, sendDest);
+    }
+
     /**
      * Function to receive the data from the sockets.
      */
     @Override
     public void receive() {
         while (true) {
-            final ReceivePacket packet = communicator.receiveData();
-            if (packet != null) {
-                final List<byte[]> packets = SplitPackets.getSplitPackets().split(packet);
-                for (byte[] p : packets) {
-                    parsePacket(p);
-                }
-                // parsePacket(packet);
-            }
+            communicator.receiveFrames(this::handleFrame);
         }
     }
 
     /**
-     * Function to parse the packet received and take necessary action.
+     * Function to handle one framed packet read by the communicator.
      *
-     * @param packet the packet received
+     * @param sender the peer the packet was read from
+     * @param frame the view of the packet, valid during the call
      */
-    private void parsePacket(final byte[] packet) {
-        try {
-            final PacketInfo packetInfo = parser.parsePacket(packet);
-            final int connectionType = packetInfo.getConnectionType();
-            final int type = packetInfo.getType();
-            final InetAddress destInet = packetInfo.getIpAddress();
-            final String destinationIp = destInet.getHostAddress();
-            final int destinationPort = packetInfo.getPortNum();
-            final ClientNode dest = new ClientNode(destinationIp,
-                    destinationPort);
-            LOG.info("Packet received from " + dest + " of type "
-                    + type + " and connection type " + connectionType + "...");
-            // check for broadcast packet
-            if (packetInfo.getBroadcast() == 1) {
-                handleBroadcast(packetInfo);
-                packetInfo.setBroadcast(0);
-                packetInfo.setType(NetworkType.USE.ordinal());
+    private void handleFrame(final ClientNode sender, final ByteBuffer frame) {
+        parsePacket(receiveView.wrap(frame), sender);
+    }
+
+    /**
+     * Function to parse the packet received and take necessary action. The
+     * packet is read in place, only packets sent on are copied.
+     *
+     * @param view the view over the packet
+     * @param sender the connection the packet was read from
+     */
+    private void parsePacket(final PacketView view, final ClientNode sender) {
+        final int connectionType = view.getConnectionType();
+        final int type = view.getType();
+        final ClientNode dest = view.getClientNode();
+        LOG.info("Packet received from " + dest + " of type "
+                + type + " and connection type " + connectionType + "...");
+        // check for broadcast packet
+        if (view.getBroadcast() == 1) {
+            if (view.getTreeRelay() == 1) {
+                handleTreeRelay(view, sender);
+                return;
             }
-            if (type == NetworkType.USE.ordinal()) {
-                handleUsePacket(packet, dest, connectionType);
-            } else if (type == NetworkType.SAMECLUSTER.ordinal()) {
-                final PacketInfo pktInfo = parser.parsePacket(packet);
-                pktInfo.setType(NetworkType.USE.ordinal());
-                final byte[] newPacket = parser.createPkt(pktInfo);
-                send(newPacket, dest);
-            } else if (type == NetworkType.OTHERCLUSTER.ordinal()) {
-                final ClientNode clusterServer = topology.getServer(dest);
-                if (clusterServer.equals(dest)) {
-                    packetInfo.setType(NetworkType.USE.ordinal());
-                } else {
-                    packetInfo.setType(NetworkType.SAMECLUSTER.ordinal());
-                }
-                send(packet, clusterServer);
+            handleBroadcast(type, view);
+        }
+        if (type == NetworkType.USE.ordinal()) {
+            handleUsePacket(view, dest, sender);
+        } else if (type == NetworkType.SAMECLUSTER.ordinal()) {
+            final byte[] packet = view.copyPacket();
+            copyView.wrap(packet).setType(NetworkType.USE.ordinal());
+            send(packet, dest);
+        } else if (type == NetworkType.OTHERCLUSTER.ordinal()) {
+            final ClientNode clusterServer = topology.getServer(dest);
+            final byte[] packet = view.copyPacket();
+            if (clusterServer.equals(dest)) {
+                copyView.wrap(packet).setType(NetworkType.USE.ordinal());
             } else {
-                LOG.info("Unknown packet type received.");
+                copyView.wrap(packet).setType(NetworkType.SAMECLUSTER.ordinal());
             }
-        } catch (UnknownHostException ex) {
+            send(packet, clusterServer);
+        } else {
+            LOG.info("Unknown packet type received.");
         }
     }
 
     /**
      * Function to handle the use packet after receiving.
      *
-     * @param packet the packet to be parsed
+     * @param view the view over the packet to be parsed
      * @param dest the destination from which the packet was received
-     * @param connectionType the connection type of the packet
+     * @param sender the connection the packet was read from
      */
-    private void handleUsePacket(final byte[] packet, final ClientNode dest, final int connectionType) {
+    private void handleUsePacket(final PacketView view, final ClientNode dest, final ClientNode sender) {
+        final int connectionType = view.getConnectionType();
         try {
             if (connectionType == NetworkConnectionType.HELLO.ordinal()) {
+                recordUplink(view, dest);
                 handleHello(dest);
             } else if (NetworkConnectionType.REMOVE.ordinal() == connectionType) {
-                handleRemove(packet, dest);
+                handleRemove(view, dest);
             } else if (connectionType == NetworkConnectionType.ALIVE.ordinal()) {
                 timer.updateTimeout(dest);
                 LOG.info("Received alive packet from " + dest);
+                answerAlive(view, dest);
             } else if (connectionType == NetworkConnectionType.MODULE.ordinal()) {
                 LOG.info("Passing to chunk manager...");
-                final int module = parser.parsePacket(packet).getModule();
-                final byte[] data = chunkManager.addChunk(packet);
-                final Networking networking = Networking.getNetwork();
-                if (data != null) {
-                    networking.callSubscriber(module, parser.parsePacket(data).getPayload());
+                final int module = view.getModule();
+                final byte[] payload = chunkManager.receiveChunk(view, sender);
+                if (payload != null) {
+                    Networking.getNetwork().callSubscriber(module, payload);
                 }
+            } else if (connectionType == NetworkConnectionType.COALESCED.ordinal()) {
+                coalesceReceive.receiveCoalescedPacket(view.payload());
             } else if (connectionType == NetworkConnectionType.CLOSE.ordinal()) {
                 LOG.info("Closing the Main Server");
             }
@@ -235,39 +309,108 @@ public class MainServer implements P2PUser {
     }
 
     /**
-     * Function to handle broadcasting a packet.
+     * Function to handle broadcasting a packet. The forwarded header is
+     * written once and the same bytes are sent to every destination.
      *
-     * @param packetInfo function to handle packet.
+     * @param type the network type of the packet
+     * @param view the view over the received broadcast packet
      */
-    private void handleBroadcast(final PacketInfo packetInfo) {
-        if (packetInfo.getType() == NetworkType.USE.ordinal()) {
+    private void handleBroadcast(final int type, final PacketView view) {
+        if (type == NetworkType.USE.ordinal() && MulticastTree.isEnabled()) {
+            try {
+                relay(MulticastTree.relayCopy(view, mainserver, copyView));
+            } catch (UnknownHostException ex) {
+                LOG.error("Cannot resolve this server : " + ex.getMessage());
+            }
+        } else if (type == NetworkType.USE.ordinal()) {
             // send to other servers
+            final byte[] newPacket = view.copyPacket();
+            copyView.wrap(newPacket).setType(NetworkType.OTHERCLUSTER.ordinal());
             final List<ClientNode> servers = topology.getAllClusterServers();
             for (ClientNode server : servers) {
                 if (server.equals(mainserver)) {
                     continue;
                 }
-                packetInfo.setType(NetworkType.OTHERCLUSTER.ordinal());
-                final byte[] newPacket = parser.createPkt(packetInfo);
                 send(newPacket, server);
             }
-        } else if (packetInfo.getType() == NetworkType.OTHERCLUSTER.ordinal()) {
+        } else if (type == NetworkType.OTHERCLUSTER.ordinal()) {
             // to just send to clients in the cluster
+            final byte[] newPacket = view.copyPacket();
+            copyView.wrap(newPacket);
+            copyView.setType(NetworkType.USE.ordinal());
+            copyView.setBroadcast(0);
             final List<ClientNode> dests = topology.getClients(topology.getClusterIndex(mainserver));
             for (ClientNode dest : dests) {
                 if (dest.equals(mainserver)) {
                     continue;
                 }
-                packetInfo.setType(NetworkType.USE.ordinal());
-                packetInfo.setBroadcast(0);
-                final byte[] newPacket = parser.createPkt(packetInfo);
                 send(newPacket, dest);
             }
         } else {
             LOG.info("Broadcast packet of unknown type received at P2PServer.");
-            return;
         }
+    }
+
+    /**
+     * Function to forward a broadcast entering the multicast tree at this
+     * server to its tree neighbours.
+     *
+     * @param packet the relay packet carrying this server as its origin
+     */
+    @Override
+    public void relayBroadcast(final byte[] packet) {
+        multicastTree.firstSeen(mainserver, new PacketView().wrap(packet));
+        forwardRelay(packet);
+    }
+
+    /**
+     * Function to forward a broadcast entering the multicast tree at this
+     * server, from the receive thread.
+     *
+     * @param packet the relay packet carrying this server as its origin
+     */
+    private void relay(final byte[] packet) {
+        multicastTree.firstSeen(mainserver, copyView.wrap(packet));
+        forwardRelay(packet);
+    }
+
+    /**
+     * Function to send a relay packet originating at this server to its
+     * tree neighbours.
+     *
+     * @param packet the relay packet
+     */
+    private void forwardRelay(final byte[] packet) {
+        for (ClientNode next : multicastTree.forwardTargets(topology.getAllClusterServers(), mainserver, mainserver)) {
+            send(packet, next);
+        }
+    }
 
+    /**
+     * Function to handle a broadcast relayed along the multicast tree. It is
+     * forwarded to the tree neighbours away from its origin, delivered to
+     * the clients of this cluster and handled here, once per chunk.
+     *
+     * @param view the view over the relay packet
+     * @param sender the connection the packet was read from
+     */
+    private void handleTreeRelay(final PacketView view, final ClientNode sender) {
+        final ClientNode origin = view.getClientNode();
+        if (origin.equals(mainserver) || !multicastTree.firstSeen(origin, view)) {
+            return;
+        }
+        final byte[] packet = view.copyPacket();
+        for (ClientNode next : multicastTree.forwardTargets(topology.getAllClusterServers(), mainserver, origin)) {
+            send(packet, next);
+        }
+        final byte[] local = MulticastTree.clusterCopy(packet, copyView);
+        for (ClientNode dest : topology.getClients(topology.getClusterIndex(mainserver))) {
+            if (dest.equals(mainserver)) {
+                continue;
+            }
+            send(local, dest);
+        }
+        handleUsePacket(view.wrap(local), origin, sender);
     }
 
     /**
@@ -291,10 +434,20 @@ public class MainServer implements P2PUser {
      */
     private void sendNetworkPktResponse(final ClientNode dest) {
         try {
-            final NetworkStructure network = topology.getNetwork();
+            final NetworkStructure network;
+            final long epoch;
+            synchronized (topology) {
+                network = topology.getNetwork();
+                epoch = topology.getEpoch();
+            }
             final int randomFactor = (int) Math.pow(10, 6);
-            final byte[] networkBytes = serializer.serializeNetworkStructure(network);
+            byte[] networkBytes = serializer.serializeNetworkStructure(network, epoch);
             final PacketInfo responsePacket = new PacketInfo();
+            final byte[] compressedBytes = PacketCompressor.getPacketCompressor().compress(networkBytes);
+            if (compressedBytes != null) {
+                networkBytes = compressedBytes;
+                responsePacket.setCompressed(1);
+            }
             responsePacket.setLength(packetHeaderSize + networkBytes.length);
             responsePacket.setType(NetworkType.USE.ordinal());
             responsePacket.setPriority(0);
@@ -323,11 +476,24 @@ public class MainServer implements P2PUser {
      * @param clusterIdx the index of cluster it belongs to
      */
     private void sendAddPktResponse(final ClientNode dest, final ClientNode server, final int clusterIdx) {
+        sendAddPktResponse(dest, server, clusterIdx, topology.getEpoch());
+    }
+
+    /**
+     * Function to send add packet of a given epoch to the given destination.
+     *
+     * @param dest the new client to add
+     * @param server the server to send to
+     * @param clusterIdx the index of cluster it belongs to
+     * @param epoch the topology epoch of the addition
+     */
+    private void sendAddPktResponse(final ClientNode dest, final ClientNode server, final int clusterIdx,
+            final long epoch) {
         try {
             final int randomFactor = (int) Math.pow(10, 6);
             final ClientNetworkRecord addClient = new ClientNetworkRecord(dest, clusterIdx);
             final PacketInfo addPacket = new PacketInfo();
-            final byte[] clientBytes = serializer.serializeClientNetworkRecord(addClient);
+            final byte[] clientBytes = serializer.serializeTopologyDelta(addClient, epoch);
             addPacket.setLength(packetHeaderSize + clientBytes.length);
             addPacket.setType(NetworkType.USE.ordinal());
             addPacket.setPriority(0);
@@ -349,30 +515,36 @@ public class MainServer implements P2PUser {
     /**
      * Function to remove client from the network.
      *
-     * @param packet the packe containing data
+     * @param view the view over the packet containing data
      * @param dest the destination to be removed
      * @throws UnknownHostException when host is unknown
      */
-    private void handleRemove(final byte[] packet, final ClientNode dest) throws UnknownHostException {
-        final PacketInfo packetInfo = parser.parsePacket(packet);
-        final ClientNetworkRecord remClient = serializer.deserializeClientNetworkRecord(packetInfo.getPayload());
-        topology.removeClient(remClient);
+    private void handleRemove(final PacketView view, final ClientNode dest) throws UnknownHostException {
+        final byte[] payload = view.copyPayload();
+        final ClientNetworkRecord remClient = serializer.deserializeClientNetworkRecord(payload);
+        final long epoch;
+        synchronized (topology) {
+            topology.removeClient(remClient);
+            epoch = topology.getEpoch();
+        }
         chunkManager.cleanChunk(remClient.client());
         if (remClient.clusterIndex() == topology.getClusterIndex(mainserver)) {
             timer.removeClient(dest);
         }
+        // forward the removal stamped with the epoch it was given here
+        final byte[] removePacket = createRemovePacket(remClient, epoch);
         final int myCluster = topology.getClusterIndex(mainserver);
         for (ClientNode c : topology.getClients(myCluster)) {
             if (c.equals(mainserver)) {
                 continue;
             }
-            send(packet, c);
+            send(removePacket, c);
         }
         for (ClientNode s : topology.getAllClusterServers()) {
             if (s.equals(mainserver)) {
                 continue;
             }
-            send(packet, s);
+            send(removePacket, s);
         }
         LOG.info("Client " + remClient.client().hostName()
                 + " removed from cluster"
@@ -385,28 +557,127 @@ public class MainServer implements P2PUser {
      * @param dest the destination to the network structure to
      */
     private void handleHello(final ClientNode dest) {
+        if (topology.checkClientPresent(dest)) {
+            // a known client asking again has missed a topology change
+            LOG.info("Sending a full network snapshot to " + dest + "...");
+            sendNetworkPktResponse(dest);
+            return;
+        }
         LOG.info("Responding " + dest + " with a Hello packet...");
-        final int clusterIdx = topology.addClient(dest);
+        // start the handshake while the network structure is serialized
+        communicator.preconnect(dest);
+        final int clusterIdx;
+        final long epoch;
+        synchronized (topology) {
+            clusterIdx = topology.addClient(dest);
+            epoch = topology.getEpoch();
+        }
 //        addClientToTimer(dest, clusterIdx);
         // The controller is notified of any new client that is added.
         Networking.getNetwork().callSubscriber(0, serializer.serializeClientNode(dest));
         sendNetworkPktResponse(dest);
+        announceAdd(dest, clusterIdx, epoch, dest);
+    }
+
+    /**
+     * Function to send an add packet to every cluster server and every
+     * client of this cluster, which forward it to their own clusters.
+     *
+     * @param client the added client
+     * @param clusterIdx the index of cluster it belongs to
+     * @param epoch the topology epoch of the addition
+     * @param skip a device not to send to, null for none
+     */
+    private void announceAdd(final ClientNode client, final int clusterIdx, final long epoch,
+            final ClientNode skip) {
         // send add packet to all cluster servers.
         final List<ClientNode> servers = topology.getAllClusterServers();
         for (ClientNode server : servers) {
-            if (server.equals(mainserver) || server.equals(dest)) {
+            if (server.equals(mainserver) || server.equals(skip)) {
                 continue;
             }
-            sendAddPktResponse(dest, server, clusterIdx);
+            sendAddPktResponse(client, server, clusterIdx, epoch);
         }
 
         // send add packet to all cluster clients of this cluster
         final List<ClientNode> clients = topology.getClients(mainServerClusterIdx);
-        for (ClientNode client : clients) {
-            if (client.equals(mainserver) || client.equals(dest)) {
+        for (ClientNode member : clients) {
+            if (member.equals(mainserver) || member.equals(skip)) {
                 continue;
             }
-            sendAddPktResponse(dest, client, clusterIdx);
+            sendAddPktResponse(client, member, clusterIdx, epoch);
+        }
+    }
+
+    /**
+     * Function to record the uplink a joining client advertised in its
+     * hello packet.
+     *
+     * @param view the view over the hello packet
+     * @param client the joining client
+     */
+    private void recordUplink(final PacketView view, final ClientNode client) {
+        final ByteBuffer payload = view.payload();
+        if (payload.remaining() < Long.BYTES) {
+            return;
+        }
+        final long uplink = payload.getLong(payload.position());
+        final LinkMetrics known = topology.getLinkMetrics(client);
+        double rtt = 0;
+        if (known != null) {
+            rtt = known.rttMillis();
+        }
+        topology.reportLinkMetrics(client, new LinkMetrics(uplink, rtt));
+    }
+
+    /**
+     * Function to echo the link probe of an ALIVE packet back to its sender
+     * and pass the round trip time the sender measured to the topology.
+     *
+     * @param view the view over the ALIVE packet
+     * @param dest the sender of the packet
+     * @throws UnknownHostException when the main server cannot be resolved
+     */
+    private void answerAlive(final PacketView view, final ClientNode dest) throws UnknownHostException {
+        final byte[] echo = linkEstimator.onAlive(dest, view.payload());
+        if (echo == null) {
+            return;
+        }
+        final LinkEstimator.LinkEstimate estimate = linkEstimator.getEstimate(dest);
+        if (!Double.isNaN(estimate.rttMillis())) {
+            final LinkMetrics known = topology.getLinkMetrics(dest);
+            long uplink = 0;
+            if (known != null) {
+                uplink = known.uplinkBytesPerSecond();
+            }
+            topology.reportLinkMetrics(dest, new LinkMetrics(uplink, estimate.rttMillis()));
+        }
+        final PacketInfo alive = new PacketInfo();
+        alive.setLength(packetHeaderSize + echo.length);
+        alive.setType(NetworkType.USE.ordinal());
+        alive.setModule(ModuleType.NETWORKING.ordinal());
+        alive.setConnectionType(NetworkConnectionType.ALIVE.ordinal());
+        alive.setIpAddress(InetAddress.getByName(mainserver.hostName()));
+        alive.setPortNum(mainserver.port());
+        alive.setPayload(echo);
+        send(parser.createPkt(alive), dest);
+    }
+
+    /**
+     * Function to move a few clients between clusters as planned by the
+     * cluster policy. Each move is announced as an addition to the new
+     * cluster, which every device applies as a move.
+     */
+    private void rebalance() {
+        final List<ClientNetworkRecord> moves = topology.planRebalance(MAX_MOVES_PER_REBALANCE);
+        for (ClientNetworkRecord move : moves) {
+            final long epoch;
+            synchronized (topology) {
+                topology.updateNetwork(move);
+                epoch = topology.getEpoch();
+            }
+            LOG.info("Moving " + move.client() + " to cluster " + move.clusterIndex() + "...");
+            announceAdd(move.client(), move.clusterIndex(), epoch, null);
         }
     }
 
@@ -428,10 +699,11 @@ public class MainServer implements P2PUser {
     public void close() {
         final byte[] removePkt = createRemovePacket(mainserver);
         Networking.getNetwork().broadcast(removePkt, 0, 0);
+        rebalanceTask.cancel();
         receiveThread.interrupt();
         communicator.close();
         SplitPackets.getSplitPackets().emptyBuffer();
-//        timer.close();
+        timer.close();
     }
 
     /**
@@ -445,16 +717,13 @@ public class MainServer implements P2PUser {
             // send remove packet to all clients in the cluster and main server
             final ClientNetworkRecord remClient = new ClientNetworkRecord(client,
                     topology.getClusterIndex(client));
-            topology.removeClient(remClient);
+            final long epoch;
+            synchronized (topology) {
+                topology.removeClient(remClient);
+                epoch = topology.getEpoch();
+            }
             timer.removeClient(client);
-            final PacketInfo packetInfo = new PacketInfo();
-            packetInfo.setLength(packetHeaderSize);
-            packetInfo.setType(NetworkType.USE.ordinal());
-            packetInfo.setConnectionType(NetworkConnectionType.REMOVE.ordinal());
-            packetInfo.setPayload(client.toString().getBytes());
-            packetInfo.setIpAddress(InetAddress.getByName(client.hostName()));
-            packetInfo.setPortNum(client.port());
-            final byte[] removePacket = parser.createPkt(packetInfo);
+            final byte[] removePacket = createRemovePacket(remClient, epoch);
             final List<ClientNode> servers = topology.getAllClusterServers();
             LOG.info("servers " + servers);
             for (ClientNode server : servers) {
@@ -472,7 +741,8 @@ public class MainServer implements P2PUser {
                 send(removePacket, newClient);
             }
             communicator.closeSocket(client);
-        } catch (UnknownHostException ex) {
+        } catch (RuntimeException ex) {
+            LOG.error("Exception", ex);
         }
     }
 
@@ -484,11 +754,13 @@ public class MainServer implements P2PUser {
      */
     public byte[] createRemovePacket(final ClientNode client) {
         try {
+            final byte[] payload = serializer.serializeClientNetworkRecord(
+                    new ClientNetworkRecord(client, topology.getClusterIndex(client)));
             final PacketInfo packetInfo = new PacketInfo();
-            packetInfo.setLength(packetHeaderSize);
+            packetInfo.setLength(packetHeaderSize + payload.length);
             packetInfo.setType(NetworkType.USE.ordinal());
             packetInfo.setConnectionType(NetworkConnectionType.REMOVE.ordinal());
-            packetInfo.setPayload(client.toString().getBytes());
+            packetInfo.setPayload(payload);
             packetInfo.setIpAddress(InetAddress.getByName(client.hostName()));
             packetInfo.setPortNum(client.port());
             packetInfo.setBroadcast(1);
@@ -498,4 +770,30 @@ public class MainServer implements P2PUser {
             return null;
         }
     }
+
+    /**
+     * Function to create the remove packet of a change made by this server.
+     *
+     * @param client the removed client and its cluster
+     * @param epoch the topology epoch of the removal
+     * @return the packet
+     */
+    private byte[] createRemovePacket(final ClientNetworkRecord client, final long epoch) {
+        final byte[] payload = serializer.serializeTopologyDelta(client, epoch);
+        final PacketInfo packetInfo = new PacketInfo();
+        packetInfo.setLength(packetHeaderSize + payload.length);
+        packetInfo.setType(NetworkType.USE.ordinal());
+        packetInfo.setPriority(0);
+        packetInfo.setModule(ModuleType.NETWORKING.ordinal());
+        packetInfo.setConnectionType(NetworkConnectionType.REMOVE.ordinal());
+        packetInfo.setBroadcast(0);
+        packetInfo.setPayload(payload);
+        try {
+            packetInfo.setIpAddress(InetAddress.getByName(client.client().hostName()));
+        } catch (UnknownHostException ex) {
+            LOG.error("Unknown host: " + client.client().hostName());
+        }
+        packetInfo.setPortNum(client.client().port());
+        return parser.createPkt(packetInfo);
+    }
 }
@@ -0,0 +1,418 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: MainServerProber.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.swe.core.logging.SweLogger;
+import com.swe.core.logging.SweLoggerFactory;
+
+/**
+ * Checks whether the network reaches the outside world, by connecting to
+ * high availability public endpoints, without holding up the caller.
+ * A probe connects to every endpoint at once and ends with the first
+ * connect that succeeds, or once every connect failed. The answer is kept
+ * for {@link #getTtlMillis()} milliseconds. After that the last answer is
+ * still given while a new probe runs. A probe is also started when the
+ * addresses of the network interfaces change. A caller asking before any
+ * answer is known waits at most {@link #getWaitMillis()} milliseconds and
+ * is otherwise told the network is up, so joining never stalls on a
+ * network that drops the probes.
+ */
+public final class MainServerProber {
+
+    /**
+     * System property holding how long an answer is kept in milliseconds.
+     */
+    static final String TTL_PROPERTY = "swecomm.network.probe.ttl";
+
+    /**
+     * System property holding how long a caller waits for an unknown
+     * answer in milliseconds.
+     */
+    static final String WAIT_PROPERTY = "swecomm.network.probe.wait";
+
+    /**
+     * Connect timeout of one endpoint in milliseconds.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 2000;
+
+    /**
+     * Default time an answer is kept in milliseconds.
+     */
+    static final long DEFAULT_TTL_MILLIS = 30_000;
+
+    /**
+     * Default time a caller waits for an unknown answer in milliseconds.
+     */
+    static final long DEFAULT_WAIT_MILLIS = 300;
+
+    /**
+     * Period of the check of the network interfaces in milliseconds.
+     */
+    private static final long INTERFACE_CHECK_MILLIS = 5000;
+
+    /**
+     * The public DNS servers probed, Google and Cloudflare.
+     */
+    private static final String[] DNS_SERVERS = {"8.8.8.8", "8.8.4.4", "1.1.1.1", "1.0.0.1"};
+
+    /**
+     * The ports probed on every server, DNS and HTTP.
+     */
+    private static final int[] PORTS = {53, 80};
+
+    /**
+     * The logger for the module.
+     */
+    private static final SweLogger LOG = SweLoggerFactory.getLogger("NETWORKING");
+
+    /**
+     * The endpoints connected to.
+     */
+    private final List<InetSocketAddress> targets;
+
+    /**
+     * Connect timeout of one endpoint in milliseconds.
+     */
+    private final int connectTimeout;
+
+    /**
+     * How long an answer is kept in milliseconds.
+     */
+    private final long ttlMillis;
+
+    /**
+     * How long a caller waits for an unknown answer in milliseconds.
+     */
+    private final long waitMillis;
+
+    /**
+     * Wheel checking the network interfaces.
+     */
+    private final TimingWheel timer;
+
+    /**
+     * Threads blocking on the connects, one per endpoint of a probe.
+     */
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("Main-Server-Probe-", 0).factory());
+
+    /**
+     * The latest probe, null before the first.
+     */
+    private CompletableFuture<Boolean> probe;
+
+    /**
+     * The last answer, true when the network is down.
+     */
+    private boolean lastDown;
+
+    /**
+     * Time of the last answer in milliseconds, zero when there is none or
+     * it was invalidated.
+     */
+    private long answeredAt;
+
+    /**
+     * Hash of the interface addresses at the last check.
+     */
+    private int interfaces;
+
+    /**
+     * The periodic interface check, null until the first probe.
+     */
+    private TimingWheel.Timeout interfaceCheck;
+
+    /**
+     * Whether the prober was closed.
+     */
+    private boolean closed;
+
+    /**
+     * Creates a prober.
+     *
+     * @param endpoints the endpoints connected to
+     * @param connectTimeoutMillis the connect timeout of one endpoint
+     * @param ttl how long an answer is kept in milliseconds
+     * @param wait how long a caller waits for an unknown answer
+     * @param timingWheel the wheel checking the network interfaces
+     */
+    public MainServerProber(final List<InetSocketAddress> endpoints, final int connectTimeoutMillis,
+            final long ttl, final long wait, final TimingWheel timingWheel) {
+        this.targets = List.copyOf(endpoints);
+        this.connectTimeout = connectTimeoutMillis;
+        this.ttlMillis = ttl;
+        this.waitMillis = wait;
+        this.timer = timingWheel;
+    }
+
+    /**
+     * Function to create the prober of the public DNS servers configured by
+     * the {@value #TTL_PROPERTY} and {@value #WAIT_PROPERTY} system
+     * properties.
+     *
+     * @return the prober
+     */
+    static MainServerProber fromSystemProperty() {
+        final List<InetSocketAddress> endpoints = new ArrayList<>();
+        for (String server : DNS_SERVERS) {
+            for (int port : PORTS) {
+                endpoints.add(new InetSocketAddress(server, port));
+            }
+        }
+        return new MainServerProber(endpoints, DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                Long.getLong(TTL_PROPERTY, DEFAULT_TTL_MILLIS), Long.getLong(WAIT_PROPERTY, DEFAULT_WAIT_MILLIS),
+                TimingWheel.getTimingWheel());
+    }
+
+    /**
+     * Function to get how long an answer is kept.
+     *
+     * @return the time to live in milliseconds
+     */
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * Function to get how long a caller waits for an unknown answer.
+     *
+     * @return the wait in milliseconds
+     */
+    public long getWaitMillis() {
+        return waitMillis;
+    }
+
+    /**
+     * Function to check whether the network is down, answering from the
+     * last probe when it is recent and waiting a bounded time otherwise.
+     *
+     * @return true if every endpoint was unreachable, false otherwise
+     */
+    public boolean isNetworkDown() {
+        final CompletableFuture<Boolean> result = probe();
+        try {
+            return result.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            LOG.info("Network probe still running, answering from the last probe...");
+        } catch (ExecutionException ex) {
+            LOG.error("Network probe failed", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return lastAnswer();
+    }
+
+    /**
+     * Function to get the answer of the latest probe, starting a new probe
+     * when the last answer expired.
+     *
+     * @return completes with true if every endpoint was unreachable
+     */
+    public synchronized CompletableFuture<Boolean> probe() {
+        if (closed) {
+            return CompletableFuture.completedFuture(lastDown);
+        }
+        if (interfaceCheck == null) {
+            interfaceCheck = timer.scheduleAtFixedRate(this::checkInterfaces, INTERFACE_CHECK_MILLIS);
+        }
+        final boolean fresh = answeredAt != 0 && System.currentTimeMillis() - answeredAt < ttlMillis;
+        if (probe != null && (fresh || !probe.isDone())) {
+            return probe;
+        }
+        probe = race();
+        return probe;
+    }
+
+    /**
+     * Function to drop the last answer and probe again, called when the
+     * network may have changed.
+     */
+    public synchronized void networkChanged() {
+        answeredAt = 0;
+        if (closed || probe == null) {
+            return;
+        }
+        LOG.info("Network changed, probing again...");
+        if (probe.isDone()) {
+            probe = race();
+        }
+    }
+
+    /**
+     * Function to stop probing.
+     */
+    public synchronized void close() {
+        closed = true;
+        if (interfaceCheck != null) {
+            interfaceCheck.cancel();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Function to get the last answer, the network is taken as up before
+     * the first.
+     *
+     * @return true if the last probe found the network down
+     */
+    private synchronized boolean lastAnswer() {
+        return lastDown;
+    }
+
+    /**
+     * Function to connect to every endpoint at once. The sockets are made
+     * on the calling thread and connected on their own threads, the first
+     * connect that succeeds closes the others.
+     *
+     * @return completes with true once every connect failed, with false on
+     *         the first success
+     */
+    private CompletableFuture<Boolean> race() {
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        final List<Socket> sockets = new ArrayList<>(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            sockets.add(new Socket());
+        }
+        final AtomicInteger failures = new AtomicInteger();
+        try {
+            for (int i = 0; i < targets.size(); i++) {
+                final Socket socket = sockets.get(i);
+                final InetSocketAddress target = targets.get(i);
+                executor.execute(() -> connect(socket, target, sockets, failures, result));
+            }
+        } catch (RejectedExecutionException ex) {
+            finish(result, lastAnswer());
+        }
+        return result;
+    }
+
+    /**
+     * Function to connect to one endpoint of a probe.
+     *
+     * @param socket the socket to connect
+     * @param target the endpoint
+     * @param sockets every socket of the probe
+     * @param failures the connects of the probe that failed
+     * @param result the answer of the probe
+     */
+    private void connect(final Socket socket, final InetSocketAddress target, final List<Socket> sockets,
+            final AtomicInteger failures, final CompletableFuture<Boolean> result) {
+        try (Socket probeSocket = socket) {
+            probeSocket.connect(target, connectTimeout);
+            if (finish(result, false)) {
+                LOG.info("Network probe reached " + target);
+                for (Socket other : sockets) {
+                    closeQuietly(other);
+                }
+            }
+        } catch (IOException ex) {
+            if (failures.incrementAndGet() == sockets.size() && finish(result, true)) {
+                LOG.warn("Network probe reached none of " + sockets.size() + " endpoints");
+            }
+        }
+    }
+
+    /**
+     * Function to keep the answer of a probe and complete it, unless it
+     * already has an answer.
+     *
+     * @param result the probe
+     * @param down true if the network was found down
+     * @return true if this call answered the probe
+     */
+    private synchronized boolean finish(final CompletableFuture<Boolean> result, final boolean down) {
+        if (result.isDone()) {
+            return false;
+        }
+        lastDown = down;
+        answeredAt = System.currentTimeMillis();
+        return result.complete(down);
+    }
+
+    /**
+     * Function to probe again when the addresses of the network interfaces
+     * changed since the last check. Runs on the probe threads as listing
+     * the interfaces may block.
+     */
+    private void checkInterfaces() {
+        try {
+            executor.execute(() -> {
+                final int current = interfaceHash();
+                final boolean changed;
+                synchronized (this) {
+                    changed = interfaces != 0 && interfaces != current;
+                    interfaces = current;
+                }
+                if (changed) {
+                    networkChanged();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // closed meanwhile
+        }
+    }
+
+    /**
+     * Function to hash the addresses of the interfaces that are up.
+     *
+     * @return the hash, zero when the interfaces cannot be listed
+     */
+    private static int interfaceHash() {
+        int hash = 0;
+        try {
+            final Enumeration<NetworkInterface> all = NetworkInterface.getNetworkInterfaces();
+            while (all != null && all.hasMoreElements()) {
+                final NetworkInterface networkInterface = all.nextElement();
+                if (!networkInterface.isUp() || networkInterface.isLoopback()) {
+                    continue;
+                }
+                final Enumeration<InetAddress> addresses = networkInterface.getInetAddresses();
+                while (addresses.hasMoreElements()) {
+                    hash += addresses.nextElement().hashCode();
+                }
+            }
+        } catch (SocketException ex) {
+            LOG.warn("Could not list the network interfaces...");
+        }
+        return hash;
+    }
+
+    /**
+     * Function to close a socket ignoring errors.
+     *
+     * @param socket the socket
+     */
+    private static void closeQuietly(final Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            // closing only aborts the connect
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: ModuleDispatcher.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.swe.core.logging.SweLogger;
+import com.swe.core.logging.SweLoggerFactory;
+import com.swe.core.metrics.MetricsRegistry;
+
+/**
+ * Hands received messages to the subscribers off the receive threads.
+ * Every module gets its own single thread with a bounded queue, so a slow
+ * subscriber such as the screen share decoder only backs up its own queue
+ * and chat or control messages keep flowing. Messages of a module are
+ * delivered in the order they arrived. What happens when a queue is full
+ * is the {@link OverloadPolicy} of the module. When dispatching is off
+ * every message is delivered on the calling thread as before.
+ */
+final class ModuleDispatcher {
+
+    /**
+     * System property turning dispatching onto the module threads on.
+     */
+    static final String DISPATCH_PROPERTY = "swecomm.network.dispatch";
+
+    /**
+     * System property holding the number of messages a module may have
+     * waiting.
+     */
+    static final String CAPACITY_PROPERTY = "swecomm.network.dispatch.capacity";
+
+    /**
+     * Prefix of the system properties overriding the policy of a module,
+     * followed by the lower case module name.
+     */
+    static final String POLICY_PROPERTY_PREFIX = "swecomm.network.dispatch.policy.";
+
+    /**
+     * Default number of messages a module may have waiting.
+     */
+    static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * Number of module ids the header can carry.
+     */
+    private static final int MODULE_COUNT = 16;
+
+    /**
+     * The logger for the module.
+     */
+    private static final SweLogger LOG = SweLoggerFactory.getLogger("NETWORKING");
+
+    /**
+     * What a full module queue does with the next message.
+     */
+    enum OverloadPolicy {
+        /** Wait for room, holding up the receive thread, nothing is lost. */
+        BLOCK,
+        /** Discard the oldest waiting message to make room. */
+        DROP_OLDEST,
+        /** Discard the new message. */
+        DROP_NEWEST
+    }
+
+    /**
+     * Whether messages are dispatched onto the module threads.
+     */
+    private final boolean enabled;
+
+    /**
+     * Number of messages a module may have waiting.
+     */
+    private final int capacity;
+
+    /**
+     * The executor of each module, created on its first message.
+     */
+    private final ThreadPoolExecutor[] executors = new ThreadPoolExecutor[MODULE_COUNT];
+
+    /**
+     * The overload policy of each module.
+     */
+    private final OverloadPolicy[] policies = new OverloadPolicy[MODULE_COUNT];
+
+    /**
+     * Messages discarded per module because its queue was full.
+     */
+    private final AtomicLong[] dropped = new AtomicLong[MODULE_COUNT];
+
+    /**
+     * Creates a dispatcher with the default policy of every module.
+     *
+     * @param dispatch true to deliver on the module threads
+     * @param queueCapacity the number of messages a module may have waiting
+     */
+    ModuleDispatcher(final boolean dispatch, final int queueCapacity) {
+        this.enabled = dispatch;
+        this.capacity = Math.max(1, queueCapacity);
+        for (int module = 0; module < MODULE_COUNT; module++) {
+            policies[module] = defaultPolicy(module);
+            dropped[module] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Function to create the dispatcher configured by the
+     * {@value #DISPATCH_PROPERTY}, {@value #CAPACITY_PROPERTY} and
+     * {@value #POLICY_PROPERTY_PREFIX} system properties, reporting the
+     * queue depths and drops of every module in the shared registry.
+     *
+     * @return the dispatcher
+     */
+    static ModuleDispatcher fromSystemProperty() {
+        final ModuleDispatcher dispatcher = new ModuleDispatcher(Boolean.getBoolean(DISPATCH_PROPERTY),
+                Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+        final MetricsRegistry registry = MetricsRegistry.getMetricsRegistry();
+        for (ModuleType type : ModuleType.values()) {
+            final int module = type.ordinal();
+            final String name = MetricsRegistry.name(type);
+            final String override = System.getProperty(POLICY_PROPERTY_PREFIX + name);
+            if (override != null) {
+                dispatcher.setPolicy(module, OverloadPolicy.valueOf(override.toUpperCase(Locale.ROOT)));
+            }
+            registry.gauge("networking.dispatch.depth." + name, () -> dispatcher.getQueueDepth(module));
+            registry.gauge("networking.dispatch.dropped." + name, () -> dispatcher.getDropped(module));
+        }
+        return dispatcher;
+    }
+
+    /**
+     * Function to get the policy a module starts with. Screen share frames
+     * are superseded by the next one so the oldest is dropped. Chat saves
+     * received files on its thread, and a slow save must not hold up the
+     * receive thread and with it every socket, so new chat messages are
+     * dropped while its queue is full. Every other module carries state
+     * changes that must all arrive and waits.
+     *
+     * @param module the module id
+     * @return the policy
+     */
+    static OverloadPolicy defaultPolicy(final int module) {
+        if (module == ModuleType.SCREENSHARING.ordinal()) {
+            return OverloadPolicy.DROP_OLDEST;
+        }
+        if (module == ModuleType.CHAT.ordinal()) {
+            return OverloadPolicy.DROP_NEWEST;
+        }
+        return OverloadPolicy.BLOCK;
+    }
+
+    /**
+     * Function to check whether messages are dispatched onto the module
+     * threads.
+     *
+     * @return true if dispatching is on
+     */
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Function to set the overload policy of a module. Takes effect for
+     * modules that have not received a message yet.
+     *
+     * @param module the module id
+     * @param policy the policy
+     */
+    synchronized void setPolicy(final int module, final OverloadPolicy policy) {
+        policies[module & (MODULE_COUNT - 1)] = policy;
+    }
+
+    /**
+     * Function to get the overload policy of a module.
+     *
+     * @param module the module id
+     * @return the policy
+     */
+    synchronized OverloadPolicy getPolicy(final int module) {
+        return policies[module & (MODULE_COUNT - 1)];
+    }
+
+    /**
+     * Function to deliver a message of a module, on the module thread when
+     * dispatching is on and on the calling thread otherwise.
+     *
+     * @param module the module id
+     * @param delivery the call of the subscriber
+     */
+    void dispatch(final int module, final Runnable delivery) {
+        if (!enabled) {
+            delivery.run();
+            return;
+        }
+        executorFor(module & (MODULE_COUNT - 1)).execute(() -> {
+            try {
+                delivery.run();
+            } catch (RuntimeException ex) {
+                LOG.error("Subscriber of module " + module + " failed", ex);
+            }
+        });
+    }
+
+    /**
+     * Function to get the number of messages a module has waiting.
+     *
+     * @param module the module id
+     * @return the queue depth
+     */
+    int getQueueDepth(final int module) {
+        final ThreadPoolExecutor executor = existingExecutor(module & (MODULE_COUNT - 1));
+        if (executor == null) {
+            return 0;
+        }
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Function to get the messages of a module discarded because its queue
+     * was full.
+     *
+     * @param module the module id
+     * @return the dropped message count
+     */
+    long getDropped(final int module) {
+        return dropped[module & (MODULE_COUNT - 1)].get();
+    }
+
+    /**
+     * Function to stop the module threads once their queues are delivered.
+     */
+    synchronized void shutdown() {
+        for (ThreadPoolExecutor executor : executors) {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Function to get the executor of a module if it exists.
+     *
+     * @param module the module id
+     * @return the executor, null before the first message
+     */
+    private synchronized ThreadPoolExecutor existingExecutor(final int module) {
+        return executors[module];
+    }
+
+    /**
+     * Function to get the executor of a module, creating it on the first
+     * message.
+     *
+     * @param module the module id
+     * @return the executor
+     */
+    private synchronized ThreadPoolExecutor executorFor(final int module) {
+        if (executors[module] == null) {
+            String name = String.valueOf(module);
+            if (module < ModuleType.values().length) {
+                name = ModuleType.values()[module].name();
+            }
+            final String threadName = "Dispatch-" + name;
+            executors[module] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(capacity), runnable -> {
+                        final Thread thread = new Thread(runnable, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    }, overloadHandler(policies[module], dropped[module]));
+        }
+        return executors[module];
+    }
+
+    /**
+     * Function to build the handler applying a policy to a full queue.
+     *
+     * @param policy the policy
+     * @param drops the counter of discarded messages
+     * @return the handler
+     */
+    private static RejectedExecutionHandler overloadHandler(final OverloadPolicy policy, final AtomicLong drops) {
+        return (task, executor) -> {
+            if (executor.isShutdown()) {
+                drops.incrementAndGet();
+                return;
+            }
+            switch (policy) {
+                case BLOCK:
+                    try {
+                        executor.getQueue().put(task);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        drops.incrementAndGet();
+                    }
+                    break;
+                case DROP_OLDEST:
+                    if (executor.getQueue().poll() != null) {
+                        drops.incrementAndGet();
+                    }
+                    executor.execute(task);
+                    break;
+                default:
+                    drops.incrementAndGet();
+                    break;
+            }
+        };
+    }
+}
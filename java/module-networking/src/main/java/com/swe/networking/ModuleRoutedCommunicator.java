@@ -0,0 +1,293 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: ModuleRoutedCommunicator.java
+ *  Owner: Loganath
+ *  Roll Number : 112201016
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SocketChannel;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.swe.core.ClientNode;
+import com.swe.core.logging.SweLogger;
+import com.swe.core.logging.SweLoggerFactory;
+
+/**
+ * Communicator that sends the packets of chosen modules over a datagram
+ * protocol and everything else over a reliable one. Packets received on the
+ * datagram side are read by their own thread and handed to the listener on
+ * the thread receiving from the reliable side, so handlers still see one
+ * packet at a time.
+ */
+public final class ModuleRoutedCommunicator implements ProtocolBase {
+
+    /**
+     * System property listing the modules sent over UDP, comma separated
+     * {@link ModuleType} names. Empty or unset keeps everything on TCP.
+     */
+    public static final String UDP_MODULES_PROPERTY = "swecomm.network.udp.modules";
+
+    /**
+     * System property choosing the reliable transport, {@code nio} (default)
+     * for the selector based {@link TCPCommunicator} or {@code virtual} for
+     * the {@link VirtualThreadCommunicator}.
+     */
+    public static final String TRANSPORT_PROPERTY = "swecomm.network.transport";
+
+    /**
+     * System property with the UDP FEC group size, 0 disables FEC.
+     */
+    public static final String UDP_FEC_PROPERTY = "swecomm.network.udp.fec";
+
+    /**
+     * Default UDP FEC group size.
+     */
+    public static final int DEFAULT_FEC_GROUP = 4;
+
+    /**
+     * Milliseconds a message of a UDP module may wait for lost chunks.
+     */
+    public static final long UDP_MESSAGE_DEADLINE_MILLIS = 500;
+
+    /**
+     * Logger for this class.
+     */
+    private static final SweLogger LOG = SweLoggerFactory.getLogger("NETWORKING");
+
+    /**
+     * Number of module ids the header can carry.
+     */
+    private static final int MODULE_COUNT = 16;
+
+    /**
+     * The protocol for every module not routed to the datagram side.
+     */
+    private final ProtocolBase reliable;
+
+    /**
+     * The protocol for the routed modules.
+     */
+    private final ProtocolBase datagram;
+
+    /**
+     * Whether each module is routed to the datagram side.
+     */
+    private final boolean[] routed = new boolean[MODULE_COUNT];
+
+    /**
+     * Packets read from the datagram side, waiting for the receive thread.
+     */
+    private final Queue<ReceivePacket> inbox = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Per thread view used to read the module of outgoing packets.
+     */
+    private final ThreadLocal<PacketView> view = ThreadLocal.withInitial(PacketView::new);
+
+    /**
+     * Thread reading the datagram side.
+     */
+    private final Thread datagramThread;
+
+    /**
+     * Whether the communicator is open.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Creates a communicator routing the given modules to the datagram side.
+     *
+     * @param reliableProtocol the protocol for the other modules
+     * @param datagramProtocol the protocol for the routed modules
+     * @param modules the routed modules
+     */
+    public ModuleRoutedCommunicator(final ProtocolBase reliableProtocol, final ProtocolBase datagramProtocol,
+            final ModuleType... modules) {
+        this.reliable = reliableProtocol;
+        this.datagram = datagramProtocol;
+        for (ModuleType module : modules) {
+            routed[module.ordinal()] = true;
+        }
+        datagramThread = new Thread(this::receiveDatagrams, "Datagram-Receive-Thread");
+        datagramThread.setDaemon(true);
+        datagramThread.start();
+    }
+
+    /**
+     * Function to create the communicator of a device port. Modules listed
+     * in the {@value #UDP_MODULES_PROPERTY} system property go over UDP with
+     * the FEC group of {@value #UDP_FEC_PROPERTY}, and their partial
+     * messages are given up after {@link #UDP_MESSAGE_DEADLINE_MILLIS}.
+     * Without the property the reliable protocol chosen by
+     * {@value #TRANSPORT_PROPERTY} is returned on its own.
+     *
+     * @param port the device port, used by both protocols
+     * @return the communicator
+     */
+    public static ProtocolBase forPort(final int port) {
+        final String names = System.getProperty(UDP_MODULES_PROPERTY, "").trim();
+        if (names.isEmpty()) {
+            return reliableForPort(port);
+        }
+        final String[] parts = names.split(",");
+        final ModuleType[] modules = new ModuleType[parts.length];
+        final ChunkManager chunkManager = ChunkManager.getChunkManager(PacketParser.getHeaderSize());
+        for (int i = 0; i < parts.length; i++) {
+            modules[i] = ModuleType.valueOf(parts[i].trim().toUpperCase(Locale.ROOT));
+            chunkManager.setMessageDeadline(modules[i].ordinal(), UDP_MESSAGE_DEADLINE_MILLIS);
+        }
+        final int fecGroup = Integer.getInteger(UDP_FEC_PROPERTY, DEFAULT_FEC_GROUP);
+        LOG.info("Sending " + names + " over UDP with FEC group " + fecGroup + "...");
+        return new ModuleRoutedCommunicator(reliableForPort(port), new UDPCommunicator(port, fecGroup), modules);
+    }
+
+    /**
+     * Function to create the reliable protocol of a device port selected by
+     * the {@value #TRANSPORT_PROPERTY} system property.
+     *
+     * @param port the device port
+     * @return the protocol
+     */
+    public static ProtocolBase reliableForPort(final int port) {
+        final String transport = System.getProperty(TRANSPORT_PROPERTY, "nio").trim().toLowerCase(Locale.ROOT);
+        if ("virtual".equals(transport)) {
+            LOG.info("Using virtual thread transport at " + port + "...");
+            return new VirtualThreadCommunicator(port);
+        }
+        return new TCPCommunicator(port);
+    }
+
+    /**
+     * Function to choose the protocol of a packet from its module.
+     *
+     * @param header a buffer starting with the packet header
+     * @return the protocol
+     */
+    private ProtocolBase route(final ByteBuffer header) {
+        if (header.remaining() < PacketParser.getHeaderSize()) {
+            return reliable;
+        }
+        if (routed[view.get().wrapHeader(header).getModule()]) {
+            return datagram;
+        }
+        return reliable;
+    }
+
+    @Override
+    public void sendData(final byte[] data, final ClientNode dest) {
+        route(ByteBuffer.wrap(data)).sendData(data, dest);
+    }
+
+    @Override
+    public void sendData(final ByteBuffer[] parts, final ClientNode dest) {
+        route(parts[0]).sendData(parts, dest);
+    }
+
+    /**
+     * Function to hand the packets read from the datagram side to the
+     * listener, then receive from the reliable side.
+     *
+     * @param listener the listener called once per complete packet
+     * @return true if any data was received
+     */
+    @Override
+    public boolean receiveFrames(final FrameListener listener) {
+        boolean received = false;
+        ReceivePacket packet = inbox.poll();
+        while (packet != null) {
+            received = true;
+            listener.onFrame(packet.sender(), ByteBuffer.wrap(packet.data()));
+            packet = inbox.poll();
+        }
+        return reliable.receiveFrames(listener) || received;
+    }
+
+    /**
+     * Function run by the datagram thread, copying every packet into the
+     * inbox and waking the receive thread.
+     */
+    private void receiveDatagrams() {
+        while (running) {
+            try {
+                final boolean received = datagram.receiveFrames((sender, frame) -> {
+                    final byte[] data = new byte[frame.remaining()];
+                    frame.get(data);
+                    inbox.add(new ReceivePacket(sender, data));
+                });
+                if (received) {
+                    reliable.wakeup();
+                }
+            } catch (ClosedSelectorException ex) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public ReceivePacket receiveData() {
+        return reliable.receiveData();
+    }
+
+    @Override
+    public SocketChannel openSocket() {
+        return reliable.openSocket();
+    }
+
+    @Override
+    public void printKeys() {
+        reliable.printKeys();
+        datagram.printKeys();
+    }
+
+    @Override
+    public void closeSocket(final ClientNode client) {
+        reliable.closeSocket(client);
+        datagram.closeSocket(client);
+    }
+
+    @Override
+    public void preconnect(final ClientNode dest) {
+        reliable.preconnect(dest);
+    }
+
+    @Override
+    public int getQueueDepth(final ClientNode client) {
+        return reliable.getQueueDepth(client);
+    }
+
+    @Override
+    public long getBytesInFlight(final ClientNode client) {
+        return reliable.getBytesInFlight(client);
+    }
+
+    @Override
+    public long getDroppedPackets(final ClientNode client) {
+        return reliable.getDroppedPackets(client);
+    }
+
+    @Override
+    public long getWriteCalls(final ClientNode client) {
+        return reliable.getWriteCalls(client);
+    }
+
+    @Override
+    public void wakeup() {
+        reliable.wakeup();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        datagram.close();
+        reliable.close();
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: MulticastTree.java
+ *  Owner: Hemanth
+ *  Roll Number : 112201024
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Spanning tree over the cluster servers used to forward broadcasts. The
+ * servers are laid out as a heap in cluster order, rooted at the main
+ * server, so every server has at most {@code fanout} children and the tree
+ * only depends on the server list every device already shares. A server
+ * joining adds one leaf and leaves every other link in place. A relayed
+ * broadcast carries its origin cluster server in the address field, and
+ * each server forwards it to its tree neighbours except the one leading
+ * back to the origin, so every server receives one copy.
+ */
+public final class MulticastTree {
+
+    /**
+     * System property enabling tree forwarding of broadcasts. Every device
+     * of a meeting must use the same setting.
+     */
+    public static final String TREE_PROPERTY = "swecomm.network.broadcast.tree";
+
+    /**
+     * System property with the most children of a server in the tree.
+     */
+    public static final String FANOUT_PROPERTY = "swecomm.network.broadcast.fanout";
+
+    /**
+     * Default most children of a server in the tree.
+     */
+    public static final int DEFAULT_FANOUT = 3;
+
+    /**
+     * Number of relayed chunks remembered to drop duplicates.
+     */
+    private static final int SEEN_CAPACITY = 8192;
+
+    /**
+     * The most children of a server.
+     */
+    private final int fanout;
+
+    /**
+     * The current layout of the tree.
+     */
+    private volatile Layout layout = new Layout(new ArrayList<>());
+
+    /**
+     * Recently relayed chunks, oldest first.
+     */
+    private final Map<SeenKey, Boolean> seen = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<SeenKey, Boolean> eldest) {
+            return size() > SEEN_CAPACITY;
+        }
+    };
+
+    /**
+     * Number of copies sent to other servers.
+     */
+    private final AtomicLong copiesSent = new AtomicLong();
+
+    /**
+     * Number of duplicate chunks dropped.
+     */
+    private final AtomicLong duplicatesDropped = new AtomicLong();
+
+    /**
+     * Number of times the layout was rebuilt.
+     */
+    private final AtomicLong rebuilds = new AtomicLong();
+
+    /**
+     * Creates a tree with the given fanout.
+     *
+     * @param maxChildren the most children of a server
+     */
+    public MulticastTree(final int maxChildren) {
+        if (maxChildren < 1) {
+            throw new IllegalArgumentException("Fanout must be positive");
+        }
+        this.fanout = maxChildren;
+    }
+
+    /**
+     * Function to create a tree with the fanout of the
+     * {@value #FANOUT_PROPERTY} system property.
+     *
+     * @return the tree
+     */
+    public static MulticastTree fromSystemProperty() {
+        return new MulticastTree(Integer.getInteger(FANOUT_PROPERTY, DEFAULT_FANOUT));
+    }
+
+    /**
+     * Function to check whether broadcasts are forwarded along the tree.
+     *
+     * @return true if the {@value #TREE_PROPERTY} system property is set
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(TREE_PROPERTY);
+    }
+
+    /**
+     * Function to get the servers a relayed broadcast is forwarded to.
+     *
+     * @param servers the cluster servers in cluster order
+     * @param self this server
+     * @param origin the server the broadcast entered the tree at
+     * @return the tree neighbours of this server except the one towards
+     *         the origin
+     */
+    public List<ClientNode> forwardTargets(final List<ClientNode> servers, final ClientNode self,
+            final ClientNode origin) {
+        final Layout current = layoutFor(servers);
+        final List<ClientNode> targets = new ArrayList<>();
+        final Integer position = current.positions.get(self);
+        if (position == null) {
+            return targets;
+        }
+        final Integer originPosition = current.positions.get(origin);
+        int exclude = -1;
+        if (originPosition != null && originPosition != position.intValue()) {
+            exclude = nextHop(position, originPosition);
+        }
+        if (position > 0 && parent(position) != exclude) {
+            targets.add(current.servers.get(parent(position)));
+        }
+        final int first = position * fanout + 1;
+        final int end = Math.min(first + fanout, current.servers.size());
+        for (int child = first; child < end; child++) {
+            if (child != exclude) {
+                targets.add(current.servers.get(child));
+            }
+        }
+        copiesSent.addAndGet(targets.size());
+        return targets;
+    }
+
+    /**
+     * Function to get the parent position of a server.
+     *
+     * @param position the position of the server
+     * @return the position of its parent
+     */
+    private int parent(final int position) {
+        return (position - 1) / fanout;
+    }
+
+    /**
+     * Function to get the neighbour of a server on the path to another.
+     *
+     * @param position the position of the server
+     * @param target the position of the other server
+     * @return the position of the neighbour
+     */
+    private int nextHop(final int position, final int target) {
+        int node = target;
+        while (node > position) {
+            final int up = parent(node);
+            if (up == position) {
+                return node;
+            }
+            node = up;
+        }
+        return parent(position);
+    }
+
+    /**
+     * Function to get the layout of a server list, rebuilding it only when
+     * the servers changed.
+     *
+     * @param servers the cluster servers in cluster order
+     * @return the layout
+     */
+    private Layout layoutFor(final List<ClientNode> servers) {
+        final Layout current = layout;
+        if (current.source == servers || current.servers.equals(servers)) {
+            return current;
+        }
+        final Layout rebuilt = new Layout(servers);
+        rebuilds.incrementAndGet();
+        layout = rebuilt;
+        return rebuilt;
+    }
+
+    /**
+     * Function to record a relayed chunk and check whether it is new.
+     *
+     * @param origin the server the broadcast entered the tree at
+     * @param view the view over the relayed packet
+     * @return true the first time the chunk is seen
+     */
+    public boolean firstSeen(final ClientNode origin, final PacketView view) {
+        final CRC32 crc = new CRC32();
+        crc.update(view.payload());
+        final SeenKey key = new SeenKey(origin, view.getMessageId(), view.getChunkNum(), crc.getValue());
+        synchronized (seen) {
+            if (seen.put(key, Boolean.TRUE) == null) {
+                return true;
+            }
+        }
+        duplicatesDropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Function to make the tree relay copy of a broadcast entering the tree
+     * at this server.
+     *
+     * @param packet the broadcast packet
+     * @param origin this server
+     * @return the relay copy
+     * @throws UnknownHostException when the origin cannot be resolved
+     */
+    public static byte[] relayCopy(final byte[] packet, final ClientNode origin) throws UnknownHostException {
+        return relayCopy(new PacketView().wrap(packet), origin, new PacketView());
+    }
+
+    /**
+     * Function to make the tree relay copy of a broadcast entering the tree
+     * at this server, writing its header through a reused view.
+     *
+     * @param packet the view over the broadcast packet
+     * @param origin this server
+     * @param copyView the view pointed at the copy
+     * @return the relay copy
+     * @throws UnknownHostException when the origin cannot be resolved
+     */
+    public static byte[] relayCopy(final PacketView packet, final ClientNode origin, final PacketView copyView)
+            throws UnknownHostException {
+        final byte[] relay = packet.copyPacket();
+        copyView.wrap(relay);
+        copyView.setType(NetworkType.OTHERCLUSTER.ordinal());
+        copyView.setBroadcast(1);
+        copyView.setTreeRelay(1);
+        copyView.setIpAddress(ByteBuffer.wrap(InetAddress.getByName(origin.hostName()).getAddress()).getInt());
+        copyView.setPortNum(origin.port());
+        return relay;
+    }
+
+    /**
+     * Function to make the copy of a relayed broadcast delivered inside a
+     * cluster.
+     *
+     * @param packet the relayed packet
+     * @return the copy for the cluster
+     */
+    public static byte[] clusterCopy(final byte[] packet) {
+        return clusterCopy(packet, new PacketView());
+    }
+
+    /**
+     * Function to make the copy of a relayed broadcast delivered inside a
+     * cluster, writing its header through a reused view.
+     *
+     * @param packet the relayed packet
+     * @param copyView the view pointed at the copy
+     * @return the copy for the cluster
+     */
+    public static byte[] clusterCopy(final byte[] packet, final PacketView copyView) {
+        final byte[] local = packet.clone();
+        copyView.wrap(local);
+        copyView.setType(NetworkType.USE.ordinal());
+        copyView.setBroadcast(0);
+        copyView.setTreeRelay(0);
+        return local;
+    }
+
+    /**
+     * Function to get the number of copies sent to other servers.
+     *
+     * @return the copy count
+     */
+    public long getCopiesSent() {
+        return copiesSent.get();
+    }
+
+    /**
+     * Function to get the number of duplicate chunks dropped.
+     *
+     * @return the duplicate count
+     */
+    public long getDuplicatesDropped() {
+        return duplicatesDropped.get();
+    }
+
+    /**
+     * Function to get the number of times the tree was rebuilt.
+     *
+     * @return the rebuild count
+     */
+    public long getRebuilds() {
+        return rebuilds.get();
+    }
+
+    /**
+     * Positions of the servers in the heap.
+     */
+    private static final class Layout {
+
+        /**
+         * The list the layout was built from.
+         */
+        private final List<ClientNode> source;
+
+        /**
+         * The servers by position.
+         */
+        private final List<ClientNode> servers;
+
+        /**
+         * The position of every server.
+         */
+        private final Map<ClientNode, Integer> positions = new HashMap<>();
+
+        /**
+         * Creates the layout of a server list.
+         *
+         * @param list the cluster servers in cluster order
+         */
+        Layout(final List<ClientNode> list) {
+            this.source = list;
+            this.servers = List.copyOf(list);
+            for (int i = 0; i < servers.size(); i++) {
+                positions.putIfAbsent(servers.get(i), i);
+            }
+        }
+    }
+
+    /**
+     * Identity of a relayed chunk.
+     *
+     * @param origin the origin server
+     * @param messageId the message id
+     * @param chunkNum the chunk number
+     * @param checksum the payload checksum, telling apart messages of two
+     *        clients of one cluster that reuse an id
+     */
+    private record SeenKey(ClientNode origin, int messageId, int chunkNum, long checksum) {
+    }
+}
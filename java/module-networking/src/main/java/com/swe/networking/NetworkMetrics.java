@@ -0,0 +1,178 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: NetworkMetrics.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import com.swe.core.metrics.Counter;
+import com.swe.core.metrics.LatencyHistogram;
+import com.swe.core.metrics.MetricsRegistry;
+
+/**
+ * Metrics of the networking module in the shared registry. Every counter is
+ * looked up once here and indexed by module and priority, so the send and
+ * receive paths only pay for the counter updates.
+ */
+final class NetworkMetrics {
+
+    /**
+     * Number of module ids the header can carry.
+     */
+    private static final int MODULE_COUNT = 16;
+
+    /**
+     * Number of priorities the header can carry.
+     */
+    private static final int PRIORITY_COUNT = 8;
+
+    /**
+     * The metrics.
+     */
+    private static NetworkMetrics networkMetrics = null;
+
+    /**
+     * Application bytes handed to the module per module and priority.
+     */
+    private final Counter[][] bytesOut = new Counter[MODULE_COUNT][PRIORITY_COUNT];
+
+    /**
+     * Application messages handed to the module per module and priority.
+     */
+    private final Counter[][] messagesOut = new Counter[MODULE_COUNT][PRIORITY_COUNT];
+
+    /**
+     * Packet bytes taken off the send queue per priority.
+     */
+    private final Counter[] packetBytesOut = new Counter[PRIORITY_COUNT];
+
+    /**
+     * Packets taken off the send queue per priority.
+     */
+    private final Counter[] packetsOut = new Counter[PRIORITY_COUNT];
+
+    /**
+     * Chunk bytes received per module.
+     */
+    private final Counter[] bytesIn = new Counter[MODULE_COUNT];
+
+    /**
+     * Chunks received per module.
+     */
+    private final Counter[] packetsIn = new Counter[MODULE_COUNT];
+
+    /**
+     * Messages delivered to the subscribers per module.
+     */
+    private final Counter[] messagesIn = new Counter[MODULE_COUNT];
+
+    /**
+     * Time spent in the subscribers per module.
+     */
+    private final LatencyHistogram[] deliveryNanos = new LatencyHistogram[MODULE_COUNT];
+
+    /**
+     * Creates the metrics.
+     *
+     * @param registry the registry
+     */
+    private NetworkMetrics(final MetricsRegistry registry) {
+        for (int module = 0; module < MODULE_COUNT; module++) {
+            final String name = moduleName(module);
+            for (int priority = 0; priority < PRIORITY_COUNT; priority++) {
+                bytesOut[module][priority] = registry.counter("networking.bytes.out." + name + ".p" + priority);
+                messagesOut[module][priority] = registry.counter("networking.messages.out." + name + ".p"
+                        + priority);
+            }
+            bytesIn[module] = registry.counter("networking.bytes.in." + name);
+            packetsIn[module] = registry.counter("networking.packets.in." + name);
+            messagesIn[module] = registry.counter("networking.messages.in." + name);
+            deliveryNanos[module] = registry.histogram("networking.delivery.nanos." + name);
+        }
+        for (int priority = 0; priority < PRIORITY_COUNT; priority++) {
+            packetBytesOut[priority] = registry.counter("networking.packet.bytes.out.p" + priority);
+            packetsOut[priority] = registry.counter("networking.packets.out.p" + priority);
+        }
+    }
+
+    /**
+     * Function to get the metrics of the shared registry.
+     *
+     * @return the metrics
+     */
+    static synchronized NetworkMetrics getNetworkMetrics() {
+        if (networkMetrics == null) {
+            networkMetrics = new NetworkMetrics(MetricsRegistry.getMetricsRegistry());
+        }
+        return networkMetrics;
+    }
+
+    /**
+     * Function to name a module in metric names.
+     *
+     * @param module the module id
+     * @return the module type name, or the id if it has no type
+     */
+    private static String moduleName(final int module) {
+        final ModuleType[] types = ModuleType.values();
+        if (module < types.length) {
+            return MetricsRegistry.name(types[module]);
+        }
+        return String.valueOf(module);
+    }
+
+    /**
+     * Function to count a message handed to the module.
+     *
+     * @param module the module
+     * @param priority the priority
+     * @param bytes the message length
+     */
+    void recordSend(final int module, final int priority, final int bytes) {
+        final int m = module & (MODULE_COUNT - 1);
+        final int p = priority & (PRIORITY_COUNT - 1);
+        messagesOut[m][p].increment();
+        bytesOut[m][p].add(bytes);
+    }
+
+    /**
+     * Function to count a packet taken off the send queue.
+     *
+     * @param priority the priority
+     * @param bytes the packet length
+     */
+    void recordPacketOut(final int priority, final int bytes) {
+        final int p = priority & (PRIORITY_COUNT - 1);
+        packetsOut[p].increment();
+        packetBytesOut[p].add(bytes);
+    }
+
+    /**
+     * Function to count a chunk received.
+     *
+     * @param module the module
+     * @param bytes the chunk length
+     */
+    void recordPacketIn(final int module, final int bytes) {
+        final int m = module & (MODULE_COUNT - 1);
+        packetsIn[m].increment();
+        bytesIn[m].add(bytes);
+    }
+
+    /**
+     * Function to count a message delivered to a subscriber.
+     *
+     * @param module the module
+     * @param startNanos the time the delivery started
+     */
+    void recordDelivery(final int module, final long startNanos) {
+        final int m = module & (MODULE_COUNT - 1);
+        messagesIn[m].increment();
+        deliveryNanos[m].recordSince(startNanos);
+    }
+}
@@ -16,7 +16,6 @@ import java.util.HashMap;
 import java.util.Map;
 
 import com.swe.core.ClientNode;
-import com.swe.core.RPCinterface.AbstractRPC;
 import com.swe.core.logging.SweLogger;
 import com.swe.core.logging.SweLoggerFactory;
 
@@ -51,7 +50,13 @@ public class NetworkRPC {
      */
     private static Networking networking;
 
+    /**
+     * Variable to store the batcher handing received data to the frontend.
+     */
+    private final FrontendBatcher frontendBatcher;
+
     private NetworkRPC() {
+        frontendBatcher = FrontendBatcher.fromSystemProperty(() -> networking.getRPC());
         LOG.info("Network RPC...");
     }
 
@@ -123,14 +128,7 @@ public class NetworkRPC {
         final ByteBuffer buffer = ByteBuffer.wrap(args);
         final int module = buffer.getInt();
 
-        networking.subscribe(module, (byte[] data) -> {
-            final int bufferSize = data.length + Integer.BYTES;
-            final ByteBuffer callBuffer = ByteBuffer.allocate(bufferSize);
-            callBuffer.putInt(module);
-            callBuffer.put(data);
-            final AbstractRPC rpc = networking.getRPC();
-            rpc.call("networkFrontCallSubscriber", callBuffer.array());
-        });
+        networking.subscribe(module, (byte[] data) -> frontendBatcher.submit(module, data));
 
         LOG.info("Added subscription for module " + module + " ...");
         return null;
@@ -191,6 +189,7 @@ public class NetworkRPC {
      * @return null for matching rpc arguments
      */
     public byte[] networkRPCCloseNetworking(final byte[] args) {
+        frontendBatcher.flushAll();
         networking.closeNetworking();
         return null;
     }
@@ -13,7 +13,6 @@ package com.swe.networking;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import com.swe.core.ClientNode;
@@ -33,6 +32,12 @@ public class NetworkSerializer {
      */
     private static NetworkSerializer serializer = null;
 
+    /**
+     * Epoch of changes and structures not issued by the main server, which
+     * are applied as they arrive.
+     */
+    public static final long UNVERSIONED = 0;
+
     /**
      * Constructor class network serializer class.
      */
@@ -139,29 +144,55 @@ public class NetworkSerializer {
     }
 
     /**
-     * Function to deserialize ClientNode.
+     * Function to serialize a network structure without an epoch.
      *
      * @param structure the data to serialize
      * @return the serialized object
      */
     public byte[] serializeNetworkStructure(final NetworkStructure structure) {
-        // Assume maximum 80 clients in 8 clusters
-        // 1 Client -> max 10 bytes total -> 800 bytes
-        final int bufferSize = 2000;
+        return serializeNetworkStructure(structure, UNVERSIONED);
+    }
+
+    /**
+     * Function to serialize a network structure with the epoch it was taken
+     * at. Counts are ints and host names carry a two byte length, so the
+     * size only depends on the network.
+     *
+     * @param structure the data to serialize
+     * @param epoch the topology epoch of the structure
+     * @return the serialized object
+     */
+    public byte[] serializeNetworkStructure(final NetworkStructure structure, final long epoch) {
+        final List<byte[]> hosts = new ArrayList<>();
+        int bufferSize = Long.BYTES + Integer.BYTES + Integer.BYTES;
+        for (List<ClientNode> cluster : structure.clusters()) {
+            bufferSize += Integer.BYTES;
+            for (ClientNode client : cluster) {
+                final byte[] host = client.hostName().getBytes(StandardCharsets.UTF_8);
+                hosts.add(host);
+                bufferSize += Short.BYTES + host.length + Integer.BYTES;
+            }
+        }
+        for (ClientNode server : structure.servers()) {
+            final byte[] host = server.hostName().getBytes(StandardCharsets.UTF_8);
+            hosts.add(host);
+            bufferSize += Short.BYTES + host.length + Integer.BYTES;
+        }
         final ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
-        buffer.put((byte) structure.clusters().size());
-        for (List<ClientNode> clusters : structure.clusters()) {
-            buffer.put((byte) clusters.size());
-            for (ClientNode client : clusters) {
-                buffer.put(serializeClientNode(client));
+        buffer.putLong(epoch);
+        buffer.putInt(structure.clusters().size());
+        int next = 0;
+        for (List<ClientNode> cluster : structure.clusters()) {
+            buffer.putInt(cluster.size());
+            for (ClientNode client : cluster) {
+                putClient(buffer, hosts.get(next++), client.port());
             }
         }
-        buffer.put((byte) structure.servers().size());
+        buffer.putInt(structure.servers().size());
         for (ClientNode server : structure.servers()) {
-            buffer.put(serializeClientNode(server));
+            putClient(buffer, hosts.get(next++), server.port());
         }
-        final byte[] data = Arrays.copyOf(buffer.array(), buffer.position());
-        return data;
+        return buffer.array();
     }
 
     /**
@@ -172,34 +203,90 @@ public class NetworkSerializer {
      */
     public NetworkStructure deserializeNetworkStructure(final byte[] data) {
         final ByteBuffer buffer = ByteBuffer.wrap(data);
-        final int clustersLength = buffer.get();
+        buffer.getLong();
+        final int clustersLength = buffer.getInt();
         final List<List<ClientNode>> clusters = new ArrayList<>();
         for (int i = 0; i < clustersLength; i++) {
-            final int clientsLength = buffer.get();
+            final int clientsLength = buffer.getInt();
             final List<ClientNode> clients = new ArrayList<>();
             for (int j = 0; j < clientsLength; j++) {
-                final int hostLength = buffer.get();
-                final byte[] hostName = new byte[hostLength];
-                buffer.get(hostName);
-                final String hostIp = new String(hostName, StandardCharsets.UTF_8);
-                final int hostPort = buffer.getInt();
-                final ClientNode record = new ClientNode(hostIp, hostPort);
-                clients.add(record);
+                clients.add(getClient(buffer));
             }
             clusters.add(clients);
         }
         final List<ClientNode> servers = new ArrayList<>();
-        final int serversLength = buffer.get();
+        final int serversLength = buffer.getInt();
         for (int i = 0; i < serversLength; i++) {
-            final int hostLength = buffer.get();
-            final byte[] hostName = new byte[hostLength];
-            buffer.get(hostName);
-            final String hostIp = new String(hostName, StandardCharsets.UTF_8);
-            final int hostPort = buffer.getInt();
-            final ClientNode record = new ClientNode(hostIp, hostPort);
-            servers.add(record);
+            servers.add(getClient(buffer));
         }
         final NetworkStructure network = new NetworkStructure(clusters, servers);
         return network;
     }
+
+    /**
+     * Function to read the epoch of a serialized network structure.
+     *
+     * @param data the serialized structure
+     * @return the epoch
+     */
+    public long deserializeNetworkEpoch(final byte[] data) {
+        return ByteBuffer.wrap(data).getLong();
+    }
+
+    /**
+     * Function to serialize a topology delta, a client network record
+     * followed by the epoch the main server assigned to the change. Readers
+     * of plain records ignore the trailing epoch.
+     *
+     * @param record the added or removed client
+     * @param epoch the epoch of the change
+     * @return the serialized delta
+     */
+    public byte[] serializeTopologyDelta(final ClientNetworkRecord record, final long epoch) {
+        final byte[] plain = serializeClientNetworkRecord(record);
+        return ByteBuffer.allocate(plain.length + Long.BYTES).put(plain).putLong(epoch).array();
+    }
+
+    /**
+     * Function to read the epoch of a topology delta.
+     *
+     * @param data the serialized delta
+     * @return the epoch, or {@link #UNVERSIONED} for a plain record
+     */
+    public long deserializeDeltaEpoch(final byte[] data) {
+        if (data.length < Integer.BYTES) {
+            return UNVERSIONED;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        final int recordSize = Integer.BYTES + buffer.getInt(0) + Integer.BYTES + Integer.BYTES;
+        if (recordSize < 0 || data.length < recordSize + Long.BYTES) {
+            return UNVERSIONED;
+        }
+        return buffer.getLong(recordSize);
+    }
+
+    /**
+     * Function to write a client of a network structure.
+     *
+     * @param buffer the buffer to write to
+     * @param host the encoded host name
+     * @param port the port
+     */
+    private static void putClient(final ByteBuffer buffer, final byte[] host, final int port) {
+        buffer.putShort((short) host.length);
+        buffer.put(host);
+        buffer.putInt(port);
+    }
+
+    /**
+     * Function to read a client of a network structure.
+     *
+     * @param buffer the buffer to read from
+     * @return the client
+     */
+    private static ClientNode getClient(final ByteBuffer buffer) {
+        final byte[] hostName = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(hostName);
+        return new ClientNode(new String(hostName, StandardCharsets.UTF_8), buffer.getInt());
+    }
 }
@@ -11,19 +11,20 @@
 package com.swe.networking;
 
 import java.net.InetAddress;
-import java.net.InetSocketAddress;
-import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
 
 import com.swe.core.ClientNode;
 import com.swe.core.RPCinterface.AbstractRPC;
 import com.swe.core.logging.SweLogger;
 import com.swe.core.logging.SweLoggerFactory;
+import com.swe.core.metrics.MetricsRegistry;
 
 /**
  * The main class of the networking module.
@@ -35,6 +36,11 @@ public class Networking implements AbstractNetworking, AbstractController {
      */
     private static final SweLogger LOG = SweLoggerFactory.getLogger("NETWORKING");
 
+    /**
+     * Milliseconds to wait for the send thread to stop on close.
+     */
+    private static final long SEND_THREAD_JOIN_MILLIS = 1000;
+
     /**
      * The singleton object.
      */
@@ -55,13 +61,9 @@ public class Networking implements AbstractNetworking, AbstractController {
     private final ChunkManager chunkManager;
 
     /**
-     * The variable to store singleton priority queue.
+     * The scheduler ordering outgoing packets, selected at start up.
      */
-    private PriorityQueue priorityQueue;
-    /**
-     * The variable to store singleton priority queue.
-     */
-    private PacketParser parser;
+    private SendScheduler priorityQueue;
 
     /**
      * The variable to store singleton topology.
@@ -83,14 +85,51 @@ public class Networking implements AbstractNetworking, AbstractController {
      */
     private Thread sendThread;
 
+    /**
+     * The encoder sharing chunk payloads across destinations.
+     */
+    private final ChunkFanout chunkFanout = new ChunkFanout();
+
+    /**
+     * The tracker dropping queued packets of superseded latest only messages.
+     */
+    private final Supersession supersession = new Supersession();
+
+    /**
+     * The metrics of the module.
+     */
+    private final NetworkMetrics metrics = NetworkMetrics.getNetworkMetrics();
+
+    /**
+     * The coalescer batching small packets per destination.
+     */
+    private final CoalesceSend coalesceSend;
+
+    /**
+     * The compressor of sent payloads.
+     */
+    private final PacketCompressor compressor = PacketCompressor.getPacketCompressor();
+
+    /**
+     * The dispatcher handing received messages to the subscribers.
+     */
+    private final ModuleDispatcher dispatcher = ModuleDispatcher.fromSystemProperty();
+
+    /**
+     * The prober answering whether the main server could be reachable.
+     */
+    private final MainServerProber mainServerProber = MainServerProber.fromSystemProperty();
+
     /**
      * Private constructor for Netwroking class.
      */
     private Networking() {
         chunkManager = ChunkManager.getChunkManager(payloadSize);
-        priorityQueue = PriorityQueue.getPriorityQueue();
-        parser = PacketParser.getPacketParser();
+        priorityQueue = SendScheduler.fromSystemProperty();
         topology = Topology.getTopology();
+        coalesceSend = new CoalesceSend(topology::sendPacket, TimingWheel.getTimingWheel());
+        MetricsRegistry.getMetricsRegistry().gauge("networking.send.superseded", supersession::getDroppedPackets);
+        MetricsRegistry.getMetricsRegistry().gauge("networking.queue.depth", () -> priorityQueue.size());
         sendThread = new Thread(this::start);
         sendThread.start();
     }
@@ -126,44 +165,144 @@ public class Networking implements AbstractNetworking, AbstractController {
         }
         LOG.info("Data length : " + data.length);
         LOG.info("Destination : " + Arrays.toString(dest));
-        final Vector<byte[]> chunks = getChunks(data, dest, module, priority, 0);
+        metrics.recordSend(module, priority, data.length);
+        byte[] wire = compressor.compress(data);
+        int compressed = 1;
+        if (wire == null) {
+            wire = data;
+            compressed = 0;
+        }
+        if (dest.length > 1) {
+            fanout(wire, dest, module, priority, 0, compressed, chunkManager.nextMessageId());
+            return;
+        }
+        final Vector<byte[]> chunks = getChunks(wire, dest, module, priority, 0, compressed);
         LOG.info("chunk number : " + chunks.size());
         for (byte[] chunk : chunks) {
-            try {
-                final PacketInfo pktInfo = parser.parsePacket(chunk);
-                final InetAddress addr = pktInfo.getIpAddress();
-                final int port = pktInfo.getPortNum();
-                final ClientNode newdest = new ClientNode(addr.getHostAddress(), port);
-                // System.out.println("Time to create new dest: " + (endTime - startTime) + " ms");
-                System.out.println("Destination " + newdest);
-                // topology.sendPacket(chunk, newdest);
-                priorityQueue.addPacket(chunk);
-            } catch (UnknownHostException ex) {
-                System.out.println("Unknown host exception: " + ex.getMessage());
+            priorityQueue.addPacket(chunk);
+        }
+    }
+
+    /**
+     * Function to send the newest message of a stream. The message is
+     * chunked once for every destination like a fan out, its packets are
+     * flagged latest only and tracked so the send thread drops those of
+     * older messages of the stream still queued. The header carries this
+     * device and the stream so receivers tell the streams of every sender
+     * apart.
+     *
+     * @param data the data to be sent
+     * @param dest the dest to send to
+     * @param module the module to be sent to
+     * @param priority the priority of the data
+     * @param stream the stream within the module
+     * @return the destinations whose older message of the stream was cut short
+     */
+    @Override
+    public ClientNode[] sendLatest(final byte[] data, final ClientNode[] dest, final int module, final int priority,
+            final int stream) {
+        if (dest == null || dest.length == 0) {
+            LOG.info("No destination to send to...");
+            return new ClientNode[0];
+        }
+        metrics.recordSend(module, priority, data.length);
+        byte[] wire = compressor.compress(data);
+        int compressed = 1;
+        if (wire == null) {
+            wire = data;
+            compressed = 0;
+        }
+        final PacketInfo pkt = new PacketInfo();
+        pkt.setModule(module);
+        pkt.setPriority(priority);
+        pkt.setCompressed(compressed);
+        pkt.setLatest(1);
+        pkt.setConnectionType(NetworkConnectionType.MODULE.ordinal());
+        pkt.setPayload(wire);
+        pkt.setStream(stream);
+        final int messageId = chunkManager.nextMessageId();
+        try {
+            setOrigin(pkt);
+            final List<byte[]> headers = chunkFanout.encode(pkt, dest, client -> topology.getNetworkType(user, client),
+                    messageId, payloadSize);
+            final List<ClientNode> cut = supersession.track(messageId, module, stream, dest,
+                    headers.size() / dest.length);
+            for (byte[] header : headers) {
+                priorityQueue.addPacket(header);
             }
+            return cut.toArray(ClientNode[]::new);
+        } catch (UnknownHostException ex) {
+            LOG.error("Cannot resolve a destination : " + ex.getMessage());
+            return new ClientNode[0];
+        }
+    }
+
+    @Override
+    public boolean isLatestQueued(final ClientNode dest, final int module, final int stream) {
+        try {
+            return supersession.isQueued(dest, module, stream);
+        } catch (UnknownHostException ex) {
+            return false;
         }
     }
 
     /**
-     * Function to continuously send data.
+     * Function to continuously send data. The thread waits inside the
+     * scheduler while nothing is queued and stops when interrupted. Packets
+     * of superseded latest only messages are dropped, fan out headers are
+     * sent together with their shared payload, small packets of coalesced
+     * modules are handed to the coalescer instead.
      */
     public void start() {
+        final PacketView view = new PacketView();
         while (!Thread.currentThread().isInterrupted()) {
-            if (!priorityQueue.isEmpty()) {
-                final byte[] packet = priorityQueue.nextPacket();
-                try {
-                    final PacketInfo pktInfo = parser.parsePacket(packet);
-                    final InetAddress addr = pktInfo.getIpAddress();
-                    final int port = pktInfo.getPortNum();
-                    final ClientNode dest = new ClientNode(addr.getHostAddress(), port);
-                    topology.sendPacket(packet, dest);
-                } catch (UnknownHostException e) {
-                    LOG.error("Exception", e);
+            final byte[] packet;
+            try {
+                packet = priorityQueue.takePacket();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (packet == null) {
+                continue;
+            }
+            if (supersession.isSuperseded(view.wrap(packet))) {
+                chunkFanout.release(packet);
+                continue;
+            }
+            final int priority = view.getPriority();
+            final ByteBuffer[] parts = chunkFanout.resolve(packet);
+            if (parts != null) {
+                int length = 0;
+                for (ByteBuffer part : parts) {
+                    length += part.remaining();
                 }
+                metrics.recordPacketOut(priority, length);
+                topology.sendPacket(parts, view.wrap(packet).getClientNode());
+                continue;
             }
+            metrics.recordPacketOut(priority, packet.length);
+            if (coalesceSend.offer(packet)) {
+                continue;
+            }
+            final ClientNode dest = view.wrap(packet).getClientNode();
+            topology.sendPacket(packet, dest);
         }
     }
 
+    /**
+     * Function to choose whether small packets of a module and priority are
+     * coalesced. Screen sharing is sent as is by default so frames are never
+     * held back.
+     *
+     * @param module the module
+     * @param priority the priority
+     * @param enabled true to coalesce
+     */
+    public void setCoalescing(final int module, final int priority, final boolean enabled) {
+        coalesceSend.setEnabled(module, priority, enabled);
+    }
+
     /**
      * Function to chunk the given data by the chunk manager.
      *
@@ -172,17 +311,20 @@ public class Networking implements AbstractNetworking, AbstractController {
      * @param module the module to be sent to
      * @param priority the priority of the packet
      * @param broadcast the data should b broadcasted or not
+     * @param compressed the data is compressed or not
      * @return the chunks of the data
      */
     private Vector<byte[]> getChunks(final byte[] data, final ClientNode[] dest, final int module, final int priority,
-            final int broadcast) {
+            final int broadcast, final int compressed) {
         final PacketInfo pkt = new PacketInfo();
         pkt.setModule(module);
         pkt.setPriority(priority);
         pkt.setBroadcast(broadcast);
+        pkt.setCompressed(compressed);
         final Vector<byte[]> chunks = new Vector<>();
         for (ClientNode client : dest) {
             try {
+                setOrigin(pkt);
                 pkt.setPayload(data);
                 final int type = topology.getNetworkType(user, client);
                 pkt.setType(type);
@@ -196,6 +338,19 @@ public class Networking implements AbstractNetworking, AbstractController {
         return chunks;
     }
 
+    /**
+     * Function to set this device as the origin of a packet. Chunks carry it
+     * so that receivers tell apart the messages of devices numbering their
+     * messages alike when a server relays them.
+     *
+     * @param pkt the packet info
+     * @throws UnknownHostException when this device cannot be resolved
+     */
+    private void setOrigin(final PacketInfo pkt) throws UnknownHostException {
+        pkt.setOriginAddress(InetAddress.getByName(user.hostName()));
+        pkt.setOriginPort(user.port());
+    }
+
     /**
      * Function to chunk the given data by the chunk manager to all clients.
      * here the dest does not matter
@@ -206,6 +361,7 @@ public class Networking implements AbstractNetworking, AbstractController {
      */
     @Override
     public void broadcast(final byte[] data, final int module, final int priority) {
+        metrics.recordSend(module, priority, data.length);
         // Get all the destinations to send the broadcast
         List<ClientNode> dest = new ArrayList<>();
         final List<ClientNode> clientDests = new ArrayList<>(topology.getClients(topology.getClusterIndex(user)));
@@ -214,7 +370,9 @@ public class Networking implements AbstractNetworking, AbstractController {
         System.out.println("dest " + dest + " user: " + user + " server " + topology.getServer(user));
         dest.remove(user);
 
-        if (user == topology.getServer(user)) {
+        final boolean isServer = user.equals(topology.getServer(user));
+        final boolean tree = MulticastTree.isEnabled();
+        if (isServer && !tree) {
             final List<ClientNode> servers = new ArrayList<>(topology.getAllClusterServers());
             dest.addAll(servers);
             dest.remove(user);
@@ -223,15 +381,87 @@ public class Networking implements AbstractNetworking, AbstractController {
 
         final ClientNode[] destArray = dest.toArray(ClientNode[]::new);
         System.out.println("Broadcasting clients " + Arrays.toString(destArray));
-        final Vector<byte[]> chunks = getChunks(data, destArray, module, priority, 1);
-        for (byte[] chunk : chunks) {
-            for (ClientNode client : dest) {
-                try {
-                    // topology.sendPacket(chunk, client);
-                    priorityQueue.addPacket(chunk);
-                } catch (UnknownHostException ex) {
-                }
+        final int messageId = chunkManager.nextMessageId();
+        byte[] wire = compressor.compress(data);
+        int compressed = 1;
+        if (wire == null) {
+            wire = data;
+            compressed = 0;
+        }
+        fanout(wire, destArray, module, priority, 1, compressed, messageId);
+        if (isServer && tree) {
+            relayTree(wire, module, priority, compressed, messageId);
+        }
+    }
+
+    /**
+     * Function to hand the chunks of a broadcast of this cluster server to
+     * the multicast tree, which forwards them to the other servers.
+     *
+     * @param data the data to be sent
+     * @param module the module to be sent to
+     * @param priority the priority of the packet
+     * @param compressed the data is compressed or not
+     * @param messageId the message id shared with the copies of the cluster
+     */
+    private void relayTree(final byte[] data, final int module, final int priority, final int compressed,
+            final int messageId) {
+        final PacketInfo pkt = new PacketInfo();
+        pkt.setModule(module);
+        pkt.setPriority(priority);
+        pkt.setCompressed(compressed);
+        pkt.setConnectionType(NetworkConnectionType.MODULE.ordinal());
+        pkt.setMessageId(messageId);
+        final int numChunks = Math.max(1, (data.length + payloadSize - 1) / payloadSize);
+        pkt.setChunkLength(numChunks);
+        try {
+            for (int chunkNum = 0; chunkNum < numChunks; chunkNum++) {
+                final int start = chunkNum * payloadSize;
+                final int size = Math.min(payloadSize, data.length - start);
+                pkt.setChunkNum(chunkNum);
+                pkt.setPayload(Arrays.copyOfRange(data, start, start + size));
+                pkt.setLength(PacketParser.getHeaderSize(pkt) + size);
+                pkt.setIpAddress(InetAddress.getByName(user.hostName()));
+                pkt.setPortNum(user.port());
+                setOrigin(pkt);
+                topology.relayBroadcast(MulticastTree.relayCopy(PacketParser.getPacketParser().createPkt(pkt), user));
+            }
+        } catch (UnknownHostException ex) {
+            LOG.error("Cannot resolve this device : " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Function to chunk the data once and queue a header for every chunk
+     * and destination, the chunk payloads are shared by all destinations.
+     *
+     * @param data the data to be sent
+     * @param dest the destinations
+     * @param module the module to be sent to
+     * @param priority the priority of the packet
+     * @param broadcast the data should b broadcasted or not
+     * @param compressed the data is compressed or not
+     * @param messageId the message id of the data
+     */
+    private void fanout(final byte[] data, final ClientNode[] dest, final int module, final int priority,
+            final int broadcast, final int compressed, final int messageId) {
+        final PacketInfo pkt = new PacketInfo();
+        pkt.setModule(module);
+        pkt.setPriority(priority);
+        pkt.setBroadcast(broadcast);
+        pkt.setCompressed(compressed);
+        pkt.setConnectionType(NetworkConnectionType.MODULE.ordinal());
+        pkt.setPayload(data);
+        try {
+            setOrigin(pkt);
+            final List<byte[]> headers = chunkFanout.encode(pkt, dest, client -> topology.getNetworkType(user, client),
+                    messageId, payloadSize);
+            LOG.info("fan out headers : " + headers.size());
+            for (byte[] header : headers) {
+                priorityQueue.addPacket(header);
             }
+        } catch (UnknownHostException ex) {
+            LOG.error("Cannot resolve a destination : " + ex.getMessage());
         }
     }
 
@@ -273,7 +503,8 @@ public class Networking implements AbstractNetworking, AbstractController {
     }
 
     /**
-     * Function to call the subscirbed modules.
+     * Function to call the subscirbed modules. With dispatching on the
+     * call is queued for the thread of the module and this returns at once.
      *
      * @param module the module to call
      * @param data the data to sent
@@ -283,7 +514,11 @@ public class Networking implements AbstractNetworking, AbstractController {
         if (function == null) {
             System.out.println("No function found for module: " + module);
         } else {
-            function.receiveData(data);
+            dispatcher.dispatch(module, () -> {
+                final long start = System.nanoTime();
+                function.receiveData(data);
+                metrics.recordDelivery(module, start);
+            });
         }
     }
 
@@ -293,8 +528,34 @@ public class Networking implements AbstractNetworking, AbstractController {
     @Override
     public void closeNetworking() {
         LOG.info("Closing Networking module...");
+        coalesceSend.flushAll();
         topology.closeTopology();
+        dispatcher.shutdown();
+        mainServerProber.close();
         sendThread.interrupt();
+        try {
+            sendThread.join(SEND_THREAD_JOIN_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (sendThread.isAlive()) {
+            LOG.warn("Send thread still running, queued packets kept...");
+        } else {
+            dropQueued();
+        }
+        TimingWheel.closeTimingWheel();
+    }
+
+    /**
+     * Function to drop every packet still queued. What is tracked about
+     * them goes too, or a latest only stream would stay queued forever for
+     * its destinations and their shared payloads would never be released.
+     * Must not race with the send thread.
+     */
+    private void dropQueued() {
+        priorityQueue.clear();
+        supersession.clear();
+        chunkFanout.clear();
     }
 
     /**
@@ -332,38 +593,25 @@ public class Networking implements AbstractNetworking, AbstractController {
      * Function to check if the main server is live by attempting to connect to
      * a high availability public DNS server (Google or Cloudflare). This serves
      * as a network connectivity check to determine if the main server could
-     * potentially be reachable.
+     * potentially be reachable. The servers are probed in parallel in the
+     * background and the answer is cached, so the call waits at most
+     * {@link MainServerProber#getWaitMillis()} milliseconds.
      *
      * @return true if connection fails (network appears down), false otherwise
      */
     @Override
     public boolean isMainServerLive() {
-        final int timeout = 2000;
-        final String[] dnsServers = {
-            "8.8.8.8", // Google DNS
-            "8.8.4.4", // Google DNS secondary
-            "1.1.1.1", // Cloudflare DNS
-            "1.0.0.1", // Cloudflare DNS secondary
-        };
-        final int[] ports = {53, 80}; // DNS port and HTTP port
-
-        // Try to connect to each DNS server on each port
-        for (String dnsServer : dnsServers) {
-            for (int port : ports) {
-                try (Socket socket = new Socket()) {
-                    socket.connect(new InetSocketAddress(dnsServer, port), timeout);
-                    // Connection succeeded
-                    System.out.println("Successfully connected to " + dnsServer + ":" + port);
-                    return false; // Connection succeeded, return false
-                } catch (Exception e) {
-                    // Connection failed, continue to next server/port
-                    System.out.println("Failed to connect to " + dnsServer + ":" + port + " - " + e.getMessage());
-                }
-            }
-        }
+        return mainServerProber.isNetworkDown();
+    }
 
-        // All connection attempts failed
-        System.out.println("All connection attempts to public DNS servers failed");
-        return true; // All connections failed, return true
+    /**
+     * Function to get the result of {@link #isMainServerLive()} without
+     * waiting.
+     *
+     * @return completes with true if the network appears down
+     */
+    @Override
+    public CompletableFuture<Boolean> isMainServerLiveAsync() {
+        return mainServerProber.probe();
     }
 }
@@ -1,13 +1,12 @@
 package com.swe.networking;
 
-import java.net.UnknownHostException;
 import java.util.Deque;
 import java.util.concurrent.ConcurrentLinkedDeque;
 
 /**
  * Class for the new priorityQueue.
  */
-public class NewPriorityQueue {
+public class NewPriorityQueue implements SendScheduler {
 
     /**
      * Global priority queue instance used across the class.
@@ -20,6 +19,11 @@ public class NewPriorityQueue {
      */
     private int totalPackets = 0;
 
+    /**
+     * Reusable view to read the priority of added packets, guarded by this.
+     */
+    private final PacketView view = new PacketView();
+
     /**
      * Constant representing the highest priority level (0 = highest).
      */
@@ -111,29 +115,24 @@ public class NewPriorityQueue {
      *
      * @param data the data to add
      */
+    @Override
     public synchronized void addPacket(final byte[] data) {
-        try {
-            System.out.println("Added a packet to the priority queue...");
-            totalPackets++;
-            final PacketParser parser = PacketParser.getPacketParser();
-            final PacketInfo info = parser.parsePacket(data);
-            final int priorityLevel = info.getPriority();
-            switch (priorityLevel) {
-                case zeroPriority ->
-                    zeroPriorityQueue.add(data);
-                case firstPriority ->
-                    firstPriorityQueue.add(data);
-                case secondPriority ->
-                    secondPriorityQueue.add(data);
-                case thirdPriority ->
-                    thirdPriorityQueue.add(data);
-                default -> {
-                    System.out.println("No a defined priority level. Adding to last priority...");
-                    thirdPriorityQueue.add(data);
-                }
+        System.out.println("Added a packet to the priority queue...");
+        totalPackets++;
+        final int priorityLevel = view.wrap(data).getPriority();
+        switch (priorityLevel) {
+            case zeroPriority ->
+                zeroPriorityQueue.add(data);
+            case firstPriority ->
+                firstPriorityQueue.add(data);
+            case secondPriority ->
+                secondPriorityQueue.add(data);
+            case thirdPriority ->
+                thirdPriorityQueue.add(data);
+            default -> {
+                System.out.println("No a defined priority level. Adding to last priority...");
+                thirdPriorityQueue.add(data);
             }
-        } catch (UnknownHostException ex) {
-            System.out.println("Cannot add packet " + ex.getMessage());
         }
     }
 
@@ -169,11 +168,44 @@ public class NewPriorityQueue {
         return packet;
     }
 
+    /**
+     * Function to get the next packet for the send thread.
+     *
+     * @return the packet or null
+     */
+    @Override
+    public byte[] nextPacket() {
+        return getPacket();
+    }
+
+    /**
+     * Function to drop every queued packet.
+     */
+    @Override
+    public synchronized void clear() {
+        zeroPriorityQueue.clear();
+        firstPriorityQueue.clear();
+        secondPriorityQueue.clear();
+        thirdPriorityQueue.clear();
+        totalPackets = 0;
+    }
+
+    /**
+     * Function to get the number of packets queued.
+     *
+     * @return the queued packet count
+     */
+    @Override
+    public synchronized int size() {
+        return totalPackets;
+    }
+
     /**
      * Function to check if priority queue is empty.
      *
      * @return the boolean state
      */
+    @Override
     public boolean isEmpty() {
         return totalPackets == 0;
     }
@@ -12,8 +12,7 @@ package com.swe.networking;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.List;
-import java.util.concurrent.ScheduledExecutorService;
+import java.nio.ByteBuffer;
 
 import com.swe.core.ClientNode;
 import com.swe.core.logging.SweLogger;
@@ -22,7 +21,7 @@ import com.swe.core.logging.SweLoggerFactory;
 /**
  * The Client belonging to a certain cluster.
  */
-public class P2PClient implements P2PUser {
+public final class P2PClient implements P2PUser {
 
     /**
      * base Commumicator class to send , recieve and close.
@@ -65,12 +64,12 @@ public class P2PClient implements P2PUser {
     /**
      * alive thread manager.
      */
-    private ScheduledExecutorService aliveScheduler = null;
+    private TimingWheel.Timeout aliveTask = null;
 
     /**
-     * time interval gap to send alive packet.
+     * The estimator of the link to the cluster server.
      */
-    private static final long ALIVE_INTERVAL_SECONDS = 2;
+    private final LinkEstimator linkEstimator = LinkEstimator.getLinkEstimator();
 
     /**
      * serializer.
@@ -107,7 +106,7 @@ public class P2PClient implements P2PUser {
         // Initialize ChunkManager with the centralized constant
         chunkManager = ChunkManager.getChunkManager(packetHeaderSize);
         // Initialize the new PacketHandler, passing dependencies
-        this.packetHandler = new PacketHandler(this.parser, this.topology, this.serializer, this.chunkManager, this);
+        this.packetHandler = new PacketHandler(this.topology, this.serializer, this.chunkManager, this);
 
         updateClusterServer();
 
@@ -117,9 +116,11 @@ public class P2PClient implements P2PUser {
         this.receiveThread.start();
 
         // start a scheduled ALIVE packets to the cluster server
-//          this.aliveScheduler = Executors.newSingleThreadScheduledExecutor();
-//          this.aliveScheduler.scheduleAtFixedRate(this::sendAlivePacket,
-//                  ALIVE_INTERVAL_SECONDS, ALIVE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        final long probeInterval = LinkEstimator.getProbeInterval();
+        if (probeInterval > 0) {
+            this.aliveTask = TimingWheel.getTimingWheel().scheduleBlockingAtFixedRate(this::sendAlivePacket,
+                    probeInterval);
+        }
     }
 
     @Override
@@ -135,6 +136,19 @@ public class P2PClient implements P2PUser {
         sendToSingleNode(data, destNode);
     }
 
+    /**
+     * Function to send a packet made of several buffers to a single
+     * destination, routed like {@link #send(byte[], ClientNode)}.
+     *
+     * @param parts the buffers of the packet in order
+     * @param destIp the destination to which the data is sent
+     */
+    @Override
+    public void send(final ByteBuffer[] parts, final ClientNode destIp) {
+        final ClientNode sendDest = topology.getDestination(mainServerAddress, destIp);
+        communicator.sendData(parts, sendDest);
+    }
+
     /**
      * Helper method to send data to a single destination node.
      *
@@ -152,35 +166,60 @@ public class P2PClient implements P2PUser {
     public void receive() {
         while (running) {
             try {
-                final ReceivePacket packet = communicator.receiveData();
-                if (packet == null) {
-                    continue;
-                }
-                final List<byte[]> packets = SplitPackets.getSplitPackets().split(packet);
-                for (byte[] p : packets) {
-                    packetHandler.packetRedirection(p);
-                }
+                communicator.receiveFrames(this::handleFrame);
             } catch (Exception e) {
                 System.err.println("p2pclient received exception while processing packet");
             }
         }
     }
 
+    /**
+     * Function to handle one framed packet read by the communicator.
+     *
+     * @param sender the peer the packet was read from
+     * @param frame the view of the packet, valid during the call
+     */
+    private void handleFrame(final ClientNode sender, final ByteBuffer frame) {
+        packetHandler.packetRedirection(frame, sender);
+    }
+
+    /**
+     * Asks the main server for the whole network after a missed topology
+     * change. The main server answers a HELLO from a known client with a
+     * snapshot.
+     */
+    private void requestNetwork() {
+        try {
+            final PacketInfo helloInfo = new PacketInfo();
+            helloInfo.setLength(PacketParser.getHeaderSize());
+            helloInfo.setType(NetworkType.USE.ordinal());
+            helloInfo.setConnectionType(NetworkConnectionType.HELLO.ordinal());
+            helloInfo.setIpAddress(InetAddress.getByName(deviceAddress.hostName()));
+            helloInfo.setPortNum(deviceAddress.port());
+            helloInfo.setPayload(new byte[0]);
+            LOG.info("p2pclient missed a topology change, requesting the network");
+            communicator.sendData(parser.createPkt(helloInfo), mainServerAddress);
+        } catch (UnknownHostException e) {
+            LOG.error("p2pclient failed to request the network");
+        }
+    }
+
     /**
      * Periodically sends an ALIVE (001) packet to this client's ClusterServer.
      */
     private void sendAlivePacket() {
         if (clusterServerAddress == null) {
             LOG.info("cluster server address is null");
+            return;
         }
 
         try {
             LOG.info("p2pclient sending alive packet to: " + clusterServerAddress);
             final InetAddress selfIp = InetAddress.getByName(deviceAddress.hostName());
-            final byte[] emptyPayload = new byte[0];
+            final byte[] probe = linkEstimator.probe(clusterServerAddress);
 
             final PacketInfo aliveInfo = new PacketInfo();
-            aliveInfo.setLength(PacketParser.getHeaderSize());
+            aliveInfo.setLength(PacketParser.getHeaderSize() + probe.length);
             aliveInfo.setType(NetworkType.USE.ordinal());
             aliveInfo.setPriority(0);
             aliveInfo.setModule(ModuleType.NETWORKING.ordinal());
@@ -191,7 +230,7 @@ public class P2PClient implements P2PUser {
             aliveInfo.setMessageId(0);
             aliveInfo.setChunkNum(0);
             aliveInfo.setChunkLength(0);
-            aliveInfo.setPayload(emptyPayload);
+            aliveInfo.setPayload(probe);
 
             final byte[] alivePacket = parser.createPkt(aliveInfo);
             communicator.sendData(alivePacket, clusterServerAddress);
@@ -207,10 +246,6 @@ public class P2PClient implements P2PUser {
      */
     private static class PacketHandler {
 
-        /**
-         * Packet parser to parse the packet.
-         */
-        private final PacketParser parser;
         /**
          * Topology to get the network structure.
          */
@@ -228,9 +263,18 @@ public class P2PClient implements P2PUser {
          */
         private final P2PClient clientContext;
 
-        PacketHandler(final PacketParser parserArg, final Topology topologyArg, final NetworkSerializer serializerArg,
+        /**
+         * Demultiplexer of coalesced packets.
+         */
+        private final CoalesceReceive coalesceReceive = new CoalesceReceive();
+
+        /**
+         * View over the received packet, reused by the receive thread.
+         */
+        private final PacketView receiveView = new PacketView();
+
+        PacketHandler(final Topology topologyArg, final NetworkSerializer serializerArg,
                 final ChunkManager chunkManagerArg, final P2PClient clientContextArg) {
-            this.parser = parserArg;
             this.topology = topologyArg;
             this.serializer = serializerArg;
             this.chunkManager = chunkManagerArg;
@@ -238,15 +282,17 @@ public class P2PClient implements P2PUser {
         }
 
         /**
-         * Main packet parsing logic based on the user's specification.
+         * Main packet parsing logic based on the user's specification. The
+         * packet is read in place.
          *
-         * @param packet The raw packet data.
+         * @param packet The raw packet data, valid during the call.
+         * @param sender The connection the packet was read from.
          */
-        public void packetRedirection(final byte[] packet) {
+        public void packetRedirection(final ByteBuffer packet, final ClientNode sender) {
             System.out.println("p2pclient received packet from: " + clientContext.deviceAddress.hostName());
             try {
-                final PacketInfo info = parser.parsePacket(packet);
-                final int typeInt = info.getType();
+                final PacketView view = receiveView.wrap(packet);
+                final int typeInt = view.getType();
                 final NetworkType type = NetworkType.getType(typeInt);
 
                 switch (type) {
@@ -257,7 +303,7 @@ public class P2PClient implements P2PUser {
                         System.out.println("p2pclient received packet and dropping of type :" + type);
                         break;
                     case USE:
-                        parseUsePacket(info, packet);
+                        parseUsePacket(view, sender);
                         break;
                     default:
                         break;
@@ -270,35 +316,42 @@ public class P2PClient implements P2PUser {
         /**
          * Handles Type 11 (USE) packets based on the connection type.
          *
-         * @param info The raw packet data.
-         * @param packet The raw packet data.
+         * @param view The view over the packet.
+         * @param sender The connection the packet was read from.
          */
-        private void parseUsePacket(final PacketInfo info, final byte[] packet) throws UnknownHostException {
-            final int connectionTypeInt = info.getConnectionType();
+        private void parseUsePacket(final PacketView view, final ClientNode sender) throws UnknownHostException {
+            final int connectionTypeInt = view.getConnectionType();
             final NetworkConnectionType connection = NetworkConnectionType.getType(connectionTypeInt);
 
             System.out.println("p2pclient received connection type: " + connection);
 
             switch (connection) {
                 case HELLO: // 000 drop it only to be received by main server
-                case ALIVE: // 001 drop it only to received by cluster server and main server
-                    System.out.println("p2pclient received HELLO or ALIVE packet (dropping)");
+                    System.out.println("p2pclient received HELLO packet (dropping)");
+                    break;
+
+                case ALIVE: // 001 only the echo of our own link probe
+                    clientContext.linkEstimator.onAlive(view.getClientNode(), view.payload());
                     break;
 
                 case ADD: // 010 : update the current network
-                    handleUpdateNetwork(info);
+                    handleUpdateNetwork(view);
                     break;
 
                 case REMOVE: // 011 : update the current network
-                    handleRemoveClient(info);
+                    handleRemoveClient(view);
                     break;
 
                 case NETWORK: // 100 : replace the current network
-                    handleReplaceNetwork(info);
+                    handleReplaceNetwork(view);
                     break;
 
                 case MODULE:
-                    handleModulePacket(packet);
+                    handleModulePacket(view, sender);
+                    break;
+
+                case COALESCED:
+                    coalesceReceive.receiveCoalescedPacket(view.payload());
                     break;
 
                 case CLOSE: // 111 : close the client terminate
@@ -314,24 +367,31 @@ public class P2PClient implements P2PUser {
         /**
          * Helper function to handle add packet.
          *
-         * @param info received packet info
+         * @param view received packet view
          */
-        private void handleUpdateNetwork(final PacketInfo info) {
+        private void handleUpdateNetwork(final PacketView view) {
             System.out.println("p2pclient received ADD packet: updating network structure.");
-            final ClientNetworkRecord newClient = serializer.deserializeClientNetworkRecord(info.getPayload());
-            topology.updateNetwork(newClient);
+            final byte[] payload = view.copyPayload();
+            final ClientNetworkRecord newClient = serializer.deserializeClientNetworkRecord(payload);
+            if (topology.applyDelta(NetworkConnectionType.ADD, newClient, serializer.deserializeDeltaEpoch(payload))) {
+                clientContext.requestNetwork();
+            }
             clientContext.updateClusterServer();
         }
 
         /**
          * Helper function to handle remove packet.
          *
-         * @param info received packet info
+         * @param view received packet view
          */
-        private void handleRemoveClient(final PacketInfo info) {
+        private void handleRemoveClient(final PacketView view) {
             System.out.println("p2pclient received REMOVE packet.");
-            final ClientNetworkRecord oldClient = serializer.deserializeClientNetworkRecord(info.getPayload());
-            topology.removeClient(oldClient);
+            final byte[] payload = view.copyPayload();
+            final ClientNetworkRecord oldClient = serializer.deserializeClientNetworkRecord(payload);
+            if (topology.applyDelta(NetworkConnectionType.REMOVE, oldClient,
+                    serializer.deserializeDeltaEpoch(payload))) {
+                clientContext.requestNetwork();
+            }
             chunkManager.cleanChunk(oldClient.client());
             clientContext.updateClusterServer();
         }
@@ -339,30 +399,32 @@ public class P2PClient implements P2PUser {
         /**
          * Helper function to handle Network packet.
          *
-         * @param info received packet info
+         * @param view received packet view
          */
-        private void handleReplaceNetwork(final PacketInfo info) {
+        private void handleReplaceNetwork(final PacketView view) {
             System.out.println("p2pclient received NETWORK packet: replacing current network structure.");
-            final NetworkStructure newNetwork = serializer.deserializeNetworkStructure(info.getPayload());
-            topology.replaceNetwork(newNetwork);
+            final byte[] payload = PacketCompressor.getPacketCompressor().payloadOf(view);
+            if (payload == null) {
+                return;
+            }
+            final NetworkStructure newNetwork = serializer.deserializeNetworkStructure(payload);
+            topology.replaceNetwork(newNetwork, serializer.deserializeNetworkEpoch(payload));
             clientContext.updateClusterServer();
         }
 
         /**
          * Helper function to handle Module packet.
          *
-         * @param packet received packet
+         * @param view received packet view
+         * @param sender the connection the packet was read from
          */
-        private void handleModulePacket(final byte[] packet) throws UnknownHostException {
+        private void handleModulePacket(final PacketView view, final ClientNode sender) {
             System.out.println("MODULE packet received.");
-            final int module = parser.parsePacket(packet).getModule();
-            final byte[] data = chunkManager.addChunk(packet);
-            final Networking networking = Networking.getNetwork();
-            // System.out.println("Data received: " + Arrays.toString(data));
-            if (data != null) {
-                final PacketInfo destpktInfo = parser.parsePacket(data);
+            final int module = view.getModule();
+            final byte[] payload = chunkManager.receiveChunk(view, sender);
+            if (payload != null) {
                 System.out.println("p2pclient calling subscriber for module: " + module);
-                networking.callSubscriber(module, destpktInfo.getPayload());
+                Networking.getNetwork().callSubscriber(module, payload);
             }
         }
     }
@@ -376,6 +438,8 @@ public class P2PClient implements P2PUser {
         this.clusterServerAddress = topology.getServer(this.deviceAddress);
         if (this.clusterServerAddress == null) {
             LOG.error("p2pclient: Not find my cluster server in topology.");
+        } else if (communicator != null && !this.clusterServerAddress.equals(deviceAddress)) {
+            communicator.preconnect(this.clusterServerAddress);
         }
         return;
     }
@@ -390,9 +454,9 @@ public class P2PClient implements P2PUser {
         LOG.info("p2pclient started closing");
 
         // Stop sending ALIVE packets
-//        if (aliveScheduler != null) {
-//            aliveScheduler.shutdownNow();
-//        }
+        if (aliveTask != null) {
+            aliveTask.cancel();
+        }
         // Close all network sockets
         if (communicator != null) {
             communicator.close();
@@ -415,10 +479,11 @@ public class P2PClient implements P2PUser {
     public byte[] createRemovePacket(final ClientNode client) {
         try {
             final PacketInfo packetInfo = new PacketInfo();
-            packetInfo.setLength(packetHeaderSize);
+            packetInfo.setPayload(serializer.serializeClientNetworkRecord(
+                    new ClientNetworkRecord(client, topology.getClusterIndex(client))));
+            packetInfo.setLength(packetHeaderSize + packetInfo.getPayload().length);
             packetInfo.setType(NetworkType.USE.ordinal());
             packetInfo.setConnectionType(NetworkConnectionType.REMOVE.ordinal());
-            packetInfo.setPayload(client.toString().getBytes());
             packetInfo.setIpAddress(InetAddress.getByName(client.hostName()));
             packetInfo.setPortNum(client.port());
             packetInfo.setBroadcast(0);
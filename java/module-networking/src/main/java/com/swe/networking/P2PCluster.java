@@ -12,6 +12,7 @@ package com.swe.networking;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -78,17 +79,36 @@ public class P2PCluster implements P2PUser {
      * @param server details of the mainserver
      */
     public void addUser(final ClientNode client, final ClientNode server) throws UnknownHostException {
+        addUser(client, server, ModuleRoutedCommunicator.forPort(client.port()));
+    }
+
+    /**
+     * Function to add current user to the network over a given
+     * communicator, such as one of a simulated network.
+     *
+     * @param client details of the current client
+     * @param server details of the mainserver
+     * @param protocol the communicator to send and receive with
+     */
+    public void addUser(final ClientNode client, final ClientNode server, final ProtocolBase protocol)
+            throws UnknownHostException {
         LOG.info("Adding new user to the network...");
         // send hello to server
         final PacketInfo packetInfo = new PacketInfo();
-        packetInfo.setLength(PacketParser.getHeaderSize());
+        // advertise the uplink so the main server can size the clusters
+        final long uplink = Long.getLong(ClusterPolicy.UPLINK_PROPERTY, 0);
+        byte[] hello = new byte[0];
+        if (uplink > 0) {
+            hello = ByteBuffer.allocate(Long.BYTES).putLong(uplink).array();
+        }
+        packetInfo.setLength(PacketParser.getHeaderSize() + hello.length);
         packetInfo.setType(NetworkType.USE.ordinal());
         packetInfo.setConnectionType(NetworkConnectionType.HELLO.ordinal());
         packetInfo.setIpAddress(InetAddress.getByName(client.hostName()));
         packetInfo.setPortNum(client.port());
-        packetInfo.setPayload(new byte[0]);
+        packetInfo.setPayload(hello);
 
-        tcpCommunicator = new TCPCommunicator(client.port());
+        tcpCommunicator = protocol;
 
         final byte[] helloPacket = packetParser.createPkt(packetInfo);
         tcpCommunicator.sendData(helloPacket, server);
@@ -157,6 +177,17 @@ public class P2PCluster implements P2PUser {
         this.user.send(data, destIp);
     }
 
+    /**
+     * Function to send a packet made of several buffers.
+     *
+     * @param parts the buffers of the packet in order
+     * @param destIp the one destination to send the data
+     */
+    @Override
+    public void send(final ByteBuffer[] parts, final ClientNode destIp) {
+        this.user.send(parts, destIp);
+    }
+
     /**
      * Function to receive data from other clients.
      */
@@ -170,9 +201,14 @@ public class P2PCluster implements P2PUser {
                 try {
                     final byte[] packet = receivePacket.data();
                     final PacketInfo packetInfo = packetParser.parsePacket(packet);
-                    final NetworkStructure networkStructure = NetworkSerializer.getNetworkSerializer()
-                            .deserializeNetworkStructure(packetInfo.getPayload());
-                    Topology.getTopology().replaceNetwork(networkStructure);
+                    final NetworkSerializer serializer = NetworkSerializer.getNetworkSerializer();
+                    final byte[] payload = PacketCompressor.getPacketCompressor().payloadOf(packetInfo);
+                    if (payload == null) {
+                        continue;
+                    }
+                    final NetworkStructure networkStructure = serializer.deserializeNetworkStructure(payload);
+                    Topology.getTopology().replaceNetwork(networkStructure,
+                            serializer.deserializeNetworkEpoch(payload));
                     break;
                 } catch (UnknownHostException e) {
                     LOG.info("Error while receiving data in P2P Cluster" + e.getMessage() + "...");
@@ -12,6 +12,7 @@ package com.swe.networking;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import com.swe.core.ClientNode;
@@ -21,7 +22,7 @@ import com.swe.core.logging.SweLoggerFactory;
 /**
  * The server of a particular P2P Cluster.
  */
-public class P2PServer implements P2PUser {
+public final class P2PServer implements P2PUser {
 
     /**
      * Communicator object to send and receive data.
@@ -63,9 +64,9 @@ public class P2PServer implements P2PUser {
     private final Thread receiveThread;
 
     /**
-     * The thread to send ALIVE.
+     * The periodic task sending ALIVE.
      */
-    private Thread sendThread = null;
+    private TimingWheel.Timeout aliveTask = null;
 
     /**
      * The thread to monitor client timeouts.
@@ -87,6 +88,32 @@ public class P2PServer implements P2PUser {
      */
     private final ChunkManager chunkManager;
 
+    /**
+     * The estimator of the links to the main server and the clients.
+     */
+    private final LinkEstimator linkEstimator = LinkEstimator.getLinkEstimator();
+
+    /**
+     * The multicast tree broadcasts are relayed along when enabled.
+     */
+    private final MulticastTree multicastTree = MulticastTree.fromSystemProperty();
+
+    /**
+     * Demultiplexer of coalesced packets.
+     */
+    private final CoalesceReceive coalesceReceive = new CoalesceReceive();
+
+    /**
+     * View over the received packet, reused by the receive thread.
+     */
+    private final PacketView receiveView = new PacketView();
+
+    /**
+     * View over the copies of a received packet, reused by the receive
+     * thread.
+     */
+    private final PacketView copyView = new PacketView();
+
     /**
      * Main server Node.
      */
@@ -115,10 +142,13 @@ public class P2PServer implements P2PUser {
         this.mainServer = mainServerAddress;
 
         this.timer = new Timer(timerTimeout, this::handleClientTimeout);
-        // sendThread = new Thread(this::sendAliveToMainServer);
+        final long probeInterval = LinkEstimator.getProbeInterval();
+        if (probeInterval > 0) {
+            aliveTask = TimingWheel.getTimingWheel().scheduleBlockingAtFixedRate(this::sendAliveToMainServer,
+                    probeInterval);
+        }
         receiveThread = new Thread(this::receive);
 
-        // sendThread.start();
         receiveThread.start();
 
         LOG.info("P2PServer");
@@ -154,65 +184,80 @@ public class P2PServer implements P2PUser {
         communicator.sendData(data, sendDest);
     }
 
+    /**
+     * Function to send a packet made of several buffers to a single
+     * destination, routed like {@link #send(byte[], ClientNode)}.
+     *
+     * @param parts the buffers of the packet in order
+     * @param destIp the destination to which the data is sent
+     */
+    @Override
+    public void send(final ByteBuffer[] parts, final ClientNode destIp) {
+        final ClientNode sendDest = topology.getDestination(deviceNode, destIp);
+        communicator.sendData(parts, sendDest);
+    }
+
     /**
      * Function to receive the data from the sockets.
      */
     @Override
     public void receive() {
         while (true) {
-            final ReceivePacket packet = communicator.receiveData();
-            if (packet == null) {
-                continue;
-            }
-            try {
-                final List<byte[]> packets = SplitPackets.getSplitPackets().split(packet);
-                for (byte[] p : packets) {
-                    handlePacket(p);
-                }
-            } catch (UnknownHostException e) {
-                LOG.error("Exception", e);
-            }
+            communicator.receiveFrames(this::handleFrame);
+        }
+    }
+
+    /**
+     * Function to handle one framed packet read by the communicator. The
+     * packet is read in place, only packets sent on are copied.
+     *
+     * @param sender the peer the packet was read from
+     * @param frame the view of the packet, valid during the call
+     */
+    private void handleFrame(final ClientNode sender, final ByteBuffer frame) {
+        try {
+            handlePacket(receiveView.wrap(frame), sender);
+        } catch (UnknownHostException e) {
+            LOG.error("Exception", e);
         }
     }
 
     /**
      * Function to handle the received packet.
      *
-     * @param packet the received packet
+     * @param view the view over the packet
+     * @param sender the connection the packet was read from
      * @throws UnknownHostException if the ip address is invalid
      */
-    private void handlePacket(final byte[] packet) throws UnknownHostException {
-        // parse the packet
-        final PacketInfo packetInfo = parser.parsePacket(packet);
-        final int connectionType = packetInfo.getConnectionType();
-        final int type = packetInfo.getType();
-        final InetAddress destInet = packetInfo.getIpAddress();
-        final String destinationIp = destInet.getHostAddress();
-        final int destinationPort = packetInfo.getPortNum();
-        final ClientNode dest = new ClientNode(destinationIp,
-                destinationPort);
+    private void handlePacket(final PacketView view, final ClientNode sender) throws UnknownHostException {
+        final int connectionType = view.getConnectionType();
+        final int type = view.getType();
+        final ClientNode dest = view.getClientNode();
 
         // check for broadcast
-        if (packetInfo.getBroadcast() == 1) {
+        if (view.getBroadcast() == 1) {
             LOG.info("Broadcast packet received at P2PServer.");
-            handleBroadcast(packetInfo);
-            packetInfo.setBroadcast(0);
+            if (view.getTreeRelay() == 1) {
+                handleTreeRelay(view, sender);
+                return;
+            }
+            handleBroadcast(type, view);
         }
 
         // handle based on type and connection type
         if (type == NetworkType.USE.ordinal() || type == NetworkType.CLUSTERSERVER.ordinal()) {
-            handleUsePacket(connectionType, packet, dest);
+            handleUsePacket(view, dest, sender);
         } else if (type == NetworkType.SAMECLUSTER.ordinal()) {
-            final PacketInfo pktInfo = parser.parsePacket(packet);
-            pktInfo.setType(NetworkType.USE.ordinal());
-            final byte[] newPacket = parser.createPkt(pktInfo);
-            send(newPacket, dest);
+            final byte[] packet = view.copyPacket();
+            copyView.wrap(packet).setType(NetworkType.USE.ordinal());
+            send(packet, dest);
         } else if (type == NetworkType.OTHERCLUSTER.ordinal()) {
             final ClientNode clusterServer = topology.getServer(dest);
+            final byte[] packet = view.copyPacket();
             if (clusterServer.equals(dest)) {
-                packetInfo.setType(NetworkType.USE.ordinal());
+                copyView.wrap(packet).setType(NetworkType.USE.ordinal());
             } else {
-                packetInfo.setType(NetworkType.SAMECLUSTER.ordinal());
+                copyView.wrap(packet).setType(NetworkType.SAMECLUSTER.ordinal());
             }
             send(packet, clusterServer);
         } else {
@@ -221,51 +266,119 @@ public class P2PServer implements P2PUser {
     }
 
     /**
-     * Function to handle broadcasting a packet.
+     * Function to handle broadcasting a packet. The forwarded header is
+     * written once and the same bytes are sent to every destination.
      *
-     * @param packetInfo function to handle packet.
+     * @param type the network type of the packet
+     * @param view the view over the received broadcast packet
      */
-    private void handleBroadcast(final PacketInfo packetInfo) {
-        if (packetInfo.getType() == NetworkType.USE.ordinal()) {
+    private void handleBroadcast(final int type, final PacketView view) {
+        if (type == NetworkType.USE.ordinal() && MulticastTree.isEnabled()) {
+            try {
+                relay(MulticastTree.relayCopy(view, deviceNode, copyView));
+            } catch (UnknownHostException ex) {
+                LOG.error("Cannot resolve this server : " + ex.getMessage());
+            }
+        } else if (type == NetworkType.USE.ordinal()) {
             // send to other servers
+            final byte[] newPacket = view.copyPacket();
+            copyView.wrap(newPacket).setType(NetworkType.OTHERCLUSTER.ordinal());
             final List<ClientNode> servers = topology.getAllClusterServers();
             for (ClientNode server : servers) {
                 if (server.equals(deviceNode)) {
                     continue;
                 }
-                packetInfo.setType(NetworkType.OTHERCLUSTER.ordinal());
-                final byte[] newPacket = parser.createPkt(packetInfo);
                 send(newPacket, server);
             }
-        } else if (packetInfo.getType() == NetworkType.OTHERCLUSTER.ordinal()) {
+        } else if (type == NetworkType.OTHERCLUSTER.ordinal()) {
             // to just send to clients in the cluster
+            final byte[] newPacket = view.copyPacket();
+            copyView.wrap(newPacket);
+            copyView.setType(NetworkType.USE.ordinal());
+            copyView.setBroadcast(0);
             final List<ClientNode> dests = topology.getClients(topology.getClusterIndex(deviceNode));
             for (ClientNode dest : dests) {
                 if (dest.equals(deviceNode)) {
                     continue;
                 }
-                packetInfo.setType(NetworkType.USE.ordinal());
-                packetInfo.setBroadcast(0);
-                final byte[] newPacket = parser.createPkt(packetInfo);
                 send(newPacket, dest);
             }
         } else {
             LOG.info("Broadcast packet of unknown type received at P2PServer.");
-            return;
         }
+    }
+
+    /**
+     * Function to forward a broadcast entering the multicast tree at this
+     * server to its tree neighbours.
+     *
+     * @param packet the relay packet carrying this server as its origin
+     */
+    @Override
+    public void relayBroadcast(final byte[] packet) {
+        multicastTree.firstSeen(deviceNode, new PacketView().wrap(packet));
+        forwardRelay(packet);
+    }
 
+    /**
+     * Function to forward a broadcast entering the multicast tree at this
+     * server, from the receive thread.
+     *
+     * @param packet the relay packet carrying this server as its origin
+     */
+    private void relay(final byte[] packet) {
+        multicastTree.firstSeen(deviceNode, copyView.wrap(packet));
+        forwardRelay(packet);
+    }
+
+    /**
+     * Function to send a relay packet originating at this server to its
+     * tree neighbours.
+     *
+     * @param packet the relay packet
+     */
+    private void forwardRelay(final byte[] packet) {
+        for (ClientNode next : multicastTree.forwardTargets(topology.getAllClusterServers(), deviceNode, deviceNode)) {
+            send(packet, next);
+        }
+    }
+
+    /**
+     * Function to handle a broadcast relayed along the multicast tree. It is
+     * forwarded to the tree neighbours away from its origin, delivered to
+     * the clients of this cluster and handled here, once per chunk.
+     *
+     * @param view the view over the relay packet
+     * @param sender the connection the packet was read from
+     */
+    private void handleTreeRelay(final PacketView view, final ClientNode sender) {
+        final ClientNode origin = view.getClientNode();
+        if (origin.equals(deviceNode) || !multicastTree.firstSeen(origin, view)) {
+            return;
+        }
+        final byte[] packet = view.copyPacket();
+        for (ClientNode next : multicastTree.forwardTargets(topology.getAllClusterServers(), deviceNode, origin)) {
+            send(packet, next);
+        }
+        final byte[] local = MulticastTree.clusterCopy(packet, copyView);
+        for (ClientNode dest : topology.getClients(topology.getClusterIndex(deviceNode))) {
+            if (dest.equals(deviceNode)) {
+                continue;
+            }
+            send(local, dest);
+        }
+        handleUsePacket(view.wrap(local), origin, sender);
     }
 
     /**
      * Handle packets whose NetworkType is USE or OTHERSERVER.
      *
-     * @param connectionType the connection type of the packet
-     * @param packet the received packet
+     * @param view the view over the packet
      * @param dest the destination client node
+     * @param sender the connection the packet was read from
      */
-    private void handleUsePacket(final int connectionType, final byte[] packet,
-            final ClientNode dest) {
-        final NetworkConnectionType conn = NetworkConnectionType.values()[connectionType];
+    private void handleUsePacket(final PacketView view, final ClientNode dest, final ClientNode sender) {
+        final NetworkConnectionType conn = NetworkConnectionType.values()[view.getConnectionType()];
         try {
             switch (conn) {
                 case HELLO:
@@ -274,26 +387,28 @@ public class P2PServer implements P2PUser {
                 case ALIVE:
                     timer.updateTimeout(dest);
                     LOG.info("ALIVE packet received from " + dest.hostName() + ".");
+                    answerAlive(view, dest);
                     break;
                 case ADD:
-                    handleAdd(packet, dest);
+                    handleAdd(view, dest);
                     break;
                 case REMOVE:
-                    handleRemove(packet, dest);
+                    handleRemove(view, dest);
                     break;
                 case NETWORK:
-                    handleNetwork(packet);
+                    handleNetwork(view);
                     break;
                 case MODULE:
                     LOG.info("MODULE packet received");
-                    final int module = parser.parsePacket(packet).getModule();
-                    final byte[] data = chunkManager.addChunk(packet);
-                    final Networking networking = Networking.getNetwork();
-                    if (data != null) {
-                        final PacketInfo destpktInfo = parser.parsePacket(data);
-                        networking.callSubscriber(module, destpktInfo.getPayload());
+                    final int module = view.getModule();
+                    final byte[] payload = chunkManager.receiveChunk(view, sender);
+                    if (payload != null) {
+                        Networking.getNetwork().callSubscriber(module, payload);
                     }
                     break;
+                case COALESCED:
+                    coalesceReceive.receiveCoalescedPacket(view.payload());
+                    break;
                 case CLOSE:
                     close();
                     break;
@@ -306,16 +421,24 @@ public class P2PServer implements P2PUser {
         }
     }
 
-    private void handleAdd(final byte[] packet, final ClientNode dest) throws UnknownHostException {
-        final PacketInfo packetInfo = parser.parsePacket(packet);
-        final ClientNetworkRecord client = serializer.deserializeClientNetworkRecord(packetInfo.getPayload());
-        topology.updateNetwork(client);
+    private void handleAdd(final PacketView view, final ClientNode dest)
+            throws UnknownHostException {
+        final byte[] payload = view.copyPayload();
+        final ClientNetworkRecord client = serializer.deserializeClientNetworkRecord(payload);
+        if (topology.applyDelta(NetworkConnectionType.ADD, client, serializer.deserializeDeltaEpoch(payload))) {
+            requestNetwork();
+        }
+        if (client.clusterIndex() == topology.getClusterIndex(deviceNode)
+                || topology.getAllClusterServers().contains(client.client())) {
+            communicator.preconnect(client.client());
+        }
         if (client.clusterIndex() == topology.getClusterIndex(deviceNode)) {
             timer.addClient(dest);
             LOG.info("Client " + client.client().hostName()
                     + " added to timer.");
         }
         final int myCluster = topology.getClusterIndex(deviceNode);
+        final byte[] packet = view.copyPacket();
         for (ClientNode c : topology.getClients(myCluster)) {
             if (c.equals(deviceNode)) {
                 continue;
@@ -327,15 +450,20 @@ public class P2PServer implements P2PUser {
                 + client.clusterIndex());
     }
 
-    private void handleRemove(final byte[] packet, final ClientNode dest) throws UnknownHostException {
-        final PacketInfo packetInfo = parser.parsePacket(packet);
-        final ClientNetworkRecord remClient = serializer.deserializeClientNetworkRecord(packetInfo.getPayload());
-        topology.removeClient(remClient);
+    private void handleRemove(final PacketView view, final ClientNode dest)
+            throws UnknownHostException {
+        final byte[] payload = view.copyPayload();
+        final ClientNetworkRecord remClient = serializer.deserializeClientNetworkRecord(payload);
+        if (topology.applyDelta(NetworkConnectionType.REMOVE, remClient,
+                serializer.deserializeDeltaEpoch(payload))) {
+            requestNetwork();
+        }
         chunkManager.cleanChunk(remClient.client());
         if (remClient.clusterIndex() == topology.getClusterIndex(deviceNode)) {
             timer.removeClient(dest);
         }
         final int myCluster = topology.getClusterIndex(deviceNode);
+        final byte[] packet = view.copyPacket();
         for (ClientNode c : topology.getClients(myCluster)) {
             if (c.equals(deviceNode)) {
                 continue;
@@ -347,42 +475,109 @@ public class P2PServer implements P2PUser {
                 + remClient.clusterIndex());
     }
 
-    private void handleNetwork(final byte[] packet) throws UnknownHostException {
-        final PacketInfo packetInfo = parser.parsePacket(packet);
-        final NetworkStructure network = serializer.deserializeNetworkStructure(packetInfo.getPayload());
-        topology.replaceNetwork(network);
+    private void handleNetwork(final PacketView view) throws UnknownHostException {
+        final byte[] payload = PacketCompressor.getPacketCompressor().payloadOf(view);
+        if (payload == null) {
+            return;
+        }
+        final NetworkStructure network = serializer.deserializeNetworkStructure(payload);
+        topology.replaceNetwork(network, serializer.deserializeNetworkEpoch(payload));
+        preconnectPeers();
         LOG.info("Network structure updated at server.");
     }
 
     /**
-     * Function to send ALIVE packets to main server.
+     * Function to ask the main server for the whole network after a missed
+     * topology change. The main server answers a HELLO from a known client
+     * with a snapshot.
+     */
+    private void requestNetwork() {
+        try {
+            final PacketInfo packetInfo = new PacketInfo();
+            packetInfo.setLength(PacketParser.getHeaderSize());
+            packetInfo.setType(NetworkType.USE.ordinal());
+            packetInfo.setConnectionType(NetworkConnectionType.HELLO.ordinal());
+            packetInfo.setIpAddress(InetAddress.getByName(deviceNode.hostName()));
+            packetInfo.setPortNum(deviceNode.port());
+            packetInfo.setPayload(new byte[0]);
+            LOG.info("Missed a topology change, requesting the network...");
+            communicator.sendData(parser.createPkt(packetInfo), mainServer);
+        } catch (UnknownHostException e) {
+            LOG.error("Exception", e);
+        }
+    }
+
+    /**
+     * Function to dial the members of this cluster and the other cluster
+     * servers, the peers this server forwards to.
+     */
+    private void preconnectPeers() {
+        final List<ClientNode> members = topology.getClients(topology.getClusterIndex(deviceNode));
+        if (members != null) {
+            for (ClientNode member : members) {
+                if (!member.equals(deviceNode)) {
+                    communicator.preconnect(member);
+                }
+            }
+        }
+        for (ClientNode server : topology.getAllClusterServers()) {
+            if (!server.equals(deviceNode)) {
+                communicator.preconnect(server);
+            }
+        }
+    }
+
+    /**
+     * Function to send an ALIVE packet to main server, carrying a link probe.
      *
      */
     private void sendAliveToMainServer() {
+        final byte[] alivePacket = createAlivePacket(linkEstimator.probe(mainServer));
+        if (alivePacket == null) {
+            return;
+        }
+        LOG.info("Sending ALIVE to main server...");
+        send(alivePacket, mainServer);
+    }
+
+    /**
+     * Function to echo the link probe of an ALIVE packet back to its sender.
+     *
+     * @param view the view over the ALIVE packet
+     * @param dest the sender of the packet
+     */
+    private void answerAlive(final PacketView view, final ClientNode dest) {
+        final byte[] echo = linkEstimator.onAlive(dest, view.payload());
+        if (echo == null) {
+            return;
+        }
+        final byte[] alivePacket = createAlivePacket(echo);
+        if (alivePacket != null) {
+            send(alivePacket, dest);
+        }
+    }
+
+    /**
+     * Function to create an ALIVE packet from this server.
+     *
+     * @param payload the link probe or echo
+     * @return the packet, null if this server cannot be resolved
+     */
+    private byte[] createAlivePacket(final byte[] payload) {
         final PacketInfo packetInfo = new PacketInfo();
-        packetInfo.setLength(PacketParser.getHeaderSize());
+        packetInfo.setLength(PacketParser.getHeaderSize() + payload.length);
         packetInfo.setType(NetworkType.USE.ordinal());
         packetInfo.setConnectionType(NetworkConnectionType.ALIVE.ordinal());
-        packetInfo.setPayload(new byte[0]);
+        packetInfo.setPayload(payload);
         try {
             packetInfo.setIpAddress(InetAddress.getByName(deviceNode.hostName()));
         } catch (UnknownHostException e) {
             LOG.info("Unknown host: " + deviceNode.hostName());
             LOG.error("Exception", e);
-            return;
+            return null;
         }
         packetInfo.setPortNum(deviceNode.port());
-        final byte[] alivePacket = parser.createPkt(packetInfo);
-        while (true) {
-            LOG.info("Sending ALIVE to main server...");
-            send(alivePacket, mainServer);
-            try {
-                Thread.sleep(timeoutThreshold);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            }
-        }
+        return parser.createPkt(packetInfo);
     }
 
     /**
@@ -399,7 +594,7 @@ public class P2PServer implements P2PUser {
         final PacketInfo packetInfo = new PacketInfo();
         packetInfo.setType(NetworkType.USE.ordinal());
         packetInfo.setConnectionType(NetworkConnectionType.REMOVE.ordinal());
-        packetInfo.setPayload(client.toString().getBytes());
+        packetInfo.setPayload(serializer.serializeClientNetworkRecord(remClient));
         packetInfo.setLength(PacketParser.getHeaderSize() + packetInfo.getPayload().length);
         final byte[] removePacket = parser.createPkt(packetInfo);
         send(removePacket, mainServer);
@@ -428,7 +623,9 @@ public class P2PServer implements P2PUser {
         Networking.getNetwork().broadcast(removePkt, 0, 0);
         communicator.close();
         receiveThread.interrupt();
-        // sendThread.interrupt();
+        if (aliveTask != null) {
+            aliveTask.cancel();
+        }
         timer.close();
     }
 
@@ -441,10 +638,11 @@ public class P2PServer implements P2PUser {
     public byte[] createRemovePacket(final ClientNode client) {
         try {
             final PacketInfo packetInfo = new PacketInfo();
-            packetInfo.setLength(packetHeaderSize);
+            packetInfo.setPayload(serializer.serializeClientNetworkRecord(
+                    new ClientNetworkRecord(client, topology.getClusterIndex(client))));
+            packetInfo.setLength(packetHeaderSize + packetInfo.getPayload().length);
             packetInfo.setType(NetworkType.USE.ordinal());
             packetInfo.setConnectionType(NetworkConnectionType.REMOVE.ordinal());
-            packetInfo.setPayload(client.toString().getBytes());
             packetInfo.setIpAddress(InetAddress.getByName(client.hostName()));
             packetInfo.setPortNum(client.port());
             packetInfo.setBroadcast(1);
@@ -10,6 +10,8 @@
 
 package com.swe.networking;
 
+import java.nio.ByteBuffer;
+
 import com.swe.core.ClientNode;
 
 /**
@@ -33,6 +35,35 @@ public interface P2PUser {
      */
     void send(byte[] data, ClientNode destIp);
 
+    /**
+     * Function to send a packet made of several buffers. The default joins
+     * the parts, users that own a communicator hand them over as they are.
+     *
+     * @param parts the buffers of the packet in order
+     * @param destIp the one destination to send the data
+     */
+    default void send(final ByteBuffer[] parts, final ClientNode destIp) {
+        int size = 0;
+        for (ByteBuffer part : parts) {
+            size += part.remaining();
+        }
+        final ByteBuffer joined = ByteBuffer.allocate(size);
+        for (ByteBuffer part : parts) {
+            joined.put(part.duplicate());
+        }
+        send(joined.array(), destIp);
+    }
+
+    /**
+     * Function to forward a broadcast made on this device along the
+     * multicast tree. Only cluster servers are in the tree, so the default
+     * drops it.
+     *
+     * @param packet the relay packet, carrying this device as its origin
+     */
+    default void relayBroadcast(final byte[] packet) {
+    }
+
     /**
      * Function to receive data from other users.
      */
@@ -0,0 +1,267 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: PacketCompressor.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.swe.core.logging.SweLogger;
+import com.swe.core.logging.SweLoggerFactory;
+import com.swe.core.metrics.MetricsRegistry;
+
+/**
+ * Optional compression of packet payloads, signalled by the compressed
+ * flag of the header. A compressed payload holds the original length as a
+ * four byte int followed by the {@link LzCodec} encoding, primed with a
+ * preset dictionary of the canvas JSON, chat and topology shapes so even
+ * short messages compress. Payloads are only compressed above a size
+ * threshold and when the result is smaller, so the flag is the only thing
+ * a peer has to understand. Every device decompresses whether or not it
+ * compresses itself, compression only changes what this device sends.
+ */
+public final class PacketCompressor {
+
+    /**
+     * System property turning compression of sent payloads on.
+     */
+    public static final String COMPRESSION_PROPERTY = "swecomm.network.compression";
+
+    /**
+     * System property holding the smallest payload that is compressed.
+     */
+    public static final String THRESHOLD_PROPERTY = "swecomm.network.compression.threshold";
+
+    /**
+     * Default smallest payload that is compressed, below it the length
+     * prefix and the sequence overhead rarely pay off.
+     */
+    public static final int DEFAULT_THRESHOLD = 128;
+
+    /**
+     * Largest payload a compressed payload may expand to, the reassembly
+     * limit of a whole message.
+     */
+    private static final long MAX_ORIGINAL_LENGTH = Reassembler.DEFAULT_MAX_BYTES;
+
+    /**
+     * Number of bytes of the original length prefix.
+     */
+    private static final int LENGTH_BYTES = Integer.BYTES;
+
+    /**
+     * Preset dictionary. Matches reach into it as if it preceded every
+     * payload, and a repeated string only matches its latest copy, so the
+     * most frequent strings come last.
+     */
+    private static final byte[] DICTIONARY = ("192.168.0.10.0.0.172.16.127.0.0.1localhost"
+            + "chat:new-messagechat:file-saved-errordeletemessageIdreplyToMessageIdsenderDisplayName"
+            + "{\"target\":{\"hostName\":\"\",\"port\":},\"data\":"
+            + "\"Action\":\"CREATE\",\"Action\":\"MODIFY\",\"Action\":\"DELETE\","
+            + "\"Action\":\"UNDO\",\"Action\":\"REDO\","
+            + "\"Type\":\"FREEHAND\",\"Type\":\"RECTANGLE\",\"Type\":\"ELLIPSE\","
+            + "\"Type\":\"TRIANGLE\",\"Type\":\"LINE\","
+            + "\"Color\":\"#FF000000\",\"Color\":\"#FFFF0000\",\"Color\":\"#FF0000FF\","
+            + "\"Thickness\":1,\"Thickness\":2,\"Thickness\":3,"
+            + "\"IsDeleted\":false,\"IsDeleted\":true,"
+            + "{\"ShapeId\":\"\",\"Type\":\"\",\"Points\":[{\"X\":0,\"Y\":0},{\"X\":"
+            + "],\"Color\":\"\",\"Thickness\":2,\"CreatedBy\":\"\",\"LastModifiedBy\":\"\",\"IsDeleted\":false}"
+            + "},{\"X\":1,\"Y\":1},{\"X\":2,\"Y\":2},{\"X\":").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * The logger for the module.
+     */
+    private static final SweLogger LOG = SweLoggerFactory.getLogger("NETWORKING");
+
+    /**
+     * The shared compressor.
+     */
+    private static PacketCompressor packetCompressor = null;
+
+    /**
+     * The codec primed with the dictionary.
+     */
+    private static final LzCodec CODEC = new LzCodec(DICTIONARY);
+
+    /**
+     * Whether sent payloads are compressed.
+     */
+    private final boolean enabled;
+
+    /**
+     * The smallest payload that is compressed.
+     */
+    private final int threshold;
+
+    /**
+     * Original bytes of the payloads sent compressed.
+     */
+    private final AtomicLong rawBytes = new AtomicLong();
+
+    /**
+     * Compressed bytes of the payloads sent compressed.
+     */
+    private final AtomicLong wireBytes = new AtomicLong();
+
+    /**
+     * Payloads left uncompressed because compressing did not shrink them.
+     */
+    private final AtomicLong incompressible = new AtomicLong();
+
+    /**
+     * Creates a compressor.
+     *
+     * @param compress true to compress sent payloads
+     * @param minSize the smallest payload that is compressed
+     */
+    public PacketCompressor(final boolean compress, final int minSize) {
+        this.enabled = compress;
+        this.threshold = Math.max(LENGTH_BYTES + 1, minSize);
+    }
+
+    /**
+     * Function to get the shared compressor, configured from the
+     * {@value #COMPRESSION_PROPERTY} and {@value #THRESHOLD_PROPERTY}
+     * system properties.
+     *
+     * @return the compressor
+     */
+    public static synchronized PacketCompressor getPacketCompressor() {
+        if (packetCompressor == null) {
+            packetCompressor = new PacketCompressor(Boolean.getBoolean(COMPRESSION_PROPERTY),
+                    Integer.getInteger(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD));
+            final MetricsRegistry registry = MetricsRegistry.getMetricsRegistry();
+            registry.gauge("networking.compression.raw.bytes", packetCompressor::getRawBytes);
+            registry.gauge("networking.compression.wire.bytes", packetCompressor::getWireBytes);
+        }
+        return packetCompressor;
+    }
+
+    /**
+     * Function to check whether sent payloads are compressed.
+     *
+     * @return true if compression is on
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Function to compress a payload about to be sent.
+     *
+     * @param data the payload
+     * @return the compressed payload, or null when compression is off, the
+     *         payload is below the threshold or would not shrink
+     */
+    public byte[] compress(final byte[] data) {
+        if (!enabled || data.length < threshold) {
+            return null;
+        }
+        final byte[] out = new byte[data.length];
+        ByteBuffer.wrap(out).putInt(data.length);
+        final int size = CODEC.compress(data, out, LENGTH_BYTES, data.length - 1 - LENGTH_BYTES);
+        if (size < 0) {
+            incompressible.incrementAndGet();
+            return null;
+        }
+        rawBytes.addAndGet(data.length);
+        wireBytes.addAndGet(LENGTH_BYTES + size);
+        return Arrays.copyOf(out, LENGTH_BYTES + size);
+    }
+
+    /**
+     * Function to restore a compressed payload.
+     *
+     * @param payload the compressed payload between position and limit,
+     *        the position is left unchanged
+     * @return the original payload, or null if the payload is corrupt
+     */
+    public byte[] decompress(final ByteBuffer payload) {
+        final ByteBuffer in = payload.duplicate();
+        if (in.remaining() < LENGTH_BYTES) {
+            LOG.warn("Compressed payload too short: " + in.remaining());
+            return null;
+        }
+        final int length = in.getInt();
+        if (length < 0 || length > MAX_ORIGINAL_LENGTH) {
+            LOG.warn("Compressed payload claims invalid length " + length);
+            return null;
+        }
+        if (length > (long) in.remaining() * LzCodec.MAX_RATIO) {
+            LOG.warn("Compressed payload of " + in.remaining() + " bytes claims length " + length);
+            return null;
+        }
+        final byte[] out = new byte[length];
+        if (!CODEC.decompress(in, out)) {
+            LOG.warn("Corrupt compressed payload of length " + length);
+            return null;
+        }
+        return out;
+    }
+
+    /**
+     * Function to get the payload of a packet, restored when its
+     * compressed flag is set.
+     *
+     * @param view the view over the packet
+     * @return a copy of the original payload, null if it is corrupt
+     */
+    public byte[] payloadOf(final PacketView view) {
+        if (view.getCompressed() == 0) {
+            return view.copyPayload();
+        }
+        return decompress(view.payload());
+    }
+
+    /**
+     * Function to get the payload of a parsed packet, restored when its
+     * compressed flag is set.
+     *
+     * @param info the parsed packet
+     * @return the original payload, null if it is corrupt
+     */
+    public byte[] payloadOf(final PacketInfo info) {
+        if (info.getCompressed() == 0) {
+            return info.getPayload();
+        }
+        return decompress(ByteBuffer.wrap(info.getPayload()));
+    }
+
+    /**
+     * Function to get the original bytes of the payloads sent compressed.
+     *
+     * @return the byte count
+     */
+    public long getRawBytes() {
+        return rawBytes.get();
+    }
+
+    /**
+     * Function to get the compressed bytes of the payloads sent
+     * compressed.
+     *
+     * @return the byte count
+     */
+    public long getWireBytes() {
+        return wireBytes.get();
+    }
+
+    /**
+     * Function to get the number of payloads left uncompressed because
+     * compressing did not shrink them.
+     *
+     * @return the payload count
+     */
+    public long getIncompressible() {
+        return incompressible.get();
+    }
+}
@@ -53,11 +53,36 @@ public class PacketInfo {
      */
     private int broadcast;
 
+    /**
+     * Compressed payload flag (1 bit ).
+     */
+    private int compressed;
+
+    /**
+     * Latest only flag (1 bit ).
+     */
+    private int latest;
+
     /**
      * IPv4 address (4 bytes).
      */
     private InetAddress ipAddress;
 
+    /**
+     * IPv4 address of the sending device, latest only packets (4 bytes).
+     */
+    private InetAddress originAddress;
+
+    /**
+     * Port of the sending device, latest only packets (16-bit value).
+     */
+    private int originPort;
+
+    /**
+     * Stream key within the module, latest only packets (16-bit value).
+     */
+    private int stream;
+
     /**
      * Network port number (16-bit value).
      */
@@ -101,7 +126,6 @@ public class PacketInfo {
         } else {
             this.payload = Arrays.copyOf(payloadBytes, payloadBytes.length);
         }
-        System.out.println("payload bytes " + this.payload.length);
     }
 
     /**
@@ -212,6 +236,42 @@ public class PacketInfo {
         this.broadcast = broadcastValue;
     }
 
+    /**
+     * Get the compressed payload flag (0 or 1).
+     *
+     * @return compressed the compressed payload flag
+     */
+    public int getCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Set the compressed payload flag (0 or 1).
+     *
+     * @param compressedValue the compressed payload flag
+     */
+    public void setCompressed(final int compressedValue) {
+        this.compressed = compressedValue;
+    }
+
+    /**
+     * Get the latest only flag (0 or 1).
+     *
+     * @return latest the latest only flag
+     */
+    public int getLatest() {
+        return latest;
+    }
+
+    /**
+     * Set the latest only flag (0 or 1).
+     *
+     * @param latestValue the latest only flag
+     */
+    public void setLatest(final int latestValue) {
+        this.latest = latestValue;
+    }
+
     /**
      * Get the IPv4 address.
      *
@@ -230,6 +290,60 @@ public class PacketInfo {
         this.ipAddress = ipAddressValue;
     }
 
+    /**
+     * Get the IPv4 address of the sending device of a latest only packet.
+     *
+     * @return originAddress the origin address
+     */
+    public InetAddress getOriginAddress() {
+        return originAddress;
+    }
+
+    /**
+     * Set the IPv4 address of the sending device of a latest only packet.
+     *
+     * @param originAddressValue the origin address
+     */
+    public void setOriginAddress(final InetAddress originAddressValue) {
+        this.originAddress = originAddressValue;
+    }
+
+    /**
+     * Get the port of the sending device of a latest only packet.
+     *
+     * @return originPort the origin port
+     */
+    public int getOriginPort() {
+        return originPort;
+    }
+
+    /**
+     * Set the port of the sending device of a latest only packet.
+     *
+     * @param originPortValue the origin port
+     */
+    public void setOriginPort(final int originPortValue) {
+        this.originPort = originPortValue;
+    }
+
+    /**
+     * Get the stream key of a latest only packet within its module.
+     *
+     * @return stream the stream key
+     */
+    public int getStream() {
+        return stream;
+    }
+
+    /**
+     * Set the stream key of a latest only packet within its module.
+     *
+     * @param streamValue the stream key
+     */
+    public void setStream(final int streamValue) {
+        this.stream = streamValue;
+    }
+
     /**
      * Get the port number.
      *
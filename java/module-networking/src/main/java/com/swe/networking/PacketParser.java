@@ -23,12 +23,18 @@ The structure of the packet is given below
 - Module            : 4bits
 - Connection Type   : 3bits
 - Broadcast         : 1bit
-- empty             : 3bits ( for future use )
+- Tree relay        : 1bit
+- Compressed        : 1bit
+- Latest only       : 1bit
 - IPv4 addr         : 32bits
 - port num          : 16bits
 - Message Id        : 32bits
 - Chunk Num         : 32bits
 - Chunk Length      : 32bits
+- Stream extension  : 64bits, only when Latest only is set or Chunk Length > 1
+    - Origin IPv4   : 32bits
+    - Origin port   : 16bits
+    - Stream key    : 16bits
 - Payload           : variable length
 
 
@@ -37,7 +43,7 @@ The structure of the packet is given below
 +--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
 |                     Length                    |
 +--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
-|Type |Priority|   Module  |Con Type|BC|  empty |
+|Type |Priority|   Module  |Con Type|BC|TR|CP|LO|
 +--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
 |                  IPv4 Address                 |
 |                                               |
@@ -53,6 +59,13 @@ The structure of the packet is given below
 |                  Chunk Length                 |
 |                                               |
 +--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
+|     Origin IPv4 Address (LO or chunked)       |
+|                                               |
++--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
+|     Origin port number (LO or chunked)        |
++--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
+|          Stream key (LO or chunked)           |
++--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
 | Payload....
 +--+--+--+--+--+
  */
@@ -70,6 +83,11 @@ public class PacketParser {
      * Size of the packet header in bytes.
      */
     private static final int HEADER_SIZE = 22;
+    /**
+     * Size of the stream extension following the header of latest only
+     * packets and of chunks of messages of several chunks.
+     */
+    private static final int LATEST_EXTENSION_SIZE = 8;
     /**
      * Number of bytes in an IPv4 address.
      */
@@ -119,6 +137,18 @@ public class PacketParser {
      * Offset of the chunk length field.
      */
     private static final int OFF_CHUNK_LENGTH = 18;
+    /**
+     * Offset of the origin address in the stream extension.
+     */
+    private static final int OFF_ORIGIN_IP = 22;
+    /**
+     * Offset of the origin port in the stream extension.
+     */
+    private static final int OFF_ORIGIN_PORT = 26;
+    /**
+     * Offset of the stream key in the stream extension.
+     */
+    private static final int OFF_STREAM = 28;
 
     /**
      * Bitfield sizes within the first two bytes.
@@ -144,9 +174,18 @@ public class PacketParser {
      */
     private static final int BITS_BROADCAST = 1;
     /**
-     * no of bits in byte 2 for reserved.
+     * no of bits in byte 2 for the tree relay flag, only read through
+     * {@link PacketView}.
+     */
+    private static final int BITS_TREE_RELAY = 1;
+    /**
+     * no of bits in byte 2 for the compressed payload flag.
+     */
+    private static final int BITS_COMPRESSED = 1;
+    /**
+     * no of bits in byte 2 for the latest only flag.
      */
-    private static final int BITS_EMPTY = 3;
+    private static final int BITS_LATEST = 1;
 
     /**
      * Bit mask for the length field.
@@ -176,6 +215,14 @@ public class PacketParser {
      * Bit mask for the broadcast field.
      */
     private static final int MASK_BROADCAST = 1;
+    /**
+     * Bit mask for the compressed field.
+     */
+    private static final int MASK_COMPRESSED = 1;
+    /**
+     * Bit mask for the latest only field.
+     */
+    private static final int MASK_LATEST = 1;
 
     /**
      * Shift right amount to extract the length field from byte0 and byte1.
@@ -192,11 +239,20 @@ public class PacketParser {
     /**
      * Shift right amount to extract the connection type field from byte3.
      */
-    private static final int SHIFT_CONNECTION_TYPE = BITS_EMPTY + BITS_BROADCAST;
+    private static final int SHIFT_CONNECTION_TYPE = BITS_LATEST + BITS_COMPRESSED + BITS_TREE_RELAY
+            + BITS_BROADCAST;
     /**
      * Shift right amount to extract the broadcast field from byte3.
      */
-    private static final int SHIFT_BROADCAST = BITS_EMPTY;
+    private static final int SHIFT_BROADCAST = BITS_LATEST + BITS_COMPRESSED + BITS_TREE_RELAY;
+    /**
+     * Shift right amount to extract the compressed field from byte3.
+     */
+    private static final int SHIFT_COMPRESSED = BITS_LATEST;
+    /**
+     * Shift right amount to extract the latest only field from byte3.
+     */
+    private static final int SHIFT_LATEST = 0;
     /**
      * Shift right amount to extract the module's upper bit from byte3.
      */
@@ -242,6 +298,8 @@ public class PacketParser {
 
         final int connectionType = (pkt[OFF_FLAGS + 1] >> SHIFT_CONNECTION_TYPE) & MASK_CONNECTION_TYPE;
         final int broadcast = (pkt[OFF_FLAGS + 1] >> SHIFT_BROADCAST) & MASK_BROADCAST;
+        final int compressed = (pkt[OFF_FLAGS + 1] >> SHIFT_COMPRESSED) & MASK_COMPRESSED;
+        final int latest = (pkt[OFF_FLAGS + 1] >> SHIFT_LATEST) & MASK_LATEST;
 
         final byte[] ipBytes = Arrays.copyOfRange(pkt, OFF_IP, OFF_IP + LEN_IP);
         final InetAddress ip = InetAddress.getByAddress(ipBytes);
@@ -258,7 +316,16 @@ public class PacketParser {
         final ByteBuffer clenBb = ByteBuffer.wrap(pkt, OFF_CHUNK_LENGTH, LEN_CHUNK_LENGTH);
         final int chunkLength = clenBb.getInt();
 
-        final byte[] payload = Arrays.copyOfRange(pkt, HEADER_SIZE, pkt.length);
+        int headerLength = HEADER_SIZE;
+        if (hasExtension(latest, chunkLength)) {
+            headerLength += LATEST_EXTENSION_SIZE;
+            final byte[] originBytes = Arrays.copyOfRange(pkt, OFF_ORIGIN_IP, OFF_ORIGIN_IP + LEN_IP);
+            info.setOriginAddress(InetAddress.getByAddress(originBytes));
+            info.setOriginPort(Short.toUnsignedInt(ByteBuffer.wrap(pkt, OFF_ORIGIN_PORT, LEN_PORT).getShort()));
+            info.setStream(Short.toUnsignedInt(ByteBuffer.wrap(pkt, OFF_STREAM, LEN_PORT).getShort()));
+        }
+
+        final byte[] payload = Arrays.copyOfRange(pkt, headerLength, pkt.length);
 
         info.setLength(length);
         info.setType(type);
@@ -266,6 +333,8 @@ public class PacketParser {
         info.setModule(module);
         info.setConnectionType(connectionType);
         info.setBroadcast(broadcast);
+        info.setCompressed(compressed);
+        info.setLatest(latest);
         info.setIpAddress(ip);
         info.setPortNum(port);
         info.setMessageId(messageId);
@@ -285,7 +354,7 @@ public class PacketParser {
      */
     public byte[] createPkt(final PacketInfo ds) {
         final byte[] data = ds.getPayload();
-        final byte[] pkt = new byte[HEADER_SIZE + data.length];
+        final byte[] pkt = new byte[getHeaderSize(ds) + data.length];
         final ByteBuffer bb = ByteBuffer.wrap(pkt);
 
         // Byte 0-1: length
@@ -304,7 +373,9 @@ public class PacketParser {
         final byte byte2 = (byte) (typePart | priorityPart | moduleLowerPacked);
         final byte byte3 = (byte) ((moduleUpper << SHIFT_MODULE_UPPER)
                 | ((ds.getConnectionType() & MASK_CONNECTION_TYPE) << SHIFT_CONNECTION_TYPE)
-                | ((ds.getBroadcast() & MASK_BROADCAST) << SHIFT_BROADCAST));
+                | ((ds.getBroadcast() & MASK_BROADCAST) << SHIFT_BROADCAST)
+                | ((ds.getCompressed() & MASK_COMPRESSED) << SHIFT_COMPRESSED)
+                | ((ds.getLatest() & MASK_LATEST) << SHIFT_LATEST));
 
         bb.put(byte2);
         bb.put(byte3);
@@ -324,7 +395,18 @@ public class PacketParser {
         // Bytes 18–21: chunkLength
         bb.putInt(ds.getChunkLength());
 
-        // Bytes 22+: payload
+        // Bytes 22-29 of latest only or chunked packets: stream extension
+        if (hasExtension(ds.getLatest(), ds.getChunkLength())) {
+            if (ds.getOriginAddress() == null) {
+                bb.putInt(0);
+            } else {
+                bb.put(ds.getOriginAddress().getAddress());
+            }
+            bb.putShort((short) ds.getOriginPort());
+            bb.putShort((short) ds.getStream());
+        }
+
+        // Bytes 22+, or 30+ with the stream extension: payload
         bb.put(data);
 
         return pkt;
@@ -338,4 +420,32 @@ public class PacketParser {
     public static int getHeaderSize() {
         return HEADER_SIZE;
     }
+
+    /**
+     * getter for the header size of a packet, with the stream extension
+     * when it is latest only or a chunk of a message of several chunks.
+     *
+     * @param info the packet info
+     * @return the header size of the packet.
+     */
+    public static int getHeaderSize(final PacketInfo info) {
+        if (hasExtension(info.getLatest(), info.getChunkLength())) {
+            return HEADER_SIZE + LATEST_EXTENSION_SIZE;
+        }
+        return HEADER_SIZE;
+    }
+
+    /**
+     * Function to check if a packet carries the stream extension. Latest
+     * only packets need it to key their stream, and chunks need the origin
+     * so that messages of devices numbering their messages alike stay apart
+     * when one server relays them.
+     *
+     * @param latest the latest only flag
+     * @param chunkLength the number of chunks of the message
+     * @return true if the stream extension follows the header
+     */
+    public static boolean hasExtension(final int latest, final int chunkLength) {
+        return latest == 1 || chunkLength > 1;
+    }
 }
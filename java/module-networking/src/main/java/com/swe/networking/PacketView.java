@@ -0,0 +1,700 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: PacketView.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Reusable flyweight over an encoded packet. Reads the header fields of
+ * the layout described in {@link PacketParser} in place, without building a
+ * {@link PacketInfo} or copying the payload. A view is not thread safe, keep
+ * one per thread and re-point it with {@code wrap}.
+ */
+public final class PacketView {
+
+    /**
+     * Size of the packet header in bytes.
+     */
+    private static final int HEADER_SIZE = 22;
+    /**
+     * Size of the stream extension following the header of latest only
+     * packets and of chunks of messages of several chunks.
+     */
+    private static final int LATEST_EXTENSION_SIZE = 8;
+    /**
+     * Offset of the first flags byte.
+     */
+    private static final int OFF_FLAGS = 2;
+    /**
+     * Offset of the second flags byte.
+     */
+    private static final int OFF_FLAGS2 = 3;
+    /**
+     * Offset of the IPv4 address field.
+     */
+    private static final int OFF_IP = 4;
+    /**
+     * Offset of the port field.
+     */
+    private static final int OFF_PORT = 8;
+    /**
+     * Offset of the message id field.
+     */
+    private static final int OFF_MESSAGE_ID = 10;
+    /**
+     * Offset of the chunk number field.
+     */
+    private static final int OFF_CHUNK_NUM = 14;
+    /**
+     * Offset of the chunk length field.
+     */
+    private static final int OFF_CHUNK_LENGTH = 18;
+    /**
+     * Offset of the origin address in the stream extension.
+     */
+    private static final int OFF_ORIGIN_IP = 22;
+    /**
+     * Offset of the origin port in the stream extension.
+     */
+    private static final int OFF_ORIGIN_PORT = 26;
+    /**
+     * Offset of the stream key in the stream extension.
+     */
+    private static final int OFF_STREAM = 28;
+
+    /**
+     * Mask to read a byte as unsigned.
+     */
+    private static final int BYTE_MASK = 0xFF;
+    /**
+     * Bits in a byte.
+     */
+    private static final int BYTE_BITS = 8;
+    /**
+     * Shift of the type field in the first flags byte.
+     */
+    private static final int SHIFT_TYPE = 6;
+    /**
+     * Mask of the type field.
+     */
+    private static final int MASK_TYPE = 0b11;
+    /**
+     * Shift of the priority field in the first flags byte.
+     */
+    private static final int SHIFT_PRIORITY = 3;
+    /**
+     * Mask of the priority field.
+     */
+    private static final int MASK_PRIORITY = 0b111;
+    /**
+     * Mask of the module's upper three bits in the first flags byte.
+     */
+    private static final int MASK_MODULE_UPPER = 0b111;
+    /**
+     * Shift of the module's lowest bit in the second flags byte.
+     */
+    private static final int SHIFT_MODULE_LOWER = 7;
+    /**
+     * Shift of the connection type field in the second flags byte.
+     */
+    private static final int SHIFT_CONNECTION_TYPE = 4;
+    /**
+     * Mask of the connection type field.
+     */
+    private static final int MASK_CONNECTION_TYPE = 0b111;
+    /**
+     * Shift of the broadcast flag in the second flags byte.
+     */
+    private static final int SHIFT_BROADCAST = 3;
+    /**
+     * Shift of the tree relay flag in the second flags byte.
+     */
+    private static final int SHIFT_TREE_RELAY = 2;
+    /**
+     * Shift of the compressed payload flag in the second flags byte.
+     */
+    private static final int SHIFT_COMPRESSED = 1;
+    /**
+     * Shift of the latest only flag in the second flags byte.
+     */
+    private static final int SHIFT_LATEST = 0;
+
+    /**
+     * Backing array when wrapping an array.
+     */
+    private byte[] array;
+
+    /**
+     * Backing buffer when wrapping a buffer.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Offset of the packet inside the backing storage.
+     */
+    private int offset;
+
+    /**
+     * Number of packet bytes visible through the view.
+     */
+    private int size;
+
+    /**
+     * Function to point the view at a whole packet array.
+     *
+     * @param pkt the packet bytes
+     * @return this view
+     */
+    public PacketView wrap(final byte[] pkt) {
+        return wrap(pkt, 0, pkt.length);
+    }
+
+    /**
+     * Function to point the view at a packet inside an array.
+     *
+     * @param pkt the backing array
+     * @param off offset of the packet
+     * @param len length of the packet
+     * @return this view
+     */
+    public PacketView wrap(final byte[] pkt, final int off, final int len) {
+        if (len < HEADER_SIZE) {
+            throw new IllegalArgumentException("Packet shorter than header: " + len);
+        }
+        this.array = pkt;
+        this.buffer = null;
+        this.offset = off;
+        this.size = len;
+        return checkExtension();
+    }
+
+    /**
+     * Function to point the view at the packet between position and limit of
+     * a buffer. The buffer position is not changed.
+     *
+     * @param pkt the buffer holding the packet
+     * @return this view
+     */
+    public PacketView wrap(final ByteBuffer pkt) {
+        if (pkt.hasArray()) {
+            return wrap(pkt.array(), pkt.arrayOffset() + pkt.position(), pkt.remaining());
+        }
+        if (pkt.remaining() < HEADER_SIZE) {
+            throw new IllegalArgumentException("Packet shorter than header: " + pkt.remaining());
+        }
+        this.array = null;
+        this.buffer = pkt;
+        this.offset = pkt.position();
+        this.size = pkt.remaining();
+        return checkExtension();
+    }
+
+    /**
+     * Function to point the view at the fixed header at the position of a
+     * buffer, for reading the header fields of the first part of a packet
+     * being sent without checking that the stream extension follows.
+     *
+     * @param pkt the buffer starting with the header
+     * @return this view
+     */
+    public PacketView wrapHeader(final ByteBuffer pkt) {
+        if (pkt.remaining() < HEADER_SIZE) {
+            throw new IllegalArgumentException("Packet shorter than header: " + pkt.remaining());
+        }
+        this.array = null;
+        this.buffer = pkt;
+        this.offset = pkt.position();
+        this.size = pkt.remaining();
+        return this;
+    }
+
+    /**
+     * Function to check that a latest only or chunked packet holds its
+     * stream extension.
+     *
+     * @return this view
+     */
+    private PacketView checkExtension() {
+        if (size < getHeaderLength()) {
+            throw new IllegalArgumentException("Packet shorter than its stream extension: " + size);
+        }
+        return this;
+    }
+
+    /**
+     * Function to get the number of packet bytes visible through the view.
+     *
+     * @return the packet size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the length field of the packet.
+     *
+     * @return the length
+     */
+    public int getLength() {
+        return u8(0) | (u8(1) << BYTE_BITS);
+    }
+
+    /**
+     * Get the packet type.
+     *
+     * @return the type
+     */
+    public int getType() {
+        return (u8(OFF_FLAGS) >> SHIFT_TYPE) & MASK_TYPE;
+    }
+
+    /**
+     * Get the packet priority.
+     *
+     * @return the priority
+     */
+    public int getPriority() {
+        return (u8(OFF_FLAGS) >> SHIFT_PRIORITY) & MASK_PRIORITY;
+    }
+
+    /**
+     * Get the module id.
+     *
+     * @return the module
+     */
+    public int getModule() {
+        return ((u8(OFF_FLAGS) & MASK_MODULE_UPPER) << 1) | (u8(OFF_FLAGS2) >> SHIFT_MODULE_LOWER);
+    }
+
+    /**
+     * Get the connection type.
+     *
+     * @return the connection type
+     */
+    public int getConnectionType() {
+        return (u8(OFF_FLAGS2) >> SHIFT_CONNECTION_TYPE) & MASK_CONNECTION_TYPE;
+    }
+
+    /**
+     * Get the broadcast flag.
+     *
+     * @return the broadcast flag
+     */
+    public int getBroadcast() {
+        return (u8(OFF_FLAGS2) >> SHIFT_BROADCAST) & 1;
+    }
+
+    /**
+     * Get the tree relay flag, set on broadcasts forwarded along the
+     * multicast tree whose address field holds the origin cluster server.
+     *
+     * @return the tree relay flag
+     */
+    public int getTreeRelay() {
+        return (u8(OFF_FLAGS2) >> SHIFT_TREE_RELAY) & 1;
+    }
+
+    /**
+     * Get the compressed payload flag, set when the payload was compressed
+     * by the {@link PacketCompressor} of the sender.
+     *
+     * @return the compressed payload flag
+     */
+    public int getCompressed() {
+        return (u8(OFF_FLAGS2) >> SHIFT_COMPRESSED) & 1;
+    }
+
+    /**
+     * Get the latest only flag, set on messages of a stream where a newer
+     * message makes the older ones worthless, see {@link Supersession}.
+     *
+     * @return the latest only flag
+     */
+    public int getLatest() {
+        return (u8(OFF_FLAGS2) >> SHIFT_LATEST) & 1;
+    }
+
+    /**
+     * Function to check if the stream extension follows the header, as it
+     * does for latest only packets and chunks of messages of several
+     * chunks.
+     *
+     * @return true if the packet carries the stream extension
+     */
+    public boolean hasExtension() {
+        return PacketParser.hasExtension(getLatest(), getChunkLength());
+    }
+
+    /**
+     * Get the length of the header, including the stream extension of a
+     * latest only or chunked packet.
+     *
+     * @return the header length
+     */
+    public int getHeaderLength() {
+        if (hasExtension()) {
+            return HEADER_SIZE + LATEST_EXTENSION_SIZE;
+        }
+        return HEADER_SIZE;
+    }
+
+    /**
+     * Get the address of the device that sent a latest only or chunked
+     * message, as a big endian int.
+     *
+     * @return the origin address, 0 without the stream extension
+     */
+    public int getOriginIpAddress() {
+        if (!hasExtension()) {
+            return 0;
+        }
+        return int32(OFF_ORIGIN_IP);
+    }
+
+    /**
+     * Get the port of the device that sent a latest only or chunked message.
+     *
+     * @return the origin port, 0 without the stream extension
+     */
+    public int getOriginPortNum() {
+        if (!hasExtension()) {
+            return 0;
+        }
+        return (u8(OFF_ORIGIN_PORT) << BYTE_BITS) | u8(OFF_ORIGIN_PORT + 1);
+    }
+
+    /**
+     * Get the stream key of a latest only message within its module.
+     *
+     * @return the stream key, 0 when the packet is not latest only
+     */
+    public int getStream() {
+        if (getLatest() == 0) {
+            return 0;
+        }
+        return (u8(OFF_STREAM) << BYTE_BITS) | u8(OFF_STREAM + 1);
+    }
+
+    /**
+     * Get the IPv4 address as a big endian int.
+     *
+     * @return the address
+     */
+    public int getIpAddress() {
+        return int32(OFF_IP);
+    }
+
+    /**
+     * Get the IPv4 address in dotted form. Allocates the string.
+     *
+     * @return the address string
+     */
+    public String getHostAddress() {
+        return ipToString(getIpAddress());
+    }
+
+    /**
+     * Get the port number.
+     *
+     * @return the port
+     */
+    public int getPortNum() {
+        return (u8(OFF_PORT) << BYTE_BITS) | u8(OFF_PORT + 1);
+    }
+
+    /**
+     * Get the address and port of the packet as a client node.
+     *
+     * @return the client node
+     */
+    public ClientNode getClientNode() {
+        return new ClientNode(getHostAddress(), getPortNum());
+    }
+
+    /**
+     * Get the message id.
+     *
+     * @return the message id
+     */
+    public int getMessageId() {
+        return int32(OFF_MESSAGE_ID);
+    }
+
+    /**
+     * Get the chunk number.
+     *
+     * @return the chunk number
+     */
+    public int getChunkNum() {
+        return int32(OFF_CHUNK_NUM);
+    }
+
+    /**
+     * Get the number of chunks of the message.
+     *
+     * @return the chunk length
+     */
+    public int getChunkLength() {
+        return int32(OFF_CHUNK_LENGTH);
+    }
+
+    /**
+     * Get the payload length.
+     *
+     * @return the payload length
+     */
+    public int getPayloadLength() {
+        return size - getHeaderLength();
+    }
+
+    /**
+     * Get the payload as a buffer slice sharing the packet storage.
+     *
+     * @return the payload slice
+     */
+    public ByteBuffer payload() {
+        final int headerLength = getHeaderLength();
+        if (array != null) {
+            return ByteBuffer.wrap(array, offset + headerLength, size - headerLength).slice();
+        }
+        return buffer.slice(offset + headerLength, size - headerLength);
+    }
+
+    /**
+     * Function to copy the payload into a destination array.
+     *
+     * @param dest the destination array
+     * @param destOffset the offset to copy to
+     */
+    public void copyPayloadTo(final byte[] dest, final int destOffset) {
+        final int headerLength = getHeaderLength();
+        if (array != null) {
+            System.arraycopy(array, offset + headerLength, dest, destOffset, size - headerLength);
+        } else {
+            buffer.get(offset + headerLength, dest, destOffset, size - headerLength);
+        }
+    }
+
+    /**
+     * Function to copy the payload into a new array.
+     *
+     * @return the payload bytes
+     */
+    public byte[] copyPayload() {
+        if (array != null) {
+            return Arrays.copyOfRange(array, offset + getHeaderLength(), offset + size);
+        }
+        final byte[] payload = new byte[getPayloadLength()];
+        copyPayloadTo(payload, 0);
+        return payload;
+    }
+
+    /**
+     * Function to get the length of the header of the message a chunk is
+     * merged into. The message is of one chunk, so it keeps the stream
+     * extension only when it is latest only.
+     *
+     * @return the header length of the merged message
+     */
+    public int getMergedHeaderLength() {
+        if (getLatest() == 1) {
+            return HEADER_SIZE + LATEST_EXTENSION_SIZE;
+        }
+        return HEADER_SIZE;
+    }
+
+    /**
+     * Function to copy the header into the start of a destination array as
+     * the header of the message the chunk is merged into, of one chunk.
+     *
+     * @param dest the destination array
+     */
+    public void copyMergedHeaderTo(final byte[] dest) {
+        final int headerLength = getMergedHeaderLength();
+        if (array != null) {
+            System.arraycopy(array, offset, dest, 0, headerLength);
+        } else {
+            buffer.get(offset, dest, 0, headerLength);
+        }
+        final ByteBuffer merged = ByteBuffer.wrap(dest);
+        merged.putInt(OFF_CHUNK_NUM, 0);
+        merged.putInt(OFF_CHUNK_LENGTH, 1);
+    }
+
+    /**
+     * Function to copy the whole packet into a new array, for a packet that
+     * must outlive the storage the view points at.
+     *
+     * @return the packet bytes
+     */
+    public byte[] copyPacket() {
+        if (array != null) {
+            return Arrays.copyOfRange(array, offset, offset + size);
+        }
+        final byte[] packet = new byte[size];
+        buffer.get(offset, packet, 0, size);
+        return packet;
+    }
+
+    /**
+     * Set the packet type in place.
+     *
+     * @param type the new type
+     */
+    public void setType(final int type) {
+        final int flags = u8(OFF_FLAGS) & ~(MASK_TYPE << SHIFT_TYPE);
+        put(OFF_FLAGS, flags | ((type & MASK_TYPE) << SHIFT_TYPE));
+    }
+
+    /**
+     * Set the broadcast flag in place.
+     *
+     * @param broadcast the new flag
+     */
+    public void setBroadcast(final int broadcast) {
+        final int flags = u8(OFF_FLAGS2) & ~(1 << SHIFT_BROADCAST);
+        put(OFF_FLAGS2, flags | ((broadcast & 1) << SHIFT_BROADCAST));
+    }
+
+    /**
+     * Set the tree relay flag in place.
+     *
+     * @param treeRelay the new flag
+     */
+    public void setTreeRelay(final int treeRelay) {
+        final int flags = u8(OFF_FLAGS2) & ~(1 << SHIFT_TREE_RELAY);
+        put(OFF_FLAGS2, flags | ((treeRelay & 1) << SHIFT_TREE_RELAY));
+    }
+
+    /**
+     * Set the compressed payload flag in place.
+     *
+     * @param compressed the new flag
+     */
+    public void setCompressed(final int compressed) {
+        final int flags = u8(OFF_FLAGS2) & ~(1 << SHIFT_COMPRESSED);
+        put(OFF_FLAGS2, flags | ((compressed & 1) << SHIFT_COMPRESSED));
+    }
+
+    /**
+     * Set the IPv4 address in place.
+     *
+     * @param ipAddress the new address as a big endian int
+     */
+    public void setIpAddress(final int ipAddress) {
+        putInt(OFF_IP, ipAddress);
+    }
+
+    /**
+     * Set the port number in place.
+     *
+     * @param port the new port
+     */
+    public void setPortNum(final int port) {
+        put(OFF_PORT, port >>> BYTE_BITS);
+        put(OFF_PORT + 1, port);
+    }
+
+    /**
+     * Set the chunk number in place.
+     *
+     * @param chunkNum the new chunk number
+     */
+    public void setChunkNum(final int chunkNum) {
+        putInt(OFF_CHUNK_NUM, chunkNum);
+    }
+
+    /**
+     * Set the number of chunks of the message in place.
+     *
+     * @param chunkLength the new chunk length
+     */
+    public void setChunkLength(final int chunkLength) {
+        putInt(OFF_CHUNK_LENGTH, chunkLength);
+    }
+
+    /**
+     * Function to convert a big endian IPv4 int to dotted form.
+     *
+     * @param ip the address
+     * @return the dotted address
+     */
+    public static String ipToString(final int ip) {
+        final int shift3 = 24;
+        final int shift2 = 16;
+        return ((ip >>> shift3) & BYTE_MASK) + "." + ((ip >>> shift2) & BYTE_MASK) + "."
+                + ((ip >>> BYTE_BITS) & BYTE_MASK) + "." + (ip & BYTE_MASK);
+    }
+
+    /**
+     * Function to read an unsigned byte of the packet.
+     *
+     * @param idx index inside the packet
+     * @return the value
+     */
+    private int u8(final int idx) {
+        if (array != null) {
+            return array[offset + idx] & BYTE_MASK;
+        }
+        return buffer.get(offset + idx) & BYTE_MASK;
+    }
+
+    /**
+     * Function to read a big endian int of the packet.
+     *
+     * @param idx index inside the packet
+     * @return the value
+     */
+    private int int32(final int idx) {
+        if (array != null) {
+            final int shift3 = 24;
+            final int shift2 = 16;
+            final int lastByte = 3;
+            final int base = offset + idx;
+            return (array[base] << shift3) | ((array[base + 1] & BYTE_MASK) << shift2)
+                    | ((array[base + 2] & BYTE_MASK) << BYTE_BITS) | (array[base + lastByte] & BYTE_MASK);
+        }
+        return buffer.getInt(offset + idx);
+    }
+
+    /**
+     * Function to write a byte of the packet.
+     *
+     * @param idx index inside the packet
+     * @param value the value
+     */
+    private void put(final int idx, final int value) {
+        if (array != null) {
+            array[offset + idx] = (byte) value;
+        } else {
+            buffer.put(offset + idx, (byte) value);
+        }
+    }
+
+    /**
+     * Function to write a big endian int of the packet.
+     *
+     * @param idx index inside the packet
+     * @param value the value
+     */
+    private void putInt(final int idx, final int value) {
+        final int shift3 = 24;
+        final int shift2 = 16;
+        final int lastByte = 3;
+        put(idx, value >>> shift3);
+        put(idx + 1, value >>> shift2);
+        put(idx + 2, value >>> BYTE_BITS);
+        put(idx + lastByte, value);
+    }
+}
@@ -0,0 +1,494 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: PeerConnection.java
+ *  Owner: Loganath
+ *  Roll Number : 112201016
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.LinkedHashSet;
+
+import com.swe.core.ClientNode;
+import com.swe.core.logging.SweLogger;
+import com.swe.core.logging.SweLoggerFactory;
+
+/**
+ * State of one TCP connection: the frame decoder of the read side and a
+ * bounded outbound queue drained by the selector when the socket becomes
+ * writable. Writes never spin on a full socket, the remainder stays queued.
+ * A connection may be created while its connect is still in progress, then
+ * packets are only queued until the selector completes the connect. Queued
+ * buffers are handed to the socket together in one gathering write. Once a
+ * chunk of a message is dropped on a full queue the rest of that message is
+ * dropped too, the receiver cannot complete it anyway. Messages are told
+ * apart by their destination, origin and message id, so several can be
+ * dropped at once.
+ */
+public final class PeerConnection {
+
+    /**
+     * Logger for the connection.
+     */
+    private static final SweLogger LOG = SweLoggerFactory.getLogger("NETWORKING");
+
+    /**
+     * Default limit of packets queued for one peer, whatever the number of
+     * buffers a packet is made of.
+     */
+    public static final int DEFAULT_MAX_PACKETS = 1024;
+
+    /**
+     * Default limit of bytes queued for one peer.
+     */
+    public static final long DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
+
+    /**
+     * Maximum buffers handed to one gathering write.
+     */
+    private static final int MAX_GATHER = 64;
+
+    /**
+     * Maximum messages whose remaining chunks are dropped at once. The
+     * oldest is forgotten first, its last chunk may never come.
+     */
+    private static final int MAX_DROPPED_MESSAGES = 64;
+
+    /**
+     * The peer at the other end.
+     */
+    private final ClientNode peer;
+
+    /**
+     * The connected channel.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * Decoder of the incoming byte stream.
+     */
+    private final FrameDecoder decoder;
+
+    /**
+     * The selection key of the channel, used to toggle write interest.
+     */
+    private volatile SelectionKey key;
+
+    /**
+     * Packets waiting to be written, the head may be partially written.
+     */
+    private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>();
+
+    /**
+     * Number of buffers of each queued packet, the head counting the
+     * buffers of the first packet not yet fully written.
+     */
+    private final ArrayDeque<Integer> packetParts = new ArrayDeque<>();
+
+    /**
+     * View over the header of a packet being queued.
+     */
+    private final PacketView header = new PacketView();
+
+    /**
+     * Messages whose remaining chunks are being dropped, oldest first.
+     */
+    private final LinkedHashSet<DroppedMessage> droppedMessages = new LinkedHashSet<>();
+
+    /**
+     * Reused array of the buffers of one gathering write.
+     */
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+
+    /**
+     * Maximum packets allowed in the queue.
+     */
+    private final int maxPackets;
+
+    /**
+     * Maximum bytes allowed in the queue.
+     */
+    private final long maxBytes;
+
+    /**
+     * Bytes queued and not yet accepted by the socket.
+     */
+    private volatile long bytesInFlight;
+
+    /**
+     * Packets queued and not yet fully written.
+     */
+    private volatile int queueDepth;
+
+    /**
+     * Packets dropped because the queue was full.
+     */
+    private volatile long droppedPackets;
+
+    /**
+     * Write calls made on the channel.
+     */
+    private volatile long writeCalls;
+
+    /**
+     * Whether the channel has finished connecting.
+     */
+    private volatile boolean connected;
+
+    /**
+     * Time in milliseconds after which a pending connect is given up.
+     */
+    private volatile long connectDeadline = Long.MAX_VALUE;
+
+    /**
+     * Creates the state for a connected or connecting channel.
+     *
+     * @param peerNode the peer at the other end
+     * @param socketChannel the connected channel
+     * @param packetLimit the maximum packets to queue
+     * @param byteLimit the maximum bytes to queue
+     */
+    public PeerConnection(final ClientNode peerNode, final SocketChannel socketChannel,
+            final int packetLimit, final long byteLimit) {
+        this.peer = peerNode;
+        this.channel = socketChannel;
+        this.decoder = new FrameDecoder(peerNode);
+        this.maxPackets = packetLimit;
+        this.maxBytes = byteLimit;
+        this.connected = socketChannel.isConnected();
+    }
+
+    /**
+     * Creates the state for a channel with the default limits.
+     *
+     * @param peerNode the peer at the other end
+     * @param socketChannel the connected channel
+     */
+    public PeerConnection(final ClientNode peerNode, final SocketChannel socketChannel) {
+        this(peerNode, socketChannel, DEFAULT_MAX_PACKETS, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Function to set the selection key once the channel is registered.
+     *
+     * @param selectionKey the key of the channel
+     */
+    public void setKey(final SelectionKey selectionKey) {
+        this.key = selectionKey;
+    }
+
+    /**
+     * Function to get the selection key of the channel.
+     *
+     * @return the key, null before the channel is registered
+     */
+    public SelectionKey getKey() {
+        return key;
+    }
+
+    /**
+     * Function to set the time after which a pending connect is abandoned.
+     *
+     * @param deadlineMillis the deadline in epoch milliseconds
+     */
+    public void setConnectDeadline(final long deadlineMillis) {
+        this.connectDeadline = deadlineMillis;
+    }
+
+    /**
+     * Function to check if a pending connect has run past its deadline.
+     *
+     * @param nowMillis the current time in epoch milliseconds
+     * @return true if the channel is still connecting after the deadline
+     */
+    public boolean isConnectExpired(final long nowMillis) {
+        return !connected && nowMillis > connectDeadline;
+    }
+
+    /**
+     * Function to queue a packet and write as much as the socket accepts
+     * right away. Whatever is left is written when the selector reports the
+     * socket writable. While the channel is connecting the packet is only
+     * queued.
+     *
+     * @param data the packet
+     * @return false if the packet was dropped because the queue is full
+     * @throws IOException when the write or the connect fails
+     */
+    public boolean enqueue(final ByteBuffer data) throws IOException {
+        return enqueue(new ByteBuffer[] {data});
+    }
+
+    /**
+     * Function to queue a packet made of several buffers, written back to
+     * back without joining them first. Either every part is queued or the
+     * packet is dropped. A packet counts once against the packet limit.
+     *
+     * @param parts the buffers of the packet in order
+     * @return false if the packet was dropped because the queue is full
+     * @throws IOException when the write or the connect fails
+     */
+    public synchronized boolean enqueue(final ByteBuffer[] parts) throws IOException {
+        long size = 0;
+        for (ByteBuffer part : parts) {
+            size += part.remaining();
+        }
+        final boolean chunk = readChunkHeader(parts[0]);
+        DroppedMessage message = null;
+        if (chunk && !droppedMessages.isEmpty()) {
+            message = DroppedMessage.of(header);
+            if (droppedMessages.contains(message)) {
+                droppedPackets++;
+                if (header.getChunkNum() == header.getChunkLength() - 1) {
+                    droppedMessages.remove(message);
+                }
+                return false;
+            }
+        }
+        if (queueDepth + 1 > maxPackets || bytesInFlight + size > maxBytes) {
+            droppedPackets++;
+            if (chunk && header.getChunkNum() != header.getChunkLength() - 1) {
+                if (message == null) {
+                    message = DroppedMessage.of(header);
+                }
+                if (droppedMessages.size() == MAX_DROPPED_MESSAGES) {
+                    droppedMessages.remove(droppedMessages.iterator().next());
+                }
+                droppedMessages.add(message);
+                LOG.warn("Send queue of " + peer + " is full, dropping the rest of message "
+                        + message.messageId() + "...");
+            }
+            return false;
+        }
+        for (ByteBuffer part : parts) {
+            outbound.add(part);
+        }
+        packetParts.add(parts.length);
+        queueDepth++;
+        bytesInFlight += size;
+        if (!connected && !finishConnect()) {
+            return true;
+        }
+        if (!flush() && key != null && key.isValid()) {
+            key.interestOpsOr(SelectionKey.OP_WRITE);
+            key.selector().wakeup();
+        }
+        return true;
+    }
+
+    /**
+     * Function to read the header of a packet being queued.
+     *
+     * @param first the first buffer of the packet
+     * @return true if the packet is a chunk of a message of several chunks
+     */
+    private boolean readChunkHeader(final ByteBuffer first) {
+        if (first.remaining() < PacketParser.getHeaderSize()) {
+            return false;
+        }
+        header.wrapHeader(first);
+        return header.getConnectionType() == NetworkConnectionType.MODULE.ordinal()
+                && header.getChunkLength() > 1 && first.remaining() >= header.getHeaderLength();
+    }
+
+    /**
+     * Function to complete a pending connect. Once connected the key stops
+     * waiting for the connect and starts waiting for reads, and for writes
+     * when packets were queued meanwhile.
+     *
+     * @return true if the channel is connected
+     * @throws IOException when the connect failed
+     */
+    public synchronized boolean finishConnect() throws IOException {
+        if (connected) {
+            return true;
+        }
+        if (!channel.finishConnect()) {
+            return false;
+        }
+        connected = true;
+        if (key != null && key.isValid()) {
+            int ops = SelectionKey.OP_READ;
+            if (!outbound.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+            key.selector().wakeup();
+        }
+        return true;
+    }
+
+    /**
+     * Function called by the selector thread when the socket is writable.
+     *
+     * @throws IOException when the write fails
+     */
+    public synchronized void onWritable() throws IOException {
+        if (flush() && key != null && key.isValid()) {
+            key.interestOpsAnd(~SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Function to write queued buffers until the socket stops accepting
+     * bytes, gathering up to {@link #MAX_GATHER} buffers per write call.
+     *
+     * @return true if the queue is now empty
+     * @throws IOException when the write fails
+     */
+    private boolean flush() throws IOException {
+        while (!outbound.isEmpty()) {
+            int count = 0;
+            for (ByteBuffer buffer : outbound) {
+                if (count == MAX_GATHER) {
+                    break;
+                }
+                gather[count++] = buffer;
+            }
+            final long written = channel.write(gather, 0, count);
+            writeCalls++;
+            bytesInFlight -= written;
+            final boolean accepted = !gather[count - 1].hasRemaining();
+            for (int i = 0; i < count; i++) {
+                gather[i] = null;
+            }
+            ByteBuffer head = outbound.peek();
+            while (head != null && !head.hasRemaining()) {
+                outbound.poll();
+                final int partsLeft = packetParts.poll() - 1;
+                if (partsLeft > 0) {
+                    packetParts.push(partsLeft);
+                } else {
+                    queueDepth--;
+                }
+                head = outbound.peek();
+            }
+            if (!accepted) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Function to check if there are bytes waiting for the socket.
+     *
+     * @return true if the queue is not empty
+     */
+    public synchronized boolean hasPending() {
+        return !outbound.isEmpty();
+    }
+
+    /**
+     * Function to drop every queued packet.
+     */
+    public synchronized void clear() {
+        outbound.clear();
+        packetParts.clear();
+        queueDepth = 0;
+        bytesInFlight = 0;
+    }
+
+    /**
+     * Function to check if the channel has finished connecting.
+     *
+     * @return true if connected
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Function to get the peer.
+     *
+     * @return the peer
+     */
+    public ClientNode getPeer() {
+        return peer;
+    }
+
+    /**
+     * Function to get the channel.
+     *
+     * @return the channel
+     */
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Function to get the decoder of the read side.
+     *
+     * @return the decoder
+     */
+    public FrameDecoder getDecoder() {
+        return decoder;
+    }
+
+    /**
+     * Function to get the number of packets waiting to be written.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Function to get the bytes queued but not yet accepted by the socket.
+     *
+     * @return the bytes in flight
+     */
+    public long getBytesInFlight() {
+        return bytesInFlight;
+    }
+
+    /**
+     * Function to get the number of write calls made on the channel.
+     *
+     * @return the write call count
+     */
+    public long getWriteCalls() {
+        return writeCalls;
+    }
+
+    /**
+     * Function to get the number of packets dropped on a full queue.
+     *
+     * @return the dropped packet count
+     */
+    public long getDroppedPackets() {
+        return droppedPackets;
+    }
+
+    /**
+     * A message whose remaining chunks are dropped.
+     *
+     * @param ipAddress the header address as a big endian int
+     * @param port the header port
+     * @param originIpAddress the address of the device that sent the message
+     * @param originPort the port of the device that sent the message
+     * @param messageId the message id
+     */
+    private record DroppedMessage(int ipAddress, int port, int originIpAddress, int originPort, int messageId) {
+
+        /**
+         * Function to build the key of the message a chunk belongs to.
+         *
+         * @param chunk the view over the chunk header
+         * @return the key
+         */
+        static DroppedMessage of(final PacketView chunk) {
+            return new DroppedMessage(chunk.getIpAddress(), chunk.getPortNum(), chunk.getOriginIpAddress(),
+                    chunk.getOriginPortNum(), chunk.getMessageId());
+        }
+    }
+}
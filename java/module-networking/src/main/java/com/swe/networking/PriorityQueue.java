@@ -10,7 +10,6 @@
 
 package com.swe.networking;
 
-import java.net.UnknownHostException;
 import java.util.Deque;
 import java.util.EnumMap;
 import java.util.Map;
@@ -20,7 +19,7 @@ import java.util.concurrent.ConcurrentLinkedDeque;
 /**
  * Priority Queue with simple Multi-Level Feedback Queue (MLFQ).
  */
-public class PriorityQueue {
+public class PriorityQueue implements SendScheduler {
 
     /**
      * Variable to store the name of the module.
@@ -74,6 +73,14 @@ public class PriorityQueue {
      * Private Variable to store the number of packets sent.
      */
     private long numPacketsSent;
+    /**
+     * Private Variable to store the number of bytes sent.
+     */
+    private long numBytesSent;
+    /**
+     * Reusable view to read the headers of queued packets, guarded by this.
+     */
+    private final PacketView view = new PacketView();
 
     /**
      * Creates a priority queue and initializes budgets and queues.
@@ -82,6 +89,7 @@ public class PriorityQueue {
         // System.out.println("Networking][Priority Queue] MLFQ has been created");
         startTime = System.currentTimeMillis();
         numPacketsSent = 0;
+        numBytesSent = 0;
         resetBudgets();
     }
 
@@ -114,6 +122,7 @@ public class PriorityQueue {
     /**
      * Empties the priority queue for each test.
      */
+    @Override
     public void clear() {
         highestPriorityQueue.clear();
         midPriorityQueue.clear();
@@ -127,6 +136,7 @@ public class PriorityQueue {
      *
      * @return true if there are packets left.
      */
+    @Override
     public boolean isEmpty() {
         // Checking the highest and mid-priority queue
         if (!highestPriorityQueue.isEmpty() || !midPriorityQueue.isEmpty() || !lowPriorityQueue.isEmpty()
@@ -138,6 +148,21 @@ public class PriorityQueue {
         return true;
     }
 
+    /**
+     * Function to get the number of packets waiting to be sent.
+     *
+     * @return the queued packet count
+     */
+    public long getQueuedPackets() {
+        return highestPriorityQueue.size() + midPriorityQueue.size() + lowPriorityQueue.size()
+                + chatQueue.size();
+    }
+
+    @Override
+    public int size() {
+        return (int) getQueuedPackets();
+    }
+
     /**
      * Resets budgets at the beginning of each epoch.
      */
@@ -151,21 +176,19 @@ public class PriorityQueue {
     }
 
     /**
-     * This function gives the approx throughput of the Priority Queue. This
-     * assumes that there are enough number of packets.
+     * This function gives the average throughput of the Priority Queue since
+     * it was created, from the wire sizes of the packets handed out.
      *
-     * @return The minimum throughput of the Priority Queue
+     * @return The throughput in bytes per millisecond
      */
-    public long getThroughput() {
+    public synchronized long getThroughput() {
 
         final long currTime = System.currentTimeMillis();
         final long timeTaken = currTime - startTime;
         if (timeTaken == 0) {
             return 0;
         }
-        final int packetLength = 1000;
-
-        return (packetLength * numPacketsSent) / timeTaken;
+        return numBytesSent / timeTaken;
     }
 
     /**
@@ -173,10 +196,9 @@ public class PriorityQueue {
      *
      * @param data the packet payload
      */
-    public synchronized void addPacket(final byte[] data) throws UnknownHostException {
-        final PacketParser parser = PacketParser.getPacketParser();
-        final PacketInfo info = parser.parsePacket(data);
-        final int priorityLevel = info.getPriority();
+    @Override
+    public synchronized void addPacket(final byte[] data) {
+        final int priorityLevel = view.wrap(data).getPriority();
         final PacketPriority priority = PacketPriority.fromLevel(priorityLevel);
 
         switch (priority) {
@@ -415,6 +437,7 @@ public class PriorityQueue {
      *
      * @return the next packet's data, or null if none available
      */
+    @Override
     public synchronized byte[] nextPacket() {
         byte[] packet;
 
@@ -428,6 +451,7 @@ public class PriorityQueue {
             packet = trySendNext();
             if (packet != null) {
                 numPacketsSent++;
+                numBytesSent += wireLength(packet);
                 return packet;
             }
 
@@ -441,6 +465,21 @@ public class PriorityQueue {
 
     }
 
+    /**
+     * Function to get the bytes a packet puts on the wire. A fan out header
+     * is queued without its shared payload, its length field still counts
+     * the payload.
+     *
+     * @param packet the queued packet
+     * @return the wire length
+     */
+    private int wireLength(final byte[] packet) {
+        if (packet.length > view.wrap(packet).getHeaderLength()) {
+            return packet.length;
+        }
+        return Math.max(packet.length, view.getLength());
+    }
+
     /**
      * Enum representing packet priorities and corresponding budget shares.
      */
@@ -10,6 +10,7 @@
 
 package com.swe.networking;
 
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 
 import com.swe.core.ClientNode;
@@ -46,6 +47,26 @@ public interface ProtocolBase {
      */
     void sendData(byte[] data, ClientNode dest);
 
+    /**
+     * To send a packet made of several buffers to given destination. The
+     * default joins the parts, implementations that own their sockets
+     * should hand them to a gathering write instead.
+     *
+     * @param parts the buffers of the packet in order
+     * @param dest the dest to send the data
+     */
+    default void sendData(final ByteBuffer[] parts, final ClientNode dest) {
+        int size = 0;
+        for (ByteBuffer part : parts) {
+            size += part.remaining();
+        }
+        final ByteBuffer joined = ByteBuffer.allocate(size);
+        for (ByteBuffer part : parts) {
+            joined.put(part.duplicate());
+        }
+        sendData(joined.array(), dest);
+    }
+
     /**
      * To receive data/socket form clients.
      *
@@ -53,6 +74,84 @@ public interface ProtocolBase {
      */
     ReceivePacket receiveData();
 
+    /**
+     * To receive data and hand every complete packet to the listener. The
+     * default splits the raw data with {@link SplitPackets}, implementations
+     * that own their sockets should decode in place instead.
+     *
+     * @param listener the listener called once per complete packet
+     * @return true if any data was received
+     */
+    default boolean receiveFrames(final FrameListener listener) {
+        final ReceivePacket packet = receiveData();
+        if (packet == null || packet.data() == null) {
+            return false;
+        }
+        for (byte[] p : SplitPackets.getSplitPackets().split(packet)) {
+            listener.onFrame(packet.sender(), ByteBuffer.wrap(p));
+        }
+        return true;
+    }
+
+    /**
+     * Function to start connecting to a peer before anything is sent to it.
+     * The default does nothing, protocols without connections need no
+     * dialing.
+     *
+     * @param dest the peer to connect to
+     */
+    default void preconnect(final ClientNode dest) {
+    }
+
+    /**
+     * Function to get the number of packets waiting to be written to a peer.
+     *
+     * @param client the peer
+     * @return the queue depth, 0 when the protocol does not queue
+     */
+    default int getQueueDepth(final ClientNode client) {
+        return 0;
+    }
+
+    /**
+     * Function to get the bytes queued for a peer but not yet accepted by
+     * its socket.
+     *
+     * @param client the peer
+     * @return the bytes in flight, 0 when the protocol does not queue
+     */
+    default long getBytesInFlight(final ClientNode client) {
+        return 0;
+    }
+
+    /**
+     * Function to get the packets dropped because the queue of a peer was
+     * full.
+     *
+     * @param client the peer
+     * @return the dropped packet count
+     */
+    default long getDroppedPackets(final ClientNode client) {
+        return 0;
+    }
+
+    /**
+     * Function to get the number of write calls made to send to a peer.
+     *
+     * @param client the peer
+     * @return the write call count, 0 when the protocol does not count
+     */
+    default long getWriteCalls(final ClientNode client) {
+        return 0;
+    }
+
+    /**
+     * Function to wake a thread blocked receiving, so it returns and can
+     * pick up work handed over by another thread. The default does nothing.
+     */
+    default void wakeup() {
+    }
+
     /**
      * Function to handle socket closing at termination.
      */
@@ -0,0 +1,1033 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: Reassembler.java
+ *  Owner: Udith
+ *  Roll Number : 142201012
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.swe.core.ClientNode;
+import com.swe.core.logging.SweLogger;
+import com.swe.core.logging.SweLoggerFactory;
+
+/**
+ * Bounded reassembly of chunked messages shared by the chunk managers.
+ * Partial messages live in an open addressing table keyed by the origin
+ * device carried in the stream extension of every chunk and the message
+ * id, message ids being only unique per device, so messages of several
+ * devices relayed by one server stay apart. Chunks without an origin are
+ * keyed by the address and port of the connection they were read from, or
+ * of the header when handed over without a connection. A header
+ * claiming more chunks than a message under the cap could have is dropped
+ * before anything is allocated for it. Each keeps a bitmap of the chunks
+ * seen so duplicates are dropped and chunks may come in any order. The
+ * bitmap grows with the highest chunk number seen and the table of held
+ * chunks with the chunks held, and both count against the cap like the
+ * chunks themselves. Chunks handed
+ * over as arrays are held by reference until the chunk stride and the size
+ * of the last chunk are known, then the exact output is allocated once and
+ * every payload is copied into place a single time. Chunks read through a
+ * view of storage the caller reuses, such as the receive buffer of a
+ * connection, are not held: once the stride is known the output is sized
+ * for full chunks and every payload is copied straight into place. The
+ * bytes held by partial messages are
+ * capped, the oldest message is evicted first, and messages that stay
+ * incomplete longer than the time to live of their module are dropped.
+ * When a latest only message completes, the partial latest only messages
+ * of the same origin device, module and stream that got no chunk since it
+ * started are abandoned, their sender superseded them and the rest will
+ * not come.
+ */
+public final class Reassembler {
+
+    /**
+     * Default cap on the bytes held by partial messages.
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Default time in milliseconds a partial message may wait for its chunks.
+     */
+    public static final long DEFAULT_TTL_MILLIS = 10_000;
+
+    /**
+     * Logger for this class.
+     */
+    private static final SweLogger LOG = SweLoggerFactory.getLogger("NETWORKING");
+
+    /**
+     * Initial capacity of the table, a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Bits used by the port in an address key.
+     */
+    private static final int PORT_BITS = 16;
+
+    /**
+     * Mask to read an int as unsigned.
+     */
+    private static final long UNSIGNED_INT_MASK = 0xFFFFFFFFL;
+
+    /**
+     * Multiplier spreading the address key.
+     */
+    private static final long ADDRESS_MIX = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Multiplier spreading the message id.
+     */
+    private static final int ID_MIX = 0x85EBCA6B;
+
+    /**
+     * Bits in one word of the chunk bitmap.
+     */
+    private static final int WORD_BITS = 64;
+
+    /**
+     * Shift converting a chunk number to its bitmap word.
+     */
+    private static final int WORD_SHIFT = 6;
+
+    /**
+     * Number of module ids the header can carry.
+     */
+    private static final int MODULE_COUNT = 16;
+
+    /**
+     * Bytes counted against the cap for the state of a message besides its
+     * bitmap and held chunks.
+     */
+    private static final int SLOT_BYTES = 128;
+
+    /**
+     * Bytes counted against the cap for one entry of the held chunk table
+     * or one word of the bitmap.
+     */
+    private static final int ENTRY_BYTES = Long.BYTES;
+
+    /**
+     * Entries of the held chunk table of a new message.
+     */
+    private static final int INITIAL_HELD = 8;
+
+    /**
+     * Size of the packet header.
+     */
+    private final int headerSize = PacketParser.getHeaderSize();
+
+    /**
+     * Cap on the bytes held by partial messages.
+     */
+    private final long maxBytes;
+
+    /**
+     * Most chunks a message may have, each chunk holding at least a header
+     * and a payload byte under the cap.
+     */
+    private final long maxChunks;
+
+    /**
+     * Time in milliseconds a partial message may wait, per module.
+     */
+    private final long[] ttlMillis = new long[MODULE_COUNT];
+
+    /**
+     * Open addressing table of partial messages.
+     */
+    private Slot[] table = new Slot[INITIAL_CAPACITY];
+
+    /**
+     * Number of partial messages in the table.
+     */
+    private int size;
+
+    /**
+     * Partial messages of each module in creation order, finished ones are
+     * skipped lazily.
+     */
+    private final List<ArrayDeque<Slot>> ages = newAges();
+
+    /**
+     * Bytes held by partial messages.
+     */
+    private long pendingBytes;
+
+    /**
+     * Partial messages evicted by the cap or the time to live.
+     */
+    private long evictedMessages;
+
+    /**
+     * Chunks dropped as duplicate, invalid or too large.
+     */
+    private long droppedChunks;
+
+    /**
+     * Partial messages abandoned once a newer message completed.
+     */
+    private long supersededMessages;
+
+    /**
+     * Chunks added so far, orders the chunks of different messages.
+     */
+    private long arrivals;
+
+    /**
+     * View used to read chunk headers.
+     */
+    private final PacketView view = new PacketView();
+
+    /**
+     * The connection the last chunk was read from.
+     */
+    private ClientNode lastSender;
+
+    /**
+     * Source key of the connection the last chunk was read from.
+     */
+    private long lastSource;
+
+    /**
+     * Creates an engine with the default cap and time to live.
+     */
+    public Reassembler() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * Creates an engine.
+     *
+     * @param byteLimit the cap on bytes held by partial messages
+     * @param ttl the milliseconds a partial message may wait
+     */
+    public Reassembler(final long byteLimit, final long ttl) {
+        this.maxBytes = byteLimit;
+        this.maxChunks = byteLimit / (headerSize + 1);
+        Arrays.fill(ttlMillis, ttl);
+    }
+
+    /**
+     * Function to add a chunk using the current time.
+     *
+     * @param chunk the encoded chunk
+     * @return the merged packet once every chunk arrived, else null
+     */
+    public synchronized byte[] addChunk(final byte[] chunk) {
+        return addChunk(chunk, System.currentTimeMillis());
+    }
+
+    /**
+     * Function to add a chunk. A message of one chunk is returned as is.
+     * The chunk array may be held until the message completes, the caller
+     * must not reuse it.
+     *
+     * @param chunk the encoded chunk
+     * @param nowMillis the current time in milliseconds
+     * @return the merged packet once every chunk arrived, else null
+     */
+    public synchronized byte[] addChunk(final byte[] chunk, final long nowMillis) {
+        view.wrap(chunk);
+        if (view.getChunkLength() <= 1) {
+            return chunk;
+        }
+        final Slot completed = add(view, chunk, keyOf(view, null), nowMillis);
+        if (completed == null) {
+            return null;
+        }
+        final int length = messageLength(completed);
+        if (completed.output.length == length) {
+            return completed.output;
+        }
+        return Arrays.copyOf(completed.output, length);
+    }
+
+    /**
+     * Function to add a chunk read through a view. The chunk is only read
+     * during the call, so the view may point at storage the caller reuses.
+     * A message of one chunk is returned as the given view.
+     *
+     * @param chunk the view over the encoded chunk
+     * @param sender the connection the chunk was read from, null to key the
+     *        message by the header address
+     * @param nowMillis the current time in milliseconds
+     * @return a view over the merged packet once every chunk arrived, else
+     *         null. The view is only valid until the next call.
+     */
+    public synchronized PacketView addChunk(final PacketView chunk, final ClientNode sender,
+            final long nowMillis) {
+        if (chunk.getChunkLength() <= 1) {
+            return chunk;
+        }
+        final Slot completed = add(chunk, null, keyOf(chunk, sender), nowMillis);
+        if (completed == null) {
+            return null;
+        }
+        return view.wrap(completed.output, 0, messageLength(completed));
+    }
+
+    /**
+     * Function to add a chunk of a message of several chunks.
+     *
+     * @param chunk the view over the chunk
+     * @param owned the chunk array when it may be held, null when the chunk
+     *        is only readable during the call
+     * @param source the key of the sender
+     * @param nowMillis the current time in milliseconds
+     * @return the message once every chunk arrived, else null
+     */
+    private Slot add(final PacketView chunk, final byte[] owned, final long source, final long nowMillis) {
+        evictExpired(nowMillis);
+        arrivals++;
+        final int chunkNum = chunk.getChunkNum();
+        final int payloadLength = chunk.getPayloadLength();
+        final int messageId = chunk.getMessageId();
+
+        Slot slot = find(source, messageId);
+        if (slot == null) {
+            final int chunkLength = chunk.getChunkLength();
+            if (chunkLength <= 0 || chunkLength > maxChunks || !fitsCap(chunk, chunkLength)) {
+                LOG.warn("Dropping chunk of message " + messageId + " claiming " + chunkLength + " chunks");
+                droppedChunks++;
+                return null;
+            }
+            slot = new Slot(source, messageId, chunkLength, chunk.getModule(), nowMillis);
+            if (!reserve(slot, slot.metaBytes())) {
+                return null;
+            }
+            slot.meta = slot.metaBytes();
+            pendingBytes += slot.meta;
+            slot.headerLength = chunk.getHeaderLength();
+            slot.outputHeader = chunk.getMergedHeaderLength();
+            slot.latest = chunk.getLatest() == 1;
+            slot.origin = addressKey(chunk.getOriginIpAddress(), chunk.getOriginPortNum());
+            slot.stream = chunk.getStream();
+            slot.firstArrival = arrivals;
+            insert(slot);
+            ages.get(slot.module).add(slot);
+        }
+        if (chunkNum < 0 || chunkNum >= slot.chunkLength || slot.has(chunkNum)
+                || chunk.getHeaderLength() != slot.headerLength) {
+            droppedChunks++;
+            return null;
+        }
+        if (chunkNum < slot.chunkLength - 1) {
+            if (slot.stride < 0 && slot.lastLength <= payloadLength) {
+                slot.stride = payloadLength;
+            } else if (slot.stride != payloadLength) {
+                droppedChunks++;
+                return null;
+            }
+        } else if (slot.stride >= 0 && payloadLength > slot.stride) {
+            droppedChunks++;
+            return null;
+        } else {
+            slot.lastLength = payloadLength;
+        }
+        final boolean holding = slot.output == null && (owned != null || slot.stride < 0);
+        if (!grow(slot, chunkNum, holding)) {
+            return null;
+        }
+
+        if (slot.output != null) {
+            chunk.copyPayloadTo(slot.output, slot.outputHeader + chunkNum * slot.stride);
+        } else if (owned == null && slot.stride >= 0) {
+            if (!allocate(slot, chunk)) {
+                return null;
+            }
+            chunk.copyPayloadTo(slot.output, slot.outputHeader + chunkNum * slot.stride);
+        } else {
+            byte[] held = owned;
+            if (held == null) {
+                held = chunk.copyPacket();
+            }
+            if (!reserve(slot, held.length)) {
+                return null;
+            }
+            slot.hold(chunkNum, held);
+            slot.bytes += held.length;
+            pendingBytes += held.length;
+            if (slot.stride >= 0 && slot.lastLength >= 0 && !allocate(slot, chunk)) {
+                return null;
+            }
+        }
+        slot.mark(chunkNum);
+        slot.lastArrival = arrivals;
+
+        if (slot.received < slot.chunkLength) {
+            return null;
+        }
+        forget(slot);
+        if (slot.latest) {
+            abandonSuperseded(slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Function to check that a message could fit under the cap. Every chunk
+     * before the last carries at least as much as any chunk of the message,
+     * so the first chunk seen tells the least the whole message holds.
+     *
+     * @param chunk the first chunk seen of the message
+     * @param chunkLength the number of chunks it claims
+     * @return true if the message could fit under the cap
+     */
+    private boolean fitsCap(final PacketView chunk, final int chunkLength) {
+        final long least = (chunkLength - 1L) * Math.max(1, chunk.getPayloadLength());
+        return chunk.getHeaderLength() + least <= maxBytes;
+    }
+
+    /**
+     * Function to grow the bitmap of a message to cover a chunk and its
+     * held chunk table to take one more, counting the growth against the
+     * cap.
+     *
+     * @param slot the message
+     * @param chunkNum the chunk number to cover
+     * @param holding true if the chunk is to be held
+     * @return false if the message was dropped to stay under the cap
+     */
+    private boolean grow(final Slot slot, final int chunkNum, final boolean holding) {
+        final long before = slot.meta;
+        slot.cover(chunkNum, holding);
+        final long extra = slot.metaBytes() - before;
+        if (extra == 0) {
+            return true;
+        }
+        if (!reserve(slot, extra)) {
+            return false;
+        }
+        slot.meta += extra;
+        pendingBytes += extra;
+        return true;
+    }
+
+    /**
+     * Function to get the length of a completed message.
+     *
+     * @param slot the message
+     * @return the header and payload bytes
+     */
+    private int messageLength(final Slot slot) {
+        return slot.outputHeader + (slot.chunkLength - 1) * slot.stride + slot.lastLength;
+    }
+
+    /**
+     * Function to drop partial messages older than the time to live.
+     *
+     * @param nowMillis the current time in milliseconds
+     */
+    public synchronized void evictExpired(final long nowMillis) {
+        for (int module = 0; module < MODULE_COUNT; module++) {
+            final ArrayDeque<Slot> age = ages.get(module);
+            Slot head = age.peek();
+            while (head != null && (!head.live || nowMillis - head.created > ttlMillis[module])) {
+                age.poll();
+                if (head.live) {
+                    LOG.warn("Dropping incomplete message " + head.messageId + " after "
+                            + (nowMillis - head.created) + " ms");
+                    forget(head);
+                    evictedMessages++;
+                }
+                head = age.peek();
+            }
+        }
+    }
+
+    /**
+     * Function to drop the partial latest only messages a completed one
+     * superseded. The messages of the same origin and stream, as carried in
+     * the header, that got no chunk since the completed message started
+     * are taken as cut short by their sender. Streams of other senders
+     * relayed over the same connection are left alone.
+     *
+     * @param completed the latest only message that completed
+     */
+    private void abandonSuperseded(final Slot completed) {
+        for (Slot slot : ages.get(completed.module)) {
+            if (slot.live && slot.latest && slot.origin == completed.origin && slot.stream == completed.stream
+                    && slot.lastArrival < completed.firstArrival) {
+                LOG.info("Abandoning superseded message " + slot.messageId);
+                forget(slot);
+                supersededMessages++;
+            }
+        }
+    }
+
+    /**
+     * Function to set how long partial messages of a module may wait.
+     * Loss tolerant media can give up early instead of holding memory for
+     * chunks that will never arrive.
+     *
+     * @param module the module
+     * @param ttl the milliseconds a partial message may wait
+     */
+    public synchronized void setTtl(final int module, final long ttl) {
+        ttlMillis[module] = ttl;
+    }
+
+    /**
+     * Function to drop every partial message read from connections of an
+     * address.
+     *
+     * @param ipAddress the address as a big endian int
+     */
+    public synchronized void removeAddress(final int ipAddress) {
+        for (ArrayDeque<Slot> age : ages) {
+            for (Slot slot : age) {
+                if (slot.live && (int) (slot.address >>> PORT_BITS) == ipAddress) {
+                    forget(slot);
+                }
+            }
+            age.removeIf(slot -> !slot.live);
+        }
+    }
+
+    /**
+     * Function to get the number of partial messages.
+     *
+     * @return the partial message count
+     */
+    public synchronized int getPendingMessages() {
+        return size;
+    }
+
+    /**
+     * Function to get the bytes held by partial messages.
+     *
+     * @return the pending bytes
+     */
+    public synchronized long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    /**
+     * Function to get the number of partial messages evicted.
+     *
+     * @return the evicted message count
+     */
+    public synchronized long getEvictedMessages() {
+        return evictedMessages;
+    }
+
+    /**
+     * Function to get the number of partial messages abandoned once a newer
+     * message completed.
+     *
+     * @return the superseded message count
+     */
+    public synchronized long getSupersededMessages() {
+        return supersededMessages;
+    }
+
+    /**
+     * Function to get the number of chunks dropped.
+     *
+     * @return the dropped chunk count
+     */
+    public synchronized long getDroppedChunks() {
+        return droppedChunks;
+    }
+
+    /**
+     * Function to make room for bytes of a message under the cap by
+     * evicting older messages. The message itself is dropped when it is the
+     * oldest and still does not fit.
+     *
+     * @param slot the message that needs the bytes
+     * @param extra the bytes needed
+     * @return true if the bytes fit
+     */
+    private boolean reserve(final Slot slot, final long extra) {
+        while (pendingBytes + extra > maxBytes) {
+            final Slot oldest = oldestLive();
+            if (oldest == null || oldest == slot) {
+                LOG.warn("Reassembly memory full, dropping message " + slot.messageId);
+                forget(slot);
+                evictedMessages++;
+                droppedChunks++;
+                return false;
+            }
+            ages.get(oldest.module).poll();
+            LOG.warn("Reassembly memory full, evicting message " + oldest.messageId);
+            forget(oldest);
+            evictedMessages++;
+        }
+        return true;
+    }
+
+    /**
+     * Function to find the oldest partial message over all modules,
+     * dropping finished messages from the head of each queue.
+     *
+     * @return the oldest message or null
+     */
+    private Slot oldestLive() {
+        Slot oldest = null;
+        for (ArrayDeque<Slot> age : ages) {
+            Slot head = age.peek();
+            while (head != null && !head.live) {
+                age.poll();
+                head = age.peek();
+            }
+            if (head != null && (oldest == null || head.created < oldest.created)) {
+                oldest = head;
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * Function to create the creation order queues of the modules.
+     *
+     * @return the queues
+     */
+    private static List<ArrayDeque<Slot>> newAges() {
+        final List<ArrayDeque<Slot>> queues = new ArrayList<>(MODULE_COUNT);
+        for (int i = 0; i < MODULE_COUNT; i++) {
+            queues.add(new ArrayDeque<>());
+        }
+        return queues;
+    }
+
+    /**
+     * Function to get the key of the sender of a chunk, the origin device
+     * when the chunk carries one, else the connection it was read from.
+     *
+     * @param chunk the view over the chunk
+     * @param sender the connection, null when unknown
+     * @return the source key
+     */
+    private long keyOf(final PacketView chunk, final ClientNode sender) {
+        final int originIp = chunk.getOriginIpAddress();
+        final int originPort = chunk.getOriginPortNum();
+        if (originIp != 0 || originPort != 0) {
+            return addressKey(originIp, originPort);
+        }
+        return sourceKey(sender, chunk);
+    }
+
+    /**
+     * Function to get the key of the connection a chunk was read from. The
+     * key of the last connection is kept, chunks come in runs from one.
+     *
+     * @param sender the connection, null when unknown
+     * @param chunk the view over the chunk
+     * @return the source key
+     */
+    private long sourceKey(final ClientNode sender, final PacketView chunk) {
+        if (sender == null) {
+            return addressKey(chunk.getIpAddress(), chunk.getPortNum());
+        }
+        if (!sender.equals(lastSender)) {
+            try {
+                final int ip = ByteBuffer.wrap(InetAddress.getByName(sender.hostName()).getAddress()).getInt();
+                lastSource = addressKey(ip, sender.port());
+                lastSender = sender;
+            } catch (UnknownHostException ex) {
+                LOG.warn("Cannot resolve " + sender.hostName() + ", keying its chunks by header");
+                return addressKey(chunk.getIpAddress(), chunk.getPortNum());
+            }
+        }
+        return lastSource;
+    }
+
+    /**
+     * Function to allocate the output of a message and copy the held chunks
+     * into it. The output is exact once the size of the last chunk is
+     * known, else it is sized for full chunks.
+     *
+     * @param slot the message
+     * @param chunk the view over the chunk being added, its header is used
+     *        when no chunk is held
+     * @return false if the output did not fit under the cap
+     */
+    private boolean allocate(final Slot slot, final PacketView chunk) {
+        int total = slot.outputHeader + slot.chunkLength * slot.stride;
+        if (slot.lastLength >= 0) {
+            total = messageLength(slot);
+        }
+        if (!reserve(slot, total - slot.bytes)) {
+            return false;
+        }
+        final byte[] output = new byte[total];
+        chunk.copyMergedHeaderTo(output);
+        for (int i = 0; i < slot.heldCount; i++) {
+            final byte[] held = slot.held[i];
+            System.arraycopy(held, slot.headerLength, output, slot.outputHeader + slot.heldNums[i] * slot.stride,
+                    held.length - slot.headerLength);
+        }
+        pendingBytes += total - slot.bytes;
+        slot.bytes = total;
+        slot.output = output;
+        slot.held = null;
+        slot.heldNums = null;
+        final long meta = slot.metaBytes();
+        pendingBytes -= slot.meta - meta;
+        slot.meta = meta;
+        return true;
+    }
+
+    /**
+     * Function to remove a message from the table and release its bytes.
+     *
+     * @param slot the message
+     */
+    private void forget(final Slot slot) {
+        if (!slot.live) {
+            return;
+        }
+        slot.live = false;
+        pendingBytes -= slot.bytes + slot.meta;
+        final int index = indexOf(slot.address, slot.messageId);
+        if (index >= 0) {
+            removeAt(index);
+        }
+    }
+
+    /**
+     * Function to build the address key of a header.
+     *
+     * @param ipAddress the address as a big endian int
+     * @param port the port
+     * @return the key
+     */
+    private static long addressKey(final int ipAddress, final int port) {
+        return ((ipAddress & UNSIGNED_INT_MASK) << PORT_BITS) | port;
+    }
+
+    /**
+     * Function to compute the home index of a key.
+     *
+     * @param address the address key
+     * @param messageId the message id
+     * @return the index
+     */
+    private int home(final long address, final int messageId) {
+        final int hash = Long.hashCode(address * ADDRESS_MIX) ^ (messageId * ID_MIX);
+        return (hash ^ (hash >>> PORT_BITS)) & (table.length - 1);
+    }
+
+    /**
+     * Function to find the index of a key.
+     *
+     * @param address the address key
+     * @param messageId the message id
+     * @return the index or -1 if absent
+     */
+    private int indexOf(final long address, final int messageId) {
+        final int mask = table.length - 1;
+        int index = home(address, messageId);
+        Slot slot = table[index];
+        while (slot != null) {
+            if (slot.address == address && slot.messageId == messageId) {
+                return index;
+            }
+            index = (index + 1) & mask;
+            slot = table[index];
+        }
+        return -1;
+    }
+
+    /**
+     * Function to find the message of a key.
+     *
+     * @param address the address key
+     * @param messageId the message id
+     * @return the message or null
+     */
+    private Slot find(final long address, final int messageId) {
+        final int index = indexOf(address, messageId);
+        if (index < 0) {
+            return null;
+        }
+        return table[index];
+    }
+
+    /**
+     * Function to insert a message, growing the table at half load.
+     *
+     * @param slot the message
+     */
+    private void insert(final Slot slot) {
+        if ((size + 1) * 2 > table.length) {
+            final Slot[] old = table;
+            table = new Slot[old.length * 2];
+            for (Slot s : old) {
+                if (s != null) {
+                    place(s);
+                }
+            }
+        }
+        place(slot);
+        size++;
+    }
+
+    /**
+     * Function to put a message at the first free index from its home.
+     *
+     * @param slot the message
+     */
+    private void place(final Slot slot) {
+        final int mask = table.length - 1;
+        int index = home(slot.address, slot.messageId);
+        while (table[index] != null) {
+            index = (index + 1) & mask;
+        }
+        table[index] = slot;
+    }
+
+    /**
+     * Function to remove the message at an index, shifting back the
+     * messages that probed past it.
+     *
+     * @param index the index to clear
+     */
+    private void removeAt(final int index) {
+        final int mask = table.length - 1;
+        int hole = index;
+        table[hole] = null;
+        size--;
+        int next = (hole + 1) & mask;
+        while (table[next] != null) {
+            final Slot slot = table[next];
+            final int wanted = home(slot.address, slot.messageId);
+            final boolean movable;
+            if (hole <= next) {
+                movable = wanted <= hole || wanted > next;
+            } else {
+                movable = wanted <= hole && wanted > next;
+            }
+            if (movable) {
+                table[hole] = slot;
+                table[next] = null;
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    /**
+     * State of one partial message.
+     */
+    private static final class Slot {
+
+        /**
+         * Address and port of the source.
+         */
+        private final long address;
+
+        /**
+         * Message id of the header.
+         */
+        private final int messageId;
+
+        /**
+         * Number of chunks of the message.
+         */
+        private final int chunkLength;
+
+        /**
+         * Module of the message.
+         */
+        private final int module;
+
+        /**
+         * Time the first chunk arrived.
+         */
+        private final long created;
+
+        /**
+         * Bitmap of the chunks received, grown to the highest chunk seen.
+         */
+        private long[] seen;
+
+        /**
+         * Chunks held until the output can be sized in arrival order, null
+         * afterwards.
+         */
+        private byte[][] held;
+
+        /**
+         * Chunk numbers of the held chunks.
+         */
+        private int[] heldNums;
+
+        /**
+         * Number of held chunks.
+         */
+        private int heldCount;
+
+        /**
+         * The merged packet, null until sized.
+         */
+        private byte[] output;
+
+        /**
+         * Payload length of every chunk but the last, -1 until known.
+         */
+        private int stride = -1;
+
+        /**
+         * Payload length of the last chunk, -1 until known.
+         */
+        private int lastLength = -1;
+
+        /**
+         * Number of chunks received.
+         */
+        private int received;
+
+        /**
+         * Bytes of chunks and output counted against the cap.
+         */
+        private long bytes;
+
+        /**
+         * Bytes of the message state counted against the cap.
+         */
+        private long meta;
+
+        /**
+         * Whether the message is still in the table.
+         */
+        private boolean live = true;
+
+        /**
+         * Header length of the chunks, with the stream extension.
+         */
+        private int headerLength;
+
+        /**
+         * Header length of the merged message, with the stream extension
+         * when the message is latest only.
+         */
+        private int outputHeader;
+
+        /**
+         * Whether the message is latest only.
+         */
+        private boolean latest;
+
+        /**
+         * Address and port of the device that sent a latest only message.
+         */
+        private long origin;
+
+        /**
+         * Stream key of a latest only message.
+         */
+        private int stream;
+
+        /**
+         * Arrival order of the first chunk.
+         */
+        private long firstArrival;
+
+        /**
+         * Arrival order of the last chunk.
+         */
+        private long lastArrival;
+
+        /**
+         * Creates the state of a message.
+         *
+         * @param addressKey address and port of the source
+         * @param id message id
+         * @param chunks number of chunks
+         * @param moduleId module of the message
+         * @param createdMillis time of the first chunk
+         */
+        Slot(final long addressKey, final int id, final int chunks, final int moduleId,
+                final long createdMillis) {
+            this.module = moduleId;
+            this.address = addressKey;
+            this.messageId = id;
+            this.chunkLength = chunks;
+            this.created = createdMillis;
+            this.seen = new long[1];
+            this.held = new byte[Math.min(chunks, INITIAL_HELD)][];
+            this.heldNums = new int[held.length];
+        }
+
+        /**
+         * Function to get the bytes of the message state.
+         *
+         * @return the bytes counted against the cap
+         */
+        long metaBytes() {
+            long total = SLOT_BYTES + (long) seen.length * ENTRY_BYTES;
+            if (held != null) {
+                total += (long) held.length * (ENTRY_BYTES + Integer.BYTES);
+            }
+            return total;
+        }
+
+        /**
+         * Function to grow the bitmap to cover a chunk and the held chunk
+         * table to take one more, doubling them up to the chunk count.
+         *
+         * @param chunkNum the chunk number
+         * @param holding true if the chunk is to be held
+         */
+        void cover(final int chunkNum, final boolean holding) {
+            final int word = chunkNum >>> WORD_SHIFT;
+            if (word >= seen.length) {
+                final int words = (chunkLength + WORD_BITS - 1) / WORD_BITS;
+                seen = Arrays.copyOf(seen, Math.min(words, Math.max(word + 1, seen.length * 2)));
+            }
+            if (holding && heldCount == held.length) {
+                final int size = Math.min(chunkLength, held.length * 2);
+                held = Arrays.copyOf(held, size);
+                heldNums = Arrays.copyOf(heldNums, size);
+            }
+        }
+
+        /**
+         * Function to hold a chunk until the output can be sized.
+         *
+         * @param chunkNum the chunk number
+         * @param packet the chunk
+         */
+        void hold(final int chunkNum, final byte[] packet) {
+            held[heldCount] = packet;
+            heldNums[heldCount] = chunkNum;
+            heldCount++;
+        }
+
+        /**
+         * Function to check if a chunk was received.
+         *
+         * @param chunkNum the chunk number
+         * @return true if already received
+         */
+        boolean has(final int chunkNum) {
+            final int word = chunkNum >>> WORD_SHIFT;
+            return word < seen.length && (seen[word] & (1L << chunkNum)) != 0;
+        }
+
+        /**
+         * Function to mark a chunk as received.
+         *
+         * @param chunkNum the chunk number
+         */
+        void mark(final int chunkNum) {
+            seen[chunkNum >>> WORD_SHIFT] |= 1L << chunkNum;
+            received++;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: SendScheduler.java
+ *  Owner: Vishwaa
+ *  Roll Number : 112201030
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Common interface of the queues that order outgoing packets before the
+ * send thread hands them to the topology.
+ */
+public interface SendScheduler {
+
+    /**
+     * System property used to select the scheduler.
+     */
+    String SCHEDULER_PROPERTY = "swecomm.network.scheduler";
+
+    /**
+     * Time a polling scheduler parks for when it has nothing to send.
+     */
+    long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Adds a packet to the scheduler. May be called from any thread.
+     *
+     * @param data the encoded packet
+     */
+    void addPacket(byte[] data);
+
+    /**
+     * Returns the next packet to send without blocking.
+     *
+     * @return the packet or null if nothing can be sent now
+     */
+    byte[] nextPacket();
+
+    /**
+     * Function to check if there is anything queued.
+     *
+     * @return true if no packets are queued
+     */
+    boolean isEmpty();
+
+    /**
+     * Function to get the number of packets queued.
+     *
+     * @return the queued packet count
+     */
+    int size();
+
+    /**
+     * Function to drop every queued packet.
+     */
+    void clear();
+
+    /**
+     * Returns the next packet, waiting until one is available. The default
+     * polls with a short park so the caller never spins.
+     *
+     * @return the packet
+     * @throws InterruptedException when the waiting thread is interrupted
+     */
+    default byte[] takePacket() throws InterruptedException {
+        while (true) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            final byte[] packet = nextPacket();
+            if (packet != null) {
+                return packet;
+            }
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Function to create the scheduler selected by the
+     * {@value #SCHEDULER_PROPERTY} system property. Accepts {@code drr}
+     * (default), {@code mlfq} for {@link PriorityQueue} and {@code simple}
+     * for {@link NewPriorityQueue}.
+     *
+     * @return the scheduler
+     */
+    static SendScheduler fromSystemProperty() {
+        final String name = System.getProperty(SCHEDULER_PROPERTY, "drr").toLowerCase(Locale.ROOT);
+        return switch (name) {
+            case "mlfq" -> PriorityQueue.getPriorityQueue();
+            case "simple" -> NewPriorityQueue.getPriorityQueue();
+            default -> new DrrScheduler();
+        };
+    }
+}
@@ -30,6 +30,15 @@ public interface AbstractNetworking {
     void sendData(byte[] data, ClientNode[] destIp,
             ModuleType module, int priority);
 
+    /**
+     * Method to send data to every other device of the meeting.
+     *
+     * @param data     the data to be sent
+     * @param module   the destination module id
+     * @param priority the priority of the send message
+     */
+    void broadcast(byte[] data, ModuleType module, int priority);
+
     /**
      * Method to subscribe to the networking module.
      *
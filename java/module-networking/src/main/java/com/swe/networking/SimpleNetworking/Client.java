@@ -11,19 +11,19 @@
 package com.swe.networking.SimpleNetworking;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.nio.charset.StandardCharsets;
-import java.util.List;
+import java.nio.ByteBuffer;
 
 import com.swe.core.ClientNode;
 import com.swe.core.logging.SweLogger;
 import com.swe.core.logging.SweLoggerFactory;
 import com.swe.networking.ModuleType;
+import com.swe.networking.NetworkConnectionType;
 import com.swe.networking.PacketInfo;
 import com.swe.networking.PacketParser;
+import com.swe.networking.PacketView;
 import com.swe.networking.ProtocolBase;
-import com.swe.networking.ReceivePacket;
-import com.swe.networking.SplitPackets;
 import com.swe.networking.TCPCommunicator;
 
 // File owned by Loganath
@@ -70,26 +70,85 @@ public class Client implements IUser {
      */
     private final SimpleChunkManager chunkManager;
 
+    /**
+     * The view used to read received packets, reused by the receive thread.
+     */
+    private final PacketView view = new PacketView();
+
     /**
      * The variable to store chunk Manager payload size.
      */
     private final int payloadSize = 15 * 1024;
 
+    /**
+     * The main server, null when the client has not joined one.
+     */
+    private final ClientNode server;
+
     /**
      * The constructor function for the client class.
      *
      * @param deviceAddr the device IP address details
      */
     public Client(final ClientNode deviceAddr) {
+        this(deviceAddr, null, new TCPCommunicator(deviceAddr.port()));
+    }
+
+    /**
+     * The constructor function for a client joining the broadcasts of a
+     * server.
+     *
+     * @param deviceAddr the device IP address details
+     * @param serverAddr the main server IP address details
+     */
+    public Client(final ClientNode deviceAddr, final ClientNode serverAddr) {
+        this(deviceAddr, serverAddr, new TCPCommunicator(deviceAddr.port()));
+    }
+
+    /**
+     * The constructor function for a client over a given transport.
+     *
+     * @param deviceAddr the device IP address details
+     * @param serverAddr the main server IP address details, null to not join
+     * @param transport the communicator to reach the server with
+     */
+    public Client(final ClientNode deviceAddr, final ClientNode serverAddr, final ProtocolBase transport) {
         deviceIp = deviceAddr.hostName();
         devicePort = deviceAddr.port();
+        server = serverAddr;
         parser = PacketParser.getPacketParser();
         simpleNetworking = SimpleNetworking.getSimpleNetwork();
-        communicator = new TCPCommunicator(devicePort);
+        communicator = transport;
         chunkManager = SimpleChunkManager.getChunkManager(payloadSize);
+        notifyServer(NetworkConnectionType.HELLO);
         LOG.info("Client initialized...");
     }
 
+    /**
+     * Function to send the server a packet of the given connection type
+     * carrying the address of this client.
+     *
+     * @param connectionType HELLO to join the broadcasts, CLOSE to leave
+     */
+    private void notifyServer(final NetworkConnectionType connectionType) {
+        if (server == null) {
+            return;
+        }
+        try {
+            final PacketInfo info = new PacketInfo();
+            info.setConnectionType(connectionType.ordinal());
+            info.setModule(moduleType.ordinal());
+            info.setIpAddress(InetAddress.getByName(deviceIp));
+            info.setPortNum(devicePort);
+            info.setChunkLength(1);
+            info.setPayload(new byte[0]);
+            info.setLength(PacketParser.getHeaderSize());
+            communicator.sendData(parser.createPkt(info), server);
+        } catch (UnknownHostException ex) {
+            LOG.error("Client could not resolve its own address " + deviceIp);
+        }
+    }
+
     /**
      * Function to send the data to a list of destination.
      *
@@ -107,18 +166,34 @@ public class Client implements IUser {
         }
     }
 
+    /**
+     * Function to broadcast data, uploaded once to the server which copies
+     * it to every other client.
+     *
+     * @param data the data to be sent
+     * @param serverIp the Ip address of the main server
+     */
+    @Override
+    public void broadcast(final byte[] data, final ClientNode serverIp) {
+        communicator.sendData(data, serverIp);
+    }
+
     /**
      * Function to receive data from the given socket.
      */
     @Override
     public void receive() throws IOException {
-        final ReceivePacket packet = communicator.receiveData();
-        if (packet != null) {
-            final List<byte[]> packets = SplitPackets.getSplitPackets().split(packet);
-            for (byte[] p : packets) {
-                parsePacket(p);
-            }
-        }
+        communicator.receiveFrames(this::handleFrame);
+    }
+
+    /**
+     * Function to handle one framed packet read by the communicator.
+     *
+     * @param sender the peer the packet was read from
+     * @param frame the view of the packet, valid during the call
+     */
+    private void handleFrame(final ClientNode sender, final ByteBuffer frame) {
+        receivePacket(view.wrap(frame), sender);
     }
 
     /**
@@ -127,21 +202,23 @@ public class Client implements IUser {
      * @param packet the packet to parse
      */
     public void parsePacket(final byte[] packet) {
-        try {
-            final PacketInfo pktInfo = parser.parsePacket(packet);
-            final int module = pktInfo.getModule();
-            final ModuleType type = moduleType.getType(module);
-            final String data = new String(pktInfo.getPayload(), StandardCharsets.UTF_8);
-            LOG.info("Client data size received : " + data.length());
-            LOG.info("Client module received : " + type.toString());
-            byte[] message = chunkManager.addChunk(packet);
-            if (message != null) {
-                final PacketInfo newpktInfo = parser.parsePacket(message);
-                message = newpktInfo.getPayload();
-                simpleNetworking.callSubscriber(message, type);
-            }
-        } catch (UnknownHostException ex) {
-            LOG.error("Client Could not parse packet succesfully...");
+        receivePacket(new PacketView().wrap(packet), null);
+    }
+
+    /**
+     * Function to hand a received packet to the subscriber once its message
+     * is complete. The packet is read in place.
+     *
+     * @param packet the view over the packet
+     * @param sender the connection the packet was read from, null when unknown
+     */
+    private void receivePacket(final PacketView packet, final ClientNode sender) {
+        final ModuleType type = moduleType.getType(packet.getModule());
+        LOG.info("Client data size received : " + packet.getPayloadLength());
+        LOG.info("Client module received : " + type.toString());
+        final byte[] message = chunkManager.receiveChunk(packet, sender);
+        if (message != null) {
+            simpleNetworking.callSubscriber(message, type);
         }
     }
 
@@ -151,6 +228,7 @@ public class Client implements IUser {
     @Override
     public void closeUser() {
         LOG.info("Closing the receving socket...");
+        notifyServer(NetworkConnectionType.CLOSE);
         communicator.close();
     }
 }
@@ -31,6 +31,14 @@ public interface IUser {
     void send(byte[] data, ClientNode[] destIp,
             ClientNode serverIp, ModuleType module);
 
+    /**
+     * Method to send data to every other device of the meeting.
+     *
+     * @param data the data to be sent
+     * @param serverIp the main server IP address
+     */
+    void broadcast(byte[] data, ClientNode serverIp);
+
     /**
      * Method to receive data from socekts.
      *
@@ -13,25 +13,30 @@ package com.swe.networking.SimpleNetworking;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.nio.charset.StandardCharsets;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.swe.core.ClientNode;
 import com.swe.core.logging.SweLogger;
 import com.swe.core.logging.SweLoggerFactory;
+import com.swe.networking.FrameListener;
 import com.swe.networking.ModuleType;
-import com.swe.networking.PacketInfo;
-import com.swe.networking.PacketParser;
+import com.swe.networking.NetworkConnectionType;
+import com.swe.networking.PacketView;
 import com.swe.networking.ProtocolBase;
-import com.swe.networking.ReceivePacket;
-import com.swe.networking.SplitPackets;
 import com.swe.networking.TCPCommunicator;
 
 //File owned by Loganath.
 /**
  * The main class for the server device.
+ * Every packet between two clients passes through the server, so relaying
+ * only reads the destination and broadcast fields of the header and
+ * forwards the bytes as they arrived. A broadcast is uploaded once by its
+ * sender and copied to every other client here.
  */
-public class Server implements IUser {
+public class Server implements IUser, FrameListener {
 
     /**
      * Variable to store the name of the module.
@@ -49,14 +54,26 @@ public class Server implements IUser {
      * The variable to store the device port number.
      */
     private final int devicePort;
+    /**
+     * The device IPv4 address as a big endian int, as the header holds it.
+     */
+    private final int deviceIpBits;
     /**
      * The variable used by server to accept connections from clients.
      */
     private final ProtocolBase communicator;
     /**
-     * The singleton class object for packet parser.
+     * The view used to read the header of received packets.
      */
-    private final PacketParser parser;
+    private final PacketView view = new PacketView();
+    /**
+     * The clients that said hello or broadcast, receivers of broadcasts.
+     */
+    private final Set<ClientNode> members = ConcurrentHashMap.newKeySet();
+    /**
+     * The client nodes of header addresses, keyed by address and port.
+     */
+    private final Map<Long, ClientNode> nodes = new ConcurrentHashMap<>();
     /**
      * The singleton class object for simplenetworking.
      */
@@ -75,21 +92,70 @@ public class Server implements IUser {
      */
     private final int payloadSize = 15 * 1024;
 
+    /**
+     * The number of bits the address is shifted by in a node key.
+     */
+    private static final int PORT_BITS = 16;
+
+    /**
+     * The mask of an address held in a signed int.
+     */
+    private static final long ADDRESS_MASK = 0xFFFFFFFFL;
+
+    /**
+     * The number of bits in a byte.
+     */
+    private static final int BYTE_BITS = 8;
+
+    /**
+     * The mask of one byte.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
     /**
      * The constructor function for the server class.
      *
      * @param deviceAddr the device IP address details
      */
     public Server(final ClientNode deviceAddr) {
+        this(deviceAddr, new TCPCommunicator(deviceAddr.port()));
+    }
+
+    /**
+     * The constructor function for the server class over a given transport.
+     *
+     * @param deviceAddr the device IP address details
+     * @param transport the communicator to accept clients on
+     */
+    public Server(final ClientNode deviceAddr, final ProtocolBase transport) {
         deviceIp = deviceAddr.hostName();
         devicePort = deviceAddr.port();
-        parser = PacketParser.getPacketParser();
+        deviceIpBits = addressBits(deviceIp);
         simpleNetworking = SimpleNetworking.getSimpleNetwork();
-        communicator = new TCPCommunicator(devicePort);
+        communicator = transport;
         chunkManager = SimpleChunkManager.getChunkManager(payloadSize);
         LOG.info("Server initialized...");
     }
 
+    /**
+     * Function to get an IPv4 address as the big endian int of the header.
+     *
+     * @param host the address
+     * @return the address bits, zero if it cannot be resolved
+     */
+    private static int addressBits(final String host) {
+        try {
+            int bits = 0;
+            for (byte part : InetAddress.getByName(host).getAddress()) {
+                bits = (bits << BYTE_BITS) | (part & BYTE_MASK);
+            }
+            return bits;
+        } catch (UnknownHostException ex) {
+            LOG.error("Server could not resolve its own address " + host);
+            return 0;
+        }
+    }
+
     /**
      * Function to send the data to a list of destination.
      *
@@ -108,19 +174,62 @@ public class Server implements IUser {
         }
     }
 
+    /**
+     * Function to send a packet to every client except the one it came
+     * from.
+     *
+     * @param data the packet to be sent
+     * @param serverIp the Ip address of the main server
+     */
+    @Override
+    public void broadcast(final byte[] data, final ClientNode serverIp) {
+        fanOut(data, null);
+    }
+
     /**
      * Function to receive data from the given socket.
      */
     @Override
     public void receive() throws IOException {
         while (true) {
-            final ReceivePacket packet = communicator.receiveData();
-            if (packet != null) {
-                final List<byte[]> packets = SplitPackets.getSplitPackets().split(packet);
-                for (byte[] p : packets) {
-                    parsePacket(p);
-                }
-            }
+            communicator.receiveFrames(this);
+        }
+    }
+
+    /**
+     * Function to handle one framed packet read by the communicator. Only
+     * the header fields deciding where the packet goes are read, a packet
+     * sent on is copied once and forwarded unchanged, a packet for this
+     * node is read in place.
+     *
+     * @param sender the peer the packet was read from
+     * @param frame the view of the packet, valid during the call
+     */
+    @Override
+    public void onFrame(final ClientNode sender, final ByteBuffer frame) {
+        view.wrap(frame);
+        final int connectionType = view.getConnectionType();
+        final ClientNode addr = node(view.getIpAddress(), view.getPortNum());
+        if (connectionType == NetworkConnectionType.HELLO.ordinal()) {
+            members.add(addr);
+            LOG.info("Client joined : " + addr);
+            return;
+        }
+        if (connectionType == NetworkConnectionType.CLOSE.ordinal()) {
+            members.remove(addr);
+            LOG.info("Client left : " + addr);
+            return;
+        }
+        final boolean broadcast = view.getBroadcast() == 1;
+        final boolean local = view.getIpAddress() == deviceIpBits && view.getPortNum() == devicePort;
+        if (broadcast) {
+            members.add(addr);
+            fanOut(view.copyPacket(), addr);
+            deliver(sender);
+        } else if (local) {
+            deliver(sender);
+        } else {
+            communicator.sendData(view.copyPacket(), addr);
         }
     }
 
@@ -143,39 +252,62 @@ public class Server implements IUser {
      * Function to parse the received packet and perform required response.
      *
      * @param packet the packet to parse
-     * @throws UnknownHostException throws when sending data to unknown host
      */
     public void parsePacket(final byte[] packet) {
+        onFrame(null, ByteBuffer.wrap(packet));
+    }
 
-        try {
-            final PacketInfo pktInfo = parser.parsePacket(packet);
-            final int module = pktInfo.getModule();
-            final ModuleType type = moduleType.getType(module);
-            final InetAddress address = pktInfo.getIpAddress();
-            final int port = pktInfo.getPortNum();
-            final String addr = address.getHostAddress();
-
-            if (addr.equals(deviceIp) && port == devicePort) {
-                final String data = new String(pktInfo.getPayload(), StandardCharsets.UTF_8);
-                byte[] message = chunkManager.addChunk(packet);
-                LOG.info("Server Data length received : " + data.length());
-                LOG.info("Server Module received : " + type);
-                if (message != null) {
-                    final PacketInfo newpktInfo = parser.parsePacket(message);
-                    message = newpktInfo.getPayload();
-                    simpleNetworking.callSubscriber(message, type);
-                }
-            } else {
-                final ClientNode dest = new ClientNode(address.getHostAddress(), port);
-                LOG.info("Redirecting data to : " + dest);
-                final ClientNode[] dests = {dest};
-                sendPkt(packet, dests, dest);
+    /**
+     * Function to get the members receiving broadcasts.
+     *
+     * @return the members
+     */
+    public Set<ClientNode> getMembers() {
+        return Set.copyOf(members);
+    }
+
+    /**
+     * Function to send the same packet to every member but the origin.
+     *
+     * @param packet the packet
+     * @param origin the member that sent it, null for none
+     */
+    private void fanOut(final byte[] packet, final ClientNode origin) {
+        for (ClientNode member : members) {
+            if (!member.equals(origin)) {
+                communicator.sendData(packet, member);
             }
-        } catch (UnknownHostException ex) {
-            LOG.error("Server Could not parse packet succesfully...");
         }
     }
 
+    /**
+     * Function to hand the received packet to the subscriber once its
+     * message is complete.
+     *
+     * @param sender the connection the packet was read from, null when unknown
+     */
+    private void deliver(final ClientNode sender) {
+        final ModuleType type = moduleType.getType(view.getModule());
+        final byte[] message = chunkManager.receiveChunk(view, sender);
+        if (message != null) {
+            LOG.debug("Server module received : " + type);
+            simpleNetworking.callSubscriber(message, type);
+        }
+    }
+
+    /**
+     * Function to get the client node of a header address, created once
+     * per address.
+     *
+     * @param ip the address bits
+     * @param port the port
+     * @return the node
+     */
+    private ClientNode node(final int ip, final int port) {
+        final long key = ((ip & ADDRESS_MASK) << PORT_BITS) | port;
+        return nodes.computeIfAbsent(key, k -> new ClientNode(PacketView.ipToString(ip), port));
+    }
+
     /**
      * Function to be called on closing.
      */
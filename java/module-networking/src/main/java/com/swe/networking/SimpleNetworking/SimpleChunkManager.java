@@ -10,17 +10,17 @@
 
 package com.swe.networking.SimpleNetworking;
 
+import com.swe.core.ClientNode;
 import com.swe.core.logging.SweLogger;
 import com.swe.core.logging.SweLoggerFactory;
 
 import java.net.UnknownHostException;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Vector;
 
 import com.swe.networking.PacketInfo;
 import com.swe.networking.PacketParser;
+import com.swe.networking.PacketView;
+import com.swe.networking.Reassembler;
 
 /**
  * Code for Chunk Manager.
@@ -48,10 +48,6 @@ public class SimpleChunkManager {
      * packetParser.
      */
     private final PacketParser parser = PacketParser.getPacketParser();
-    /**
-     * headerSize.
-     */
-    private final int headerSize = PacketParser.getHeaderSize();
     /**
      * Message id.
      */
@@ -78,22 +74,18 @@ public class SimpleChunkManager {
     }
 
     /**
-     * chunkListMap maps message id to list of chunks.
-     */
-    private final Map<Integer, Vector<byte[]>> chunkListMap = new HashMap<>();
-    /**
-     * messageList gets the list of merged chunks.
+     * Bounded reassembly of incoming chunks.
      */
-    private final Vector<byte[]> messageList = new Vector<>();
+    private final Reassembler reassembler = new Reassembler();
 
     /**
-     * Temporary function used to get the messageList. Used only for testing and
-     * to be replaced with some other function later.
+     * Temporary function used to get the messageList. Merged messages are
+     * handed to the caller and no longer retained, so the list is empty.
      *
-     * @return messageList. All the messages recorded till now.
+     * @return an empty messageList.
      */
     Vector<byte[]> getMessageList() {
-        return messageList;
+        return new Vector<>();
     }
 
     /**
@@ -103,62 +95,31 @@ public class SimpleChunkManager {
      * @return the combined message if present
      * @throws UnknownHostException the issue from packet parser.
      */
-    public byte[] addChunk(final byte[] chunk) throws UnknownHostException {
-        final PacketInfo info = parser.parsePacket(chunk);
-        final int msgId = info.getMessageId();
-        final int maxNumChunks = info.getChunkLength();
-        final int chunkNum = info.getChunkNum();
-        LOG.info("Message ID: " + msgId);
-        LOG.info("Chunk num / Max chunks: " + chunkNum + " / " + maxNumChunks);
-        if (chunkListMap.containsKey(msgId)) {
-            chunkListMap.get(msgId).add(chunk);
-        } else {
-            chunkListMap.put(msgId, new Vector<byte[]>());
-            chunkListMap.get(msgId).add(chunk);
-        }
-        if (chunkListMap.get(msgId).size() == maxNumChunks) {
-            final byte[] messageChunk = mergeChunks(chunkListMap.get(msgId));
-            LOG.info("Merged Message ID: " + msgId + " Size: " + messageChunk.length);
-            messageList.add(messageChunk);
-            chunkListMap.remove(msgId);
-            return messageChunk;
+    public synchronized byte[] addChunk(final byte[] chunk) throws UnknownHostException {
+        final byte[] messageChunk = reassembler.addChunk(chunk);
+        if (messageChunk != null && messageChunk != chunk) {
+            LOG.info(MODULENAME + " Merged message of size " + messageChunk.length);
         }
-        return null;
+        return messageChunk;
     }
 
     /**
-     * Merge Chunks function.
+     * Function to add a chunk read through a view of storage the caller
+     * reuses, such as the receive buffer of a connection.
      *
-     * @param chunks The list of incoming chunks.
-     * @return merged packet.
+     * @param chunk the view over the chunk
+     * @param sender the connection the chunk was read from, null when unknown
+     * @return the payload of the message once every chunk arrived, else null
      */
-    private byte[] mergeChunks(final Vector<byte[]> chunks) throws UnknownHostException {
-        int dataSize = 0;
-        for (byte[] chunk : chunks) {
-            dataSize += chunk.length - headerSize;
-        }
-        final byte[] completePayload = new byte[dataSize];
-        PacketInfo info = parser.parsePacket(chunks.get(0));
-        final int lastChunkNum = info.getChunkLength() - 1;
-        final Vector<byte[]> sortedChunks = new Vector<>(Collections.nCopies(chunks.size(), null));
-        for (byte[] chunk : chunks) {
-            info = parser.parsePacket(chunk);
-            final int i = info.getChunkNum();
-            sortedChunks.set(i, chunk);
+    public synchronized byte[] receiveChunk(final PacketView chunk, final ClientNode sender) {
+        final PacketView message = reassembler.addChunk(chunk, sender, System.currentTimeMillis());
+        if (message == null) {
+            return null;
         }
-        int i = 0;
-        for (byte[] chunk : sortedChunks) {
-            info = parser.parsePacket(chunk);
-            final int chunkSize = chunk.length - headerSize;
-            final byte[] chunkPayload = info.getPayload();
-            System.arraycopy(chunkPayload, 0, completePayload, i, chunkSize);
-            i += chunkSize;
+        if (message != chunk) {
+            LOG.info(MODULENAME + " Merged message of size " + message.size());
         }
-        info = parser.parsePacket(chunks.get(0));
-        info.setChunkLength(1);
-        info.setChunkNum(0);
-        info.setPayload(completePayload);
-        return parser.createPkt(info);
+        return message.copyPayload();
     }
 
     /**
@@ -185,7 +146,7 @@ public class SimpleChunkManager {
             final int chunkNumber = i / payloadSize;
             info.setChunkNum(chunkNumber);
             info.setPayload(payloadChunk);
-            info.setLength(headerSize + pSize);
+            info.setLength(PacketParser.getHeaderSize(info) + pSize);
             final byte[] pkt = parser.createPkt(info);
             chunks.add(pkt);
         }
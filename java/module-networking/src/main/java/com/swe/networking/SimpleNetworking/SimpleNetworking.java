@@ -56,6 +56,10 @@ public final class SimpleNetworking
      * The variable to store the main host IP address.
      */
     private ClientNode serverAddr;
+    /**
+     * The variable to store the IP address of this device.
+     */
+    private ClientNode deviceAddr;
     /**
      * The variable to store the thread to receive the messages from.
      */
@@ -120,13 +124,14 @@ public final class SimpleNetworking
     public void addUser(final ClientNode deviceAddress,
             final ClientNode mainServerAddress) {
         serverAddr = mainServerAddress;
+        deviceAddr = deviceAddress;
         LOG.info("Device details : " + deviceAddress);
         LOG.info("Server details : " + mainServerAddress);
         if (deviceAddress.equals(mainServerAddress)) {
             user = new Server(deviceAddress);
             LOG.info("Device initialized as a server...");
         } else {
-            user = new Client(deviceAddress);
+            user = new Client(deviceAddress, mainServerAddress);
             LOG.info("Device initialized as a client...");
         }
         receiveThread = new Thread(() -> receiveData());
@@ -168,6 +173,10 @@ public final class SimpleNetworking
                 pkt.setIpAddress(InetAddress.getByName(client.hostName()));
                 pkt.setPortNum(client.port());
                 pkt.setConnectionType(NetworkConnectionType.MODULE.ordinal());
+                if (deviceAddr != null) {
+                    pkt.setOriginAddress(InetAddress.getByName(deviceAddr.hostName()));
+                    pkt.setOriginPort(deviceAddr.port());
+                }
                 chunks = chunkManager.chunk(pkt);
             } catch (UnknownHostException ex) {
                 LOG.error("Error on chunking data...");
@@ -193,6 +202,24 @@ public final class SimpleNetworking
         }
     }
 
+    /**
+     * Function to send the given data to every other device. The chunks
+     * carry the address of this device so the server skips it, and are
+     * uploaded once whatever the number of devices.
+     *
+     * @param data the data to be sent
+     * @param module the destination module id
+     * @param priority the priority of the send message
+     */
+    @Override
+    public void broadcast(final byte[] data, final ModuleType module, final int priority) {
+        final ClientNode[] origin = {deviceAddr};
+        final Vector<byte[]> chunks = getChunks(data, origin, module.ordinal(), priority, 1);
+        for (byte[] payload : chunks) {
+            user.broadcast(payload, serverAddr);
+        }
+    }
+
     /**
      * Function to receiveData until the thread stops.
      */
@@ -248,6 +275,10 @@ public final class SimpleNetworking
         LOG.info("Size of message received : " + data.length);
         LOG.info("Calling subscriber : " + module.toString());
         final MessageListener listener = listeners.get(module);
+        if (listener == null) {
+            LOG.warn("No subscriber for module " + module + " ...");
+            return;
+        }
         listener.receiveData(data);
     }
 
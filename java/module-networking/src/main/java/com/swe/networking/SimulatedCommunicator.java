@@ -0,0 +1,268 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: SimulatedCommunicator.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.swe.core.ClientNode;
+import com.swe.core.logging.SweLogger;
+import com.swe.core.logging.SweLoggerFactory;
+
+/**
+ * Communicator of one node of a {@link SimulatedNetwork}. Every packet
+ * sent is one frame on the receiving side and carries the address of the
+ * sending node, not an ephemeral port.
+ * With a listener set, packets are handed to it on the thread stepping
+ * the network, which keeps a simulation deterministic. Without one they
+ * are queued for {@link #receiveData()}, so the existing receive loops of
+ * the servers and clients can run on top of the network unchanged.
+ */
+public final class SimulatedCommunicator implements ProtocolBase {
+
+    /**
+     * The logger for the module.
+     */
+    private static final SweLogger LOG = SweLoggerFactory.getLogger("NETWORKING");
+
+    /**
+     * How long a receive waits for a packet in milliseconds, like the
+     * select timeout of the TCP communicator.
+     */
+    private static final long RECEIVE_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * Marker queued to wake a blocked receive.
+     */
+    private static final ReceivePacket WAKEUP = new ReceivePacket(null, null);
+
+    /**
+     * The network the node is attached to.
+     */
+    private final SimulatedNetwork network;
+
+    /**
+     * The address of the node.
+     */
+    private final ClientNode self;
+
+    /**
+     * Packets received while no listener was set.
+     */
+    private final LinkedBlockingQueue<ReceivePacket> inbox = new LinkedBlockingQueue<>();
+
+    /**
+     * The listener handed every packet, null to queue them.
+     */
+    private volatile FrameListener listener = null;
+
+    /**
+     * Whether the node was detached or closed.
+     */
+    private volatile boolean down = false;
+
+    /**
+     * Creates the communicator of a node.
+     *
+     * @param simulatedNetwork the network the node is attached to
+     * @param node the address of the node
+     */
+    SimulatedCommunicator(final SimulatedNetwork simulatedNetwork, final ClientNode node) {
+        this.network = simulatedNetwork;
+        this.self = node;
+    }
+
+    /**
+     * Function to set the listener handed every packet on arrival.
+     *
+     * @param frameListener the listener, null to queue packets for
+     *        {@link #receiveData()}
+     */
+    public void setListener(final FrameListener frameListener) {
+        this.listener = frameListener;
+    }
+
+    /**
+     * Function to get the address of the node.
+     *
+     * @return the address
+     */
+    public ClientNode getAddress() {
+        return self;
+    }
+
+    /**
+     * Function to check whether the node was detached or closed.
+     *
+     * @return true if the node no longer sends or receives
+     */
+    public boolean isDown() {
+        return down;
+    }
+
+    /**
+     * Function to hand an arrived packet to the node.
+     *
+     * @param sender the sending node
+     * @param data the packet
+     */
+    void deliver(final ClientNode sender, final byte[] data) {
+        final FrameListener current = listener;
+        if (current != null) {
+            current.onFrame(sender, ByteBuffer.wrap(data));
+        } else {
+            inbox.offer(new ReceivePacket(sender, data));
+        }
+    }
+
+    /**
+     * Function to stop the node sending and receiving.
+     */
+    void markDown() {
+        down = true;
+        inbox.clear();
+        inbox.offer(WAKEUP);
+    }
+
+    /**
+     * The simulated node has no socket.
+     *
+     * @return null
+     */
+    @Override
+    public SocketChannel openSocket() {
+        return null;
+    }
+
+    /**
+     * Function to print the number of queued packets.
+     */
+    @Override
+    public void printKeys() {
+        LOG.info("Simulated node " + self + " has " + inbox.size() + " queued packets");
+    }
+
+    /**
+     * Links of the simulated network need no closing.
+     *
+     * @param client the peer
+     */
+    @Override
+    public void closeSocket(final ClientNode client) {
+    }
+
+    /**
+     * Function to send a packet to a node of the network.
+     *
+     * @param data the packet
+     * @param dest the receiving node
+     */
+    @Override
+    public void sendData(final byte[] data, final ClientNode dest) {
+        if (down) {
+            return;
+        }
+        network.send(self, dest, data.clone());
+    }
+
+    /**
+     * Function to wait for a queued packet.
+     *
+     * @return the packet, null when none arrived in time or on wakeup
+     */
+    @Override
+    public ReceivePacket receiveData() {
+        try {
+            final ReceivePacket packet = inbox.poll(RECEIVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (packet == WAKEUP) {
+                return null;
+            }
+            return packet;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Function to hand every queued packet to the listener as one frame.
+     *
+     * @param frameListener the listener called once per packet
+     * @return true if any packet was received
+     */
+    @Override
+    public boolean receiveFrames(final FrameListener frameListener) {
+        final ReceivePacket packet = receiveData();
+        if (packet == null) {
+            return false;
+        }
+        frameListener.onFrame(packet.sender(), ByteBuffer.wrap(packet.data()));
+        ReceivePacket next = inbox.poll();
+        while (next != null && next != WAKEUP) {
+            frameListener.onFrame(next.sender(), ByteBuffer.wrap(next.data()));
+            next = inbox.poll();
+        }
+        return true;
+    }
+
+    /**
+     * Function to get the packets in flight to a peer.
+     *
+     * @param client the peer
+     * @return the packets sent but not yet arrived
+     */
+    @Override
+    public int getQueueDepth(final ClientNode client) {
+        return network.getInFlightPackets(self, client);
+    }
+
+    /**
+     * Function to get the bytes in flight to a peer.
+     *
+     * @param client the peer
+     * @return the bytes sent but not yet arrived
+     */
+    @Override
+    public long getBytesInFlight(final ClientNode client) {
+        return network.getInFlightBytes(self, client);
+    }
+
+    /**
+     * Function to get the number of packets sent to a peer.
+     *
+     * @param client the peer
+     * @return the packet count
+     */
+    @Override
+    public long getWriteCalls(final ClientNode client) {
+        return network.getWrites(self, client);
+    }
+
+    /**
+     * Function to wake a thread blocked receiving.
+     */
+    @Override
+    public void wakeup() {
+        inbox.offer(WAKEUP);
+    }
+
+    /**
+     * Function to detach the node from the network.
+     */
+    @Override
+    public void close() {
+        if (!down) {
+            network.detach(self);
+        }
+    }
+}
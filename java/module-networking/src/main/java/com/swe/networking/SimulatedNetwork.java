@@ -0,0 +1,496 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: SimulatedNetwork.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.swe.core.ClientNode;
+import com.swe.core.logging.SweLogger;
+import com.swe.core.logging.SweLoggerFactory;
+
+/**
+ * In memory network connecting many simulated nodes in one JVM.
+ * Every node talks through a {@link SimulatedCommunicator}. A packet sent
+ * on a link waits for the bandwidth of the link, then for its latency and
+ * a random jitter, and may be lost or reordered as set by the
+ * {@link LinkProfile} of the link. Links keep packets in order unless one
+ * is picked for reordering, like a TCP connection would.
+ * Time is virtual. Nothing happens until the network is stepped, and all
+ * randomness comes from one seeded generator, so a run driven from a
+ * single thread is exactly repeatable. Timers of the simulated nodes are
+ * scheduled on the same clock with {@link #schedule(long, Runnable)}.
+ */
+public final class SimulatedNetwork {
+
+    /**
+     * Microseconds in a millisecond.
+     */
+    public static final long MICROS_PER_MILLI = 1000;
+
+    /**
+     * Microseconds in a second.
+     */
+    public static final long MICROS_PER_SECOND = 1_000_000;
+
+    /**
+     * The logger for the module.
+     */
+    private static final SweLogger LOG = SweLoggerFactory.getLogger("NETWORKING");
+
+    /**
+     * The source of all randomness of the network.
+     */
+    private final Random random;
+
+    /**
+     * Pending deliveries and timers, earliest first, ties in schedule order.
+     */
+    private final java.util.PriorityQueue<Event> events = new java.util.PriorityQueue<>(
+            Comparator.comparingLong(Event::at).thenComparingLong(Event::seq));
+
+    /**
+     * The attached nodes.
+     */
+    private final Map<ClientNode, SimulatedCommunicator> nodes = new HashMap<>();
+
+    /**
+     * The state of every directed link used so far.
+     */
+    private final Map<Route, Link> links = new HashMap<>();
+
+    /**
+     * Profiles set for single directed links.
+     */
+    private final Map<Route, LinkProfile> profiles = new HashMap<>();
+
+    /**
+     * The profile of links without their own.
+     */
+    private LinkProfile defaultProfile = LinkProfile.IDEAL;
+
+    /**
+     * The virtual time in microseconds.
+     */
+    private long now = 0;
+
+    /**
+     * Sequence number of the next event.
+     */
+    private long nextSeq = 0;
+
+    /**
+     * Number of packets delivered.
+     */
+    private long delivered = 0;
+
+    /**
+     * Number of packets lost on links.
+     */
+    private long lost = 0;
+
+    /**
+     * Number of packets dropped because an end of the link was down.
+     */
+    private long dropped = 0;
+
+    /**
+     * Creates a network.
+     *
+     * @param seed the seed of the random generator
+     */
+    public SimulatedNetwork(final long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Function to attach a node to the network.
+     *
+     * @param node the address of the node
+     * @return the communicator of the node
+     */
+    public synchronized SimulatedCommunicator attach(final ClientNode node) {
+        if (nodes.containsKey(node)) {
+            throw new IllegalStateException("Node " + node + " is already attached");
+        }
+        final SimulatedCommunicator communicator = new SimulatedCommunicator(this, node);
+        nodes.put(node, communicator);
+        return communicator;
+    }
+
+    /**
+     * Function to crash a node. It is detached at once, packets in flight
+     * to it are dropped on arrival and its address can be attached again.
+     *
+     * @param node the address of the node
+     */
+    public synchronized void detach(final ClientNode node) {
+        final SimulatedCommunicator communicator = nodes.remove(node);
+        if (communicator != null) {
+            communicator.markDown();
+            LOG.info("Simulated node " + node + " detached");
+        }
+    }
+
+    /**
+     * Function to check whether a node is attached.
+     *
+     * @param node the address of the node
+     * @return true if the node is attached
+     */
+    public synchronized boolean isUp(final ClientNode node) {
+        return nodes.containsKey(node);
+    }
+
+    /**
+     * Function to set the profile of links without their own.
+     *
+     * @param profile the profile
+     */
+    public synchronized void setDefaultProfile(final LinkProfile profile) {
+        this.defaultProfile = profile;
+    }
+
+    /**
+     * Function to set the profile of one direction of a link.
+     *
+     * @param from the sending node
+     * @param to the receiving node
+     * @param profile the profile
+     */
+    public synchronized void setProfile(final ClientNode from, final ClientNode to, final LinkProfile profile) {
+        profiles.put(new Route(from, to), profile);
+    }
+
+    /**
+     * Function to set the profile of both directions of a link.
+     *
+     * @param first one end of the link
+     * @param second the other end of the link
+     * @param profile the profile
+     */
+    public synchronized void setLinkProfile(final ClientNode first, final ClientNode second,
+            final LinkProfile profile) {
+        setProfile(first, second, profile);
+        setProfile(second, first, profile);
+    }
+
+    /**
+     * Function to get the virtual time.
+     *
+     * @return the time in microseconds since the network was created
+     */
+    public synchronized long now() {
+        return now;
+    }
+
+    /**
+     * Function to run a task on the virtual clock.
+     *
+     * @param delayMicros the delay in microseconds
+     * @param task the task
+     */
+    public synchronized void schedule(final long delayMicros, final Runnable task) {
+        events.add(new Event(now + Math.max(0, delayMicros), nextSeq++, task));
+    }
+
+    /**
+     * Function to send a packet on the link between two nodes.
+     *
+     * @param from the sending node
+     * @param to the receiving node
+     * @param data the packet, owned by the network from now on
+     */
+    synchronized void send(final ClientNode from, final ClientNode to, final byte[] data) {
+        final Route route = new Route(from, to);
+        final Link link = links.computeIfAbsent(route, r -> new Link());
+        final LinkProfile profile = profiles.getOrDefault(route, defaultProfile);
+        link.writes++;
+        link.bytesSent += data.length;
+        long departure = Math.max(now, link.nextFree);
+        if (profile.bytesPerSecond() > 0) {
+            departure += (data.length * MICROS_PER_SECOND + profile.bytesPerSecond() - 1)
+                    / profile.bytesPerSecond();
+        }
+        link.nextFree = departure;
+        if (random.nextDouble() < profile.lossRate()) {
+            lost++;
+            return;
+        }
+        long arrival = departure + profile.latencyMicros();
+        if (profile.jitterMicros() > 0) {
+            arrival += (long) (random.nextDouble() * profile.jitterMicros());
+        }
+        if (random.nextDouble() < profile.reorderRate()) {
+            arrival += profile.latencyMicros() + profile.jitterMicros() + 1;
+        } else {
+            arrival = Math.max(arrival, link.lastArrival);
+            link.lastArrival = arrival;
+        }
+        link.inFlightPackets++;
+        link.inFlightBytes += data.length;
+        events.add(new Event(arrival, nextSeq++, () -> arrive(route, link, data)));
+    }
+
+    /**
+     * Function to hand an arrived packet to its receiver.
+     *
+     * @param route the link the packet travelled on
+     * @param link the state of the link
+     * @param data the packet
+     */
+    private void arrive(final Route route, final Link link, final byte[] data) {
+        final SimulatedCommunicator receiver;
+        synchronized (this) {
+            link.inFlightPackets--;
+            link.inFlightBytes -= data.length;
+            receiver = nodes.get(route.to());
+            if (receiver == null || !nodes.containsKey(route.from())) {
+                dropped++;
+                return;
+            }
+            delivered++;
+        }
+        receiver.deliver(route.from(), data);
+    }
+
+    /**
+     * Function to run the next event.
+     *
+     * @return false if there was no event
+     */
+    public boolean step() {
+        final Event event;
+        synchronized (this) {
+            event = events.poll();
+            if (event == null) {
+                return false;
+            }
+            now = event.at();
+        }
+        event.task().run();
+        return true;
+    }
+
+    /**
+     * Function to run every event due in the next period and move the
+     * clock to its end.
+     *
+     * @param periodMicros the period in microseconds
+     * @return the number of events run
+     */
+    public int runFor(final long periodMicros) {
+        final long end;
+        synchronized (this) {
+            end = now + periodMicros;
+        }
+        int ran = 0;
+        while (true) {
+            synchronized (this) {
+                final Event next = events.peek();
+                if (next == null || next.at() > end) {
+                    now = end;
+                    return ran;
+                }
+            }
+            step();
+            ran++;
+        }
+    }
+
+    /**
+     * Function to run events until none are left or the limit is reached.
+     * Periodic timers keep the network busy, so a limit is always needed.
+     *
+     * @param maxEvents the most events to run
+     * @return the number of events run
+     */
+    public int runUntilIdle(final int maxEvents) {
+        int ran = 0;
+        while (ran < maxEvents && step()) {
+            ran++;
+        }
+        return ran;
+    }
+
+    /**
+     * Function to get the number of packets in flight on a link.
+     *
+     * @param from the sending node
+     * @param to the receiving node
+     * @return the packets sent but not yet arrived
+     */
+    public synchronized int getInFlightPackets(final ClientNode from, final ClientNode to) {
+        final Link link = links.get(new Route(from, to));
+        if (link == null) {
+            return 0;
+        }
+        return link.inFlightPackets;
+    }
+
+    /**
+     * Function to get the number of bytes in flight on a link.
+     *
+     * @param from the sending node
+     * @param to the receiving node
+     * @return the bytes sent but not yet arrived
+     */
+    public synchronized long getInFlightBytes(final ClientNode from, final ClientNode to) {
+        final Link link = links.get(new Route(from, to));
+        if (link == null) {
+            return 0;
+        }
+        return link.inFlightBytes;
+    }
+
+    /**
+     * Function to get the number of packets sent on a link.
+     *
+     * @param from the sending node
+     * @param to the receiving node
+     * @return the packet count
+     */
+    public synchronized long getWrites(final ClientNode from, final ClientNode to) {
+        final Link link = links.get(new Route(from, to));
+        if (link == null) {
+            return 0;
+        }
+        return link.writes;
+    }
+
+    /**
+     * Function to get the number of bytes a node sent on all its links.
+     *
+     * @param from the sending node
+     * @return the byte count
+     */
+    public synchronized long getBytesSent(final ClientNode from) {
+        long total = 0;
+        for (Map.Entry<Route, Link> entry : links.entrySet()) {
+            if (entry.getKey().from().equals(from)) {
+                total += entry.getValue().bytesSent;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Function to get the number of packets a node sent on all its links.
+     *
+     * @param from the sending node
+     * @return the packet count
+     */
+    public synchronized long getPacketsSent(final ClientNode from) {
+        long total = 0;
+        for (Map.Entry<Route, Link> entry : links.entrySet()) {
+            if (entry.getKey().from().equals(from)) {
+                total += entry.getValue().writes;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Function to get the attached nodes.
+     *
+     * @return a copy of the node addresses
+     */
+    public synchronized List<ClientNode> getNodes() {
+        return new ArrayList<>(nodes.keySet());
+    }
+
+    /**
+     * Function to get the number of packets delivered.
+     *
+     * @return the delivered count
+     */
+    public synchronized long getDelivered() {
+        return delivered;
+    }
+
+    /**
+     * Function to get the number of packets lost on links.
+     *
+     * @return the lost count
+     */
+    public synchronized long getLost() {
+        return lost;
+    }
+
+    /**
+     * Function to get the number of packets dropped because an end of the
+     * link was down.
+     *
+     * @return the dropped count
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * One direction of a link.
+     *
+     * @param from the sending node
+     * @param to the receiving node
+     */
+    private record Route(ClientNode from, ClientNode to) {
+    }
+
+    /**
+     * Something to run at a point of virtual time.
+     *
+     * @param at the time in microseconds
+     * @param seq the schedule order, breaking ties
+     * @param task the task
+     */
+    private record Event(long at, long seq, Runnable task) {
+    }
+
+    /**
+     * The state of one direction of a link.
+     */
+    private static final class Link {
+
+        /**
+         * Time the link finishes sending the packets queued on it.
+         */
+        private long nextFree = 0;
+
+        /**
+         * Arrival time of the last in order packet.
+         */
+        private long lastArrival = 0;
+
+        /**
+         * Packets sent but not yet arrived.
+         */
+        private int inFlightPackets = 0;
+
+        /**
+         * Bytes sent but not yet arrived.
+         */
+        private long inFlightBytes = 0;
+
+        /**
+         * Packets sent.
+         */
+        private long writes = 0;
+
+        /**
+         * Bytes sent.
+         */
+        private long bytesSent = 0;
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: Supersession.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Latest wins supersession of queued messages. A message sent as latest
+ * only belongs to a stream, named by its module and a key chosen by the
+ * sender, and once a newer message of the stream is queued for a
+ * destination the older ones are worth nothing to it. The scheduler queues
+ * are not searched. The newest message of every stream and destination is
+ * remembered instead, and the send thread drops a latest only packet it
+ * takes when a newer message of its stream was queued for the same
+ * destination since. The chunks of an older message still queued thus
+ * never reach the wire, whatever scheduler holds them.
+ */
+public final class Supersession {
+
+    /**
+     * Bits used by the port in a destination key.
+     */
+    private static final int PORT_BITS = 16;
+
+    /**
+     * Mask to read an int as unsigned.
+     */
+    private static final long UNSIGNED_INT_MASK = 0xFFFFFFFFL;
+
+    /**
+     * The newest message of every stream and destination that still has
+     * queued packets.
+     */
+    private final Map<StreamKey, Integer> newest = new HashMap<>();
+
+    /**
+     * The latest only messages that still have queued packets, by id.
+     */
+    private final Map<Integer, Message> messages = new HashMap<>();
+
+    /**
+     * Queued packets dropped because their message was superseded.
+     */
+    private long droppedPackets;
+
+    /**
+     * Messages superseded while some of their packets were queued.
+     */
+    private long supersededMessages;
+
+    /**
+     * Function to record a latest only message about to be queued. Must be
+     * called before its packets are handed to the scheduler.
+     *
+     * @param messageId the message id
+     * @param module the module
+     * @param stream the stream key within the module
+     * @param dests the destinations
+     * @param chunks the chunks queued for every destination
+     * @return the destinations whose older message of the stream was cut
+     *         short, some of its chunks will not be sent
+     * @throws UnknownHostException when a destination cannot be resolved
+     */
+    public synchronized List<ClientNode> track(final int messageId, final int module, final int stream,
+            final ClientNode[] dests, final int chunks) throws UnknownHostException {
+        final List<ClientNode> cut = new ArrayList<>();
+        if (chunks <= 0 || dests.length == 0) {
+            return cut;
+        }
+        final long[] destinations = new long[dests.length];
+        final int[] queued = new int[dests.length];
+        for (int i = 0; i < dests.length; i++) {
+            final byte[] address = InetAddress.getByName(dests[i].hostName()).getAddress();
+            destinations[i] = destinationKey(ByteBuffer.wrap(address).getInt(), dests[i].port());
+            queued[i] = chunks;
+            final Integer older = newest.put(new StreamKey(destinations[i], module, stream), messageId);
+            if (older != null) {
+                cut.add(dests[i]);
+                supersededMessages++;
+            }
+        }
+        messages.put(messageId, new Message(module, stream, destinations, queued));
+        return cut;
+    }
+
+    /**
+     * Function to check a packet taken from the scheduler. Must be called
+     * once for every packet taken.
+     *
+     * @param view the view over the packet
+     * @return true if the packet belongs to a superseded message and must
+     *         be dropped
+     */
+    public synchronized boolean isSuperseded(final PacketView view) {
+        if (view.getLatest() == 0) {
+            return false;
+        }
+        final int messageId = view.getMessageId();
+        final Message message = messages.get(messageId);
+        if (message == null) {
+            return false;
+        }
+        final long destination = destinationKey(view.getIpAddress(), view.getPortNum());
+        final int index = message.indexOf(destination);
+        if (index < 0) {
+            return false;
+        }
+        final StreamKey key = new StreamKey(destination, message.module, message.stream);
+        final Integer current = newest.get(key);
+        final boolean superseded = current == null || current != messageId;
+        message.queued[index]--;
+        if (message.queued[index] == 0) {
+            newest.remove(key, messageId);
+            message.pending--;
+            if (message.pending == 0) {
+                messages.remove(messageId);
+            }
+        }
+        if (superseded) {
+            droppedPackets++;
+        }
+        return superseded;
+    }
+
+    /**
+     * Function to check whether a latest only message of a stream still has
+     * packets queued for a destination.
+     *
+     * @param dest the destination
+     * @param module the module
+     * @param stream the stream key within the module
+     * @return true while the newest message of the stream is not all sent
+     * @throws UnknownHostException when the destination cannot be resolved
+     */
+    public boolean isQueued(final ClientNode dest, final int module, final int stream)
+            throws UnknownHostException {
+        final byte[] address = InetAddress.getByName(dest.hostName()).getAddress();
+        final StreamKey key = new StreamKey(destinationKey(ByteBuffer.wrap(address).getInt(), dest.port()),
+                module, stream);
+        synchronized (this) {
+            return newest.containsKey(key);
+        }
+    }
+
+    /**
+     * Function to forget every message. Must be called whenever queued
+     * packets are dropped without the send thread taking them, such as when
+     * the scheduler is cleared, or their streams would stay queued forever.
+     */
+    public synchronized void clear() {
+        newest.clear();
+        messages.clear();
+    }
+
+    /**
+     * Function to get the number of queued packets dropped.
+     *
+     * @return the dropped packet count
+     */
+    public synchronized long getDroppedPackets() {
+        return droppedPackets;
+    }
+
+    /**
+     * Function to get the number of messages superseded while queued.
+     *
+     * @return the superseded message count
+     */
+    public synchronized long getSupersededMessages() {
+        return supersededMessages;
+    }
+
+    /**
+     * Function to build the key of a destination.
+     *
+     * @param ipAddress the address as a big endian int
+     * @param port the port
+     * @return the key
+     */
+    private static long destinationKey(final int ipAddress, final int port) {
+        return ((ipAddress & UNSIGNED_INT_MASK) << PORT_BITS) | port;
+    }
+
+    /**
+     * A stream of a module to one destination.
+     *
+     * @param destination the destination key
+     * @param module the module
+     * @param stream the stream key within the module
+     */
+    private record StreamKey(long destination, int module, int stream) {
+    }
+
+    /**
+     * The destinations of a latest only message and its packets still
+     * queued for each.
+     */
+    private static final class Message {
+
+        /**
+         * Module of the message.
+         */
+        private final int module;
+
+        /**
+         * Stream key of the message.
+         */
+        private final int stream;
+
+        /**
+         * Destination keys of the message.
+         */
+        private final long[] destinations;
+
+        /**
+         * Packets still queued for every destination.
+         */
+        private final int[] queued;
+
+        /**
+         * Destinations with packets still queued.
+         */
+        private int pending;
+
+        /**
+         * Creates the state of a message.
+         *
+         * @param moduleId the module
+         * @param streamKey the stream key
+         * @param destinationKeys the destination keys
+         * @param queuedPackets the packets queued for every destination
+         */
+        Message(final int moduleId, final int streamKey, final long[] destinationKeys, final int[] queuedPackets) {
+            this.module = moduleId;
+            this.stream = streamKey;
+            this.destinations = destinationKeys;
+            this.queued = queuedPackets;
+            this.pending = destinationKeys.length;
+        }
+
+        /**
+         * Function to find a destination of the message.
+         *
+         * @param destination the destination key
+         * @return the index or -1 if the message is not sent there
+         */
+        int indexOf(final long destination) {
+            for (int i = 0; i < destinations.length; i++) {
+                if (destinations[i] == destination) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -13,12 +13,20 @@ package com.swe.networking;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.HashMap;
+import java.util.ArrayDeque;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.swe.core.ClientNode;
 import com.swe.core.logging.SweLogger;
@@ -27,7 +35,14 @@ import com.swe.core.logging.SweLoggerFactory;
 //File owned by Loganath
 /**
  * Communicator class module for TCP.
- *
+ * By default one selector serves every socket on the thread calling
+ * receive. With {@value #REACTORS_PROPERTY} above 1 the connections are
+ * spread round robin over that many selectors, each drained by its own
+ * reactor thread. A reactor reads a socket into the ring of its decoder and
+ * hands the connection to the one thread calling receive, which decodes the
+ * packets in place and calls the listener. The socket is not read again
+ * until its packets were handed out, so nothing is copied between the
+ * threads and a slow listener slows the senders down through TCP.
  */
 public final class TCPCommunicator implements ProtocolBase {
 
@@ -46,15 +61,65 @@ public final class TCPCommunicator implements ProtocolBase {
      */
     private ServerSocketChannel receiveSocket;
     /**
-     * The selector for the sockets.
+     * The selector for the server socket, also the first reactor.
      */
     private Selector selector;
 
     /**
-     * The list of all connected clients and their sockets.
+     * System property holding the number of selector threads reading the
+     * connections.
+     */
+    public static final String REACTORS_PROPERTY = "swecomm.network.reactors";
+
+    /**
+     * Time in milliseconds a select waits for a ready socket.
+     */
+    private static final int SELECT_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * The selectors of the reactors, the first one is {@link #selector}.
+     */
+    private Selector[] selectors;
+
+    /**
+     * Counter assigning new connections to the reactors round robin.
+     */
+    private final AtomicInteger nextSelector = new AtomicInteger();
+
+    /**
+     * The reactor threads, null until receiving starts or with a single
+     * selector.
+     */
+    private Thread[] reactorThreads;
+
+    /**
+     * Keys of the connections read by the reactors whose packets wait for
+     * the receiving thread. A key is queued at most once, its socket is not
+     * read while it waits.
+     */
+    private final BlockingQueue<SelectionKey> readable = new LinkedBlockingQueue<>();
+
+    /**
+     * Packets decoded for {@link #receiveData()} not returned yet, only
+     * used by the receiving thread.
+     */
+    private final ArrayDeque<ReceivePacket> pending = new ArrayDeque<>();
+
+    /**
+     * Released when the communicator closes, stops the reactors.
+     */
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    /**
+     * The list of all connected clients and their connection state.
      *
      */
-    private final HashMap<ClientNode, SocketChannel> clientSockets = new HashMap<>();
+    private final Map<ClientNode, PeerConnection> clientSockets = new ConcurrentHashMap<>();
+
+    /**
+     * The estimator counting the bytes sent to every peer.
+     */
+    private final LinkEstimator linkEstimator = LinkEstimator.getLinkEstimator();
 
     /**
      * The port where the server is instantiated.
@@ -68,6 +133,16 @@ public final class TCPCommunicator implements ProtocolBase {
      */
     private final Integer byteBufferSize = 15 * 1024;
 
+    /**
+     * Default time in milliseconds a connect may take before it is given up.
+     */
+    public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 3000;
+
+    /**
+     * Time in milliseconds a connect may take before it is given up.
+     */
+    private final long connectTimeoutMillis;
+
     // maintain list of clients and add timeouts
     /**
      * Constructor function for TCP Communicator class.
@@ -75,9 +150,39 @@ public final class TCPCommunicator implements ProtocolBase {
      * @param serverPort which port to start the TCP.
      */
     public TCPCommunicator(final int serverPort) {
+        this(serverPort, DEFAULT_CONNECT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructor function for TCP Communicator class with a connect timeout.
+     *
+     * @param serverPort which port to start the TCP.
+     * @param connectTimeout milliseconds a connect may take before its
+     *        queued packets are dropped
+     */
+    public TCPCommunicator(final int serverPort, final long connectTimeout) {
+        this(serverPort, connectTimeout, Integer.getInteger(REACTORS_PROPERTY, 1));
+    }
+
+    /**
+     * Constructor function for TCP Communicator class with a connect timeout
+     * and a number of reactors.
+     *
+     * @param serverPort which port to start the TCP.
+     * @param connectTimeout milliseconds a connect may take before its
+     *        queued packets are dropped
+     * @param reactors the number of selector threads reading the
+     *        connections, 1 to select on the thread calling receive
+     */
+    public TCPCommunicator(final int serverPort, final long connectTimeout, final int reactors) {
+        connectTimeoutMillis = connectTimeout;
         try {
-            LOG.info("TCP communicator initialized...");
-            selector = Selector.open();
+            LOG.info("TCP communicator initialized with " + Math.max(1, reactors) + " reactors...");
+            selectors = new Selector[Math.max(1, reactors)];
+            for (int i = 0; i < selectors.length; i++) {
+                selectors[i] = Selector.open();
+            }
+            selector = selectors[0];
             deviceServerPort = serverPort;
             setServerPort();
         } catch (IOException ex) {
@@ -91,14 +196,45 @@ public final class TCPCommunicator implements ProtocolBase {
      */
     @Override
     public void printKeys() {
-        selector.keys().stream().forEach(kay -> LOG.info("Selector channel: " + kay.channel()));
+        for (Selector reactor : selectors) {
+            reactor.keys().stream().forEach(kay -> LOG.info("Selector channel: " + kay.channel()));
+        }
+    }
+
+    /**
+     * Function to get the number of selectors reading the connections.
+     *
+     * @return the reactor count
+     */
+    public int getReactorCount() {
+        return selectors.length;
     }
 
     @Override
     public ReceivePacket receiveData() {
+        if (selectors.length > 1) {
+            startReactors();
+            if (pending.isEmpty()) {
+                final SelectionKey key;
+                try {
+                    key = readable.poll(SELECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+                if (key != null) {
+                    drainReadable(key, (sender, frame) -> {
+                        final byte[] packet = new byte[frame.remaining()];
+                        frame.get(packet);
+                        pending.add(new ReceivePacket(sender, packet));
+                    });
+                }
+            }
+            return pending.poll();
+        }
         try {
-            final int timeout = 1000;
-            selector.select(timeout);
+            selector.select(SELECT_TIMEOUT_MILLIS);
+            expireConnects(selector);
             final Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
             while (iter.hasNext()) {
                 final SelectionKey key = iter.next();
@@ -106,6 +242,16 @@ public final class TCPCommunicator implements ProtocolBase {
                 if (!key.isValid()) {
                     continue;
                 }
+                if (key.isConnectable()) {
+                    completeConnect(key);
+                    continue;
+                }
+                if (key.isWritable()) {
+                    writeQueued(key);
+                }
+                if (!key.isValid()) {
+                    continue;
+                }
                 if (key.isAcceptable()) {
                     acceptConnection(key);
                 } else if (key.isReadable()) {
@@ -125,6 +271,315 @@ public final class TCPCommunicator implements ProtocolBase {
         }
     }
 
+    @Override
+    public boolean receiveFrames(final FrameListener listener) {
+        if (selectors.length > 1) {
+            startReactors();
+            SelectionKey key;
+            try {
+                key = readable.poll(SELECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (key == null) {
+                return false;
+            }
+            while (key != null) {
+                drainReadable(key, listener);
+                key = readable.poll();
+            }
+            return true;
+        }
+        return selectOnce(selector, listener);
+    }
+
+    /**
+     * Function to start the reactors on the first call.
+     */
+    private synchronized void startReactors() {
+        if (reactorThreads != null) {
+            return;
+        }
+        reactorThreads = new Thread[selectors.length];
+        for (int i = 0; i < selectors.length; i++) {
+            final Selector reactor = selectors[i];
+            reactorThreads[i] = new Thread(() -> runReactor(reactor), "TCP-Reactor-" + i);
+            reactorThreads[i].setDaemon(true);
+            reactorThreads[i].start();
+        }
+    }
+
+    /**
+     * Function run by a reactor thread until the communicator closes.
+     *
+     * @param reactor the selector of the reactor
+     */
+    private void runReactor(final Selector reactor) {
+        while (closed.getCount() > 0) {
+            try {
+                selectOnce(reactor, null);
+            } catch (RuntimeException ex) {
+                LOG.error("Error while handling received data...", ex);
+            }
+        }
+    }
+
+    /**
+     * Function to hand the packets of a connection read by a reactor to a
+     * listener on the receiving thread, straight from the ring of its
+     * decoder, then let the reactor read the socket again. The selector
+     * applies the new interest under its own lock, so the reactor sees the
+     * ring as drained.
+     *
+     * @param key the key of the connection
+     * @param listener the listener to hand each packet to
+     */
+    private void drainReadable(final SelectionKey key, final FrameListener listener) {
+        final PeerConnection connection = (PeerConnection) key.attachment();
+        connection.getDecoder().drain(listener);
+        try {
+            key.interestOpsOr(SelectionKey.OP_READ);
+            key.selector().wakeup();
+        } catch (CancelledKeyException ex) {
+            LOG.info("Connection to " + connection.getPeer() + " closed while its packets were handed out...");
+        }
+    }
+
+    /**
+     * Function to wait for ready sockets of a selector and handle every one
+     * of them.
+     *
+     * @param reactor the selector
+     * @param listener the listener to hand each packet to, null to hand
+     *        the read connections to the receiving thread
+     * @return true if any socket was ready
+     */
+    private boolean selectOnce(final Selector reactor, final FrameListener listener) {
+        try {
+            final int ready = reactor.select(SELECT_TIMEOUT_MILLIS);
+            expireConnects(reactor);
+            if (ready == 0) {
+                return false;
+            }
+            final Iterator<SelectionKey> iter = reactor.selectedKeys().iterator();
+            while (iter.hasNext()) {
+                final SelectionKey key = iter.next();
+                iter.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isConnectable()) {
+                    completeConnect(key);
+                    continue;
+                }
+                if (key.isWritable()) {
+                    writeQueued(key);
+                }
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    acceptConnection(key);
+                } else if (key.isReadable()) {
+                    readFrames(key, listener);
+                }
+            }
+            return true;
+        } catch (IOException ex) {
+            LOG.error("Error while using the selector...");
+            LOG.error("Error : " + ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Function to read a ready socket into its decoder and emit the packets.
+     * Without a listener the socket stops being read and its key is queued
+     * for the receiving thread.
+     *
+     * @param key the key of the readable socket
+     * @param listener the listener to hand each packet to, null to queue
+     *        the key
+     */
+    private void readFrames(final SelectionKey key, final FrameListener listener) {
+        final PeerConnection connection = (PeerConnection) key.attachment();
+        final FrameDecoder decoder = connection.getDecoder();
+        try {
+            if (decoder.readFrom(connection.getChannel()) < 0) {
+                LOG.info("Connection closed by " + connection.getPeer() + " ...");
+                dropConnection(key, connection);
+                return;
+            }
+        } catch (IOException ex) {
+            LOG.error("Error occured while reading data...");
+            LOG.error("Error : " + ex.getMessage());
+            dropConnection(key, connection);
+            return;
+        }
+        if (listener == null) {
+            key.interestOpsAnd(~SelectionKey.OP_READ);
+            readable.add(key);
+            return;
+        }
+        decoder.drain(listener);
+    }
+
+    /**
+     * Function to write the queued packets of a writable socket.
+     *
+     * @param key the key of the writable socket
+     */
+    private void writeQueued(final SelectionKey key) {
+        final PeerConnection connection = (PeerConnection) key.attachment();
+        try {
+            connection.onWritable();
+        } catch (IOException ex) {
+            LOG.error("Error while sending queued data to " + connection.getPeer() + "...");
+            LOG.error("Error : " + ex.getMessage());
+            dropConnection(key, connection);
+        }
+    }
+
+    /**
+     * Function to complete the connect of a channel the selector reports
+     * connectable.
+     *
+     * @param key the key of the connecting socket
+     */
+    private void completeConnect(final SelectionKey key) {
+        final PeerConnection connection = (PeerConnection) key.attachment();
+        try {
+            if (connection.finishConnect()) {
+                LOG.info("Connected to " + connection.getPeer() + " ...");
+            }
+        } catch (IOException ex) {
+            LOG.error("Unable to connect to " + connection.getPeer() + "...");
+            LOG.error("Error : " + ex.getMessage());
+            dropConnection(key, connection);
+        }
+    }
+
+    /**
+     * Function to give up connects of a selector that took longer than the
+     * timeout, along with the packets queued for them.
+     *
+     * @param reactor the selector the connects are registered with
+     */
+    private void expireConnects(final Selector reactor) {
+        final long now = System.currentTimeMillis();
+        for (PeerConnection connection : clientSockets.values()) {
+            final SelectionKey key = connection.getKey();
+            if (key != null && key.selector() == reactor && connection.isConnectExpired(now)) {
+                LOG.warn("Connect to " + connection.getPeer() + " timed out, dropping "
+                        + connection.getQueueDepth() + " queued packets...");
+                dropConnection(key, connection);
+            }
+        }
+    }
+
+    /**
+     * Function to pick the selector of a new connection.
+     *
+     * @return the next selector round robin
+     */
+    private Selector nextSelector() {
+        return selectors[Math.floorMod(nextSelector.getAndIncrement(), selectors.length)];
+    }
+
+    /**
+     * Function to close a broken connection and forget its queue.
+     *
+     * @param key the key of the socket
+     * @param connection the connection state
+     */
+    private void dropConnection(final SelectionKey key, final PeerConnection connection) {
+        if (key != null) {
+            key.cancel();
+        }
+        connection.clear();
+        clientSockets.values().remove(connection);
+        try {
+            connection.getChannel().close();
+        } catch (IOException ex) {
+            LOG.error("Error : " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Function to register a connected channel with the selector.
+     *
+     * @param client the peer of the channel
+     * @param channel the connected non blocking channel
+     * @return the connection state
+     * @throws IOException when the registration fails
+     */
+    private PeerConnection register(final ClientNode client, final SocketChannel channel) throws IOException {
+        final PeerConnection connection = new PeerConnection(client, channel);
+        final SelectionKey key = channel.register(nextSelector(), SelectionKey.OP_READ, connection);
+        connection.setKey(key);
+        clientSockets.put(client, connection);
+        key.selector().wakeup();
+        return connection;
+    }
+
+    /**
+     * Function to start a non blocking connect to a destination. The
+     * selector completes the connect, packets queued meanwhile are written
+     * once it succeeds. When another thread connected to the same
+     * destination first its connection is returned instead.
+     *
+     * @param dest the destination
+     * @return the connection state
+     * @throws IOException when the connect cannot be started
+     */
+    private PeerConnection connectAsync(final ClientNode dest) throws IOException {
+        final SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            final boolean done = channel.connect(new InetSocketAddress(dest.hostName(), dest.port()));
+            final PeerConnection connection = new PeerConnection(dest, channel);
+            int ops = SelectionKey.OP_READ;
+            if (!done) {
+                ops = SelectionKey.OP_CONNECT;
+                connection.setConnectDeadline(System.currentTimeMillis() + connectTimeoutMillis);
+            }
+            final SelectionKey key = channel.register(nextSelector(), ops, connection);
+            connection.setKey(key);
+            final PeerConnection existing = clientSockets.putIfAbsent(dest, connection);
+            if (existing != null) {
+                key.cancel();
+                channel.close();
+                return existing;
+            }
+            key.selector().wakeup();
+            LOG.info("Connecting to " + dest + " ...");
+            return connection;
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Function to dial a peer ahead of the first packet so the handshake is
+     * out of the way when data is sent.
+     *
+     * @param dest the peer to connect to
+     */
+    @Override
+    public void preconnect(final ClientNode dest) {
+        if (clientSockets.containsKey(dest)) {
+            return;
+        }
+        try {
+            connectAsync(dest);
+        } catch (IOException ex) {
+            LOG.error("Unable to pre-connect to " + dest + "...");
+            LOG.error("Error : " + ex.getMessage());
+        }
+    }
+
     /**
      * Function to start a TCP socket at the given port.
      */
@@ -155,12 +610,14 @@ public final class TCPCommunicator implements ProtocolBase {
 
     @Override
     public void closeSocket(final ClientNode client) {
-        final SocketChannel clientSocket = clientSockets.get(client);
-        if (clientSocket != null) {
+        final PeerConnection connection = clientSockets.get(client);
+        if (connection != null) {
             try {
-                final SelectionKey key = clientSocket.keyFor(selector);
+                final SocketChannel clientSocket = connection.getChannel();
+                final SelectionKey key = connection.getKey();
                 if (key != null) {
                     key.cancel();
+                    connection.clear();
                     clientSocket.close();
                     clientSockets.remove(client);
                     LOG.info("Closing socket for client " + client + " ...");
@@ -172,39 +629,92 @@ public final class TCPCommunicator implements ProtocolBase {
         }
     }
 
+    /**
+     * Function to queue data for a destination. The packet is written
+     * straight away when the socket has room, otherwise it waits in the
+     * bounded queue of that peer and the selector finishes the write, so a
+     * slow peer never holds back the caller. A missing connection is opened
+     * without blocking and the packet waits for the connect to complete.
+     *
+     * @param data the data to send
+     * @param dest the destination
+     */
     @Override
     public void sendData(final byte[] data, final ClientNode dest) {
-        final String destIp = dest.hostName();
-        final Integer destPort = dest.port();
+        sendData(new ByteBuffer[] {ByteBuffer.wrap(data)}, dest);
+    }
+
+    /**
+     * Function to queue a packet made of several buffers for a destination.
+     * The parts go out back to back in gathering writes, without being
+     * copied into one array first.
+     *
+     * @param parts the buffers of the packet in order
+     * @param dest the destination
+     */
+    @Override
+    public void sendData(final ByteBuffer[] parts, final ClientNode dest) {
+        PeerConnection connection = null;
         try {
-            final SocketChannel destSocket;
-            if (clientSockets.containsKey(dest)) {
-                LOG.info("Connection to " + dest + " exists already...");
-                destSocket = clientSockets.get(dest);
-            } else {
-                destSocket = openSocket();
-                destSocket.configureBlocking(true);
-                LOG.info("Client : " + dest + " ...");
-                destSocket.connect(new InetSocketAddress(destIp, destPort));
-                destSocket.configureBlocking(false);
-                LOG.info("Opening new socket at port " + destSocket.socket().getLocalPort());
-                destSocket.register(selector, SelectionKey.OP_READ);
-                LOG.info("New connection created successfully...");
-                clientSockets.put(new ClientNode(destIp, destPort), destSocket);
+            connection = clientSockets.get(dest);
+            if (connection == null) {
+                connection = connectAsync(dest);
             }
-            synchronized (destSocket) {
-                final ByteBuffer buffer = ByteBuffer.wrap(data);
-                while (buffer.hasRemaining()) {
-                    destSocket.write(buffer);
-                }
+            long size = 0;
+            for (ByteBuffer part : parts) {
+                size += part.remaining();
             }
-            printIpAddr(destIp, destPort);
+            if (connection.enqueue(parts)) {
+                linkEstimator.recordSent(dest, size);
+            } else {
+                LOG.warn("Send queue of " + dest + " is full, dropping packet...");
+            }
+            printIpAddr(dest.hostName(), dest.port());
         } catch (IOException ex) {
             LOG.error("Error while sending data...");
             LOG.error("Error : " + ex.getMessage());
+            if (connection != null) {
+                closeSocket(dest);
+            }
         }
     }
 
+    @Override
+    public int getQueueDepth(final ClientNode client) {
+        final PeerConnection connection = clientSockets.get(client);
+        if (connection == null) {
+            return 0;
+        }
+        return connection.getQueueDepth();
+    }
+
+    @Override
+    public long getBytesInFlight(final ClientNode client) {
+        final PeerConnection connection = clientSockets.get(client);
+        if (connection == null) {
+            return 0;
+        }
+        return connection.getBytesInFlight();
+    }
+
+    @Override
+    public long getWriteCalls(final ClientNode client) {
+        final PeerConnection connection = clientSockets.get(client);
+        if (connection == null) {
+            return 0;
+        }
+        return connection.getWriteCalls();
+    }
+
+    @Override
+    public long getDroppedPackets(final ClientNode client) {
+        final PeerConnection connection = clientSockets.get(client);
+        if (connection == null) {
+            return 0;
+        }
+        return connection.getDroppedPackets();
+    }
+
     /**
      * Function to accept new connection.
      *
@@ -216,11 +726,10 @@ public final class TCPCommunicator implements ProtocolBase {
             final ServerSocketChannel serverSocketChannel = (ServerSocketChannel) key.channel();
             final SocketChannel clientChannel = serverSocketChannel.accept();
             clientChannel.configureBlocking(false);
-            clientChannel.register(selector, SelectionKey.OP_READ);
             final String ip = clientChannel.getRemoteAddress().toString().split(":")[0].replace("/", "");
             final int port = ((InetSocketAddress) clientChannel.getRemoteAddress()).getPort();
             final ClientNode client = new ClientNode(ip, port);
-            clientSockets.put(client, clientChannel);
+            register(client, clientChannel);
             LOG.info("New connection esthablished...");
             LOG.info("Client " + client + " ...");
         } catch (IOException ex) {
@@ -255,17 +764,31 @@ public final class TCPCommunicator implements ProtocolBase {
         }
     }
 
+    /**
+     * Function to wake the threads waiting in the selectors.
+     */
+    @Override
+    public void wakeup() {
+        for (Selector reactor : selectors) {
+            reactor.wakeup();
+        }
+    }
+
     /**
      * Function to handle socket on termination.
      */
     @Override
     public void close() {
+        closed.countDown();
+        wakeup();
         try {
             LOG.info("Closing TCP communicator...");
             receiveSocket.close();
-            for (SocketChannel socket : clientSockets.values()) {
-                LOG.info("Closing socket of " + socket.getRemoteAddress() + "...");
-                socket.close();
+            for (PeerConnection connection : clientSockets.values()) {
+                LOG.info("Closing socket of " + connection.getPeer() + "...");
+                flushBeforeClose(connection);
+                connection.clear();
+                connection.getChannel().close();
             }
         } catch (IOException ex) {
             LOG.error("Error occured while closing socket...");
@@ -273,6 +796,22 @@ public final class TCPCommunicator implements ProtocolBase {
         }
     }
 
+    /**
+     * Function to write what the socket accepts of a queue before it is
+     * closed, without waiting for a connect or a slow peer.
+     *
+     * @param connection the connection being closed
+     */
+    private void flushBeforeClose(final PeerConnection connection) {
+        try {
+            if (connection.hasPending() && connection.finishConnect()) {
+                connection.onWritable();
+            }
+        } catch (IOException ex) {
+            LOG.error("Dropping queued data of " + connection.getPeer() + "...");
+        }
+    }
+
     private void printIpAddr(final String ipAddr, final Integer port) {
         LOG.info("Client: " + ipAddr + ":" + port);
     }
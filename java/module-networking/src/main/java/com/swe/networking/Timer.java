@@ -11,8 +11,9 @@
 package com.swe.networking;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 import com.swe.core.ClientNode;
@@ -20,12 +21,17 @@ import com.swe.core.logging.SweLogger;
 import com.swe.core.logging.SweLoggerFactory;
 
 /**
- * Timer class to monitor client timeouts.
+ * Timer class to monitor client timeouts. Each monitored client has one
+ * timeout on the shared {@link TimingWheel}, due when the client has been
+ * silent for the whole duration. Activity only records the time, the
+ * timeout looks at it when it fires and moves itself to the new deadline,
+ * so busy clients cost nothing per packet. The timeouts run as blocking
+ * tasks of the wheel, the callback may send or resolve addresses.
  */
 public class Timer {
 
     /**
-     * Timer duration for client timeouts in milliseconds.
+     * Logger for this class.
      */
     private static final SweLogger LOG = SweLoggerFactory.getLogger("NETWORKING");
 
@@ -35,19 +41,19 @@ public class Timer {
     private final long timeoutDuration;
 
     /**
-     * List of clients being monitored.
+     * Map to store the last active time for each monitored client.
      */
-    private final List<ClientNode> clients;
+    private final Map<ClientNode, Long> clientTimeouts = new ConcurrentHashMap<>();
 
     /**
-     * Map to store the last active time for each client.
+     * The pending timeout of each monitored client.
      */
-    private final HashMap<ClientNode, Long> clientTimeouts;
+    private final Map<ClientNode, TimingWheel.Timeout> deadlines = new ConcurrentHashMap<>();
 
     /**
-     * Thread to run the timer.
+     * The wheel running the timeouts.
      */
-    private final Thread timerThread;
+    private final TimingWheel wheel;
 
     /**
      * Callback function to handle timed out clients.
@@ -62,15 +68,21 @@ public class Timer {
      */
     public Timer(final long durationMillis,
             final Consumer<ClientNode> timeoutCallback) {
+        this(durationMillis, timeoutCallback, TimingWheel.getTimingWheel());
+    }
+
+    /**
+     * Constructor for Timer class running on a given wheel.
+     *
+     * @param durationMillis the duration for the timeout in milliseconds
+     * @param timeoutCallback the callback function to handle timed out clients
+     * @param timingWheel the wheel running the timeouts
+     */
+    public Timer(final long durationMillis, final Consumer<ClientNode> timeoutCallback,
+            final TimingWheel timingWheel) {
         this.timeoutDuration = durationMillis;
-        this.clients = new ArrayList<>();
-        this.clientTimeouts = new HashMap<>();
         this.onTimeout = timeoutCallback;
-        for (ClientNode client : clients) {
-            clientTimeouts.put(client, System.currentTimeMillis());
-        }
-        this.timerThread = new Thread(this::start);
-        this.timerThread.start();
+        this.wheel = timingWheel;
     }
 
     /**
@@ -79,7 +91,7 @@ public class Timer {
      * @param client the client to update
      */
     public void updateTimeout(final ClientNode client) {
-        clientTimeouts.put(client, System.currentTimeMillis());
+        clientTimeouts.computeIfPresent(client, (key, last) -> System.currentTimeMillis());
     }
 
     /**
@@ -89,8 +101,8 @@ public class Timer {
      */
     public void addClient(final ClientNode client) {
         LOG.info("Adding client to timer monitoring: " + client);
-        clients.add(client);
         clientTimeouts.put(client, System.currentTimeMillis());
+        schedule(client, timeoutDuration);
     }
 
     /**
@@ -99,8 +111,49 @@ public class Timer {
      * @param client the client to remove
      */
     public void removeClient(final ClientNode client) {
-        clients.remove(client);
         clientTimeouts.remove(client);
+        final TimingWheel.Timeout deadline = deadlines.remove(client);
+        if (deadline != null) {
+            deadline.cancel();
+        }
+    }
+
+    /**
+     * Function to set the timeout of a client, replacing the previous one.
+     *
+     * @param client the client
+     * @param delayMillis the delay before the timeout
+     */
+    private void schedule(final ClientNode client, final long delayMillis) {
+        final TimingWheel.Timeout previous = deadlines.put(client,
+                wheel.scheduleBlocking(() -> expire(client), delayMillis));
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * Function run when the timeout of a client is due. Times the client out
+     * if it stayed silent, otherwise waits for the rest of the duration.
+     *
+     * @param client the client
+     */
+    private void expire(final ClientNode client) {
+        final Long last = clientTimeouts.get(client);
+        if (last == null) {
+            return;
+        }
+        final long idle = System.currentTimeMillis() - last;
+        if (idle < timeoutDuration) {
+            schedule(client, timeoutDuration - idle);
+            if (!clientTimeouts.containsKey(client)) {
+                removeClient(client);
+            }
+            return;
+        }
+        deadlines.remove(client);
+        onTimeout.accept(client);
+        removeClient(client);
     }
 
     /**
@@ -109,12 +162,9 @@ public class Timer {
     public void checkTimeouts() {
         final List<ClientNode> timedOutClients = new ArrayList<>();
         final long currentTime = System.currentTimeMillis();
-        synchronized (clients) {
-            // LOG.info("Timer clients " + clients);
-            for (ClientNode c : clients) {
-                if (currentTime - clientTimeouts.get(c) > timeoutDuration) {
-                    timedOutClients.add(c);
-                }
+        for (Map.Entry<ClientNode, Long> entry : clientTimeouts.entrySet()) {
+            if (currentTime - entry.getValue() > timeoutDuration) {
+                timedOutClients.add(entry.getKey());
             }
         }
 
@@ -125,23 +175,20 @@ public class Timer {
     }
 
     /**
-     * Start the timer thread and monitor for timeouts.
+     * Function to get the number of monitored clients.
+     *
+     * @return the client count
      */
-    public void start() {
-        while (true) {
-            checkTimeouts();
-            try {
-                Thread.sleep(timeoutDuration);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        }
+    public int getMonitoredClients() {
+        return clientTimeouts.size();
     }
 
     /**
-     * Close the timer thread.
+     * Stop monitoring every client.
      */
     public void close() {
-        this.timerThread.interrupt();
+        for (ClientNode client : new ArrayList<>(clientTimeouts.keySet())) {
+            removeClient(client);
+        }
     }
 }
@@ -0,0 +1,601 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: TimingWheel.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.swe.core.logging.SweLogger;
+import com.swe.core.logging.SweLoggerFactory;
+
+/**
+ * Hashed timing wheel shared by every timeout of the networking module.
+ * Timeouts are hashed into a ring of buckets by their deadline tick and
+ * carry the number of full turns left, so scheduling and cancelling are
+ * constant time whatever the number of timeouts. A single driver thread
+ * advances the wheel one tick at a time and runs the tasks that are due.
+ * Tasks run on the driver thread and must not block. Tasks that may block,
+ * on the network, a name lookup or a call to the frontend, are scheduled as
+ * blocking and handed by the driver thread to a virtual thread of their
+ * own. A periodic blocking task skips its turn while its last run is still
+ * going.
+ */
+public final class TimingWheel {
+
+    /**
+     * Default duration of a tick in milliseconds.
+     */
+    public static final long DEFAULT_TICK_MILLIS = 10;
+
+    /**
+     * Default number of buckets.
+     */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /**
+     * Most timeouts moved from the pending queue into the wheel per tick,
+     * so a burst of schedules cannot stall the expiry of a tick.
+     */
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    /**
+     * Logger for this class.
+     */
+    private static final SweLogger LOG = SweLoggerFactory.getLogger("NETWORKING");
+
+    /**
+     * The shared wheel.
+     */
+    private static TimingWheel timingWheel = null;
+
+    /**
+     * The buckets of the wheel.
+     */
+    private final Bucket[] wheel;
+
+    /**
+     * Mask to map a tick to its bucket.
+     */
+    private final int mask;
+
+    /**
+     * Duration of a tick in nanoseconds.
+     */
+    private final long tickNanos;
+
+    /**
+     * The time the wheel started, deadlines are relative to it.
+     */
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * Timeouts scheduled but not yet placed in a bucket.
+     */
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Timeouts cancelled but not yet removed from their bucket.
+     */
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of timeouts scheduled and not yet expired or cancelled.
+     */
+    private final AtomicLong pendingTimeouts = new AtomicLong();
+
+    /**
+     * Number of tasks run.
+     */
+    private final AtomicLong expiredTimeouts = new AtomicLong();
+
+    /**
+     * The driver thread.
+     */
+    private final Thread driver;
+
+    /**
+     * Runs the blocking tasks off the driver thread.
+     */
+    private final ExecutorService blockingExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("Timing-Wheel-Task-", 0).factory());
+
+    /**
+     * The tick being processed, only used by the driver thread.
+     */
+    private long tick;
+
+    /**
+     * Whether the wheel is running.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Creates a wheel and starts its driver thread.
+     *
+     * @param tickMillis the duration of a tick in milliseconds
+     * @param wheelSize the number of buckets, rounded up to a power of two
+     */
+    public TimingWheel(final long tickMillis, final int wheelSize) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        }
+        final int size = Integer.highestOneBit(wheelSize - 1) << 1;
+        this.wheel = new Bucket[Math.max(1, size)];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = wheel.length - 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.driver = new Thread(this::run, "Timing-Wheel-Thread");
+        this.driver.setDaemon(true);
+        this.driver.start();
+    }
+
+    /**
+     * Function to get the wheel shared by the networking module.
+     *
+     * @return the shared wheel
+     */
+    public static synchronized TimingWheel getTimingWheel() {
+        if (timingWheel == null) {
+            timingWheel = new TimingWheel(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+        }
+        return timingWheel;
+    }
+
+    /**
+     * Function to close the wheel shared by the networking module. The next
+     * call to {@link #getTimingWheel()} starts a new one.
+     */
+    public static synchronized void closeTimingWheel() {
+        if (timingWheel != null) {
+            timingWheel.close();
+            timingWheel = null;
+        }
+    }
+
+    /**
+     * Function to run a task once after a delay.
+     *
+     * @param task the task, run on the driver thread
+     * @param delayMillis the delay in milliseconds
+     * @return the handle to cancel the task
+     */
+    public Timeout schedule(final Runnable task, final long delayMillis) {
+        return add(new Timeout(this, task, 0, false), delayMillis);
+    }
+
+    /**
+     * Function to run a task that may block once after a delay.
+     *
+     * @param task the task, run off the driver thread
+     * @param delayMillis the delay in milliseconds
+     * @return the handle to cancel the task
+     */
+    public Timeout scheduleBlocking(final Runnable task, final long delayMillis) {
+        return add(new Timeout(this, task, 0, true), delayMillis);
+    }
+
+    /**
+     * Function to run a task repeatedly until it is cancelled.
+     *
+     * @param task the task, run on the driver thread
+     * @param periodMillis the delay before the first run and between runs
+     * @return the handle to cancel the task
+     */
+    public Timeout scheduleAtFixedRate(final Runnable task, final long periodMillis) {
+        return addPeriodic(task, periodMillis, false);
+    }
+
+    /**
+     * Function to run a task that may block repeatedly until it is
+     * cancelled. A turn is skipped while the last run is still going.
+     *
+     * @param task the task, run off the driver thread
+     * @param periodMillis the delay before the first run and between runs
+     * @return the handle to cancel the task
+     */
+    public Timeout scheduleBlockingAtFixedRate(final Runnable task, final long periodMillis) {
+        return addPeriodic(task, periodMillis, true);
+    }
+
+    /**
+     * Function to queue a periodic timeout for the driver thread.
+     *
+     * @param task the task
+     * @param periodMillis the delay before the first run and between runs
+     * @param blocking whether the task runs off the driver thread
+     * @return the timeout
+     */
+    private Timeout addPeriodic(final Runnable task, final long periodMillis, final boolean blocking) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("Period must be positive");
+        }
+        return add(new Timeout(this, task, TimeUnit.MILLISECONDS.toNanos(periodMillis), blocking), periodMillis);
+    }
+
+    /**
+     * Function to queue a timeout for the driver thread.
+     *
+     * @param timeout the timeout
+     * @param delayMillis the delay in milliseconds
+     * @return the timeout
+     */
+    private Timeout add(final Timeout timeout, final long delayMillis) {
+        timeout.deadline = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        pendingTimeouts.incrementAndGet();
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Function to get the number of timeouts waiting to expire.
+     *
+     * @return the pending timeout count
+     */
+    public long getPendingTimeouts() {
+        return pendingTimeouts.get();
+    }
+
+    /**
+     * Function to get the number of tasks run.
+     *
+     * @return the expired timeout count
+     */
+    public long getExpiredTimeouts() {
+        return expiredTimeouts.get();
+    }
+
+    /**
+     * Function to stop the driver thread. Pending tasks are not run and
+     * blocking tasks still running are interrupted.
+     */
+    public void close() {
+        running = false;
+        driver.interrupt();
+        blockingExecutor.shutdownNow();
+    }
+
+    /**
+     * Function run by the driver thread.
+     */
+    private void run() {
+        while (running) {
+            final long deadline = waitForNextTick();
+            if (!running) {
+                break;
+            }
+            removeCancelled();
+            transferPending();
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+    }
+
+    /**
+     * Function to sleep until the end of the current tick.
+     *
+     * @return the time of the end of the tick relative to the start
+     */
+    private long waitForNextTick() {
+        final long deadline = tickNanos * (tick + 1);
+        long left = deadline - (System.nanoTime() - startNanos);
+        while (left > 0 && running) {
+            LockSupport.parkNanos(this, left);
+            left = deadline - (System.nanoTime() - startNanos);
+        }
+        return deadline;
+    }
+
+    /**
+     * Function to unlink the cancelled timeouts from their buckets.
+     */
+    private void removeCancelled() {
+        Timeout timeout = cancelled.poll();
+        while (timeout != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+            timeout = cancelled.poll();
+        }
+    }
+
+    /**
+     * Function to place the scheduled timeouts in their buckets.
+     */
+    private void transferPending() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            final Timeout timeout = pending.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state.get() != Timeout.WAITING) {
+                continue;
+            }
+            final long due = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (due - tick) / wheel.length;
+            wheel[(int) (Math.max(due, tick) & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * Function to run an expired timeout and reschedule it if periodic.
+     *
+     * @param timeout the timeout
+     */
+    private void fire(final Timeout timeout) {
+        final boolean periodic = timeout.period > 0;
+        if (!periodic && !timeout.state.compareAndSet(Timeout.WAITING, Timeout.EXPIRED)) {
+            return;
+        }
+        if (!periodic) {
+            pendingTimeouts.decrementAndGet();
+        }
+        expiredTimeouts.incrementAndGet();
+        if (timeout.blocking) {
+            runBlocking(timeout);
+        } else {
+            runTask(timeout);
+        }
+        if (periodic && timeout.state.get() == Timeout.WAITING) {
+            timeout.deadline += timeout.period;
+            pending.add(timeout);
+        }
+    }
+
+    /**
+     * Function to run a task, logging its failure.
+     *
+     * @param timeout the timeout of the task
+     */
+    private static void runTask(final Timeout timeout) {
+        try {
+            timeout.task.run();
+        } catch (RuntimeException ex) {
+            LOG.error("Timer task failed", ex);
+        }
+    }
+
+    /**
+     * Function to hand a blocking task to a thread of its own, unless its
+     * last run is still going.
+     *
+     * @param timeout the timeout of the task
+     */
+    private void runBlocking(final Timeout timeout) {
+        if (!timeout.inFlight.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            blockingExecutor.execute(() -> {
+                try {
+                    runTask(timeout);
+                } finally {
+                    timeout.inFlight.set(false);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            timeout.inFlight.set(false);
+        }
+    }
+
+    /**
+     * Handle of a scheduled task.
+     */
+    public static final class Timeout {
+
+        /**
+         * State of a timeout waiting to expire.
+         */
+        private static final int WAITING = 0;
+
+        /**
+         * State of a cancelled timeout.
+         */
+        private static final int CANCELLED = 1;
+
+        /**
+         * State of an expired timeout.
+         */
+        private static final int EXPIRED = 2;
+
+        /**
+         * The wheel holding the timeout.
+         */
+        private final TimingWheel owner;
+
+        /**
+         * The task to run.
+         */
+        private final Runnable task;
+
+        /**
+         * The period in nanoseconds, 0 for a single run.
+         */
+        private final long period;
+
+        /**
+         * Whether the task runs off the driver thread.
+         */
+        private final boolean blocking;
+
+        /**
+         * Whether a run of the blocking task is still going.
+         */
+        private final AtomicBoolean inFlight = new AtomicBoolean();
+
+        /**
+         * The state of the timeout.
+         */
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        /**
+         * The deadline relative to the start of the wheel.
+         */
+        private long deadline;
+
+        /**
+         * Turns of the wheel left before the timeout is due.
+         */
+        private long remainingRounds;
+
+        /**
+         * The bucket holding the timeout, null while pending.
+         */
+        private Bucket bucket;
+
+        /**
+         * Previous timeout of the bucket.
+         */
+        private Timeout prev;
+
+        /**
+         * Next timeout of the bucket.
+         */
+        private Timeout next;
+
+        /**
+         * Creates a timeout.
+         *
+         * @param wheel the wheel holding the timeout
+         * @param runnable the task
+         * @param periodNanos the period, 0 for a single run
+         * @param blockingTask whether the task runs off the driver thread
+         */
+        Timeout(final TimingWheel wheel, final Runnable runnable, final long periodNanos,
+                final boolean blockingTask) {
+            this.owner = wheel;
+            this.task = runnable;
+            this.period = periodNanos;
+            this.blocking = blockingTask;
+        }
+
+        /**
+         * Function to cancel the task. A periodic task is not run again.
+         *
+         * @return true if the task was waiting and is now cancelled
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(WAITING, CANCELLED)) {
+                return false;
+            }
+            owner.pendingTimeouts.decrementAndGet();
+            owner.cancelled.add(this);
+            return true;
+        }
+
+        /**
+         * Function to check whether the task was cancelled.
+         *
+         * @return true if cancelled
+         */
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        /**
+         * Function to check whether a single run task has run.
+         *
+         * @return true if expired
+         */
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+
+    /**
+     * Doubly linked list of the timeouts hashed to one tick of the wheel.
+     * Only used by the driver thread.
+     */
+    private final class Bucket {
+
+        /**
+         * First timeout.
+         */
+        private Timeout head;
+
+        /**
+         * Last timeout.
+         */
+        private Timeout tail;
+
+        /**
+         * Function to append a timeout.
+         *
+         * @param timeout the timeout
+         */
+        void add(final Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        /**
+         * Function to unlink a timeout.
+         *
+         * @param timeout the timeout
+         */
+        void remove(final Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        /**
+         * Function to run the timeouts of this bucket that are due and age
+         * the others by one turn.
+         *
+         * @param deadline the end of the current tick
+         */
+        void expire(final long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                final Timeout next = timeout.next;
+                if (timeout.state.get() != Timeout.WAITING) {
+                    remove(timeout);
+                } else if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    remove(timeout);
+                    fire(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+}
@@ -11,8 +11,14 @@
 package com.swe.networking;
 
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.swe.core.ClientNode;
 import com.swe.core.logging.SweLogger;
@@ -20,7 +26,11 @@ import com.swe.core.logging.SweLoggerFactory;
 
 /**
  * The main architecture of the networking module. Implements the cluster
- * networks
+ * networks. The network is kept as an immutable snapshot with the cluster
+ * index of every client, replaced as a whole on every change, so lookups on
+ * the send path neither lock nor scan. Each network carries the epoch the
+ * main server gave it. Changes from the main server are applied in epoch
+ * order, and a missing one is recovered with a full snapshot.
  */
 public final class Topology implements AbstractTopology {
 
@@ -35,47 +45,48 @@ public final class Topology implements AbstractTopology {
     private static final String MODULENAME = "[TOPOLOGY]";
 
     /**
-     * The List of all cluster clients.
-     *
+     * The policy choosing the cluster of a joining client.
      */
-    private List<List<ClientNode>> clusters;
+    private ClusterPolicy clusterPolicy = ClusterPolicy.fromSystemProperty();
+
     /**
-     * The List of all servers of all clusters.
+     * The link metrics reported for each device.
      */
-    private List<ClientNode> clusterServers;
+    private final Map<ClientNode, LinkMetrics> linkMetrics = new ConcurrentHashMap<>();
+
     /**
-     * The total number of clusters.
+     * Singleton design pattern to prevent repeating class instantiations.
      *
      */
-    private int numClusters = 0;
+    private static Topology topology = null;
+
     /**
-     * The total number of clients.
-     *
+     * The variable to store the user of the device.
      */
-    private int numClients;
+    private P2PUser user = null;
+
     /**
-     * The maximum size of a cluster.
+     * The current immutable view of the network. Writers build a new
+     * snapshot under the lock and publish it, readers never lock.
      */
-    private final int singleClusterSize = 10;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
     /**
-     * The variable to iterate through the clusters.
+     * Most changes buffered while waiting for a missing one.
      */
-    private int clusterIndex = 0;
+    private static final int MAX_PENDING_DELTAS = 1024;
 
     /**
-     * Singleton design pattern to prevent repeating class instantiations.
-     *
+     * Changes that arrived ahead of their epoch, keyed by epoch.
      */
-    private static Topology topology = null;
+    private final TreeMap<Long, PendingDelta> pendingDeltas = new TreeMap<>();
 
     /**
-     * The variable to store the user of the device.
+     * Whether this device assigns the topology epochs.
      */
-    private P2PUser user = null;
+    private boolean authority = false;
 
     private Topology() {
-        clusters = new ArrayList<>();
-        clusterServers = new ArrayList<>();
     }
 
     /**
@@ -100,18 +111,12 @@ public final class Topology implements AbstractTopology {
      */
     @Override
     public ClientNode getServer(final ClientNode dest) {
-        ClientNode node = null;
-        for (int i = 0; i < numClusters; i++) {
-            final List<ClientNode> clients = clusters.get(i);
-            for (int j = 0; j < clients.size(); j++) {
-                final ClientNode client = clients.get(j);
-                if (client.equals(dest)) {
-                    node = clusterServers.get(i);
-                    return node;
-                }
-            }
+        final Snapshot current = snapshot;
+        final Integer idx = current.clusterOf.get(dest);
+        if (idx == null || idx >= current.servers.size()) {
+            return null;
         }
-        return node;
+        return current.servers.get(idx);
     }
 
     /**
@@ -127,12 +132,15 @@ public final class Topology implements AbstractTopology {
         if (deviceAddress.equals(mainServerAddress)) {
             LOG.info("Device " + deviceAddress + " is considered as the main Server");
             user = new MainServer(deviceAddress, mainServerAddress);
-            final List<ClientNode> cluster = new ArrayList<>();
-            cluster.add(deviceAddress);
-            clusters.add(cluster);
-            clusterServers.add(deviceAddress);
-            numClusters = 1;
-            numClients = 1;
+            synchronized (this) {
+                final List<List<ClientNode>> clusters = copyClusters(snapshot);
+                final List<ClientNode> servers = new ArrayList<>(snapshot.servers);
+                final List<ClientNode> cluster = new ArrayList<>();
+                cluster.add(deviceAddress);
+                clusters.add(cluster);
+                servers.add(deviceAddress);
+                snapshot = new Snapshot(clusters, servers, nextEpoch());
+            }
         } else {
             try {
                 LOG.info("Device " + deviceAddress + " is considered as a P2P Cluster node");
@@ -151,16 +159,10 @@ public final class Topology implements AbstractTopology {
      * @return structure - The Devices connected to the current network
      */
     public NetworkStructure getNetwork() {
-        final List<List<ClientNode>> clients = new ArrayList<>();
-        final List<ClientNode> servers = new ArrayList<>();
-        final NetworkStructure structure = new NetworkStructure(clients, servers);
-        LOG.info("Clusters: " + clusters);
-        LOG.info("Cluster servers: " + clusterServers);
-        for (int i = 0; i < clusters.size(); i++) {
-            structure.clusters().add(clusters.get(i));
-            structure.servers().add(clusterServers.get(i));
-        }
-        return structure;
+        final Snapshot current = snapshot;
+        LOG.info("Clusters: " + current.clusters);
+        LOG.info("Cluster servers: " + current.servers);
+        return new NetworkStructure(copyClusters(current), new ArrayList<>(current.servers));
     }
 
     /**
@@ -168,8 +170,12 @@ public final class Topology implements AbstractTopology {
      */
     public void closeTopology() {
         user.close();
-        clusters = new ArrayList<>();
-        clusterServers = new ArrayList<>();
+        synchronized (this) {
+            snapshot = Snapshot.EMPTY;
+            pendingDeltas.clear();
+            authority = false;
+        }
+        linkMetrics.clear();
         LOG.info("Closing topology...");
     }
 
@@ -180,35 +186,80 @@ public final class Topology implements AbstractTopology {
      *
      * @return the index of cluster it is added to
      */
-    public int addClient(final ClientNode clientAddress) {
-        numClients += 1;
-
-        final List<ClientNode> lastCluster = clusters.get(clusters.size() - 1);
-        if (lastCluster.size() < singleClusterSize) {
-            lastCluster.add(clientAddress);
-            LOG.info("Added to cluster " + (numClusters - 1) + " ...");
-            return numClusters - 1;
+    public synchronized int addClient(final ClientNode clientAddress) {
+        final List<List<ClientNode>> clusters = copyClusters(snapshot);
+        final List<ClientNode> servers = new ArrayList<>(snapshot.servers);
+        int index = clusterPolicy.chooseCluster(snapshot.clusters, snapshot.servers, clientAddress,
+                linkMetrics);
+        if (index >= 0 && index < clusters.size()) {
+            clusters.get(index).add(clientAddress);
+            LOG.info("Added to cluster " + index + " ...");
         } else {
+            index = clusters.size();
             final List<ClientNode> cluster = new ArrayList<>();
             cluster.add(clientAddress);
             clusters.add(cluster);
-            clusterServers.add(clientAddress);
-            numClusters++;
+            servers.add(clientAddress);
             LOG.info("Adding to a new cluster...");
-            return numClusters - 1;
         }
+        snapshot = new Snapshot(clusters, servers, nextEpoch());
+        return index;
+    }
+
+    /**
+     * Function to plan the moves evening out the load of the cluster
+     * servers. The moves are not applied.
+     *
+     * @param maxMoves the most moves to plan
+     * @return the members to move with their new cluster index
+     */
+    public synchronized List<ClientNetworkRecord> planRebalance(final int maxMoves) {
+        return clusterPolicy.rebalance(snapshot.clusters, snapshot.servers, linkMetrics, maxMoves);
+    }
+
+    /**
+     * Function to set the policy choosing the cluster of joining clients.
+     *
+     * @param policy the policy
+     */
+    public synchronized void setClusterPolicy(final ClusterPolicy policy) {
+        this.clusterPolicy = policy;
     }
 
     /**
-     * Function to add a new client to the network.
+     * Function to record the measured link of a device.
+     *
+     * @param client the device
+     * @param metrics the measured link
+     */
+    public void reportLinkMetrics(final ClientNode client, final LinkMetrics metrics) {
+        linkMetrics.put(client, metrics);
+    }
+
+    /**
+     * Function to get the measured link of a device.
+     *
+     * @param client the device
+     * @return the measured link, null if never reported
+     */
+    public LinkMetrics getLinkMetrics(final ClientNode client) {
+        return linkMetrics.get(client);
+    }
+
+    /**
+     * Function to add a new client to the network. A client already in
+     * another cluster is moved.
      *
      * @param client the details of the new client
      */
-    public void updateNetwork(final ClientNetworkRecord client) {
-        final int idx = client.clusterIndex();
-        final ClientNode newClient = client.client();
-        clusters.get(idx).add(newClient);
-        LOG.info("Updated network by adding client " + newClient + " to cluster " + idx);
+    public synchronized void updateNetwork(final ClientNetworkRecord client) {
+        final List<List<ClientNode>> clusters = copyClusters(snapshot);
+        final List<ClientNode> servers = new ArrayList<>(snapshot.servers);
+        if (addTo(clusters, servers, client)) {
+            snapshot = new Snapshot(clusters, servers, nextEpoch());
+            LOG.info("Updated network by adding client " + client.client() + " to cluster "
+                    + client.clusterIndex());
+        }
     }
 
     /**
@@ -216,44 +267,246 @@ public final class Topology implements AbstractTopology {
      *
      * @param client the details of the client
      */
-    public void removeClient(final ClientNetworkRecord client) {
-        final int idx = client.clusterIndex();
-        final ClientNode removeClient = client.client();
-        clusters.get(idx).remove(removeClient);
-        numClients -= 1;
-        if (clusterServers.contains(removeClient)) {
-            if (!clusters.get(idx).isEmpty()) {
-                final ClientNode newServer = clusters.get(idx).get(0);
-                clusterServers.set(idx, newServer);
-                LOG.info("A new server has been decided\n");
+    public synchronized void removeClient(final ClientNetworkRecord client) {
+        final List<List<ClientNode>> clusters = copyClusters(snapshot);
+        final List<ClientNode> servers = new ArrayList<>(snapshot.servers);
+        if (removeFrom(clusters, servers, client)) {
+            snapshot = new Snapshot(clusters, servers, nextEpoch());
+        }
+    }
+
+    /**
+     * Function to replace the current network with a new one. Any buffered
+     * change is dropped and, unless this device is the authority, the
+     * network becomes unversioned until the next snapshot.
+     *
+     * @param network the new network structure
+     */
+    public synchronized void replaceNetwork(final NetworkStructure network) {
+        pendingDeltas.clear();
+        if (authority) {
+            publish(network, nextEpoch());
+        } else {
+            publish(network, NetworkSerializer.UNVERSIONED);
+        }
+    }
+
+    /**
+     * Function to replace the current network with a snapshot of the main
+     * server. Snapshots older than the current network are ignored, and the
+     * buffered changes that follow the snapshot are applied on top of it.
+     *
+     * @param network the new network structure
+     * @param epoch the epoch of the snapshot
+     */
+    public synchronized void replaceNetwork(final NetworkStructure network, final long epoch) {
+        if (epoch == NetworkSerializer.UNVERSIONED) {
+            replaceNetwork(network);
+            return;
+        }
+        if (epoch < snapshot.epoch) {
+            LOG.info("Ignoring network snapshot " + epoch + " older than " + snapshot.epoch);
+            return;
+        }
+        publish(network, epoch);
+        pendingDeltas.headMap(epoch, true).clear();
+        drainPending();
+    }
+
+    /**
+     * Function to apply an ADD or REMOVE change sent by the main server.
+     * Changes are applied in epoch order: stale ones are dropped and early
+     * ones wait until the missing changes arrive. Unversioned changes are
+     * applied at once.
+     *
+     * @param kind {@link NetworkConnectionType#ADD} or
+     *        {@link NetworkConnectionType#REMOVE}
+     * @param client the changed client
+     * @param epoch the epoch of the change
+     * @return true if a change is missing and a full snapshot should be
+     *         requested from the main server
+     */
+    public synchronized boolean applyDelta(final NetworkConnectionType kind, final ClientNetworkRecord client,
+            final long epoch) {
+        if (epoch == NetworkSerializer.UNVERSIONED) {
+            apply(kind, client, snapshot.epoch);
+            return false;
+        }
+        final long current = snapshot.epoch;
+        if (epoch <= current) {
+            return false;
+        }
+        if (epoch == current + 1) {
+            apply(kind, client, epoch);
+            drainPending();
+            return false;
+        }
+        final boolean gapStarted = pendingDeltas.isEmpty();
+        pendingDeltas.put(epoch, new PendingDelta(kind, client));
+        if (pendingDeltas.size() > MAX_PENDING_DELTAS) {
+            pendingDeltas.clear();
+            return true;
+        }
+        LOG.info("Topology change " + epoch + " arrived before " + (current + 1));
+        return gapStarted && current != NetworkSerializer.UNVERSIONED;
+    }
+
+    /**
+     * Function to get the epoch of the current network.
+     *
+     * @return the epoch
+     */
+    public long getEpoch() {
+        return snapshot.epoch;
+    }
+
+    /**
+     * Function to make this device the source of topology epochs. Every
+     * change made on the authority advances the epoch by one.
+     *
+     * @param isAuthority whether this device is the main server
+     */
+    public synchronized void setAuthority(final boolean isAuthority) {
+        this.authority = isAuthority;
+    }
+
+    /**
+     * Function to get the epoch of the next local change.
+     *
+     * @return the epoch
+     */
+    private long nextEpoch() {
+        if (authority) {
+            return snapshot.epoch + 1;
+        }
+        return snapshot.epoch;
+    }
+
+    /**
+     * Function to apply one change and publish it with the given epoch.
+     *
+     * @param kind the kind of change
+     * @param client the changed client
+     * @param epoch the epoch of the new network
+     */
+    private void apply(final NetworkConnectionType kind, final ClientNetworkRecord client, final long epoch) {
+        final List<List<ClientNode>> clusters = copyClusters(snapshot);
+        final List<ClientNode> servers = new ArrayList<>(snapshot.servers);
+        if (kind == NetworkConnectionType.ADD) {
+            addTo(clusters, servers, client);
+        } else if (kind == NetworkConnectionType.REMOVE) {
+            removeFrom(clusters, servers, client);
+        }
+        snapshot = new Snapshot(clusters, servers, epoch);
+    }
+
+    /**
+     * Function to apply the buffered changes that directly follow the
+     * current epoch.
+     */
+    private void drainPending() {
+        while (!pendingDeltas.isEmpty()) {
+            final long first = pendingDeltas.firstKey();
+            if (first <= snapshot.epoch) {
+                pendingDeltas.pollFirstEntry();
+            } else if (first == snapshot.epoch + 1) {
+                final PendingDelta delta = pendingDeltas.pollFirstEntry().getValue();
+                apply(delta.kind(), delta.client(), first);
+            } else {
                 return;
             }
-            clusters.remove(idx);
-            clusterServers.remove(removeClient);
-            LOG.info("Removed " + removeClient + "from the server list...");
-            // numClusters -= 1;
         }
     }
 
     /**
-     * Function to replace the current network with a new one.
+     * Function to publish a copy of a network structure.
      *
-     * @param network the new network structure
+     * @param network the network structure
+     * @param epoch the epoch of the network
      */
-    public void replaceNetwork(final NetworkStructure network) {
-        clusters.clear();
-        clusterServers.clear();
+    private void publish(final NetworkStructure network, final long epoch) {
+        final List<List<ClientNode>> clusters = new ArrayList<>();
+        final List<ClientNode> servers = new ArrayList<>();
         for (int i = 0; i < network.clusters().size(); i++) {
-            clusters.add(network.clusters().get(i));
-            clusterServers.add(network.servers().get(i));
-        }
-        numClusters = network.clusters().size();
-        numClients = 0;
-        for (List<ClientNode> cluster : clusters) {
-            numClients += cluster.size();
+            clusters.add(new ArrayList<>(network.clusters().get(i)));
+            servers.add(network.servers().get(i));
         }
+        final Snapshot replaced = new Snapshot(clusters, servers, epoch);
+        snapshot = replaced;
         LOG.info("Replaced network structure. New number of clusters: "
-                + numClusters + ", New number of clients: " + numClients);
+                + replaced.clusters.size() + ", New number of clients: " + replaced.allClients.size());
+    }
+
+    /**
+     * Function to add a client to a cluster, opening the cluster when it is
+     * the next one and moving the client out of any other cluster.
+     *
+     * @param clusters the clusters to change
+     * @param servers the servers to change
+     * @param client the client and its cluster
+     * @return true if the network changed
+     */
+    private static boolean addTo(final List<List<ClientNode>> clusters, final List<ClientNode> servers,
+            final ClientNetworkRecord client) {
+        int idx = client.clusterIndex();
+        final ClientNode newClient = client.client();
+        if (idx < 0 || idx > clusters.size()) {
+            LOG.error("Cannot add client " + newClient + " to unknown cluster " + idx);
+            return false;
+        }
+        if (idx < clusters.size() && clusters.get(idx).contains(newClient)) {
+            return false;
+        }
+        for (int from = 0; from < clusters.size(); from++) {
+            if (from != idx && clusters.get(from).contains(newClient)) {
+                final int before = clusters.size();
+                removeFrom(clusters, servers, new ClientNetworkRecord(newClient, from));
+                if (clusters.size() < before && from < idx) {
+                    idx--;
+                }
+                LOG.info("Moving client " + newClient + " from cluster " + from);
+                break;
+            }
+        }
+        if (idx == clusters.size()) {
+            clusters.add(new ArrayList<>());
+            servers.add(newClient);
+        }
+        clusters.get(idx).add(newClient);
+        return true;
+    }
+
+    /**
+     * Function to remove a client from its cluster, promoting the next
+     * member when it was the server and dropping the cluster when empty.
+     *
+     * @param clusters the clusters to change
+     * @param servers the servers to change
+     * @param client the client and its cluster
+     * @return true if the network changed
+     */
+    private static boolean removeFrom(final List<List<ClientNode>> clusters, final List<ClientNode> servers,
+            final ClientNetworkRecord client) {
+        final int idx = client.clusterIndex();
+        final ClientNode removeClient = client.client();
+        if (idx < 0 || idx >= clusters.size()) {
+            LOG.error("Cannot remove client " + removeClient + " from unknown cluster " + idx);
+            return false;
+        }
+        final boolean removed = clusters.get(idx).remove(removeClient);
+        if (servers.contains(removeClient)) {
+            if (!clusters.get(idx).isEmpty()) {
+                final ClientNode newServer = clusters.get(idx).get(0);
+                servers.set(idx, newServer);
+                LOG.info("A new server has been decided\n");
+            } else {
+                clusters.remove(idx);
+                servers.remove(removeClient);
+                LOG.info("Removed " + removeClient + "from the server list...");
+            }
+            return true;
+        }
+        return removed;
     }
 
     /**
@@ -263,12 +516,11 @@ public final class Topology implements AbstractTopology {
      * @return the cluster index of the client
      */
     public int getClusterIndex(final ClientNode client) {
-        for (int i = 0; i < clusters.size(); i++) {
-            if (clusters.get(i).contains(client)) {
-                return i;
-            }
+        final Integer idx = snapshot.clusterOf.get(client);
+        if (idx == null) {
+            return -1;
         }
-        return -1;
+        return idx;
     }
 
     /**
@@ -278,10 +530,11 @@ public final class Topology implements AbstractTopology {
      * @return list of all clients in the cluster
      */
     public List<ClientNode> getClients(final int index) {
-        if (index >= clusters.size() || index < 0) {
+        final Snapshot current = snapshot;
+        if (index >= current.clusters.size() || index < 0) {
             return null;
         }
-        return clusters.get(index);
+        return current.clusters.get(index);
     }
 
     /**
@@ -290,7 +543,7 @@ public final class Topology implements AbstractTopology {
      * @return list of all cluster servers.
      */
     public List<ClientNode> getAllClusterServers() {
-        return clusterServers;
+        return snapshot.servers;
     }
 
     /**
@@ -299,13 +552,7 @@ public final class Topology implements AbstractTopology {
      * @return all the clients
      */
     public List<ClientNode> getAllClients() {
-        final List<ClientNode> clients = new ArrayList<>();
-        for (List<ClientNode> cluster : clusters) {
-            for (ClientNode client : cluster) {
-                clients.add(client);
-            }
-        }
-        return clients;
+        return new ArrayList<>(snapshot.allClients);
     }
 
     /**
@@ -316,8 +563,9 @@ public final class Topology implements AbstractTopology {
      * @return the type number
      */
     public int getNetworkType(final ClientNode source, final ClientNode dest) {
-        final int srcClusterIdx = getClusterIndex(source);
-        final int destClusterIdx = getClusterIndex(dest);
+        final Snapshot current = snapshot;
+        final int srcClusterIdx = current.indexOf(source);
+        final int destClusterIdx = current.indexOf(dest);
         if (srcClusterIdx == destClusterIdx) {
             return NetworkType.USE.ordinal();
         } else {
@@ -333,15 +581,16 @@ public final class Topology implements AbstractTopology {
      * @return the destination to send to
      */
     public ClientNode getDestination(final ClientNode source, final ClientNode dest) {
-        final int srcClusterIdx = getClusterIndex(source);
-        final int destClusterIdx = getClusterIndex(dest);
-        LOG.info("Netowkr " + topology.getNetwork());
+        final Snapshot current = snapshot;
+        final int srcClusterIdx = current.indexOf(source);
+        final int destClusterIdx = current.indexOf(dest);
         if (srcClusterIdx == destClusterIdx) {
             return dest;
-        } else {
-            final ClientNode destServer = getServer(dest);
-            return destServer;
         }
+        if (destClusterIdx < 0 || destClusterIdx >= current.servers.size()) {
+            return null;
+        }
+        return current.servers.get(destClusterIdx);
     }
 
     /**
@@ -358,6 +607,34 @@ public final class Topology implements AbstractTopology {
         }
     }
 
+    /**
+     * Function to forward a broadcast of this device along the multicast
+     * tree through the underlying user.
+     *
+     * @param packet the relay packet
+     */
+    public void relayBroadcast(final byte[] packet) {
+        try {
+            user.relayBroadcast(packet);
+        } catch (Exception e) {
+            LOG.info("Exception occured: " + e.getMessage() + " Closing topology...");
+        }
+    }
+
+    /**
+     * Function to send a packet made of several buffers to underlying user.
+     *
+     * @param parts the buffers of the packet in order
+     * @param dest the destination to send
+     */
+    public void sendPacket(final ByteBuffer[] parts, final ClientNode dest) {
+        try {
+            user.send(parts, dest);
+        } catch (Exception e) {
+            LOG.info("Exception occured: " + e.getMessage() + " Closing topology...");
+        }
+    }
+
     /**
      * Function to check if a client is present in the topology (any cluster).
      *
@@ -365,11 +642,107 @@ public final class Topology implements AbstractTopology {
      * @return true if client present, false otherwise
      */
     boolean checkClientPresent(final ClientNode client) {
-        for (List<ClientNode> cluster : clusters) {
-            if (cluster.contains(client)) {
-                return true;
+        return snapshot.clusterOf.containsKey(client);
+    }
+
+    /**
+     * Function to copy the clusters of a snapshot into mutable lists.
+     *
+     * @param current the snapshot
+     * @return the mutable copy
+     */
+    private static List<List<ClientNode>> copyClusters(final Snapshot current) {
+        final List<List<ClientNode>> clusters = new ArrayList<>(current.clusters.size());
+        for (List<ClientNode> cluster : current.clusters) {
+            clusters.add(new ArrayList<>(cluster));
+        }
+        return clusters;
+    }
+
+    /**
+     * A change waiting for the changes before it.
+     *
+     * @param kind the kind of change
+     * @param client the changed client
+     */
+    private record PendingDelta(NetworkConnectionType kind, ClientNetworkRecord client) {
+    }
+
+    /**
+     * Immutable clusters and servers with the cluster index of every client.
+     */
+    private static final class Snapshot {
+
+        /**
+         * The empty network.
+         */
+        private static final Snapshot EMPTY = new Snapshot(new ArrayList<>(), new ArrayList<>(),
+                NetworkSerializer.UNVERSIONED);
+
+        /**
+         * The clients of every cluster.
+         */
+        private final List<List<ClientNode>> clusters;
+
+        /**
+         * The server of every cluster.
+         */
+        private final List<ClientNode> servers;
+
+        /**
+         * Every client in cluster order.
+         */
+        private final List<ClientNode> allClients;
+
+        /**
+         * The cluster index of every client.
+         */
+        private final Map<ClientNode, Integer> clusterOf;
+
+        /**
+         * The epoch of the network.
+         */
+        private final long epoch;
+
+        /**
+         * Creates a snapshot, taking ownership of the given lists.
+         *
+         * @param clusterList the clients of every cluster
+         * @param serverList the server of every cluster
+         * @param networkEpoch the epoch of the network
+         */
+        Snapshot(final List<List<ClientNode>> clusterList, final List<ClientNode> serverList,
+                final long networkEpoch) {
+            final List<List<ClientNode>> frozen = new ArrayList<>(clusterList.size());
+            final List<ClientNode> everyone = new ArrayList<>();
+            final Map<ClientNode, Integer> index = new HashMap<>();
+            for (int i = 0; i < clusterList.size(); i++) {
+                final List<ClientNode> cluster = clusterList.get(i);
+                frozen.add(Collections.unmodifiableList(cluster));
+                everyone.addAll(cluster);
+                for (ClientNode client : cluster) {
+                    index.putIfAbsent(client, i);
+                }
+            }
+            this.clusters = Collections.unmodifiableList(frozen);
+            this.servers = Collections.unmodifiableList(serverList);
+            this.allClients = Collections.unmodifiableList(everyone);
+            this.clusterOf = index;
+            this.epoch = networkEpoch;
+        }
+
+        /**
+         * Function to get the cluster index of a client.
+         *
+         * @param client the client
+         * @return the index or -1 when absent
+         */
+        int indexOf(final ClientNode client) {
+            final Integer idx = clusterOf.get(client);
+            if (idx == null) {
+                return -1;
             }
+            return idx;
         }
-        return false;
     }
 }
@@ -0,0 +1,731 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: UDPCommunicator.java
+ *  Owner: Loganath
+ *  Roll Number : 112201016
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+import com.swe.core.ClientNode;
+import com.swe.core.logging.SweLogger;
+import com.swe.core.logging.SweLoggerFactory;
+
+/**
+ * Communicator class module for UDP, meant for media that prefers a late
+ * frame dropped over every later frame held back by a lost segment.
+ * Each datagram carries one packet of the usual format behind a short
+ * prefix: a per destination sequence number, the datagram kind and the FEC
+ * group size. With FEC enabled every group of data datagrams to a
+ * destination is followed by one XOR parity datagram, so the receiver can
+ * rebuild any single lost packet of the group. Packets are handed to the
+ * listener as they arrive, without waiting for order.
+ */
+public final class UDPCommunicator implements ProtocolBase {
+
+    /**
+     * Largest payload of a UDP datagram over IPv4.
+     */
+    public static final int MAX_DATAGRAM = 65_507;
+
+    /**
+     * Bytes of the prefix in front of every packet.
+     */
+    public static final int PREFIX_SIZE = 6;
+
+    /**
+     * Bytes holding the packet length inside a parity block.
+     */
+    private static final int LENGTH_SIZE = 2;
+
+    /**
+     * Largest packet that fits a datagram together with its parity block.
+     */
+    public static final int MAX_PACKET = MAX_DATAGRAM - PREFIX_SIZE - LENGTH_SIZE;
+
+    /**
+     * Largest FEC group, the size travels in one byte.
+     */
+    public static final int MAX_GROUP = 255;
+
+    /**
+     * Logger for this class.
+     */
+    private static final SweLogger LOG = SweLoggerFactory.getLogger("NETWORKING");
+
+    /**
+     * Kind of a datagram carrying a packet.
+     */
+    private static final byte KIND_DATA = 0;
+
+    /**
+     * Kind of a datagram carrying the parity of a group.
+     */
+    private static final byte KIND_PARITY = 1;
+
+    /**
+     * Offset of the kind in the prefix.
+     */
+    private static final int OFF_KIND = 4;
+
+    /**
+     * Offset of the group size in the prefix.
+     */
+    private static final int OFF_GROUP = 5;
+
+    /**
+     * Mask to read a byte as unsigned.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * Bits in a byte.
+     */
+    private static final int BYTE_BITS = 8;
+
+    /**
+     * Number of recent groups kept per sender for recovery.
+     */
+    private static final int GROUP_WINDOW = 32;
+
+    /**
+     * Socket receive buffer asked for, so bursts of media survive a busy
+     * receive thread.
+     */
+    private static final int RECEIVE_BUFFER_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Milliseconds a receive call waits for datagrams.
+     */
+    private static final int SELECT_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * The channel bound to the device port.
+     */
+    private DatagramChannel channel;
+
+    /**
+     * The selector for the channel.
+     */
+    private Selector selector;
+
+    /**
+     * Data datagrams per parity datagram, 0 disables FEC.
+     */
+    private final int groupSize;
+
+    /**
+     * Sending state per destination.
+     */
+    private final Map<ClientNode, SendState> sendStates = new ConcurrentHashMap<>();
+
+    /**
+     * The estimator counting the bytes sent to every peer.
+     */
+    private final LinkEstimator linkEstimator = LinkEstimator.getLinkEstimator();
+
+    /**
+     * Receiving state per sender.
+     */
+    private final Map<SocketAddress, ReceiveState> receiveStates = new ConcurrentHashMap<>();
+
+    /**
+     * Buffer every outgoing datagram is built in.
+     */
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+
+    /**
+     * Buffer every incoming datagram is read into.
+     */
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+
+    /**
+     * Drops outgoing datagrams whose sequence number it accepts, for tests.
+     */
+    private volatile IntPredicate lossInjector;
+
+    /**
+     * Datagrams handed to the socket.
+     */
+    private volatile long datagramsSent;
+
+    /**
+     * Data datagrams received.
+     */
+    private volatile long datagramsReceived;
+
+    /**
+     * Packets rebuilt from parity.
+     */
+    private volatile long packetsRecovered;
+
+    /**
+     * Constructor function for UDP Communicator class without FEC.
+     *
+     * @param port which port to bind the UDP socket to
+     */
+    public UDPCommunicator(final int port) {
+        this(port, 0);
+    }
+
+    /**
+     * Constructor function for UDP Communicator class.
+     *
+     * @param port which port to bind the UDP socket to
+     * @param fecGroupSize data datagrams per parity datagram, 0 for no FEC
+     */
+    public UDPCommunicator(final int port, final int fecGroupSize) {
+        if (fecGroupSize < 0 || fecGroupSize > MAX_GROUP) {
+            throw new IllegalArgumentException("FEC group size must be between 0 and " + MAX_GROUP);
+        }
+        groupSize = fecGroupSize;
+        try {
+            LOG.info("UDP communicator initialized...");
+            selector = Selector.open();
+            channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_BYTES);
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException ex) {
+            LOG.error("Unable to initialize UDP comunicator...");
+            LOG.error("Error : " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Function to set a loss injector dropping outgoing datagrams.
+     *
+     * @param injector returns true for the sequence numbers to drop, null
+     *        to drop nothing
+     */
+    public void setLossInjector(final IntPredicate injector) {
+        lossInjector = injector;
+    }
+
+    /**
+     * UDP has no connected sockets.
+     *
+     * @return null
+     */
+    @Override
+    public SocketChannel openSocket() {
+        return null;
+    }
+
+    /**
+     * Function to print the channel.
+     */
+    @Override
+    public void printKeys() {
+        LOG.info("UDP channel: " + channel);
+    }
+
+    /**
+     * Function to forget the state kept for a client.
+     *
+     * @param client the client
+     */
+    @Override
+    public void closeSocket(final ClientNode client) {
+        final SendState state = sendStates.remove(client);
+        if (state != null) {
+            receiveStates.remove(state.address);
+        }
+    }
+
+    @Override
+    public void sendData(final byte[] data, final ClientNode dest) {
+        sendData(new ByteBuffer[] {ByteBuffer.wrap(data)}, dest);
+    }
+
+    /**
+     * Function to send a packet in one datagram, followed by the parity of
+     * its group when the group is complete.
+     *
+     * @param parts the buffers of the packet in order
+     * @param dest the destination
+     */
+    @Override
+    public synchronized void sendData(final ByteBuffer[] parts, final ClientNode dest) {
+        int size = 0;
+        for (ByteBuffer part : parts) {
+            size += part.remaining();
+        }
+        if (size > MAX_PACKET) {
+            LOG.warn("Packet of " + size + " bytes does not fit a datagram, dropping...");
+            return;
+        }
+        linkEstimator.recordSent(dest, size);
+        final SendState state = sendStates.computeIfAbsent(dest, SendState::new);
+        final int seq = state.nextSeq++;
+        sendBuffer.clear();
+        sendBuffer.putInt(seq).put(KIND_DATA).put((byte) groupSize);
+        for (ByteBuffer part : parts) {
+            sendBuffer.put(part.duplicate());
+        }
+        sendBuffer.flip();
+        if (groupSize > 0) {
+            state.addToParity(sendBuffer, PREFIX_SIZE, size);
+        }
+        transmit(state, seq);
+        if (groupSize > 0 && seq % groupSize == groupSize - 1) {
+            sendBuffer.clear();
+            sendBuffer.putInt(seq / groupSize).put(KIND_PARITY).put((byte) groupSize);
+            sendBuffer.put(state.parity, 0, state.parityLength);
+            sendBuffer.flip();
+            state.resetParity();
+            transmit(state, seq);
+        }
+    }
+
+    /**
+     * Function to write the datagram in the send buffer unless the loss
+     * injector drops it.
+     *
+     * @param state the destination state
+     * @param seq the sequence number the datagram belongs to
+     */
+    private void transmit(final SendState state, final int seq) {
+        final IntPredicate injector = lossInjector;
+        if (injector != null && injector.test(seq)) {
+            return;
+        }
+        try {
+            channel.send(sendBuffer, state.address);
+            datagramsSent++;
+        } catch (IOException ex) {
+            LOG.error("Error while sending datagram to " + state.address);
+            LOG.error("Error : " + ex.getMessage());
+        }
+    }
+
+    @Override
+    public ReceivePacket receiveData() {
+        final ReceivePacket[] first = new ReceivePacket[1];
+        receiveFrames((sender, frame) -> {
+            if (first[0] == null) {
+                final byte[] data = new byte[frame.remaining()];
+                frame.get(data);
+                first[0] = new ReceivePacket(sender, data);
+            }
+        });
+        return first[0];
+    }
+
+    /**
+     * Function to wait for datagrams and hand every packet received or
+     * rebuilt to the listener.
+     *
+     * @param listener the listener called once per packet
+     * @return true if any datagram was received
+     */
+    @Override
+    public boolean receiveFrames(final FrameListener listener) {
+        try {
+            if (selector.select(SELECT_TIMEOUT_MILLIS) == 0) {
+                return false;
+            }
+            selector.selectedKeys().clear();
+            boolean received = false;
+            SocketAddress from = readDatagram();
+            while (from != null) {
+                received = true;
+                handleDatagram(from, listener);
+                from = readDatagram();
+            }
+            return received;
+        } catch (IOException ex) {
+            LOG.error("Error while receiving datagrams...");
+            LOG.error("Error : " + ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Function to read one datagram into the receive buffer.
+     *
+     * @return the sender or null when nothing is waiting
+     * @throws IOException when the read fails
+     */
+    private SocketAddress readDatagram() throws IOException {
+        receiveBuffer.clear();
+        final SocketAddress from = channel.receive(receiveBuffer);
+        receiveBuffer.flip();
+        return from;
+    }
+
+    /**
+     * Function to handle the datagram in the receive buffer.
+     *
+     * @param from the sender
+     * @param listener the listener called once per packet
+     */
+    private void handleDatagram(final SocketAddress from, final FrameListener listener) {
+        if (receiveBuffer.remaining() < PREFIX_SIZE) {
+            return;
+        }
+        final int seq = receiveBuffer.getInt(0);
+        final byte kind = receiveBuffer.get(OFF_KIND);
+        final int group = receiveBuffer.get(OFF_GROUP) & BYTE_MASK;
+        final ReceiveState state = receiveStates.computeIfAbsent(from, ReceiveState::new);
+        final ByteBuffer packet = receiveBuffer.position(PREFIX_SIZE).slice();
+        if (kind == KIND_DATA) {
+            datagramsReceived++;
+            state.onData(seq);
+            if (group > 0) {
+                final byte[] copy = new byte[packet.remaining()];
+                packet.duplicate().get(copy);
+                final Group fecGroup = state.group(seq / group, group);
+                if (!fecGroup.addData(seq % group, copy)) {
+                    return;
+                }
+                listener.onFrame(state.sender, packet);
+                deliverRebuilt(state, fecGroup.recover(), listener);
+            } else {
+                listener.onFrame(state.sender, packet);
+            }
+        } else if (kind == KIND_PARITY && group > 0) {
+            final byte[] parity = new byte[packet.remaining()];
+            packet.get(parity);
+            final Group fecGroup = state.group(seq, group);
+            if (fecGroup.addParity(parity)) {
+                deliverRebuilt(state, fecGroup.recover(), listener);
+            }
+        }
+    }
+
+    /**
+     * Function to hand a packet rebuilt from parity to the listener.
+     *
+     * @param state the sender state
+     * @param rebuilt the packet or null
+     * @param listener the listener
+     */
+    private void deliverRebuilt(final ReceiveState state, final byte[] rebuilt, final FrameListener listener) {
+        if (rebuilt == null) {
+            return;
+        }
+        packetsRecovered++;
+        listener.onFrame(state.sender, ByteBuffer.wrap(rebuilt));
+    }
+
+    /**
+     * Function to wake a thread waiting for datagrams.
+     */
+    @Override
+    public void wakeup() {
+        selector.wakeup();
+    }
+
+    /**
+     * Function to get the number of datagrams handed to the socket.
+     *
+     * @return the datagram count
+     */
+    public long getDatagramsSent() {
+        return datagramsSent;
+    }
+
+    /**
+     * Function to get the number of data datagrams received.
+     *
+     * @return the datagram count
+     */
+    public long getDatagramsReceived() {
+        return datagramsReceived;
+    }
+
+    /**
+     * Function to get the number of packets rebuilt from parity.
+     *
+     * @return the recovered packet count
+     */
+    public long getPacketsRecovered() {
+        return packetsRecovered;
+    }
+
+    /**
+     * Function to get the number of data datagrams from a sender that
+     * never arrived, from the gaps in its sequence numbers.
+     *
+     * @param sender the sender
+     * @return the lost datagram count
+     */
+    public long getLostDatagrams(final ClientNode sender) {
+        final ReceiveState state = receiveStates.get(new InetSocketAddress(sender.hostName(), sender.port()));
+        if (state == null) {
+            return 0;
+        }
+        return state.highestSeq + 1 - state.received;
+    }
+
+    @Override
+    public void close() {
+        try {
+            LOG.info("Closing UDP communicator...");
+            selector.close();
+            channel.close();
+        } catch (IOException ex) {
+            LOG.error("Error occured while closing socket...");
+            LOG.error("Error : " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Function to XOR a packet and its length into a parity block.
+     *
+     * @param parity the block, at least length bytes plus the length field
+     * @param length the packet length
+     * @param source the packet bytes
+     * @param offset offset of the packet in the source
+     */
+    private static void xorInto(final byte[] parity, final int length, final ByteBuffer source, final int offset) {
+        parity[0] ^= (byte) (length >>> BYTE_BITS);
+        parity[1] ^= (byte) length;
+        for (int i = 0; i < length; i++) {
+            parity[LENGTH_SIZE + i] ^= source.get(offset + i);
+        }
+    }
+
+    /**
+     * Sequence and parity state of one destination.
+     */
+    private static final class SendState {
+
+        /**
+         * The destination socket address.
+         */
+        private final InetSocketAddress address;
+
+        /**
+         * Sequence number of the next data datagram.
+         */
+        private int nextSeq;
+
+        /**
+         * XOR of the length prefixed packets of the current group.
+         */
+        private byte[] parity = new byte[0];
+
+        /**
+         * Bytes of the parity block in use.
+         */
+        private int parityLength;
+
+        /**
+         * Creates the state of a destination.
+         *
+         * @param dest the destination
+         */
+        SendState(final ClientNode dest) {
+            this.address = new InetSocketAddress(dest.hostName(), dest.port());
+        }
+
+        /**
+         * Function to XOR a packet into the parity of the current group.
+         *
+         * @param datagram the datagram holding the packet
+         * @param offset offset of the packet
+         * @param length length of the packet
+         */
+        void addToParity(final ByteBuffer datagram, final int offset, final int length) {
+            final int needed = LENGTH_SIZE + length;
+            if (parity.length < needed) {
+                parity = Arrays.copyOf(parity, needed);
+            }
+            parityLength = Math.max(parityLength, needed);
+            xorInto(parity, length, datagram, offset);
+        }
+
+        /**
+         * Function to start the parity of the next group.
+         */
+        void resetParity() {
+            Arrays.fill(parity, 0, parityLength, (byte) 0);
+            parityLength = 0;
+        }
+    }
+
+    /**
+     * Sequence and recovery state of one sender.
+     */
+    private static final class ReceiveState {
+
+        /**
+         * The sender as a client node.
+         */
+        private final ClientNode sender;
+
+        /**
+         * Recent groups indexed by group number modulo the window.
+         */
+        private final Group[] groups = new Group[GROUP_WINDOW];
+
+        /**
+         * Highest data sequence number seen.
+         */
+        private long highestSeq = -1;
+
+        /**
+         * Data datagrams received.
+         */
+        private long received;
+
+        /**
+         * Creates the state of a sender.
+         *
+         * @param from the sender address
+         */
+        ReceiveState(final SocketAddress from) {
+            final InetSocketAddress address = (InetSocketAddress) from;
+            this.sender = new ClientNode(address.getAddress().getHostAddress(), address.getPort());
+        }
+
+        /**
+         * Function to record a data sequence number.
+         *
+         * @param seq the sequence number
+         */
+        void onData(final int seq) {
+            received++;
+            highestSeq = Math.max(highestSeq, seq);
+        }
+
+        /**
+         * Function to get the recovery state of a group, replacing an older
+         * group in the same window slot.
+         *
+         * @param number the group number
+         * @param size the data datagrams of the group
+         * @return the group
+         */
+        Group group(final int number, final int size) {
+            final int index = Math.floorMod(number, GROUP_WINDOW);
+            Group group = groups[index];
+            if (group == null || group.number != number || group.data.length != size) {
+                group = new Group(number, size);
+                groups[index] = group;
+            }
+            return group;
+        }
+    }
+
+    /**
+     * Packets and parity of one FEC group.
+     */
+    private static final class Group {
+
+        /**
+         * The group number.
+         */
+        private final int number;
+
+        /**
+         * Packets received, by index inside the group.
+         */
+        private final byte[][] data;
+
+        /**
+         * Number of packets received.
+         */
+        private int count;
+
+        /**
+         * The parity block, null until received.
+         */
+        private byte[] parity;
+
+        /**
+         * Whether the missing packet was already rebuilt.
+         */
+        private boolean done;
+
+        /**
+         * Creates an empty group.
+         *
+         * @param groupNumber the group number
+         * @param size the data datagrams of the group
+         */
+        Group(final int groupNumber, final int size) {
+            this.number = groupNumber;
+            this.data = new byte[size][];
+        }
+
+        /**
+         * Function to add a received packet.
+         *
+         * @param index index inside the group
+         * @param packet the packet
+         * @return false if the packet was already received or rebuilt
+         */
+        boolean addData(final int index, final byte[] packet) {
+            if (data[index] != null) {
+                return false;
+            }
+            data[index] = packet;
+            count++;
+            return true;
+        }
+
+        /**
+         * Function to add the parity block.
+         *
+         * @param block the parity block
+         * @return false if the parity was already received
+         */
+        boolean addParity(final byte[] block) {
+            if (parity != null) {
+                return false;
+            }
+            parity = block;
+            return true;
+        }
+
+        /**
+         * Function to rebuild the single missing packet once the parity and
+         * every other packet are present.
+         *
+         * @return the rebuilt packet, or null
+         */
+        byte[] recover() {
+            if (done || parity == null || count != data.length - 1) {
+                return null;
+            }
+            done = true;
+            final byte[] block = parity;
+            int missing = 0;
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] == null) {
+                    missing = i;
+                } else {
+                    xorInto(block, data[i].length, ByteBuffer.wrap(data[i]), 0);
+                }
+            }
+            final int length = ((block[0] & BYTE_MASK) << BYTE_BITS) | (block[1] & BYTE_MASK);
+            if (length > block.length - LENGTH_SIZE) {
+                return null;
+            }
+            data[missing] = Arrays.copyOfRange(block, LENGTH_SIZE, LENGTH_SIZE + length);
+            count++;
+            return data[missing];
+        }
+    }
+}
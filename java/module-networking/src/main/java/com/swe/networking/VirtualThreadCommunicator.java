@@ -0,0 +1,577 @@
+/*
+ * -----------------------------------------------------------------------------
+ *  File: VirtualThreadCommunicator.java
+ *  Owner: Asaduddin ahmed
+ *  Roll Number : 112201021
+ *  Module : Networking
+ *
+ * -----------------------------------------------------------------------------
+ */
+
+package com.swe.networking;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.swe.core.ClientNode;
+import com.swe.core.logging.SweLogger;
+import com.swe.core.logging.SweLoggerFactory;
+
+/**
+ * Communicator over blocking TCP sockets served by virtual threads instead
+ * of a selector. Every connection has a virtual thread blocked reading it
+ * and one blocked writing its bounded queue, so a slow peer only parks its
+ * own threads. Connects happen on the writer thread and never hold up the
+ * caller. The reader threads queue the packets they read and the listener
+ * is only called on the thread calling receive. All threads belong to one
+ * executor that {@link #close()} shuts down and waits for.
+ */
+public final class VirtualThreadCommunicator implements ProtocolBase {
+
+    /**
+     * The logger for the module.
+     */
+    private static final SweLogger LOG = SweLoggerFactory.getLogger("NETWORKING");
+
+    /**
+     * Time in milliseconds a receive call waits for packets or a wake up.
+     */
+    private static final int RECEIVE_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * Time in milliseconds the writers get to empty their queues on close.
+     */
+    private static final long DRAIN_TIMEOUT_MILLIS = 200;
+
+    /**
+     * Time in nanoseconds between checks of the writers draining on close.
+     */
+    private static final long DRAIN_POLL_NANOS = 1_000_000;
+
+    /**
+     * Time in milliseconds close waits for the threads to finish.
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = 2000;
+
+    /**
+     * Most packets read and not yet received, a reader waits for room
+     * beyond it.
+     */
+    private static final int INBOX_CAPACITY = 1024;
+
+    /**
+     * Marker put in the inbox to wake the receiving thread.
+     */
+    private static final ReceivePacket WAKEUP = new ReceivePacket(null, null);
+
+    /**
+     * Marker put in a send queue to stop its writer.
+     */
+    private static final ByteBuffer[] END = new ByteBuffer[0];
+
+    /**
+     * The executor starting a virtual thread per task.
+     */
+    private final ExecutorService threads = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("VT-Net-", 0).factory());
+
+    /**
+     * The connections by peer.
+     */
+    private final Map<ClientNode, Peer> peers = new ConcurrentHashMap<>();
+
+    /**
+     * Packets read and not yet received, and wake ups.
+     */
+    private final BlockingQueue<ReceivePacket> inbox = new LinkedBlockingQueue<>(INBOX_CAPACITY);
+
+    /**
+     * The estimator counting the bytes sent to every peer.
+     */
+    private final LinkEstimator linkEstimator = LinkEstimator.getLinkEstimator();
+
+    /**
+     * Time in milliseconds a connect may take before it is given up.
+     */
+    private final long connectTimeoutMillis;
+
+    /**
+     * The server socket accepting peers.
+     */
+    private ServerSocketChannel serverSocket;
+
+    /**
+     * Whether the communicator is open.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Creates the communicator and starts accepting on a port.
+     *
+     * @param serverPort the port to accept peers on
+     */
+    public VirtualThreadCommunicator(final int serverPort) {
+        this(serverPort, TCPCommunicator.DEFAULT_CONNECT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates the communicator with a connect timeout and starts accepting
+     * on a port.
+     *
+     * @param serverPort the port to accept peers on
+     * @param connectTimeout milliseconds a connect may take before its
+     *        queued packets are dropped
+     */
+    public VirtualThreadCommunicator(final int serverPort, final long connectTimeout) {
+        this.connectTimeoutMillis = connectTimeout;
+        try {
+            serverSocket = ServerSocketChannel.open();
+            serverSocket.bind(new InetSocketAddress(serverPort));
+            threads.execute(this::acceptLoop);
+            LOG.info("Virtual thread communicator accepting at " + serverPort);
+        } catch (IOException ex) {
+            LOG.error("Error connecting to port : " + serverPort);
+            LOG.error("Error : " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Function run by the accepting thread, starting a reader per peer.
+     */
+    private void acceptLoop() {
+        while (running) {
+            try {
+                final SocketChannel channel = serverSocket.accept();
+                final InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+                final ClientNode client = new ClientNode(remote.getAddress().getHostAddress(), remote.getPort());
+                final Peer peer = new Peer(client, channel);
+                peers.put(client, peer);
+                threads.execute(peer::readLoop);
+                threads.execute(peer::writeLoop);
+                LOG.info("New connection esthablished with " + client + " ...");
+            } catch (IOException ex) {
+                if (running) {
+                    LOG.error("Error occured while accepting connection...");
+                    LOG.error("Error : " + ex.getMessage());
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Function to get the connection of a peer, dialing it on a writer
+     * thread when there is none.
+     *
+     * @param dest the peer
+     * @return the connection
+     * @throws IOException when no socket can be opened
+     */
+    private Peer peerFor(final ClientNode dest) throws IOException {
+        final Peer existing = peers.get(dest);
+        if (existing != null) {
+            return existing;
+        }
+        final SocketChannel channel = SocketChannel.open();
+        final Peer peer = new Peer(dest, channel);
+        final Peer raced = peers.putIfAbsent(dest, peer);
+        if (raced != null) {
+            channel.close();
+            return raced;
+        }
+        threads.execute(() -> {
+            if (peer.connect()) {
+                threads.execute(peer::readLoop);
+                peer.writeLoop();
+            }
+        });
+        return peer;
+    }
+
+    @Override
+    public SocketChannel openSocket() {
+        try {
+            return SocketChannel.open();
+        } catch (IOException ex) {
+            LOG.error("Error occurred while opening socket...");
+            LOG.error("Error : " + ex.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public void printKeys() {
+        peers.keySet().forEach(peer -> LOG.info("Connected peer: " + peer));
+    }
+
+    @Override
+    public void closeSocket(final ClientNode client) {
+        final Peer peer = peers.get(client);
+        if (peer != null) {
+            LOG.info("Closing socket for client " + client + " ...");
+            peer.drop();
+        }
+    }
+
+    @Override
+    public void sendData(final byte[] data, final ClientNode dest) {
+        sendData(new ByteBuffer[] {ByteBuffer.wrap(data)}, dest);
+    }
+
+    /**
+     * Function to queue a packet for the writer of a destination, dialing
+     * it first if needed. Never waits for the network.
+     *
+     * @param parts the buffers of the packet in order
+     * @param dest the destination
+     */
+    @Override
+    public void sendData(final ByteBuffer[] parts, final ClientNode dest) {
+        if (!running) {
+            return;
+        }
+        try {
+            final Peer peer = peerFor(dest);
+            long size = 0;
+            for (ByteBuffer part : parts) {
+                size += part.remaining();
+            }
+            if (peer.enqueue(parts, size)) {
+                linkEstimator.recordSent(dest, size);
+            } else {
+                LOG.warn("Send queue of " + dest + " is full, dropping packet...");
+            }
+        } catch (IOException ex) {
+            LOG.error("Error while sending data...");
+            LOG.error("Error : " + ex.getMessage());
+        }
+    }
+
+    @Override
+    public void preconnect(final ClientNode dest) {
+        try {
+            peerFor(dest);
+        } catch (IOException ex) {
+            LOG.error("Unable to pre-connect to " + dest + "...");
+            LOG.error("Error : " + ex.getMessage());
+        }
+    }
+
+    @Override
+    public ReceivePacket receiveData() {
+        try {
+            final ReceivePacket packet = inbox.poll(RECEIVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (packet == WAKEUP) {
+                return null;
+            }
+            return packet;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Function to deliver the packets queued by the reader threads to the
+     * listener on this thread. Waits until woken or the timeout.
+     *
+     * @param frameListener the listener called once per complete packet
+     * @return true if any packet was waiting
+     */
+    @Override
+    public boolean receiveFrames(final FrameListener frameListener) {
+        boolean received = false;
+        try {
+            ReceivePacket packet = inbox.poll(RECEIVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            while (packet != null) {
+                if (packet != WAKEUP) {
+                    frameListener.onFrame(packet.sender(), ByteBuffer.wrap(packet.data()));
+                    received = true;
+                }
+                packet = inbox.poll();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return received;
+    }
+
+    /**
+     * Function to queue a packet read by a reader thread for the next
+     * receive call. While the inbox is full the reader parks, so TCP slows
+     * the sender down instead of packets being dropped.
+     *
+     * @param sender the peer the packet was read from
+     * @param frame the view of the packet
+     */
+    private void deliver(final ClientNode sender, final ByteBuffer frame) {
+        final byte[] packet = new byte[frame.remaining()];
+        frame.get(packet);
+        try {
+            inbox.put(new ReceivePacket(sender, packet));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public int getQueueDepth(final ClientNode client) {
+        final Peer peer = peers.get(client);
+        if (peer == null) {
+            return 0;
+        }
+        return peer.queue.size();
+    }
+
+    @Override
+    public long getBytesInFlight(final ClientNode client) {
+        final Peer peer = peers.get(client);
+        if (peer == null) {
+            return 0;
+        }
+        return peer.bytesQueued.get();
+    }
+
+    @Override
+    public long getDroppedPackets(final ClientNode client) {
+        final Peer peer = peers.get(client);
+        if (peer == null) {
+            return 0;
+        }
+        return peer.dropped.get();
+    }
+
+    @Override
+    public long getWriteCalls(final ClientNode client) {
+        final Peer peer = peers.get(client);
+        if (peer == null) {
+            return 0;
+        }
+        return peer.writeCalls.get();
+    }
+
+    @Override
+    public void wakeup() {
+        inbox.offer(WAKEUP);
+    }
+
+    /**
+     * Function to shut the communicator down: stop accepting, give the
+     * writers a moment to send what is queued, close every connection and
+     * wait for all the threads to end.
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LOG.info("Closing virtual thread communicator...");
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException ex) {
+            LOG.error("Error : " + ex.getMessage());
+        }
+        for (Peer peer : peers.values()) {
+            peer.queue.offer(END);
+        }
+        final long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        for (Peer peer : peers.values()) {
+            while (peer.queue.peek() != null && System.currentTimeMillis() < deadline) {
+                LockSupport.parkNanos(DRAIN_POLL_NANOS);
+            }
+        }
+        for (Peer peer : peers.values()) {
+            peer.drop();
+        }
+        threads.shutdownNow();
+        try {
+            if (!threads.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Virtual threads still running after close...");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        inbox.offer(WAKEUP);
+    }
+
+    /**
+     * One connection with its bounded send queue.
+     */
+    private final class Peer {
+
+        /**
+         * The peer.
+         */
+        private final ClientNode client;
+
+        /**
+         * The blocking channel.
+         */
+        private final SocketChannel channel;
+
+        /**
+         * Packets waiting for the writer.
+         */
+        private final BlockingQueue<ByteBuffer[]> queue =
+                new LinkedBlockingQueue<>(PeerConnection.DEFAULT_MAX_PACKETS);
+
+        /**
+         * Bytes queued but not yet written.
+         */
+        private final AtomicLong bytesQueued = new AtomicLong();
+
+        /**
+         * Packets dropped because the queue was full.
+         */
+        private final AtomicLong dropped = new AtomicLong();
+
+        /**
+         * Write calls made on the channel.
+         */
+        private final AtomicLong writeCalls = new AtomicLong();
+
+        /**
+         * Creates the connection state.
+         *
+         * @param peer the peer
+         * @param socketChannel the channel, connected or still to connect
+         */
+        Peer(final ClientNode peer, final SocketChannel socketChannel) {
+            this.client = peer;
+            this.channel = socketChannel;
+        }
+
+        /**
+         * Function to queue a packet within the packet and byte limits.
+         *
+         * @param parts the buffers of the packet
+         * @param size the packet length
+         * @return true if queued, false if dropped
+         */
+        boolean enqueue(final ByteBuffer[] parts, final long size) {
+            if (bytesQueued.get() + size > PeerConnection.DEFAULT_MAX_BYTES) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            final ByteBuffer[] own = new ByteBuffer[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                own[i] = parts[i].duplicate();
+            }
+            if (!queue.offer(own)) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            bytesQueued.addAndGet(size);
+            return true;
+        }
+
+        /**
+         * Function to connect the channel, dropping the connection and its
+         * queue when it fails or takes longer than the timeout.
+         *
+         * @return true if connected
+         */
+        boolean connect() {
+            try {
+                LOG.info("Connecting to " + client + " ...");
+                channel.socket().connect(new InetSocketAddress(client.hostName(), client.port()),
+                        (int) connectTimeoutMillis);
+                LOG.info("Connected to " + client + " ...");
+                return true;
+            } catch (IOException ex) {
+                LOG.error("Unable to connect to " + client + ", dropping " + queue.size()
+                        + " queued packets...");
+                LOG.error("Error : " + ex.getMessage());
+                drop();
+                return false;
+            }
+        }
+
+        /**
+         * Function run by the reader thread until the connection ends.
+         */
+        void readLoop() {
+            final FrameDecoder decoder = new FrameDecoder(client);
+            try {
+                while (decoder.readFrom(channel) >= 0) {
+                    try {
+                        decoder.drain(VirtualThreadCommunicator.this::deliver);
+                    } catch (RuntimeException ex) {
+                        LOG.error("Error while handling data from " + client + "...", ex);
+                    }
+                }
+                LOG.info("Connection closed by " + client + " ...");
+            } catch (IOException ex) {
+                if (running) {
+                    LOG.error("Error occured while reading data...");
+                    LOG.error("Error : " + ex.getMessage());
+                }
+            }
+            drop();
+        }
+
+        /**
+         * Function run by the writer thread, writing each queued packet in
+         * gathering writes until the queue is ended.
+         */
+        void writeLoop() {
+            try {
+                while (true) {
+                    final ByteBuffer[] parts = queue.take();
+                    if (parts == END) {
+                        return;
+                    }
+                    long size = 0;
+                    for (ByteBuffer part : parts) {
+                        size += part.remaining();
+                    }
+                    long written = 0;
+                    while (written < size) {
+                        written += channel.write(parts);
+                        writeCalls.incrementAndGet();
+                    }
+                    bytesQueued.addAndGet(-size);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (IOException ex) {
+                if (running) {
+                    LOG.error("Error while sending queued data to " + client + "...");
+                    LOG.error("Error : " + ex.getMessage());
+                }
+                drop();
+            }
+        }
+
+        /**
+         * Function to close the channel and forget the connection, which
+         * ends both of its threads.
+         */
+        void drop() {
+            peers.remove(client, this);
+            queue.clear();
+            bytesQueued.set(0);
+            queue.offer(END);
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                LOG.error("Error : " + ex.getMessage());
+            }
+        }
+    }
+}
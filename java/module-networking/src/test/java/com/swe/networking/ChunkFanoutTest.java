@@ -0,0 +1,202 @@
+package com.swe.networking;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Test class for the encode once fan out.
+ */
+public class ChunkFanoutTest {
+
+    private static final int PAYLOAD_SIZE = 10 * 1024;
+
+    private final PacketParser parser = PacketParser.getPacketParser();
+
+    private final ChunkManager chunkManager = ChunkManager.getChunkManager(PAYLOAD_SIZE);
+
+    private ClientNode[] viewers(final int count) {
+        final ClientNode[] dests = new ClientNode[count];
+        for (int i = 0; i < count; i++) {
+            dests[i] = new ClientNode("10.0.5." + (i + 1), 7000 + i);
+        }
+        return dests;
+    }
+
+    private PacketInfo template(final byte[] data) {
+        final PacketInfo info = new PacketInfo();
+        info.setModule(ModuleType.SCREENSHARING.ordinal());
+        info.setPriority(2);
+        info.setBroadcast(1);
+        info.setConnectionType(NetworkConnectionType.MODULE.ordinal());
+        info.setPayload(data);
+        return info;
+    }
+
+    private byte[] join(final ByteBuffer[] parts) {
+        int size = 0;
+        for (ByteBuffer part : parts) {
+            size += part.remaining();
+        }
+        final ByteBuffer joined = ByteBuffer.allocate(size);
+        for (ByteBuffer part : parts) {
+            joined.put(part.duplicate());
+        }
+        return joined.array();
+    }
+
+    @Test
+    void testEveryViewerGetsItsOwnHeaderAndTheWholeFrame() throws UnknownHostException {
+        final byte[] frame = new byte[200 * 1024 + 17];
+        new Random(1).nextBytes(frame);
+        final ClientNode[] dests = viewers(9);
+        final ChunkFanout fanout = new ChunkFanout();
+        final PacketInfo info = template(frame);
+        final List<byte[]> headers = fanout.encode(info, dests, client -> client.port() % 2, 42, PAYLOAD_SIZE);
+        final int chunks = (frame.length + PAYLOAD_SIZE - 1) / PAYLOAD_SIZE;
+        assertEquals(chunks * dests.length, headers.size());
+
+        final List<Reassembler> receivers = new ArrayList<>();
+        for (int i = 0; i < dests.length; i++) {
+            receivers.add(new Reassembler());
+        }
+        final byte[][] merged = new byte[dests.length][];
+        final PacketView view = new PacketView();
+        for (byte[] header : headers) {
+            assertEquals(PacketParser.getHeaderSize(info), header.length);
+            final ByteBuffer[] parts = fanout.resolve(header);
+            assertNotNull(parts);
+            final byte[] packet = join(parts);
+            view.wrap(packet);
+            assertEquals(packet.length, view.getLength());
+            final int viewer = view.getPortNum() - 7000;
+            assertEquals(dests[viewer].hostName(), view.getHostAddress());
+            assertEquals(dests[viewer].port() % 2, view.getType());
+            assertEquals(ModuleType.SCREENSHARING.ordinal(), view.getModule());
+            assertEquals(1, view.getBroadcast());
+            final byte[] done = receivers.get(viewer).addChunk(packet, 0);
+            if (done != null) {
+                merged[viewer] = done;
+            }
+        }
+        for (byte[] message : merged) {
+            assertArrayEquals(frame, parser.parsePacket(message).getPayload());
+        }
+        assertEquals(0, fanout.getSharedChunks());
+    }
+
+    @Test
+    void testLatestHeadersCarryTheStream() throws UnknownHostException {
+        final byte[] frame = new byte[3 * PAYLOAD_SIZE];
+        new Random(2).nextBytes(frame);
+        final ClientNode[] dests = viewers(2);
+        final PacketInfo info = template(frame);
+        info.setLatest(1);
+        info.setOriginAddress(InetAddress.getByName("10.0.5.99"));
+        info.setOriginPort(6000);
+        info.setStream(3);
+        final ChunkFanout fanout = new ChunkFanout();
+        final List<byte[]> headers = fanout.encode(info, dests, client -> 0, 43, PAYLOAD_SIZE);
+        final Reassembler receiver = new Reassembler();
+        final PacketView view = new PacketView();
+        byte[] merged = null;
+        for (byte[] header : headers) {
+            assertEquals(PacketParser.getHeaderSize(info), header.length);
+            final byte[] packet = join(fanout.resolve(header));
+            view.wrap(packet);
+            assertEquals(packet.length, view.getLength());
+            assertEquals(3, view.getStream());
+            assertEquals(6000, view.getOriginPortNum());
+            if (view.getPortNum() == dests[0].port()) {
+                final byte[] done = receiver.addChunk(packet, 0);
+                if (done != null) {
+                    merged = done;
+                }
+            }
+        }
+        assertNotNull(merged);
+        assertArrayEquals(frame, parser.parsePacket(merged).getPayload());
+        assertEquals(0, fanout.getSharedChunks());
+    }
+
+    @Test
+    void testPlainPacketsAreNotResolved() throws UnknownHostException {
+        final ChunkFanout fanout = new ChunkFanout();
+        final PacketInfo info = template(new byte[100]);
+        info.setIpAddress(InetAddress.getByName("10.0.5.1"));
+        final Vector<byte[]> plain = chunkManager.chunk(info, PAYLOAD_SIZE);
+        assertNull(fanout.resolve(plain.get(0)));
+
+        final PacketInfo empty = template(new byte[0]);
+        empty.setIpAddress(InetAddress.getByName("10.0.5.1"));
+        empty.setLength(PacketParser.getHeaderSize());
+        assertNull(fanout.resolve(parser.createPkt(empty)));
+    }
+
+    @Test
+    void testPayloadIsSharedNotCopied() throws UnknownHostException {
+        final ChunkFanout fanout = new ChunkFanout();
+        final List<byte[]> headers = fanout.encode(template(new byte[PAYLOAD_SIZE]), viewers(2), client -> 0, 7,
+                PAYLOAD_SIZE);
+        final ByteBuffer first = fanout.resolve(headers.get(0))[1];
+        final ByteBuffer second = fanout.resolve(headers.get(1))[1];
+        assertTrue(first.isReadOnly());
+        assertEquals(first, second);
+        assertNull(fanout.resolve(headers.get(1)));
+    }
+
+    /**
+     * Measures the bytes allocated to queue one screen frame for many
+     * viewers with per destination chunking against the fan out.
+     */
+    @Test
+    void testMultiViewerAllocation() throws UnknownHostException {
+        final byte[] frame = new byte[200 * 1024];
+        new Random(2).nextBytes(frame);
+        final ClientNode[] dests = viewers(9);
+        final com.sun.management.ThreadMXBean mx =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long tid = Thread.currentThread().getId();
+        final ChunkFanout fanout = new ChunkFanout();
+        long legacy = 0;
+        long shared = 0;
+        final int rounds = 5;
+        for (int round = 0; round < rounds; round++) {
+            long before = mx.getThreadAllocatedBytes(tid);
+            final List<byte[]> legacyChunks = new ArrayList<>();
+            for (ClientNode dest : dests) {
+                final PacketInfo info = template(frame);
+                info.setIpAddress(InetAddress.getByName(dest.hostName()));
+                info.setPortNum(dest.port());
+                legacyChunks.addAll(chunkManager.chunk(info, PAYLOAD_SIZE));
+            }
+            legacy = mx.getThreadAllocatedBytes(tid) - before;
+
+            before = mx.getThreadAllocatedBytes(tid);
+            final List<byte[]> headers = fanout.encode(template(frame), dests, client -> 0, round, PAYLOAD_SIZE);
+            for (byte[] header : headers) {
+                fanout.resolve(header);
+            }
+            shared = mx.getThreadAllocatedBytes(tid) - before;
+            assertTrue(legacyChunks.size() == headers.size());
+        }
+        System.out.println("9 viewers, 200 KB frame : per destination " + legacy / 1024 + " KB, fan out "
+                + shared / 1024 + " KB");
+        assertTrue(shared * 4 < legacy, "fan out " + shared + " legacy " + legacy);
+    }
+}
@@ -216,4 +216,22 @@ public class ChunkManagerTest {
         final String mergedMessage = new String(info.getPayload(), StandardCharsets.UTF_8);
         Assertions.assertEquals(message, mergedMessage);
     }
+
+    /**
+     * Expiry sweep scheduled again once the shared wheel is replaced.
+     */
+    @Test
+    void sweepFollowsTheSharedWheelTest() {
+        ChunkManager.getChunkManager(PacketParser.getHeaderSize());
+        TimingWheel.closeTimingWheel();
+        ChunkManager.getChunkManager(PacketParser.getHeaderSize());
+        final TimingWheel wheel = TimingWheel.getTimingWheel();
+        try {
+            Assertions.assertEquals(1, wheel.getPendingTimeouts());
+            ChunkManager.getChunkManager(PacketParser.getHeaderSize());
+            Assertions.assertEquals(1, wheel.getPendingTimeouts());
+        } finally {
+            TimingWheel.closeTimingWheel();
+        }
+    }
 }
@@ -0,0 +1,296 @@
+package com.swe.networking;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Test class for the cluster policies, with a simulation comparing the relay
+ * load and the broadcast latency of the fixed and the adaptive policy on a
+ * meeting of mixed links.
+ */
+public class ClusterPolicyTest {
+
+    private static final long STREAM = AdaptiveClusterPolicy.DEFAULT_STREAM_BYTES_PER_SECOND;
+
+    private static final long STRONG = 2_500_000;
+
+    private static final long MEDIUM = 625_000;
+
+    private static final long WEAK = 125_000;
+
+    /** Size of the broadcast frame used to estimate latency. */
+    private static final double FRAME_BYTES = 64 * 1024;
+
+    private static final int PEERS = 200;
+
+    /**
+     * Simulated meeting: the devices in join order, the first being the main
+     * server, and their links.
+     */
+    private record Meeting(List<ClientNode> devices, Map<ClientNode, LinkMetrics> metrics) {
+    }
+
+    private record Outcome(double loadVariance, double maxLoad, double meanLatency, double maxLatency) {
+    }
+
+    private Meeting meeting(final long seed) {
+        final Random random = new Random(seed);
+        final List<ClientNode> devices = new ArrayList<>();
+        final Map<ClientNode, LinkMetrics> metrics = new HashMap<>();
+        for (int i = 0; i < PEERS; i++) {
+            final ClientNode device = new ClientNode("10.1." + (i / 250) + "." + (i % 250), 6000 + i);
+            final double pick = random.nextDouble();
+            long uplink = MEDIUM;
+            if (i == 0 || pick < 0.2) {
+                uplink = STRONG;
+            } else if (pick > 0.7) {
+                uplink = WEAK;
+            }
+            devices.add(device);
+            metrics.put(device, new LinkMetrics(uplink, 10 + random.nextInt(140)));
+        }
+        return new Meeting(devices, metrics);
+    }
+
+    /** Joins the devices one by one as the main server would. */
+    private void join(final ClusterPolicy policy, final Meeting meeting, final List<List<ClientNode>> clusters,
+            final List<ClientNode> servers) {
+        for (ClientNode device : meeting.devices()) {
+            final int index = policy.chooseCluster(clusters, servers, device, meeting.metrics());
+            if (index == clusters.size()) {
+                clusters.add(new ArrayList<>());
+                servers.add(device);
+            }
+            clusters.get(index).add(device);
+        }
+    }
+
+    private void applyMoves(final List<ClientNetworkRecord> moves, final List<List<ClientNode>> clusters,
+            final List<ClientNode> servers) {
+        for (ClientNetworkRecord move : moves) {
+            assertFalse(servers.contains(move.client()), "server moved " + move.client());
+            for (List<ClientNode> cluster : clusters) {
+                cluster.remove(move.client());
+            }
+            clusters.get(move.clusterIndex()).add(move.client());
+        }
+    }
+
+    private double oneWay(final Map<ClientNode, LinkMetrics> metrics, final ClientNode a, final ClientNode b) {
+        return (metrics.get(a).rttMillis() + metrics.get(b).rttMillis()) / 4;
+    }
+
+    private double sendMillis(final Map<ClientNode, LinkMetrics> metrics, final ClientNode sender) {
+        return FRAME_BYTES * 1000 / metrics.get(sender).uplinkBytesPerSecond();
+    }
+
+    /**
+     * Measures the relay utilisation of every server and the time a frame
+     * broadcast by the main server takes to reach each device, with every
+     * server sending its copies one after the other on its uplink.
+     */
+    private Outcome measure(final Map<ClientNode, LinkMetrics> metrics, final List<List<ClientNode>> clusters,
+            final List<ClientNode> servers) {
+        final double[] load = new double[servers.size()];
+        double sum = 0;
+        double maxLoad = 0;
+        for (int i = 0; i < servers.size(); i++) {
+            int streams = clusters.get(i).size() - 1;
+            if (i == 0) {
+                streams += servers.size() - 1;
+            }
+            load[i] = (double) streams * STREAM / metrics.get(servers.get(i)).uplinkBytesPerSecond();
+            sum += load[i];
+            maxLoad = Math.max(maxLoad, load[i]);
+        }
+        final double mean = sum / load.length;
+        double variance = 0;
+        for (double value : load) {
+            variance += (value - mean) * (value - mean);
+        }
+        variance /= load.length;
+
+        final ClientNode main = servers.get(0);
+        final double step = sendMillis(metrics, main);
+        double latencySum = 0;
+        double maxLatency = 0;
+        int receivers = 0;
+        int sent = 0;
+        for (int i = 1; i < servers.size(); i++) {
+            sent++;
+            final ClientNode server = servers.get(i);
+            final double reached = sent * step + oneWay(metrics, main, server);
+            latencySum += reached;
+            maxLatency = Math.max(maxLatency, reached);
+            receivers++;
+            int relayed = 0;
+            for (ClientNode member : clusters.get(i)) {
+                if (member.equals(server)) {
+                    continue;
+                }
+                relayed++;
+                final double latency = reached + relayed * sendMillis(metrics, server)
+                        + oneWay(metrics, server, member);
+                latencySum += latency;
+                maxLatency = Math.max(maxLatency, latency);
+                receivers++;
+            }
+        }
+        for (ClientNode member : clusters.get(0)) {
+            if (member.equals(main)) {
+                continue;
+            }
+            sent++;
+            final double latency = sent * step + oneWay(metrics, main, member);
+            latencySum += latency;
+            maxLatency = Math.max(maxLatency, latency);
+            receivers++;
+        }
+        assertEquals(PEERS - 1, receivers);
+        return new Outcome(variance, maxLoad, latencySum / receivers, maxLatency);
+    }
+
+    private Outcome simulate(final ClusterPolicy policy, final Meeting meeting, final boolean rebalance) {
+        final List<List<ClientNode>> clusters = new ArrayList<>();
+        final List<ClientNode> servers = new ArrayList<>();
+        join(policy, meeting, clusters, servers);
+        if (rebalance) {
+            List<ClientNetworkRecord> moves = policy.rebalance(clusters, servers, meeting.metrics(), 4);
+            while (!moves.isEmpty()) {
+                applyMoves(moves, clusters, servers);
+                moves = policy.rebalance(clusters, servers, meeting.metrics(), 4);
+            }
+        }
+        return measure(meeting.metrics(), clusters, servers);
+    }
+
+    @Test
+    void testFixedPolicyFillsClustersOfTen() {
+        final ClusterPolicy policy = new FixedClusterPolicy();
+        final List<List<ClientNode>> clusters = new ArrayList<>();
+        final List<ClientNode> servers = new ArrayList<>();
+        join(policy, meeting(1), clusters, servers);
+        assertEquals(PEERS / FixedClusterPolicy.DEFAULT_CLUSTER_SIZE, clusters.size());
+        for (List<ClientNode> cluster : clusters) {
+            assertEquals(FixedClusterPolicy.DEFAULT_CLUSTER_SIZE, cluster.size());
+        }
+        assertTrue(policy.rebalance(clusters, servers, new HashMap<>(), 4).isEmpty());
+    }
+
+    @Test
+    void testAdaptiveCapacityFollowsLink() {
+        final AdaptiveClusterPolicy policy = new AdaptiveClusterPolicy();
+        final Map<ClientNode, LinkMetrics> metrics = new HashMap<>();
+        final ClientNode fast = new ClientNode("10.0.0.1", 6000);
+        final ClientNode slowRtt = new ClientNode("10.0.0.2", 6000);
+        final ClientNode weak = new ClientNode("10.0.0.3", 6000);
+        metrics.put(fast, new LinkMetrics(STRONG, 0));
+        metrics.put(slowRtt, new LinkMetrics(STRONG, 100));
+        metrics.put(weak, new LinkMetrics(WEAK, 0));
+        assertEquals(STRONG / STREAM, policy.capacity(fast, metrics));
+        assertEquals(STRONG / STREAM / 2, policy.capacity(slowRtt, metrics));
+        assertEquals(1, policy.capacity(weak, metrics));
+        assertEquals(FixedClusterPolicy.DEFAULT_CLUSTER_SIZE - 1,
+                policy.capacity(new ClientNode("10.0.0.4", 6000), metrics));
+    }
+
+    @Test
+    void testAdaptiveJoinNeverOverloadsAServer() {
+        final AdaptiveClusterPolicy policy = new AdaptiveClusterPolicy();
+        final Meeting meeting = meeting(2);
+        final List<List<ClientNode>> clusters = new ArrayList<>();
+        final List<ClientNode> servers = new ArrayList<>();
+        join(policy, meeting, clusters, servers);
+        for (int i = 1; i < clusters.size(); i++) {
+            assertTrue(clusters.get(i).size() - 1 <= policy.capacity(servers.get(i), meeting.metrics()));
+        }
+    }
+
+    @Test
+    void testRebalanceMovesMembersOffOverloadedServers() {
+        final AdaptiveClusterPolicy policy = new AdaptiveClusterPolicy();
+        final Meeting meeting = meeting(3);
+        final List<List<ClientNode>> clusters = new ArrayList<>();
+        final List<ClientNode> servers = new ArrayList<>();
+        join(new FixedClusterPolicy(), meeting, clusters, servers);
+        final Outcome before = measure(meeting.metrics(), clusters, servers);
+        int rounds = 0;
+        List<ClientNetworkRecord> moves = policy.rebalance(clusters, servers, meeting.metrics(), 4);
+        while (!moves.isEmpty()) {
+            assertTrue(moves.size() <= 4);
+            applyMoves(moves, clusters, servers);
+            rounds++;
+            assertTrue(rounds < PEERS, "rebalancing does not settle");
+            moves = policy.rebalance(clusters, servers, meeting.metrics(), 4);
+        }
+        final Outcome after = measure(meeting.metrics(), clusters, servers);
+        System.out.println("rebalance in " + rounds + " rounds: load variance " + before.loadVariance() + " -> "
+                + after.loadVariance() + ", max latency " + before.maxLatency() + " -> " + after.maxLatency());
+        assertTrue(after.loadVariance() < before.loadVariance());
+        assertTrue(after.maxLoad() < before.maxLoad());
+    }
+
+    /**
+     * The simulation harness: the same meetings under both policies.
+     */
+    @Test
+    void testAdaptivePolicyEvensLoadAndCutsLatency() {
+        for (long seed = 10; seed < 15; seed++) {
+            final Meeting meeting = meeting(seed);
+            final Outcome fixed = simulate(new FixedClusterPolicy(), meeting, false);
+            final Outcome adaptive = simulate(new AdaptiveClusterPolicy(), meeting, true);
+            System.out.printf("seed %d: load variance %.3f -> %.3f, max load %.2f -> %.2f, "
+                    + "mean latency %.0f -> %.0f ms, max latency %.0f -> %.0f ms%n", seed,
+                    fixed.loadVariance(), adaptive.loadVariance(), fixed.maxLoad(), adaptive.maxLoad(),
+                    fixed.meanLatency(), adaptive.meanLatency(), fixed.maxLatency(), adaptive.maxLatency());
+            assertTrue(adaptive.loadVariance() < fixed.loadVariance());
+            assertTrue(adaptive.maxLatency() < fixed.maxLatency());
+        }
+    }
+
+    @Test
+    void testTopologyUsesPolicyAndAppliesMoves() {
+        final Topology topology = Topology.getTopology();
+        topology.setAuthority(false);
+        topology.replaceNetwork(new NetworkStructure(new ArrayList<>(), new ArrayList<>()));
+        topology.setAuthority(true);
+        topology.setClusterPolicy(new AdaptiveClusterPolicy());
+        try {
+            final ClientNode main = new ClientNode("10.9.0.1", 6000);
+            final ClientNode weak = new ClientNode("10.9.0.2", 6000);
+            topology.reportLinkMetrics(main, new LinkMetrics(STRONG, 0));
+            topology.reportLinkMetrics(weak, new LinkMetrics(WEAK, 0));
+            assertEquals(0, topology.addClient(main));
+            assertEquals(0, topology.addClient(weak));
+            for (int i = 0; i < 30; i++) {
+                topology.addClient(new ClientNode("10.9.1." + i, 6000));
+            }
+            final NetworkStructure network = topology.getNetwork();
+            for (int i = 0; i < network.clusters().size(); i++) {
+                assertTrue(network.clusters().get(i).size() <= STRONG / STREAM + 1);
+            }
+            final long epoch = topology.getEpoch();
+            for (ClientNetworkRecord move : topology.planRebalance(4)) {
+                topology.updateNetwork(move);
+                assertEquals(move.clusterIndex(), topology.getClusterIndex(move.client()));
+            }
+            assertTrue(topology.getEpoch() >= epoch);
+            assertEquals(32, topology.getAllClients().size());
+        } finally {
+            topology.setClusterPolicy(new FixedClusterPolicy());
+            topology.setAuthority(false);
+            topology.replaceNetwork(new NetworkStructure(new ArrayList<>(), new ArrayList<>()));
+        }
+    }
+}
@@ -3,9 +3,20 @@ package com.swe.networking;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.swe.core.ClientNode;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -233,4 +244,144 @@ public class CoalesceSendTest {
         });
     }
 
+    private byte[] modulePacket(final int module, final int priority, final int port, final byte[] payload)
+            throws UnknownHostException {
+        final PacketInfo info = new PacketInfo();
+        info.setLength(PacketParser.getHeaderSize() + payload.length);
+        info.setType(NetworkType.USE.ordinal());
+        info.setPriority(priority);
+        info.setModule(module);
+        info.setConnectionType(NetworkConnectionType.MODULE.ordinal());
+        info.setIpAddress(InetAddress.getByName("127.0.0.1"));
+        info.setPortNum(port);
+        info.setChunkNum(0);
+        info.setChunkLength(1);
+        info.setPayload(payload);
+        return PacketParser.getPacketParser().createPkt(info);
+    }
+
+    private static byte[] join(final ByteBuffer[] parts) {
+        int size = 0;
+        for (ByteBuffer part : parts) {
+            size += part.remaining();
+        }
+        final ByteBuffer joined = ByteBuffer.allocate(size);
+        for (ByteBuffer part : parts) {
+            joined.put(part.duplicate());
+        }
+        return joined.array();
+    }
+
+    @Test
+    public void testOfferedPacketsReachCoalesceReceive() throws Exception {
+        final List<byte[]> batches = new ArrayList<>();
+        final CoalesceSend coalescer = new CoalesceSend((parts, dest) -> batches.add(join(parts)), null);
+        final int module = ModuleType.CHAT.ordinal();
+        assertTrue(coalescer.offer(modulePacket(module, 3, 7000, "first".getBytes())));
+        assertTrue(coalescer.offer(modulePacket(module, 0, 7000, "second".getBytes())));
+        assertTrue(batches.isEmpty());
+        coalescer.flushAll();
+        assertEquals(1, batches.size());
+
+        final PacketView view = new PacketView().wrap(batches.get(0));
+        assertEquals(NetworkConnectionType.COALESCED.ordinal(), view.getConnectionType());
+        assertEquals(batches.get(0).length, view.getLength());
+        assertEquals(0, view.getPriority());
+        assertEquals(7000, view.getPortNum());
+
+        final List<String> received = new ArrayList<>();
+        final Networking networking = Networking.getNetwork();
+        networking.subscribe(module, data -> received.add(new String(data)));
+        try {
+            new CoalesceReceive().receiveCoalescedPacket(view.payload());
+        } finally {
+            networking.removeSubscription(module);
+        }
+        assertEquals(List.of("first", "second"), received);
+    }
+
+    @Test
+    public void testScreenShareAndLargePacketsAreNotHeld() throws Exception {
+        final List<byte[]> batches = new ArrayList<>();
+        final CoalesceSend coalescer = new CoalesceSend((parts, dest) -> batches.add(join(parts)), null);
+        assertFalse(coalescer.offer(modulePacket(ModuleType.SCREENSHARING.ordinal(), 2, 7000, new byte[10])));
+        assertFalse(coalescer.offer(modulePacket(ModuleType.CHAT.ordinal(), 0, 7000, new byte[maxSize])));
+        coalescer.setEnabled(ModuleType.CANVAS.ordinal(), 1, false);
+        assertFalse(coalescer.isEnabled(ModuleType.CANVAS.ordinal(), 1));
+        assertFalse(coalescer.offer(modulePacket(ModuleType.CANVAS.ordinal(), 1, 7000, new byte[10])));
+        assertTrue(batches.isEmpty());
+    }
+
+    @Test
+    public void testRefusedPacketFlushesItsDestinationFirst() throws Exception {
+        final List<byte[]> batches = new ArrayList<>();
+        final CoalesceSend coalescer = new CoalesceSend((parts, dest) -> batches.add(join(parts)), null);
+        assertTrue(coalescer.offer(modulePacket(ModuleType.CHAT.ordinal(), 0, 7000, new byte[10])));
+        assertTrue(coalescer.offer(modulePacket(ModuleType.CHAT.ordinal(), 0, 7001, new byte[10])));
+        assertFalse(coalescer.offer(modulePacket(ModuleType.SCREENSHARING.ordinal(), 2, 7000, new byte[10])));
+        assertEquals(1, batches.size());
+        assertEquals(7000, new PacketView().wrap(batches.get(0)).getPortNum());
+    }
+
+    /**
+     * Sends the same small chat packets to a real socket once as they are
+     * and once coalesced, and reports the write calls per second of each.
+     */
+    @Test
+    public void testCoalescingReducesWriteCalls() throws Exception {
+        final int packets = 2000;
+        final int peerPort = 8039;
+        final AtomicLong receivedBytes = new AtomicLong();
+        try (ServerSocket server = new ServerSocket(peerPort)) {
+            final Thread reader = new Thread(() -> {
+                for (int connection = 0; connection < 2; connection++) {
+                    try (Socket socket = server.accept()) {
+                        final InputStream in = socket.getInputStream();
+                        final byte[] buffer = new byte[64 * 1024];
+                        int read = in.read(buffer);
+                        while (read > 0) {
+                            receivedBytes.addAndGet(read);
+                            read = in.read(buffer);
+                        }
+                    } catch (IOException ex) {
+                    }
+                }
+            });
+            reader.start();
+            final ClientNode peer = new ClientNode("127.0.0.1", peerPort);
+            final byte[] payload = new byte[100];
+
+            final TCPCommunicator plain = new TCPCommunicator(8037);
+            long start = System.nanoTime();
+            for (int i = 0; i < packets; i++) {
+                plain.sendData(modulePacket(ModuleType.CHAT.ordinal(), 0, peerPort, payload), peer);
+            }
+            final long plainNanos = System.nanoTime() - start;
+            final long plainWrites = plain.getWriteCalls(peer);
+            plain.close();
+
+            final TCPCommunicator batched = new TCPCommunicator(8038);
+            final CoalesceSend coalescer = new CoalesceSend(batched::sendData, null);
+            start = System.nanoTime();
+            for (int i = 0; i < packets; i++) {
+                final byte[] pkt = modulePacket(ModuleType.CHAT.ordinal(), 0, peerPort, payload);
+                if (!coalescer.offer(pkt)) {
+                    batched.sendData(pkt, peer);
+                }
+            }
+            coalescer.flushAll();
+            final long batchedNanos = System.nanoTime() - start;
+            final long batchedWrites = batched.getWriteCalls(peer);
+            batched.close();
+            reader.join(3000);
+
+            System.out.println("Plain   : " + plainWrites + " writes, "
+                    + plainWrites * 1_000_000_000L / plainNanos + " writes/s");
+            System.out.println("Batched : " + batchedWrites + " writes, "
+                    + batchedWrites * 1_000_000_000L / batchedNanos + " writes/s, "
+                    + coalescer.getBatchesSent() + " batches");
+            assertTrue(batchedWrites * 10 < plainWrites);
+            assertEquals(packets, coalescer.getPacketsCoalesced());
+        }
+    }
 }
@@ -0,0 +1,299 @@
+package com.swe.networking;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for the deficit round robin send scheduler.
+ */
+public class DrrSchedulerTest {
+
+    private final PacketParser parser = PacketParser.getPacketParser();
+
+    private byte[] packet(final int priority, final String ip, final int port, final int size)
+            throws UnknownHostException {
+        final PacketInfo info = new PacketInfo();
+        info.setPriority(priority);
+        info.setModule(ModuleType.CHAT.ordinal());
+        info.setIpAddress(InetAddress.getByName(ip));
+        info.setPortNum(port);
+        info.setPayload(new byte[Math.max(0, size - PacketParser.getHeaderSize())]);
+        info.setLength(PacketParser.getHeaderSize() + info.getPayload().length);
+        return parser.createPkt(info);
+    }
+
+    @Test
+    void testEmptySchedulerReturnsNull() {
+        final DrrScheduler scheduler = new DrrScheduler();
+        assertTrue(scheduler.isEmpty());
+        assertNull(scheduler.nextPacket());
+    }
+
+    @Test
+    void testHigherPriorityServedFirst() throws UnknownHostException {
+        final DrrScheduler scheduler = new DrrScheduler();
+        final byte[] low = packet(7, "10.0.0.1", 8000, 100);
+        final byte[] high = packet(0, "10.0.0.1", 8000, 100);
+        scheduler.addPacket(low);
+        scheduler.addPacket(high);
+        assertEquals(2, scheduler.size());
+        assertTrue(Arrays.equals(high, scheduler.nextPacket()));
+        assertTrue(Arrays.equals(low, scheduler.nextPacket()));
+        assertTrue(scheduler.isEmpty());
+    }
+
+    @Test
+    void testSharesWeightBandwidth() throws UnknownHostException {
+        final DrrScheduler scheduler = new DrrScheduler();
+        for (int i = 0; i < 2000; i++) {
+            scheduler.addPacket(packet(0, "10.0.0.1", 8000, 1000));
+            scheduler.addPacket(packet(2, "10.0.0.2", 8000, 1000));
+        }
+        int zero = 0;
+        int two = 0;
+        final PacketView view = new PacketView();
+        for (int i = 0; i < 1600; i++) {
+            if (view.wrap(scheduler.nextPacket()).getPriority() == 0) {
+                zero++;
+            } else {
+                two++;
+            }
+        }
+        // Shares of PacketPriority ZERO and TWO are 10 and 70.
+        final double ratio = (double) two / zero;
+        assertTrue(ratio > 6 && ratio < 8, "ratio was " + ratio);
+    }
+
+    @Test
+    void testDestinationsTakeTurnsInsideClass() throws UnknownHostException {
+        final DrrScheduler scheduler = new DrrScheduler();
+        for (int i = 0; i < 100; i++) {
+            scheduler.addPacket(packet(2, "10.0.0.1", 8000, 500));
+        }
+        for (int i = 0; i < 5; i++) {
+            scheduler.addPacket(packet(2, "10.0.0.2", 8000, 500));
+        }
+        final PacketView view = new PacketView();
+        int second = 0;
+        for (int i = 0; i < 10; i++) {
+            if ("10.0.0.2".equals(view.wrap(scheduler.nextPacket()).getHostAddress())) {
+                second++;
+            }
+        }
+        assertEquals(5, second);
+    }
+
+    @Test
+    void testTakeParksUntilPacketAdded() throws Exception {
+        final DrrScheduler scheduler = new DrrScheduler();
+        final AtomicReference<byte[]> taken = new AtomicReference<>();
+        final Thread sender = new Thread(() -> {
+            try {
+                taken.set(scheduler.takePacket());
+            } catch (InterruptedException ignored) {
+            }
+        });
+        sender.start();
+        final long deadline = System.currentTimeMillis() + 2000;
+        while (sender.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(Thread.State.WAITING, sender.getState());
+        final byte[] pkt = packet(3, "10.0.0.3", 8000, 50);
+        scheduler.addPacket(pkt);
+        sender.join(2000);
+        assertFalse(sender.isAlive());
+        assertNotNull(taken.get());
+        assertTrue(Arrays.equals(pkt, taken.get()));
+    }
+
+    @Test
+    void testInterruptStopsTake() throws Exception {
+        final DrrScheduler scheduler = new DrrScheduler();
+        final CountDownLatch stopped = new CountDownLatch(1);
+        final Thread sender = new Thread(() -> {
+            try {
+                scheduler.takePacket();
+            } catch (InterruptedException ex) {
+                stopped.countDown();
+            }
+        });
+        sender.start();
+        Thread.sleep(50);
+        sender.interrupt();
+        assertTrue(stopped.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testConcurrentProducersLoseNothing() throws Exception {
+        final DrrScheduler scheduler = new DrrScheduler();
+        final int producers = 4;
+        final int perProducer = 5000;
+        final List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int id = p;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < perProducer; i++) {
+                        final byte[] pkt = packet(i % 8, "10.0.1." + id, 8000 + (i % 3), 30);
+                        ByteBuffer.wrap(pkt).putInt(PacketParser.getHeaderSize(), id * perProducer + i);
+                        scheduler.addPacket(pkt);
+                    }
+                } catch (UnknownHostException ignored) {
+                }
+            }));
+        }
+        final Set<Integer> seen = new HashSet<>();
+        final Thread consumer = new Thread(() -> {
+            try {
+                while (seen.size() < producers * perProducer) {
+                    final byte[] pkt = scheduler.takePacket();
+                    seen.add(ByteBuffer.wrap(pkt).getInt(PacketParser.getHeaderSize()));
+                }
+            } catch (InterruptedException ignored) {
+            }
+        });
+        consumer.start();
+        threads.forEach(Thread::start);
+        for (Thread t : threads) {
+            t.join();
+        }
+        consumer.join(10000);
+        assertFalse(consumer.isAlive());
+        assertEquals(producers * perProducer, seen.size());
+        assertTrue(scheduler.isEmpty());
+    }
+
+    /**
+     * Compares the scheduler with the MLFQ priority queue under a mixed load
+     * of screen share chunks and chat messages going through a simulated
+     * link, then measures the CPU used by the idle send thread.
+     */
+    @Test
+    void testMixedLoadComparison() throws Exception {
+        final Logger global = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+        final Level previous = global.getLevel();
+        global.setLevel(Level.WARNING);
+        try {
+            final PriorityQueue mlfq = PriorityQueue.getPriorityQueue();
+            mlfq.clear();
+            final long[] legacy = runMixedLoad(mlfq, false);
+            final long[] drr = runMixedLoad(new DrrScheduler(), true);
+            System.out.println("MLFQ : " + legacy[0] + " pkts/s, chat p50 " + legacy[1] + " us, chat p99 "
+                    + legacy[2] + " us, idle cpu " + legacy[3] + " ms");
+            System.out.println("DRR  : " + drr[0] + " pkts/s, chat p50 " + drr[1] + " us, chat p99 "
+                    + drr[2] + " us, idle cpu " + drr[3] + " ms");
+            assertTrue(drr[3] < legacy[3]);
+        } finally {
+            global.setLevel(previous);
+        }
+    }
+
+    /**
+     * Runs the mixed load against a scheduler.
+     *
+     * @return throughput, chat p50 and p99 latency and idle cpu time
+     */
+    private long[] runMixedLoad(final SendScheduler scheduler, final boolean blocking) throws Exception {
+        final int screenPackets = 2000;
+        final int chatPackets = 200;
+        final int total = screenPackets + chatPackets;
+        final long linkNanosPerKb = 2000;
+        final List<Long> chatLatency = new ArrayList<>();
+        final ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        final long[] idleCpu = new long[1];
+        final CountDownLatch drained = new CountDownLatch(1);
+        final Thread sender = new Thread(() -> {
+            int sent = 0;
+            final PacketView view = new PacketView();
+            while (!Thread.currentThread().isInterrupted()) {
+                byte[] pkt = null;
+                if (blocking) {
+                    try {
+                        pkt = scheduler.takePacket();
+                    } catch (InterruptedException ex) {
+                        break;
+                    }
+                } else if (!scheduler.isEmpty()) {
+                    pkt = scheduler.nextPacket();
+                }
+                if (pkt == null) {
+                    continue;
+                }
+                final long sendUntil = System.nanoTime() + linkNanosPerKb * pkt.length / 1024;
+                while (System.nanoTime() < sendUntil) {
+                    Thread.onSpinWait();
+                }
+                if (view.wrap(pkt).getPriority() == 0) {
+                    final long stamp = ByteBuffer.wrap(pkt).getLong(PacketParser.getHeaderSize());
+                    chatLatency.add((System.nanoTime() - stamp) / 1000);
+                }
+                sent++;
+                if (sent == total) {
+                    drained.countDown();
+                }
+            }
+        });
+        sender.start();
+        final Thread screen = new Thread(() -> {
+            try {
+                for (int i = 0; i < screenPackets; i++) {
+                    scheduler.addPacket(packet(2, "10.0.0." + (i % 4), 8000, 10 * 1024));
+                }
+            } catch (UnknownHostException ignored) {
+            }
+        });
+        final Thread chat = new Thread(() -> {
+            try {
+                for (int i = 0; i < chatPackets; i++) {
+                    final byte[] pkt = packet(0, "10.0.0.9", 8000, 200);
+                    ByteBuffer.wrap(pkt).putLong(PacketParser.getHeaderSize(), System.nanoTime());
+                    scheduler.addPacket(pkt);
+                    Thread.sleep(0, 200_000);
+                }
+            } catch (UnknownHostException | InterruptedException ignored) {
+            }
+        });
+        final long start = System.nanoTime();
+        screen.start();
+        chat.start();
+        assertTrue(drained.await(60, TimeUnit.SECONDS));
+        final long elapsed = System.nanoTime() - start;
+        screen.join();
+        chat.join();
+
+        final long idleStart = mx.getThreadCpuTime(sender.getId());
+        Thread.sleep(300);
+        idleCpu[0] = (mx.getThreadCpuTime(sender.getId()) - idleStart) / 1_000_000;
+        sender.interrupt();
+        sender.join(2000);
+
+        final List<Long> sorted = new ArrayList<>(chatLatency);
+        sorted.sort(Long::compare);
+        final long p50 = sorted.get(sorted.size() / 2);
+        final long p99 = sorted.get(Math.min(sorted.size() - 1, sorted.size() * 99 / 100));
+        final long throughput = total * 1_000_000_000L / elapsed;
+        return new long[] {throughput, p50, p99, idleCpu[0]};
+    }
+}
@@ -0,0 +1,240 @@
+package com.swe.networking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Test class for the per connection frame decoder.
+ */
+public class FrameDecoderTest {
+
+    private Pipe pipe;
+    private FrameDecoder decoder;
+    private final List<byte[]> received = new ArrayList<>();
+    private final FrameListener collect = (sender, frame) -> {
+        final byte[] p = new byte[frame.remaining()];
+        frame.get(p);
+        received.add(p);
+    };
+
+    @BeforeEach
+    void setUp() throws IOException {
+        pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        decoder = new FrameDecoder(new ClientNode("127.0.0.1", 9000));
+        received.clear();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        pipe.sink().close();
+        pipe.source().close();
+    }
+
+    private void write(final byte[] data) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            pipe.sink().write(buffer);
+        }
+    }
+
+    private void readAndDrain() throws IOException {
+        while (decoder.readFrom(pipe.source()) > 0) {
+            decoder.drain(collect);
+        }
+        decoder.drain(collect);
+    }
+
+    private static byte[] frame(final int len, final int seed) {
+        final byte[] p = new byte[len];
+        p[0] = (byte) (len & 0xFF);
+        p[1] = (byte) ((len >> 8) & 0xFF);
+        for (int i = 2; i < len; i++) {
+            p[i] = (byte) (seed + i);
+        }
+        return p;
+    }
+
+    @Test
+    void testSingleCompletePacket() throws IOException {
+        write(new byte[] {0x06, 0x00, 1, 2, 3, 4});
+        readAndDrain();
+        assertEquals(1, received.size());
+        assertArrayEquals(new byte[] {0x06, 0x00, 1, 2, 3, 4}, received.get(0));
+    }
+
+    @Test
+    void testMultiplePacketsInOneRead() throws IOException {
+        write(new byte[] {0x06, 0x00, 1, 2, 3, 4, 0x05, 0x00, 5, 6, 7});
+        readAndDrain();
+        assertEquals(2, received.size());
+        assertArrayEquals(new byte[] {0x05, 0x00, 5, 6, 7}, received.get(1));
+    }
+
+    @Test
+    void testFragmentedPacketAcrossReads() throws IOException {
+        write(new byte[] {0x08, 0x00, 9});
+        readAndDrain();
+        assertTrue(received.isEmpty());
+        assertEquals(3, decoder.buffered());
+        write(new byte[] {8, 7, 6, 5, 4});
+        readAndDrain();
+        assertEquals(1, received.size());
+        assertArrayEquals(new byte[] {0x08, 0x00, 9, 8, 7, 6, 5, 4}, received.get(0));
+        assertEquals(0, decoder.buffered());
+    }
+
+    @Test
+    void testLengthFieldSplitAcrossReads() throws IOException {
+        write(new byte[] {0x05});
+        readAndDrain();
+        write(new byte[] {0x00, 1, 2, 3});
+        readAndDrain();
+        assertEquals(1, received.size());
+        assertArrayEquals(new byte[] {0x05, 0x00, 1, 2, 3}, received.get(0));
+    }
+
+    @Test
+    void testInvalidLengthDropsBufferedData() throws IOException {
+        write(new byte[] {0x01, 0x00, 1, 2});
+        readAndDrain();
+        assertTrue(received.isEmpty());
+        assertEquals(0, decoder.buffered());
+    }
+
+    @Test
+    void testEndOfStream() throws IOException {
+        pipe.sink().close();
+        assertEquals(-1, decoder.readFrom(pipe.source()));
+    }
+
+    @Test
+    void testWrapAroundKeepsContent() throws IOException {
+        final int packetLen = 10 * 1024 + 22;
+        final int count = 100;
+        final Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < count; i++) {
+                    write(frame(packetLen, i));
+                }
+            } catch (IOException ex) {
+                System.out.println("Write error : " + ex.getMessage());
+            }
+        });
+        writer.start();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (received.size() < count && System.currentTimeMillis() < deadline) {
+            readAndDrain();
+        }
+        assertEquals(count, received.size());
+        for (int i = 0; i < count; i++) {
+            assertArrayEquals(frame(packetLen, i), received.get(i));
+        }
+        assertEquals(count, decoder.getFramesDecoded());
+        assertEquals((long) packetLen * count, decoder.getBytesRead());
+    }
+
+    /**
+     * Reports how many bytes each path copies per received packet for a
+     * stream of 10 KB chunks read 15 KB at a time.
+     */
+    @Test
+    void testBytesCopiedPerPacket() throws IOException {
+        final int packetLen = 10 * 1024 + 22;
+        final int readSize = 15 * 1024;
+        final int count = 200;
+        final ByteBuffer stream = ByteBuffer.allocate(packetLen * count);
+        final PacketView header = new PacketView();
+        for (int i = 0; i < count; i++) {
+            final byte[] packet = frame(packetLen, i);
+            header.wrap(packet).setChunkLength(1);
+            stream.put(packet);
+        }
+        stream.flip();
+
+        // Both paths end in the handler: the packet goes to the reassembler
+        // and its payload is copied out for the subscriber.
+        final Reassembler reassembler = new Reassembler();
+        final PacketView view = new PacketView();
+
+        // SplitPackets path: a 15 KB read copied to an array, concatenated
+        // with the carry over, sliced into a new array per packet and the
+        // rest carried over to the next read.
+        SplitPackets.getSplitPackets().emptyBuffer();
+        long legacyCopied = 0;
+        int legacyPackets = 0;
+        int carry = 0;
+        final ByteBuffer legacyStream = stream.duplicate();
+        while (legacyStream.hasRemaining()) {
+            final byte[] read = new byte[Math.min(readSize, legacyStream.remaining())];
+            legacyStream.get(read);
+            legacyCopied += read.length;
+            if (carry > 0) {
+                // oldData, then combined holding oldData and the read
+                legacyCopied += carry * 2L + read.length;
+            }
+            final List<byte[]> packets = SplitPackets.getSplitPackets().split(new ReceivePacket(null, read));
+            int emitted = 0;
+            for (byte[] p : packets) {
+                legacyCopied += p.length;
+                emitted += p.length;
+                legacyCopied += view.wrap(reassembler.addChunk(p)).copyPayload().length;
+            }
+            legacyPackets += packets.size();
+            carry = carry + read.length - emitted;
+            // the rest put back into the carry buffer
+            legacyCopied += carry;
+        }
+        SplitPackets.getSplitPackets().emptyBuffer();
+
+        // Decoder path: the socket is read straight into the ring.
+        final ByteBuffer decoderStream = stream.duplicate();
+        final Thread writer = new Thread(() -> {
+            try {
+                while (decoderStream.hasRemaining()) {
+                    final ByteBuffer slice = decoderStream.slice();
+                    slice.limit(Math.min(readSize, slice.remaining()));
+                    while (slice.hasRemaining()) {
+                        pipe.sink().write(slice);
+                    }
+                    decoderStream.position(decoderStream.position() + slice.position());
+                }
+            } catch (IOException ex) {
+                System.out.println("Write error : " + ex.getMessage());
+            }
+        });
+        writer.start();
+        final int[] frames = {0};
+        final long[] handlerCopied = {0};
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (frames[0] < count && System.currentTimeMillis() < deadline) {
+            decoder.readFrom(pipe.source());
+            frames[0] += decoder.drain((sender, frame) -> {
+                handlerCopied[0] += reassembler.addChunk(view.wrap(frame), sender, 0).copyPayload().length;
+            });
+        }
+
+        assertEquals(count, legacyPackets);
+        assertEquals(count, frames[0]);
+        final double legacyPerPacket = (double) legacyCopied / count;
+        final double framingPerPacket = (double) decoder.getBytesCopied() / count;
+        final double decoderPerPacket = (double) (decoder.getBytesCopied() + handlerCopied[0]) / count;
+        System.out.println("SplitPackets bytes copied per packet : " + legacyPerPacket);
+        System.out.println("FrameDecoder bytes copied per packet : " + decoderPerPacket);
+        assertTrue(framingPerPacket < packetLen);
+        assertTrue(decoderPerPacket < legacyPerPacket);
+    }
+}
@@ -0,0 +1,169 @@
+package com.swe.networking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.swe.core.RPCinterface.AbstractRPC;
+
+/**
+ * Test class for the batching of messages handed to the frontend.
+ */
+public class FrontendBatcherTest {
+
+    private static final long TICK = 5;
+
+    /**
+     * Records the calls made to the frontend, which return once replied.
+     */
+    private static final class RecordingRPC implements AbstractRPC {
+        private final List<String> methods = new CopyOnWriteArrayList<>();
+        private final List<byte[]> args = new CopyOnWriteArrayList<>();
+        private final List<CompletableFuture<byte[]>> replies = new CopyOnWriteArrayList<>();
+
+        void replyAll() {
+            for (CompletableFuture<byte[]> reply : replies) {
+                reply.complete(new byte[0]);
+            }
+        }
+
+        @Override
+        public void subscribe(final String methodName, final Function<byte[], byte[]> method) {
+        }
+
+        @Override
+        public Thread connect(final int portNumber) throws IOException {
+            return null;
+        }
+
+        @Override
+        public CompletableFuture<byte[]> call(final String methodName, final byte[] data) {
+            methods.add(methodName);
+            args.add(data);
+            final CompletableFuture<byte[]> reply = new CompletableFuture<>();
+            replies.add(reply);
+            return reply;
+        }
+    }
+
+    private final TimingWheel wheel = new TimingWheel(TICK, 64);
+    private final RecordingRPC rpc = new RecordingRPC();
+
+    @AfterEach
+    void tearDown() {
+        wheel.close();
+    }
+
+    private static byte[] plain(final int module, final byte[] data) {
+        return ByteBuffer.allocate(Integer.BYTES + data.length).putInt(module).put(data).array();
+    }
+
+    private static byte[] filled(final int value, final int size) {
+        final byte[] data = new byte[size];
+        Arrays.fill(data, (byte) value);
+        return data;
+    }
+
+    @Test
+    void testDisabledMakesOneCallPerMessage() {
+        final FrontendBatcher batcher = new FrontendBatcher(false, 50, 1024, () -> rpc, wheel);
+        batcher.submit(2, new byte[] {1});
+        batcher.submit(2, new byte[] {2, 3});
+        assertEquals(List.of(FrontendBatcher.CALL_METHOD, FrontendBatcher.CALL_METHOD), rpc.methods);
+        assertArrayEquals(plain(2, new byte[] {1}), rpc.args.get(0));
+        assertArrayEquals(plain(2, new byte[] {2, 3}), rpc.args.get(1));
+        assertEquals(2, batcher.getCalls());
+        assertEquals(2, batcher.getMessages());
+    }
+
+    @Test
+    void testBurstWaitsForTheOutstandingCall() {
+        final FrontendBatcher batcher = new FrontendBatcher(true, 10_000, 1024, () -> rpc, wheel);
+        for (int i = 0; i < 5; i++) {
+            batcher.submit(3, filled(i, 16));
+        }
+        assertEquals(List.of(FrontendBatcher.CALL_METHOD), rpc.methods);
+        assertArrayEquals(plain(3, filled(0, 16)), rpc.args.get(0));
+        rpc.replyAll();
+        assertEquals(List.of(FrontendBatcher.CALL_METHOD, FrontendBatcher.BATCH_METHOD), rpc.methods);
+        final List<byte[]> calls = FrontendBatcher.unbatch(rpc.args.get(1));
+        assertEquals(4, calls.size());
+        for (int i = 1; i < 5; i++) {
+            assertArrayEquals(plain(3, filled(i, 16)), calls.get(i - 1));
+        }
+        assertEquals(2, batcher.getCalls());
+        assertEquals(5, batcher.getMessages());
+        rpc.replyAll();
+        batcher.submit(3, filled(5, 16));
+        assertEquals(3, rpc.methods.size());
+    }
+
+    @Test
+    void testByteBudgetSendsOneBatchInOrder() {
+        final FrontendBatcher batcher = new FrontendBatcher(true, 10_000, 100, () -> rpc, wheel);
+        for (int i = 0; i < 6; i++) {
+            batcher.submit(3, filled(i, 16));
+        }
+        assertEquals(List.of(FrontendBatcher.CALL_METHOD, FrontendBatcher.BATCH_METHOD), rpc.methods);
+        final List<byte[]> calls = FrontendBatcher.unbatch(rpc.args.get(1));
+        assertEquals(5, calls.size());
+        for (int i = 1; i < 6; i++) {
+            assertArrayEquals(plain(3, filled(i, 16)), calls.get(i - 1));
+        }
+        assertEquals(6, batcher.getMessages());
+    }
+
+    @Test
+    void testDelaySendsWaitingMessages() throws InterruptedException {
+        final FrontendBatcher batcher = new FrontendBatcher(true, 20, 1024, () -> rpc, wheel);
+        batcher.submit(4, new byte[] {1});
+        batcher.submit(4, new byte[] {2});
+        batcher.submit(4, new byte[] {3});
+        assertEquals(1, rpc.methods.size());
+        final long deadline = System.currentTimeMillis() + 2000;
+        while (rpc.methods.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(List.of(FrontendBatcher.CALL_METHOD, FrontendBatcher.BATCH_METHOD), rpc.methods);
+        final List<byte[]> calls = FrontendBatcher.unbatch(rpc.args.get(1));
+        assertArrayEquals(plain(4, new byte[] {2}), calls.get(0));
+        assertArrayEquals(plain(4, new byte[] {3}), calls.get(1));
+    }
+
+    @Test
+    void testLoneMessageIsPlainCall() {
+        final FrontendBatcher batcher = new FrontendBatcher(true, 10_000, 1024, () -> rpc, wheel);
+        batcher.submit(5, new byte[] {9});
+        assertEquals(List.of(FrontendBatcher.CALL_METHOD), rpc.methods);
+        assertArrayEquals(plain(5, new byte[] {9}), rpc.args.get(0));
+    }
+
+    @Test
+    void testModulesAreBatchedApart() {
+        final FrontendBatcher batcher = new FrontendBatcher(true, 10_000, 1024, () -> rpc, wheel);
+        batcher.submit(2, new byte[] {1});
+        batcher.submit(7, new byte[] {2});
+        batcher.submit(2, new byte[] {3});
+        batcher.submit(2, new byte[] {4});
+        assertEquals(2, rpc.methods.size());
+        assertArrayEquals(plain(7, new byte[] {2}), rpc.args.get(1));
+        batcher.flushAll();
+        assertEquals(FrontendBatcher.BATCH_METHOD, rpc.methods.get(2));
+        final List<byte[]> canvas = FrontendBatcher.unbatch(rpc.args.get(2));
+        assertEquals(2, canvas.size());
+        assertArrayEquals(plain(2, new byte[] {4}), canvas.get(1));
+        batcher.flushAll();
+        assertEquals(3, rpc.methods.size());
+    }
+}
@@ -0,0 +1,123 @@
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Test class for the link estimator, driving probes and echoes between two
+ * estimators over a simulated link with injected delay, jitter and loss.
+ */
+public class LinkEstimatorTest {
+
+    private static final ClientNode CLIENT = new ClientNode("10.3.0.1", 7000);
+
+    private static final ClientNode SERVER = new ClientNode("10.3.0.2", 7000);
+
+    private static long millis(final double value) {
+        return (long) (value * 1_000_000);
+    }
+
+    /**
+     * Simulated link: the client probes the server every interval, each way
+     * takes half the round trip, and the probes chosen by the loss pattern
+     * never arrive.
+     */
+    private final class Link {
+        private final LinkEstimator client = new LinkEstimator();
+        private final LinkEstimator server = new LinkEstimator();
+        private long now = TimeUnit.SECONDS.toNanos(100);
+        private int probes;
+
+        void run(final long durationMillis, final long intervalMillis, final double rttMillis,
+                final double jitterMillis, final int lossEvery, final long bytesPerProbe) {
+            final long end = now + millis(durationMillis);
+            while (now < end) {
+                client.recordSent(SERVER, bytesPerProbe);
+                final byte[] probe = client.probe(SERVER, now);
+                probes++;
+                double rtt = rttMillis;
+                if (probes % 2 == 0) {
+                    rtt += jitterMillis;
+                } else {
+                    rtt -= jitterMillis;
+                }
+                if (lossEvery == 0 || probes % lossEvery != 0) {
+                    final byte[] echo = server.onAlive(CLIENT, ByteBuffer.wrap(probe), now + millis(rtt / 2));
+                    assertNotNull(echo);
+                    assertNull(client.onAlive(SERVER, ByteBuffer.wrap(echo), now + millis(rtt)));
+                }
+                now += millis(intervalMillis);
+            }
+        }
+
+        LinkEstimator.LinkEstimate estimate() {
+            return client.getEstimate(SERVER, now);
+        }
+    }
+
+    @Test
+    void testConstantDelayAndLossConvergeWithinSeconds() {
+        final Link link = new Link();
+        link.run(5000, 1000, 80, 10, 5, 0);
+        final LinkEstimator.LinkEstimate estimate = link.estimate();
+        System.out.println("after 5 s: " + estimate);
+        assertEquals(80, estimate.rttMillis(), 8);
+        assertTrue(estimate.jitterMillis() > 0 && estimate.jitterMillis() < 30, "jitter " + estimate);
+        assertEquals(0.2, estimate.lossRate(), 0.01);
+        assertEquals(4, estimate.samples());
+    }
+
+    @Test
+    void testStepChangeConvergesWithFastProbes() {
+        final Link link = new Link();
+        link.run(5000, 250, 20, 0, 0, 0);
+        assertEquals(20, link.estimate().rttMillis(), 0.5);
+        assertEquals(0.0, link.estimate().lossRate());
+        link.run(6000, 250, 100, 5, 5, 0);
+        final LinkEstimator.LinkEstimate estimate = link.estimate();
+        System.out.println("6 s after a 20 -> 100 ms step with 20% loss: " + estimate);
+        assertEquals(100, estimate.rttMillis(), 10);
+        assertTrue(estimate.lossRate() > 0.1 && estimate.lossRate() < 0.35, "loss " + estimate);
+    }
+
+    @Test
+    void testUnansweredProbeOnlyLostAfterTimeout() {
+        final LinkEstimator estimator = new LinkEstimator();
+        final long start = TimeUnit.SECONDS.toNanos(1);
+        estimator.probe(SERVER, start);
+        assertEquals(0.0, estimator.getEstimate(SERVER, start + millis(500)).lossRate());
+        assertEquals(1.0, estimator.getEstimate(SERVER, start + millis(1500)).lossRate());
+        assertTrue(Double.isNaN(estimator.getEstimate(SERVER, start + millis(1500)).rttMillis()));
+    }
+
+    @Test
+    void testSendAndReceiveThroughputOverWindow() {
+        final Link link = new Link();
+        // 25 kB per 250 ms probe interval is 100 kB/s
+        link.run(8000, 250, 40, 0, 0, 25_000);
+        final LinkEstimator.LinkEstimate sent = link.estimate();
+        final LinkEstimator.LinkEstimate received = link.server.getEstimate(CLIENT, link.now);
+        System.out.println("send " + sent.sendBytesPerSecond() + " B/s, receive "
+                + received.receiveBytesPerSecond() + " B/s");
+        assertEquals(100_000, sent.sendBytesPerSecond(), 10_000);
+        assertEquals(100_000, received.receiveBytesPerSecond(), 10_000);
+        // the server never probed but learns the round trip time the client measured
+        assertEquals(40, received.rttMillis(), 1);
+    }
+
+    @Test
+    void testPlainAliveIsIgnored() {
+        final LinkEstimator estimator = new LinkEstimator();
+        assertNull(estimator.onAlive(CLIENT, ByteBuffer.allocate(0)));
+        assertNull(estimator.getEstimate(CLIENT));
+    }
+}
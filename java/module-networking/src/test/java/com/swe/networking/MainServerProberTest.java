@@ -0,0 +1,128 @@
+package com.swe.networking;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for the parallel and cached network probe.
+ */
+public class MainServerProberTest {
+
+    private static final int CONNECT_TIMEOUT = 500;
+
+    private final TimingWheel wheel = new TimingWheel(10, 64);
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (AutoCloseable resource : resources) {
+            resource.close();
+        }
+        wheel.close();
+    }
+
+    private InetSocketAddress listening() throws IOException {
+        final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        resources.add(server);
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort());
+    }
+
+    private InetSocketAddress refusing() throws IOException {
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort());
+        }
+    }
+
+    /**
+     * An endpoint dropping connects: a listener that never accepts, whose
+     * accept queue is already full.
+     */
+    private InetSocketAddress blackHole() throws IOException {
+        final ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        resources.add(server);
+        final InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                server.getLocalPort());
+        for (int i = 0; i < 3; i++) {
+            final Socket filler = new Socket();
+            resources.add(filler);
+            try {
+                filler.connect(address, 200);
+            } catch (IOException ex) {
+                break;
+            }
+        }
+        return address;
+    }
+
+    private MainServerProber prober(final List<InetSocketAddress> targets, final long ttl) {
+        final MainServerProber prober = new MainServerProber(targets, CONNECT_TIMEOUT, ttl, 200, wheel);
+        resources.add(prober::close);
+        return prober;
+    }
+
+    @Test
+    void testOneReachableEndpointIsEnough() throws IOException {
+        final MainServerProber prober = prober(List.of(refusing(), blackHole(), listening()), 60_000);
+        final long start = System.nanoTime();
+        assertFalse(prober.isNetworkDown());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < CONNECT_TIMEOUT);
+    }
+
+    @Test
+    void testEveryEndpointRefusingIsDown() throws IOException {
+        final MainServerProber prober = prober(List.of(refusing(), refusing()), 60_000);
+        assertTrue(prober.isNetworkDown());
+    }
+
+    @Test
+    void testBlackHoleDoesNotHoldUpTheCaller() throws Exception {
+        final MainServerProber prober = prober(List.of(blackHole(), blackHole()), 60_000);
+        final long start = System.nanoTime();
+        assertFalse(prober.isNetworkDown());
+        final long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(waited < CONNECT_TIMEOUT, "waited " + waited);
+        assertTrue(prober.probe().get(5, TimeUnit.SECONDS));
+        final long cached = System.nanoTime();
+        assertTrue(prober.isNetworkDown());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cached) < 50);
+    }
+
+    @Test
+    void testAnswerIsCachedUntilItExpires() throws Exception {
+        final MainServerProber prober = prober(List.of(listening()), 100);
+        final CompletableFuture<Boolean> first = prober.probe();
+        assertFalse(first.get(5, TimeUnit.SECONDS));
+        assertSame(first, prober.probe());
+        Thread.sleep(150);
+        final CompletableFuture<Boolean> second = prober.probe();
+        assertNotSame(first, second);
+        assertFalse(second.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testNetworkChangeProbesAgain() throws Exception {
+        final MainServerProber prober = prober(List.of(listening()), 60_000);
+        final CompletableFuture<Boolean> first = prober.probe();
+        assertFalse(first.get(5, TimeUnit.SECONDS));
+        prober.networkChanged();
+        final CompletableFuture<Boolean> second = prober.probe();
+        assertNotSame(first, second);
+        assertEquals(false, second.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -1271,22 +1271,22 @@ public class MainServerTest {
             // Test USE broadcast
             PacketInfo pkt = createPacketInfo(NetworkType.USE.ordinal(), 0, new ClientNode("127.0.0.1", 9220), "Broadcast from main server".getBytes());
             pkt.setBroadcast(1);
-            invokePrivateMethod(mainServer, "handleBroadcast", new Class<?>[]{PacketInfo.class}, new Object[]{pkt});
+            invokePrivateMethod(mainServer, "handleBroadcast", new Class<?>[]{byte[].class}, new Object[]{PacketParser.getPacketParser().createPkt(pkt)});
             Thread.sleep(200);
             // Test OTHERCLUSTER broadcast
             pkt = createPacketInfo(NetworkType.OTHERCLUSTER.ordinal(), 0, mainServerNode, "Broadcast from another cluster".getBytes());
             pkt.setBroadcast(1);
-            invokePrivateMethod(mainServer, "handleBroadcast", new Class<?>[]{PacketInfo.class}, new Object[]{pkt});
+            invokePrivateMethod(mainServer, "handleBroadcast", new Class<?>[]{byte[].class}, new Object[]{PacketParser.getPacketParser().createPkt(pkt)});
             Thread.sleep(200);
             // Test with no other servers
             pkt = createPacketInfo(NetworkType.USE.ordinal(), 0, new ClientNode("127.0.0.1", 9420), "Broadcast with no other servers".getBytes());
             pkt.setBroadcast(1);
-            invokePrivateMethod(mainServer, "handleBroadcast", new Class<?>[]{PacketInfo.class}, new Object[]{pkt});
+            invokePrivateMethod(mainServer, "handleBroadcast", new Class<?>[]{byte[].class}, new Object[]{PacketParser.getPacketParser().createPkt(pkt)});
             Thread.sleep(200);
             // Test OTHERCLUSTER with no clients
             pkt = createPacketInfo(NetworkType.OTHERCLUSTER.ordinal(), 0, mainServerNode, "Broadcast OTHERCLUSTER with no clients".getBytes());
             pkt.setBroadcast(1);
-            invokePrivateMethod(mainServer, "handleBroadcast", new Class<?>[]{PacketInfo.class}, new Object[]{pkt});
+            invokePrivateMethod(mainServer, "handleBroadcast", new Class<?>[]{byte[].class}, new Object[]{PacketParser.getPacketParser().createPkt(pkt)});
             serverBThread.join(2000);
             serverCThread.join(2000);
             clientAThread.join(2000);
@@ -1434,7 +1434,7 @@ public class MainServerTest {
             Thread.sleep(500);
             PacketInfo pkt = createPacketInfo(99, 0, new ClientNode("127.0.0.1", 9300), "Unknown broadcast type".getBytes());
             pkt.setBroadcast(1);
-            invokePrivateMethod(mainServer, "handleBroadcast", new Class<?>[]{PacketInfo.class}, new Object[]{pkt});
+            invokePrivateMethod(mainServer, "handleBroadcast", new Class<?>[]{byte[].class}, new Object[]{PacketParser.getPacketParser().createPkt(pkt)});
         } finally {
             if (mainServer != null) {
                 mainServer.close();
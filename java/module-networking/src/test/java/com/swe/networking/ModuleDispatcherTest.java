@@ -0,0 +1,137 @@
+package com.swe.networking;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for the per module delivery threads.
+ */
+public class ModuleDispatcherTest {
+
+    private static final int SCREEN = ModuleType.SCREENSHARING.ordinal();
+    private static final int CHAT = ModuleType.CHAT.ordinal();
+    private static final int CANVAS = ModuleType.CANVAS.ordinal();
+
+    @Test
+    void testDisabledDeliversOnCaller() {
+        final ModuleDispatcher dispatcher = new ModuleDispatcher(false, 4);
+        final List<String> threads = new ArrayList<>();
+        dispatcher.dispatch(CHAT, () -> threads.add(Thread.currentThread().getName()));
+        assertEquals(List.of(Thread.currentThread().getName()), threads);
+    }
+
+    @Test
+    void testDefaultPolicies() {
+        final ModuleDispatcher dispatcher = new ModuleDispatcher(true, 4);
+        assertEquals(ModuleDispatcher.OverloadPolicy.DROP_OLDEST, dispatcher.getPolicy(SCREEN));
+        assertEquals(ModuleDispatcher.OverloadPolicy.DROP_NEWEST, dispatcher.getPolicy(CHAT));
+        for (ModuleType type : ModuleType.values()) {
+            if (type != ModuleType.SCREENSHARING && type != ModuleType.CHAT) {
+                assertEquals(ModuleDispatcher.OverloadPolicy.BLOCK, dispatcher.getPolicy(type.ordinal()));
+            }
+        }
+    }
+
+    @Test
+    void testSlowModuleDoesNotStallOthers() throws InterruptedException {
+        final ModuleDispatcher dispatcher = new ModuleDispatcher(true, 8);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch canvasDone = new CountDownLatch(100);
+        dispatcher.dispatch(SCREEN, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        for (int i = 0; i < 50; i++) {
+            dispatcher.dispatch(SCREEN, () -> { });
+        }
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 100; i++) {
+            final int n = i;
+            dispatcher.dispatch(CANVAS, () -> {
+                order.add(n);
+                canvasDone.countDown();
+            });
+        }
+        assertTrue(canvasDone.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            assertEquals((int) i, (int) order.get(i));
+        }
+        assertEquals(8, dispatcher.getQueueDepth(SCREEN));
+        assertEquals(42, dispatcher.getDropped(SCREEN));
+        assertEquals(0, dispatcher.getDropped(CANVAS));
+        release.countDown();
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testDropOldestKeepsLatest() throws InterruptedException {
+        final ModuleDispatcher dispatcher = new ModuleDispatcher(true, 2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> delivered = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch done = new CountDownLatch(3);
+        dispatcher.dispatch(SCREEN, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+        for (int i = 0; i < 10; i++) {
+            final int n = i;
+            dispatcher.dispatch(SCREEN, () -> {
+                delivered.add(n);
+                done.countDown();
+            });
+        }
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(8, 9), delivered);
+        assertEquals(8, dispatcher.getDropped(SCREEN));
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testDropNewestAndBlock() throws InterruptedException {
+        final ModuleDispatcher dispatcher = new ModuleDispatcher(true, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Runnable hold = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        dispatcher.dispatch(CHAT, hold);
+        dispatcher.dispatch(CHAT, () -> { });
+        dispatcher.dispatch(CHAT, () -> { });
+        dispatcher.dispatch(CHAT, () -> { });
+        assertEquals(2, dispatcher.getDropped(CHAT));
+
+        dispatcher.dispatch(CANVAS, hold);
+        dispatcher.dispatch(CANVAS, () -> { });
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final Thread producer = new Thread(() -> {
+            dispatcher.dispatch(CANVAS, () -> { });
+            blocked.countDown();
+        });
+        producer.start();
+        assertFalse(blocked.await(200, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        assertEquals(0, dispatcher.getDropped(CANVAS));
+        dispatcher.shutdown();
+    }
+}
@@ -0,0 +1,241 @@
+package com.swe.networking;
+
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Test class for the multicast tree, with an in memory simulation of a
+ * large meeting counting the copies every device uploads per broadcast.
+ */
+public class MulticastTreeTest {
+
+    private static final int FANOUT = 3;
+
+    private List<ClientNode> servers(final int count) {
+        final List<ClientNode> servers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            servers.add(new ClientNode("10.2.0." + (i + 1), 7000));
+        }
+        return servers;
+    }
+
+    private byte[] broadcastPacket(final ClientNode to, final int messageId, final int chunkNum, final byte fill)
+            throws Exception {
+        final PacketInfo info = new PacketInfo();
+        info.setType(NetworkType.USE.ordinal());
+        info.setModule(ModuleType.CHAT.ordinal());
+        info.setConnectionType(NetworkConnectionType.MODULE.ordinal());
+        info.setBroadcast(1);
+        info.setIpAddress(InetAddress.getByName(to.hostName()));
+        info.setPortNum(to.port());
+        info.setMessageId(messageId);
+        info.setChunkNum(chunkNum);
+        info.setChunkLength(1);
+        final byte[] payload = new byte[64];
+        Arrays.fill(payload, fill);
+        info.setPayload(payload);
+        info.setLength(PacketParser.getHeaderSize() + payload.length);
+        return PacketParser.getPacketParser().createPkt(info);
+    }
+
+    @Test
+    void testTreeRelayBitLeavesOtherFieldsIntact() throws Exception {
+        final ClientNode server = new ClientNode("10.2.0.9", 7001);
+        final byte[] relay = MulticastTree.relayCopy(broadcastPacket(new ClientNode("10.2.0.1", 7000), 5, 0,
+                (byte) 1), server);
+        final PacketView view = new PacketView().wrap(relay);
+        assertEquals(1, view.getTreeRelay());
+        assertEquals(1, view.getBroadcast());
+        assertEquals(server, view.getClientNode());
+        final PacketInfo parsed = PacketParser.getPacketParser().parsePacket(relay);
+        assertEquals(NetworkType.OTHERCLUSTER.ordinal(), parsed.getType());
+        assertEquals(NetworkConnectionType.MODULE.ordinal(), parsed.getConnectionType());
+        assertEquals(ModuleType.CHAT.ordinal(), parsed.getModule());
+        assertEquals(1, parsed.getBroadcast());
+        final PacketView local = new PacketView().wrap(MulticastTree.clusterCopy(relay));
+        assertEquals(0, local.getTreeRelay());
+        assertEquals(0, local.getBroadcast());
+        assertEquals(NetworkType.USE.ordinal(), local.getType());
+    }
+
+    @Test
+    void testHeapLayoutBoundsFanout() {
+        final MulticastTree tree = new MulticastTree(FANOUT);
+        final List<ClientNode> servers = servers(20);
+        final ClientNode root = servers.get(0);
+        assertEquals(servers.subList(1, 4), tree.forwardTargets(servers, root, root));
+        // node 1 has parent 0 and children 4, 5, 6
+        final List<ClientNode> all = tree.forwardTargets(servers, servers.get(1), servers.get(1));
+        assertEquals(List.of(servers.get(0), servers.get(4), servers.get(5), servers.get(6)), all);
+        // from the root the parent link is the way back
+        assertEquals(servers.subList(4, 7), tree.forwardTargets(servers, servers.get(1), root));
+        // from a grandchild the child link towards it is the way back
+        assertEquals(List.of(servers.get(0), servers.get(5), servers.get(6)),
+                tree.forwardTargets(servers, servers.get(1), servers.get(13)));
+        assertTrue(tree.forwardTargets(servers, new ClientNode("10.9.9.9", 1), root).isEmpty());
+    }
+
+    @Test
+    void testLayoutOnlyRebuiltWhenServersChange() {
+        final MulticastTree tree = new MulticastTree(FANOUT);
+        final List<ClientNode> servers = servers(10);
+        tree.forwardTargets(servers, servers.get(0), servers.get(0));
+        tree.forwardTargets(new ArrayList<>(servers), servers.get(0), servers.get(0));
+        assertEquals(1, tree.getRebuilds());
+        final List<ClientNode> before = new ArrayList<>();
+        for (ClientNode server : servers) {
+            before.addAll(tree.forwardTargets(servers, server, server));
+        }
+        final List<ClientNode> grown = new ArrayList<>(servers);
+        grown.add(new ClientNode("10.2.1.1", 7000));
+        final List<ClientNode> after = new ArrayList<>();
+        for (ClientNode server : servers) {
+            after.addAll(tree.forwardTargets(grown, server, server));
+        }
+        assertEquals(2, tree.getRebuilds());
+        // a joining server only adds the link to its parent
+        assertEquals(before.size() + 1, after.size());
+        assertTrue(after.containsAll(before));
+    }
+
+    @Test
+    void testDuplicatesDroppedPerOriginMessageAndPayload() throws Exception {
+        final MulticastTree tree = new MulticastTree(FANOUT);
+        final ClientNode origin = new ClientNode("10.2.0.1", 7000);
+        final ClientNode other = new ClientNode("10.2.0.2", 7000);
+        final PacketView view = new PacketView();
+        assertTrue(tree.firstSeen(origin, view.wrap(broadcastPacket(origin, 1, 0, (byte) 1))));
+        assertFalse(tree.firstSeen(origin, view.wrap(broadcastPacket(origin, 1, 0, (byte) 1))));
+        assertTrue(tree.firstSeen(origin, view.wrap(broadcastPacket(origin, 1, 1, (byte) 1))));
+        assertTrue(tree.firstSeen(other, view.wrap(broadcastPacket(origin, 1, 0, (byte) 1))));
+        // a second client of the same cluster reusing the id
+        assertTrue(tree.firstSeen(origin, view.wrap(broadcastPacket(origin, 1, 0, (byte) 2))));
+        assertEquals(1, tree.getDuplicatesDropped());
+    }
+
+    /**
+     * Simulates a meeting of servers with member clients, every server with
+     * its own tree, relaying real packets through an in memory network.
+     * Checks every device receives each broadcast once and counts the
+     * copies uploaded per device against unicasting to every server.
+     */
+    @Test
+    void testSimulatedMeetingUploadCopies() throws Exception {
+        final int serverCount = 60;
+        final int membersPerCluster = 5;
+        final List<ClientNode> servers = servers(serverCount);
+        final Map<ClientNode, MulticastTree> trees = new HashMap<>();
+        for (ClientNode server : servers) {
+            trees.put(server, new MulticastTree(FANOUT));
+        }
+        int worstTree = 0;
+        int worstUnicast = 0;
+        long totalTree = 0;
+        for (int origin = 0; origin < serverCount; origin++) {
+            final ClientNode entry = servers.get(origin);
+            final Map<ClientNode, Integer> uploads = new HashMap<>();
+            final Map<ClientNode, Integer> received = new HashMap<>();
+            final Queue<Object[]> wire = new ArrayDeque<>();
+            // the entry server relays the broadcast of one of its clients
+            final byte[] relay = MulticastTree.relayCopy(broadcastPacket(entry, origin, 0, (byte) origin), entry);
+            trees.get(entry).firstSeen(entry, new PacketView().wrap(relay));
+            for (ClientNode next : trees.get(entry).forwardTargets(servers, entry, entry)) {
+                wire.add(new Object[] {next, relay});
+                uploads.merge(entry, 1, Integer::sum);
+            }
+            while (!wire.isEmpty()) {
+                final Object[] hop = wire.poll();
+                final ClientNode at = (ClientNode) hop[0];
+                final byte[] packet = (byte[]) hop[1];
+                final PacketView view = new PacketView().wrap(packet);
+                final ClientNode from = view.getClientNode();
+                if (from.equals(at) || !trees.get(at).firstSeen(from, view)) {
+                    continue;
+                }
+                received.merge(at, 1, Integer::sum);
+                for (ClientNode next : trees.get(at).forwardTargets(servers, at, from)) {
+                    wire.add(new Object[] {next, packet});
+                    uploads.merge(at, 1, Integer::sum);
+                }
+                // the copies to the members of its cluster
+                uploads.merge(at, membersPerCluster, Integer::sum);
+            }
+            assertEquals(serverCount - 1, received.size());
+            for (int count : received.values()) {
+                assertEquals(1, count);
+            }
+            for (int count : uploads.values()) {
+                worstTree = Math.max(worstTree, count);
+                totalTree += count;
+            }
+            // unicast: the entry server sends to every other server, each
+            // of which sends to its members
+            worstUnicast = Math.max(worstUnicast, Math.max(serverCount - 1, membersPerCluster));
+        }
+        long duplicates = 0;
+        for (MulticastTree tree : trees.values()) {
+            duplicates += tree.getDuplicatesDropped();
+        }
+        System.out.println(serverCount * (membersPerCluster + 1) + " devices: most uploads per broadcast "
+                + worstUnicast + " unicast vs " + worstTree + " tree, mean tree uploads per server "
+                + (double) totalTree / serverCount / serverCount);
+        assertEquals(0, duplicates);
+        assertTrue(worstTree <= FANOUT + 1 + membersPerCluster);
+        assertTrue(worstTree < worstUnicast);
+    }
+
+    @Test
+    void testStaleTreeOnOneServerStillDeliversOnce() throws Exception {
+        final List<ClientNode> servers = servers(30);
+        final List<ClientNode> stale = new ArrayList<>(servers);
+        stale.remove(7);
+        final Map<ClientNode, MulticastTree> trees = new HashMap<>();
+        for (ClientNode server : servers) {
+            trees.put(server, new MulticastTree(FANOUT));
+        }
+        final ClientNode entry = servers.get(12);
+        final Map<ClientNode, Integer> received = new HashMap<>();
+        final Queue<Object[]> wire = new ArrayDeque<>();
+        final byte[] relay = MulticastTree.relayCopy(broadcastPacket(entry, 1, 0, (byte) 3), entry);
+        trees.get(entry).firstSeen(entry, new PacketView().wrap(relay));
+        for (ClientNode next : trees.get(entry).forwardTargets(servers, entry, entry)) {
+            wire.add(new Object[] {next, relay});
+        }
+        while (!wire.isEmpty()) {
+            final Object[] hop = wire.poll();
+            final ClientNode at = (ClientNode) hop[0];
+            final byte[] packet = (byte[]) hop[1];
+            final PacketView view = new PacketView().wrap(packet);
+            final ClientNode from = view.getClientNode();
+            if (from.equals(at) || !trees.get(at).firstSeen(from, view)) {
+                continue;
+            }
+            received.merge(at, 1, Integer::sum);
+            // half of the servers have not yet seen the removal of server 7
+            List<ClientNode> known = servers;
+            if (servers.indexOf(at) % 2 == 0) {
+                known = stale;
+            }
+            for (ClientNode next : trees.get(at).forwardTargets(known, at, from)) {
+                wire.add(new Object[] {next, packet});
+            }
+        }
+        for (int count : received.values()) {
+            assertEquals(1, count);
+        }
+    }
+}
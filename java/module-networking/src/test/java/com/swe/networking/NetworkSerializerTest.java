@@ -113,4 +113,73 @@ public class NetworkSerializerTest {
         );
         Assertions.assertTrue(exception.getMessage().contains("Negative host length: -1"));
     }
+
+    @org.junit.jupiter.api.Test
+    public void serializeLargeNetworkStructureWithEpoch() {
+        final NetworkSerializer serializer = NetworkSerializer.getNetworkSerializer();
+        final List<List<ClientNode>> clusters = new ArrayList<>();
+        final List<ClientNode> servers = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            final List<ClientNode> cluster = new ArrayList<>();
+            for (int j = 0; j < 10; j++) {
+                cluster.add(new ClientNode("192.168.100." + (i * 10 + j) % 250, 40000 + i * 10 + j));
+            }
+            clusters.add(cluster);
+            servers.add(cluster.get(0));
+        }
+        final NetworkStructure network = new NetworkStructure(clusters, servers);
+        final byte[] data = serializer.serializeNetworkStructure(network, 12345L);
+        Assertions.assertTrue(data.length > 2000);
+        assertEquals(network, serializer.deserializeNetworkStructure(data));
+        assertEquals(12345L, serializer.deserializeNetworkEpoch(data));
+        assertEquals(NetworkSerializer.UNVERSIONED,
+                serializer.deserializeNetworkEpoch(serializer.serializeNetworkStructure(network)));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void serializeTopologyDeltaKeepsPlainRecordReadable() {
+        final NetworkSerializer serializer = NetworkSerializer.getNetworkSerializer();
+        final ClientNetworkRecord record = new ClientNetworkRecord(new ClientNode("10.0.0.7", 6001), 3);
+        final byte[] delta = serializer.serializeTopologyDelta(record, 77L);
+        assertEquals(record, serializer.deserializeClientNetworkRecord(delta));
+        assertEquals(77L, serializer.deserializeDeltaEpoch(delta));
+        final byte[] plain = serializer.serializeClientNetworkRecord(record);
+        assertEquals(NetworkSerializer.UNVERSIONED, serializer.deserializeDeltaEpoch(plain));
+    }
+
+    /**
+     * Counts the control bytes every existing peer receives for each join of
+     * a 100 client meeting, with a full structure per join against a delta.
+     */
+    @org.junit.jupiter.api.Test
+    public void controlBytesPerJoinStayConstant() {
+        final NetworkSerializer serializer = NetworkSerializer.getNetworkSerializer();
+        final List<List<ClientNode>> clusters = new ArrayList<>();
+        final List<ClientNode> servers = new ArrayList<>();
+        long fullBytes = 0;
+        long deltaBytes = 0;
+        int firstDelta = -1;
+        int lastFull = 0;
+        for (int i = 0; i < 100; i++) {
+            final ClientNode joined = new ClientNode("10.20.30." + (100 + i), 7000 + i);
+            if (i % 10 == 0) {
+                clusters.add(new ArrayList<>());
+                servers.add(joined);
+            }
+            clusters.get(clusters.size() - 1).add(joined);
+            final int peers = i;
+            lastFull = serializer.serializeNetworkStructure(new NetworkStructure(clusters, servers), i + 1).length;
+            final int delta = serializer.serializeTopologyDelta(
+                    new ClientNetworkRecord(joined, clusters.size() - 1), i + 1).length;
+            if (firstDelta < 0) {
+                firstDelta = delta;
+            }
+            assertEquals(firstDelta, delta);
+            fullBytes += (long) lastFull * peers;
+            deltaBytes += (long) delta * peers;
+        }
+        System.out.println("100 joins: full structure " + fullBytes + " bytes, deltas " + deltaBytes
+                + " bytes to existing peers (last structure " + lastFull + " bytes, delta " + firstDelta + ")");
+        Assertions.assertTrue(deltaBytes * 20 < fullBytes);
+    }
 }
@@ -0,0 +1,171 @@
+package com.swe.networking;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for the payload compression and its header flag.
+ */
+public class PacketCompressorTest {
+
+    private final PacketCompressor compressor = new PacketCompressor(true, PacketCompressor.DEFAULT_THRESHOLD);
+
+    private static byte[] canvasJson(final int points) {
+        final StringBuilder json = new StringBuilder("{\"Action\":\"CREATE\",\"ShapeId\":\"a1b2c3d4\","
+                + "\"Type\":\"FREEHAND\",\"Points\":[");
+        final Random random = new Random(points);
+        for (int i = 0; i < points; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"X\":").append(300 + random.nextInt(50)).append(",\"Y\":")
+                    .append(200 + random.nextInt(50)).append('}');
+        }
+        json.append("],\"Color\":\"#FF000000\",\"Thickness\":2,\"CreatedBy\":\"user_3\","
+                + "\"LastModifiedBy\":\"user_3\",\"IsDeleted\":false}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private PacketInfo sampleInfo(final byte[] payload) throws UnknownHostException {
+        final PacketInfo info = new PacketInfo();
+        info.setLength(PacketParser.getHeaderSize() + payload.length);
+        info.setType(NetworkType.USE.ordinal());
+        info.setPriority(2);
+        info.setModule(ModuleType.CANVAS.ordinal());
+        info.setConnectionType(NetworkConnectionType.MODULE.ordinal());
+        info.setBroadcast(1);
+        info.setIpAddress(InetAddress.getByName("10.0.0.4"));
+        info.setPortNum(8000);
+        info.setMessageId(11);
+        info.setChunkNum(0);
+        info.setChunkLength(1);
+        info.setPayload(payload);
+        return info;
+    }
+
+    @Test
+    void testCanvasJsonRoundTrip() {
+        final byte[] raw = canvasJson(40);
+        final byte[] packed = compressor.compress(raw);
+        assertNotNull(packed);
+        assertTrue(packed.length < raw.length / 2);
+        assertArrayEquals(raw, compressor.decompress(ByteBuffer.wrap(packed)));
+        assertEquals(raw.length, compressor.getRawBytes());
+        assertEquals(packed.length, compressor.getWireBytes());
+    }
+
+    @Test
+    void testLongRunRoundTrip() {
+        final byte[] raw = new byte[5000];
+        Arrays.fill(raw, (byte) 'a');
+        raw[2500] = 'b';
+        final byte[] packed = compressor.compress(raw);
+        assertNotNull(packed);
+        assertTrue(packed.length < 100);
+        assertArrayEquals(raw, compressor.decompress(ByteBuffer.wrap(packed)));
+    }
+
+    @Test
+    void testRandomTextRoundTrip() {
+        final Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            final byte[] raw = new byte[PacketCompressor.DEFAULT_THRESHOLD + random.nextInt(4000)];
+            for (int i = 0; i < raw.length; i++) {
+                raw[i] = (byte) ('a' + random.nextInt(3));
+            }
+            final byte[] packed = compressor.compress(raw);
+            assertNotNull(packed);
+            assertArrayEquals(raw, compressor.decompress(ByteBuffer.wrap(packed)));
+        }
+    }
+
+    @Test
+    void testSkipsSmallDisabledAndIncompressible() {
+        assertNull(compressor.compress(new byte[PacketCompressor.DEFAULT_THRESHOLD - 1]));
+        assertNull(new PacketCompressor(false, 0).compress(canvasJson(40)));
+        final byte[] noise = new byte[1000];
+        new Random(3).nextBytes(noise);
+        assertNull(compressor.compress(noise));
+        assertEquals(1, compressor.getIncompressible());
+        assertEquals(0, compressor.getRawBytes());
+    }
+
+    @Test
+    void testCorruptPayloadIsRejected() {
+        final byte[] packed = compressor.compress(canvasJson(20));
+        assertNotNull(packed);
+        assertNull(compressor.decompress(ByteBuffer.wrap(Arrays.copyOf(packed, packed.length - 3))));
+        final byte[] badLength = packed.clone();
+        ByteBuffer.wrap(badLength).putInt(-1);
+        assertNull(compressor.decompress(ByteBuffer.wrap(badLength)));
+        final byte[] longer = packed.clone();
+        ByteBuffer.wrap(longer).putInt(ByteBuffer.wrap(packed).getInt() + 1);
+        assertNull(compressor.decompress(ByteBuffer.wrap(longer)));
+        assertNull(compressor.decompress(ByteBuffer.wrap(new byte[2])));
+    }
+
+    @Test
+    void testClaimedLengthBoundedByCodecRatio() {
+        final com.sun.management.ThreadMXBean mx =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final byte[] huge = new byte[8];
+        ByteBuffer.wrap(huge).putInt((int) Reassembler.DEFAULT_MAX_BYTES);
+        final long before = mx.getCurrentThreadAllocatedBytes();
+        assertNull(compressor.decompress(ByteBuffer.wrap(huge)));
+        final long allocated = mx.getCurrentThreadAllocatedBytes() - before;
+        assertTrue(allocated < 1024 * 1024, "allocated " + allocated);
+        final byte[] zeros = new byte[1024 * 1024];
+        final byte[] packed = compressor.compress(zeros);
+        assertNotNull(packed);
+        assertArrayEquals(zeros, compressor.decompress(ByteBuffer.wrap(packed)));
+    }
+
+    @Test
+    void testFlagRoundTripsThroughHeader() throws UnknownHostException {
+        final PacketParser parser = PacketParser.getPacketParser();
+        final byte[] raw = canvasJson(30);
+        final byte[] packed = compressor.compress(raw);
+        final PacketInfo info = sampleInfo(packed);
+        info.setCompressed(1);
+        final byte[] pkt = parser.createPkt(info);
+
+        final PacketInfo parsed = parser.parsePacket(pkt);
+        assertEquals(1, parsed.getCompressed());
+        assertEquals(1, parsed.getBroadcast());
+        assertEquals(NetworkConnectionType.MODULE.ordinal(), parsed.getConnectionType());
+        assertArrayEquals(raw, compressor.payloadOf(parsed));
+
+        final PacketView view = new PacketView().wrap(pkt);
+        assertEquals(1, view.getCompressed());
+        view.setTreeRelay(1);
+        assertEquals(1, view.getCompressed());
+        view.setCompressed(0);
+        assertEquals(0, view.getCompressed());
+        assertEquals(1, view.getTreeRelay());
+        assertEquals(1, view.getBroadcast());
+        assertEquals(NetworkConnectionType.MODULE.ordinal(), view.getConnectionType());
+        view.setCompressed(1);
+        assertArrayEquals(raw, compressor.payloadOf(view));
+    }
+
+    @Test
+    void testUncompressedPayloadPassesThrough() throws UnknownHostException {
+        final byte[] raw = "plain".getBytes(StandardCharsets.UTF_8);
+        final byte[] pkt = PacketParser.getPacketParser().createPkt(sampleInfo(raw));
+        assertArrayEquals(raw, compressor.payloadOf(new PacketView().wrap(pkt)));
+        assertArrayEquals(raw, compressor.payloadOf(PacketParser.getPacketParser().parsePacket(pkt)));
+    }
+}
@@ -0,0 +1,212 @@
+package com.swe.networking;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Vector;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Test class for the flyweight packet view.
+ */
+public class PacketViewTest {
+
+    private final PacketParser parser = PacketParser.getPacketParser();
+
+    private PacketInfo sampleInfo(final byte[] payload) throws UnknownHostException {
+        final PacketInfo info = new PacketInfo();
+        info.setLength(PacketParser.getHeaderSize() + payload.length);
+        info.setType(NetworkType.OTHERCLUSTER.ordinal());
+        info.setPriority(5);
+        info.setModule(ModuleType.CHAT.ordinal());
+        info.setConnectionType(NetworkConnectionType.MODULE.ordinal());
+        info.setBroadcast(1);
+        info.setIpAddress(InetAddress.getByName("192.168.200.7"));
+        info.setPortNum(54321);
+        info.setMessageId(-17);
+        info.setChunkNum(3);
+        info.setChunkLength(9);
+        info.setPayload(payload);
+        return info;
+    }
+
+    @Test
+    void testFieldsMatchParser() throws UnknownHostException {
+        final byte[] pkt = parser.createPkt(sampleInfo("hello view".getBytes()));
+        final PacketInfo parsed = parser.parsePacket(pkt);
+        final PacketView view = new PacketView().wrap(pkt);
+        assertEquals(parsed.getLength(), view.getLength());
+        assertEquals(parsed.getType(), view.getType());
+        assertEquals(parsed.getPriority(), view.getPriority());
+        assertEquals(parsed.getModule(), view.getModule());
+        assertEquals(parsed.getConnectionType(), view.getConnectionType());
+        assertEquals(parsed.getBroadcast(), view.getBroadcast());
+        assertEquals(parsed.getIpAddress().getHostAddress(), view.getHostAddress());
+        assertEquals(parsed.getPortNum(), view.getPortNum());
+        assertEquals(parsed.getMessageId(), view.getMessageId());
+        assertEquals(parsed.getChunkNum(), view.getChunkNum());
+        assertEquals(parsed.getChunkLength(), view.getChunkLength());
+        assertArrayEquals(parsed.getPayload(), view.copyPayload());
+        assertEquals(new ClientNode("192.168.200.7", 54321), view.getClientNode());
+    }
+
+    @Test
+    void testEveryModuleAndPriority() throws UnknownHostException {
+        final PacketView view = new PacketView();
+        for (ModuleType module : ModuleType.values()) {
+            for (int priority = 0; priority < 8; priority++) {
+                final PacketInfo info = sampleInfo(new byte[0]);
+                info.setModule(module.ordinal());
+                info.setPriority(priority);
+                view.wrap(parser.createPkt(info));
+                assertEquals(module.ordinal(), view.getModule());
+                assertEquals(priority, view.getPriority());
+            }
+        }
+    }
+
+    @Test
+    void testWrapAtOffsetAndDirectBuffer() throws UnknownHostException {
+        final byte[] pkt = parser.createPkt(sampleInfo(new byte[] {1, 2, 3}));
+        final byte[] padded = new byte[pkt.length + 10];
+        System.arraycopy(pkt, 0, padded, 5, pkt.length);
+        final PacketView view = new PacketView().wrap(padded, 5, pkt.length);
+        assertEquals(9, view.getChunkLength());
+        assertArrayEquals(new byte[] {1, 2, 3}, view.copyPayload());
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(pkt.length + 4);
+        direct.position(4);
+        direct.put(pkt);
+        direct.position(4);
+        view.wrap(direct);
+        assertEquals(54321, view.getPortNum());
+        assertEquals(-17, view.getMessageId());
+        assertEquals(3, view.getPayloadLength());
+        assertEquals(2, view.payload().get(1));
+        assertEquals(4, direct.position());
+    }
+
+    @Test
+    void testInPlaceSetters() throws UnknownHostException {
+        final byte[] pkt = parser.createPkt(sampleInfo("abc".getBytes()));
+        final PacketView view = new PacketView().wrap(pkt);
+        view.setType(NetworkType.USE.ordinal());
+        view.setBroadcast(0);
+        view.setChunkNum(0);
+        view.setChunkLength(1);
+        final PacketInfo parsed = parser.parsePacket(pkt);
+        assertEquals(NetworkType.USE.ordinal(), parsed.getType());
+        assertEquals(0, parsed.getBroadcast());
+        assertEquals(0, parsed.getChunkNum());
+        assertEquals(1, parsed.getChunkLength());
+        assertEquals(5, parsed.getPriority());
+        assertEquals(ModuleType.CHAT.ordinal(), parsed.getModule());
+        assertEquals(NetworkConnectionType.MODULE.ordinal(), parsed.getConnectionType());
+    }
+
+    @Test
+    void testLatestFlagIsItsOwnBit() throws UnknownHostException {
+        final PacketInfo info = sampleInfo("abc".getBytes());
+        info.setCompressed(1);
+        info.setLatest(1);
+        final byte[] pkt = parser.createPkt(info);
+        final PacketView view = new PacketView().wrap(pkt);
+        assertEquals(1, view.getLatest());
+        assertEquals(1, view.getCompressed());
+        assertEquals(1, parser.parsePacket(pkt).getLatest());
+        info.setLatest(0);
+        final byte[] plain = parser.createPkt(info);
+        view.wrap(plain);
+        assertEquals(0, view.getLatest());
+        assertEquals(1, view.getCompressed());
+        assertEquals(1, view.getBroadcast());
+        assertEquals(0, parser.parsePacket(plain).getLatest());
+    }
+
+    @Test
+    void testLatestCarriesOriginAndStream() throws UnknownHostException {
+        final byte[] payload = "frame".getBytes();
+        final PacketInfo info = sampleInfo(payload);
+        info.setLatest(1);
+        info.setOriginAddress(InetAddress.getByName("10.1.2.3"));
+        info.setOriginPort(40001);
+        info.setStream(65000);
+        info.setLength(PacketParser.getHeaderSize(info) + payload.length);
+        final byte[] pkt = parser.createPkt(info);
+        assertEquals(PacketParser.getHeaderSize() + 8 + payload.length, pkt.length);
+        final PacketView view = new PacketView().wrap(pkt);
+        assertEquals(PacketParser.getHeaderSize(info), view.getHeaderLength());
+        assertEquals("10.1.2.3", PacketView.ipToString(view.getOriginIpAddress()));
+        assertEquals(40001, view.getOriginPortNum());
+        assertEquals(65000, view.getStream());
+        assertEquals(pkt.length, view.getLength());
+        assertArrayEquals(payload, view.copyPayload());
+        final PacketInfo parsed = parser.parsePacket(pkt);
+        assertEquals("10.1.2.3", parsed.getOriginAddress().getHostAddress());
+        assertEquals(40001, parsed.getOriginPort());
+        assertEquals(65000, parsed.getStream());
+        assertArrayEquals(payload, parsed.getPayload());
+        assertArrayEquals(pkt, parser.createPkt(parsed));
+        assertThrows(IllegalArgumentException.class, () -> view.wrap(pkt, 0, PacketParser.getHeaderSize() + 4));
+    }
+
+    @Test
+    void testChunksCarryOrigin() throws UnknownHostException {
+        final byte[] payload = "part".getBytes();
+        final PacketInfo info = sampleInfo(payload);
+        info.setChunkLength(3);
+        info.setOriginAddress(InetAddress.getByName("10.1.2.4"));
+        info.setOriginPort(40002);
+        info.setLength(PacketParser.getHeaderSize(info) + payload.length);
+        final byte[] pkt = parser.createPkt(info);
+        assertEquals(PacketParser.getHeaderSize() + 8 + payload.length, pkt.length);
+        final PacketView view = new PacketView().wrap(pkt);
+        assertEquals(0, view.getLatest());
+        assertEquals("10.1.2.4", PacketView.ipToString(view.getOriginIpAddress()));
+        assertEquals(40002, view.getOriginPortNum());
+        assertEquals(0, view.getStream());
+        assertEquals(PacketParser.getHeaderSize(), view.getMergedHeaderLength());
+        assertArrayEquals(payload, view.copyPayload());
+        final PacketInfo parsed = parser.parsePacket(pkt);
+        assertEquals("10.1.2.4", parsed.getOriginAddress().getHostAddress());
+        assertArrayEquals(payload, parsed.getPayload());
+        assertArrayEquals(pkt, parser.createPkt(parsed));
+    }
+
+    @Test
+    void testShortPacketRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new PacketView().wrap(new byte[5]));
+    }
+
+    @Test
+    void testChunkManagerReassemblesOutOfOrder() throws UnknownHostException {
+        final ChunkManager chunkManager = ChunkManager.getChunkManager(4);
+        final String message = "Reassembled through the packet view";
+        final PacketInfo info = sampleInfo(message.getBytes());
+        final Vector<byte[]> chunks = chunkManager.chunk(info, 4);
+        Collections.reverse(chunks);
+        byte[] merged = null;
+        for (int i = 0; i < chunks.size(); i++) {
+            merged = chunkManager.addChunk(chunks.get(i));
+            if (i < chunks.size() - 1) {
+                assertNull(merged);
+            }
+        }
+        assertNotNull(merged);
+        final PacketInfo parsed = parser.parsePacket(merged);
+        assertEquals(message, new String(parsed.getPayload()));
+        assertEquals(1, parsed.getChunkLength());
+        assertEquals(0, parsed.getChunkNum());
+        assertEquals(ModuleType.CHAT.ordinal(), parsed.getModule());
+    }
+}
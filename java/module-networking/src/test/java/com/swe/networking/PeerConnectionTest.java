@@ -0,0 +1,155 @@
+package com.swe.networking;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Test class for the outbound queue of a connection.
+ */
+public class PeerConnectionTest {
+
+    /**
+     * A packet larger than the socket buffers, so the queue behind it stays.
+     */
+    private static final int FILLER_BYTES = 32 * 1024 * 1024;
+
+    private final ClientNode peer = new ClientNode("127.0.0.1", 0);
+
+    private ServerSocketChannel server;
+
+    private SocketChannel channel;
+
+    private SocketChannel accepted;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        channel = SocketChannel.open(server.getLocalAddress());
+        channel.configureBlocking(false);
+        accepted = server.accept();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        channel.close();
+        accepted.close();
+        server.close();
+    }
+
+    private PeerConnection stalled(final int packetLimit) throws IOException {
+        final PeerConnection connection = new PeerConnection(peer, channel, packetLimit, Long.MAX_VALUE);
+        assertTrue(connection.enqueue(ByteBuffer.allocate(FILLER_BYTES)));
+        assertTrue(connection.hasPending());
+        return connection;
+    }
+
+    private Vector<byte[]> chunks(final int count) throws UnknownHostException {
+        final PacketInfo info = new PacketInfo();
+        info.setModule(ModuleType.CHAT.ordinal());
+        info.setConnectionType(NetworkConnectionType.MODULE.ordinal());
+        info.setIpAddress(InetAddress.getByName("10.0.0.1"));
+        info.setPortNum(8000);
+        info.setPayload(new byte[count * 100]);
+        return ChunkManager.getChunkManager(100).chunk(info, 100);
+    }
+
+    private byte[] chunk(final int originPort, final int messageId, final int chunkNum, final int chunkLength)
+            throws UnknownHostException {
+        final PacketInfo info = new PacketInfo();
+        info.setModule(ModuleType.CHAT.ordinal());
+        info.setConnectionType(NetworkConnectionType.MODULE.ordinal());
+        info.setIpAddress(InetAddress.getByName("10.0.0.1"));
+        info.setPortNum(8000);
+        info.setOriginAddress(InetAddress.getByName("10.0.0.2"));
+        info.setOriginPort(originPort);
+        info.setMessageId(messageId);
+        info.setChunkNum(chunkNum);
+        info.setChunkLength(chunkLength);
+        info.setPayload(new byte[100]);
+        info.setLength(PacketParser.getHeaderSize(info) + 100);
+        return PacketParser.getPacketParser().createPkt(info);
+    }
+
+    private ByteBuffer[] gathered(final byte[] packet) {
+        final int headerSize = new PacketView().wrap(packet).getHeaderLength();
+        return new ByteBuffer[] {
+            ByteBuffer.wrap(packet, 0, headerSize),
+            ByteBuffer.wrap(packet, headerSize, packet.length - headerSize),
+        };
+    }
+
+    @Test
+    void testGatheredPacketCountsOnce() throws IOException {
+        final PeerConnection connection = stalled(5);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(connection.enqueue(new ByteBuffer[] {ByteBuffer.allocate(30), ByteBuffer.allocate(70)}));
+        }
+        assertEquals(5, connection.getQueueDepth());
+        assertFalse(connection.enqueue(ByteBuffer.allocate(100)));
+        assertEquals(1, connection.getDroppedPackets());
+    }
+
+    @Test
+    void testRestOfMessageDroppedAfterChunkDropped() throws IOException {
+        final PeerConnection connection = stalled(3);
+        final Vector<byte[]> message = chunks(4);
+        final Vector<byte[]> next = chunks(2);
+        assertTrue(connection.enqueue(gathered(message.get(0))));
+        assertTrue(connection.enqueue(gathered(message.get(1))));
+        assertFalse(connection.enqueue(gathered(message.get(2))));
+        connection.clear();
+        assertTrue(connection.enqueue(ByteBuffer.allocate(FILLER_BYTES)));
+        assertFalse(connection.enqueue(gathered(message.get(3))));
+        assertTrue(connection.enqueue(gathered(next.get(0))));
+        assertTrue(connection.enqueue(gathered(next.get(1))));
+        assertEquals(2, connection.getDroppedPackets());
+        assertEquals(3, connection.getQueueDepth());
+    }
+
+    @Test
+    void testSeveralMessagesDroppedAtOnce() throws IOException {
+        final PeerConnection connection = stalled(3);
+        final Vector<byte[]> first = chunks(3);
+        final Vector<byte[]> second = chunks(3);
+        assertTrue(connection.enqueue(gathered(first.get(0))));
+        assertTrue(connection.enqueue(gathered(second.get(0))));
+        assertFalse(connection.enqueue(gathered(first.get(1))));
+        assertFalse(connection.enqueue(gathered(second.get(1))));
+        connection.clear();
+        assertFalse(connection.enqueue(gathered(first.get(2))));
+        assertFalse(connection.enqueue(gathered(second.get(2))));
+        assertEquals(4, connection.getDroppedPackets());
+        assertEquals(0, connection.getQueueDepth());
+    }
+
+    @Test
+    void testOriginsOfOneMessageIdKeptApart() throws IOException {
+        final PeerConnection connection = stalled(3);
+        assertTrue(connection.enqueue(ByteBuffer.allocate(100)));
+        assertTrue(connection.enqueue(ByteBuffer.allocate(100)));
+        assertFalse(connection.enqueue(gathered(chunk(6000, 9, 0, 2))));
+        connection.clear();
+        assertTrue(connection.enqueue(ByteBuffer.allocate(FILLER_BYTES)));
+        assertTrue(connection.enqueue(gathered(chunk(6001, 9, 0, 2))));
+        assertFalse(connection.enqueue(gathered(chunk(6000, 9, 1, 2))));
+        assertTrue(connection.enqueue(gathered(chunk(6001, 9, 1, 2))));
+        assertEquals(2, connection.getDroppedPackets());
+        assertEquals(3, connection.getQueueDepth());
+    }
+}
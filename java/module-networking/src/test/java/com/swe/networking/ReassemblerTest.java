@@ -0,0 +1,445 @@
+package com.swe.networking;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Test class for the bounded reassembly engine.
+ */
+public class ReassemblerTest {
+
+    private final PacketParser parser = PacketParser.getPacketParser();
+
+    private final ChunkManager chunkManager = ChunkManager.getChunkManager(100);
+
+    private byte[] payload(final int size, final long seed) {
+        final byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private Vector<byte[]> chunks(final byte[] data, final String ip, final int port, final int payloadSize)
+            throws UnknownHostException {
+        final PacketInfo info = new PacketInfo();
+        info.setModule(ModuleType.CHAT.ordinal());
+        info.setIpAddress(InetAddress.getByName(ip));
+        info.setPortNum(port);
+        info.setPayload(data);
+        return chunkManager.chunk(info, payloadSize);
+    }
+
+    private Vector<byte[]> originChunks(final byte[] data, final ClientNode origin) throws UnknownHostException {
+        final PacketInfo info = new PacketInfo();
+        info.setModule(ModuleType.CHAT.ordinal());
+        info.setIpAddress(InetAddress.getByName("10.0.8.5"));
+        info.setPortNum(8000);
+        info.setOriginAddress(InetAddress.getByName(origin.hostName()));
+        info.setOriginPort(origin.port());
+        info.setPayload(data);
+        return chunkManager.chunk(info, 100);
+    }
+
+    private Vector<byte[]> latestChunks(final byte[] data, final String ip, final int port)
+            throws UnknownHostException {
+        return latestChunks(data, ip, port, new ClientNode("10.0.0.5", 7000), 1);
+    }
+
+    private Vector<byte[]> latestChunks(final byte[] data, final String ip, final int port, final ClientNode origin,
+            final int stream) throws UnknownHostException {
+        final PacketInfo info = new PacketInfo();
+        info.setModule(ModuleType.SCREENSHARING.ordinal());
+        info.setIpAddress(InetAddress.getByName(ip));
+        info.setPortNum(port);
+        info.setLatest(1);
+        info.setOriginAddress(InetAddress.getByName(origin.hostName()));
+        info.setOriginPort(origin.port());
+        info.setStream(stream);
+        info.setPayload(data);
+        return chunkManager.chunk(info, 100);
+    }
+
+    @Test
+    void testSingleChunkReturnedAsIs() throws UnknownHostException {
+        final Reassembler reassembler = new Reassembler();
+        final byte[] chunk = chunks(payload(50, 1), "10.0.0.1", 8000, 100).get(0);
+        assertSame(chunk, reassembler.addChunk(chunk, 0));
+        assertEquals(0, reassembler.getPendingMessages());
+    }
+
+    @Test
+    void testOutOfOrderWithDuplicates() throws UnknownHostException {
+        final Reassembler reassembler = new Reassembler();
+        final byte[] data = payload(1050, 2);
+        final List<byte[]> list = new ArrayList<>(chunks(data, "10.0.0.1", 8000, 100));
+        Collections.reverse(list);
+        byte[] merged = null;
+        for (int i = 0; i < list.size(); i++) {
+            assertNull(merged);
+            merged = reassembler.addChunk(list.get(i), 0);
+            if (merged == null && i % 2 == 0) {
+                assertNull(reassembler.addChunk(list.get(i), 0));
+            }
+        }
+        assertNotNull(merged);
+        final PacketInfo info = parser.parsePacket(merged);
+        assertArrayEquals(data, info.getPayload());
+        assertEquals(1, info.getChunkLength());
+        assertEquals(0, info.getChunkNum());
+        assertTrue(reassembler.getDroppedChunks() > 0);
+        assertEquals(0, reassembler.getPendingMessages());
+        assertEquals(0, reassembler.getPendingBytes());
+    }
+
+    @Test
+    void testChunksReadFromReusedBuffer() throws UnknownHostException {
+        final Reassembler reassembler = new Reassembler();
+        final byte[] data = payload(1050, 5);
+        final List<byte[]> list = new ArrayList<>(chunks(data, "10.0.0.1", 8000, 100));
+        Collections.reverse(list);
+        Collections.swap(list, 1, list.size() - 1);
+        final ByteBuffer receive = ByteBuffer.allocateDirect(list.get(1).length);
+        final PacketView view = new PacketView();
+        PacketView merged = null;
+        for (byte[] chunk : list) {
+            assertNull(merged);
+            receive.clear();
+            receive.put(chunk).flip();
+            merged = reassembler.addChunk(view.wrap(receive), null, 0);
+            receive.clear();
+            receive.put(new byte[receive.remaining()]);
+        }
+        assertNotNull(merged);
+        assertArrayEquals(data, merged.copyPayload());
+        assertEquals(1, merged.getChunkLength());
+        assertEquals(0, merged.getChunkNum());
+        assertEquals(0, reassembler.getPendingMessages());
+        assertEquals(0, reassembler.getPendingBytes());
+    }
+
+    @Test
+    void testSendersWithSameMessageIdKeptApart() throws UnknownHostException {
+        final Reassembler reassembler = new Reassembler();
+        final byte[] first = payload(300, 3);
+        final byte[] second = payload(300, 4);
+        final Vector<byte[]> a = chunks(first, "10.0.0.1", 8000, 100);
+        final Vector<byte[]> b = chunks(second, "10.0.0.2", 8000, 100);
+        final PacketView view = new PacketView();
+        view.wrap(b.get(0));
+        final int id = view.getMessageId();
+        for (byte[] chunk : a) {
+            ByteBuffer.wrap(chunk).putInt(10, id);
+        }
+        byte[] mergedA = null;
+        byte[] mergedB = null;
+        for (int i = 0; i < a.size(); i++) {
+            mergedA = reassembler.addChunk(a.get(i), 0);
+            mergedB = reassembler.addChunk(b.get(i), 0);
+        }
+        assertArrayEquals(first, parser.parsePacket(mergedA).getPayload());
+        assertArrayEquals(second, parser.parsePacket(mergedB).getPayload());
+    }
+
+    @Test
+    void testConnectionsWithSameMessageIdKeptApart() throws UnknownHostException {
+        final Reassembler reassembler = new Reassembler();
+        final byte[] first = payload(300, 13);
+        final byte[] second = payload(300, 14);
+        final Vector<byte[]> a = chunks(first, "10.0.0.9", 8000, 100);
+        final Vector<byte[]> b = chunks(second, "10.0.0.9", 8000, 100);
+        final PacketView view = new PacketView();
+        final int id = view.wrap(a.get(0)).getMessageId();
+        for (byte[] chunk : b) {
+            ByteBuffer.wrap(chunk).putInt(10, id);
+        }
+        final ClientNode peerA = new ClientNode("10.0.0.1", 40001);
+        final ClientNode peerB = new ClientNode("10.0.0.2", 40002);
+        byte[] mergedA = null;
+        byte[] mergedB = null;
+        for (int i = 0; i < a.size(); i++) {
+            final PacketView outA = reassembler.addChunk(view.wrap(a.get(i)), peerA, 0);
+            if (outA != null) {
+                mergedA = outA.copyPayload();
+            }
+            final PacketView outB = reassembler.addChunk(view.wrap(b.get(i)), peerB, 0);
+            if (outB != null) {
+                mergedB = outB.copyPayload();
+            }
+        }
+        assertArrayEquals(first, mergedA);
+        assertArrayEquals(second, mergedB);
+    }
+
+    @Test
+    void testOriginsRelayedByOneServerKeptApart() throws UnknownHostException {
+        final Reassembler reassembler = new Reassembler();
+        final byte[] first = payload(300, 21);
+        final byte[] second = payload(300, 22);
+        final Vector<byte[]> a = originChunks(first, new ClientNode("10.0.8.1", 7000));
+        final Vector<byte[]> b = originChunks(second, new ClientNode("10.0.8.2", 7000));
+        final PacketView view = new PacketView();
+        final int id = view.wrap(a.get(0)).getMessageId();
+        for (byte[] chunk : b) {
+            ByteBuffer.wrap(chunk).putInt(10, id);
+        }
+        final ClientNode relay = new ClientNode("10.0.8.9", 40009);
+        byte[] mergedA = null;
+        byte[] mergedB = null;
+        for (int i = 0; i < a.size(); i++) {
+            final PacketView outA = reassembler.addChunk(view.wrap(a.get(i)), relay, 0);
+            if (outA != null) {
+                assertEquals(1, outA.getChunkLength());
+                assertEquals(PacketParser.getHeaderSize(), outA.getHeaderLength());
+                mergedA = outA.copyPayload();
+            }
+            final PacketView outB = reassembler.addChunk(view.wrap(b.get(i)), relay, 0);
+            if (outB != null) {
+                mergedB = outB.copyPayload();
+            }
+        }
+        assertArrayEquals(first, mergedA);
+        assertArrayEquals(second, mergedB);
+        assertEquals(0, reassembler.getPendingMessages());
+    }
+
+    @Test
+    void testRemoveAddressDropsMessagesOfItsConnections() throws UnknownHostException {
+        final Reassembler reassembler = new Reassembler();
+        final PacketView view = new PacketView();
+        view.wrap(chunks(payload(300, 15), "10.0.5.9", 8000, 100).get(0));
+        reassembler.addChunk(view, new ClientNode("10.0.5.1", 40001), 0);
+        view.wrap(chunks(payload(300, 16), "10.0.5.9", 8000, 100).get(0));
+        reassembler.addChunk(view, new ClientNode("10.0.5.2", 40002), 0);
+        assertEquals(2, reassembler.getPendingMessages());
+        reassembler.removeAddress(view.wrap(chunks(payload(10, 17), "10.0.5.1", 8000, 100).get(0)).getIpAddress());
+        assertEquals(1, reassembler.getPendingMessages());
+    }
+
+    @Test
+    void testImpossibleChunkCountDroppedBeforeAllocating() throws UnknownHostException {
+        final Reassembler reassembler = new Reassembler(4 * 1024, Reassembler.DEFAULT_TTL_MILLIS);
+        final PacketView view = new PacketView();
+        final byte[] huge = chunks(payload(300, 18), "10.0.6.1", 8000, 100).get(0);
+        view.wrap(huge).setChunkLength(Integer.MAX_VALUE);
+        assertNull(reassembler.addChunk(huge, 0));
+        final byte[] negative = chunks(payload(300, 19), "10.0.6.1", 8000, 100).get(1);
+        view.wrap(negative).setChunkLength(-5);
+        reassembler.addChunk(negative, 0);
+        assertEquals(0, reassembler.getPendingMessages());
+        assertEquals(0, reassembler.getPendingBytes());
+        assertEquals(1, reassembler.getDroppedChunks());
+    }
+
+    @Test
+    void testClaimedChunkCountsStayUnderTheCap() throws UnknownHostException {
+        final long cap = Reassembler.DEFAULT_MAX_BYTES;
+        final Reassembler reassembler = new Reassembler(cap, Reassembler.DEFAULT_TTL_MILLIS);
+        final PacketView view = new PacketView();
+        final Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        final long before = runtime.totalMemory() - runtime.freeMemory();
+        for (int m = 0; m < 200; m++) {
+            final byte[] last = chunks(payload(101, m), "10.0.7." + m, 8000, 100).get(1);
+            final int claimed = (int) (cap / 32);
+            view.wrap(last).setChunkLength(claimed);
+            view.setChunkNum(claimed - 1);
+            assertNull(reassembler.addChunk(last, m));
+            assertTrue(reassembler.getPendingBytes() <= cap);
+        }
+        final long used = runtime.totalMemory() - runtime.freeMemory() - before;
+        assertTrue(used < 2 * cap, "used " + used);
+
+        final byte[] full = chunks(payload(300, 20), "10.0.7.250", 8000, 100).get(0);
+        view.wrap(full).setChunkLength((int) (cap / 50));
+        assertNull(reassembler.addChunk(full, 0));
+        assertEquals(1, reassembler.getDroppedChunks());
+    }
+
+    @Test
+    void testStaleMessagesEvicted() throws UnknownHostException {
+        final Reassembler reassembler = new Reassembler(Reassembler.DEFAULT_MAX_BYTES, 1000);
+        final Vector<byte[]> stale = chunks(payload(500, 5), "10.0.0.1", 8000, 100);
+        reassembler.addChunk(stale.get(0), 0);
+        reassembler.addChunk(stale.get(1), 0);
+        assertEquals(1, reassembler.getPendingMessages());
+        reassembler.evictExpired(500);
+        assertEquals(1, reassembler.getPendingMessages());
+        reassembler.evictExpired(2000);
+        assertEquals(0, reassembler.getPendingMessages());
+        assertEquals(0, reassembler.getPendingBytes());
+        assertEquals(1, reassembler.getEvictedMessages());
+        // late chunks of the evicted message start a new partial message
+        assertNull(reassembler.addChunk(stale.get(2), 2000));
+        assertEquals(1, reassembler.getPendingMessages());
+    }
+
+    @Test
+    void testMemoryCapEvictsOldest() throws UnknownHostException {
+        final long cap = 4 * 1024;
+        final Reassembler reassembler = new Reassembler(cap, Reassembler.DEFAULT_TTL_MILLIS);
+        for (int m = 0; m < 50; m++) {
+            final Vector<byte[]> partial = chunks(payload(1000, m), "10.0.1." + m, 8000, 100);
+            reassembler.addChunk(partial.get(0), m);
+            reassembler.addChunk(partial.get(partial.size() - 1), m);
+            assertTrue(reassembler.getPendingBytes() <= cap);
+        }
+        assertTrue(reassembler.getEvictedMessages() > 0);
+        assertTrue(reassembler.getPendingMessages() < 50);
+
+        final byte[] data = payload(1000, 99);
+        byte[] merged = null;
+        for (byte[] chunk : chunks(data, "10.0.2.1", 8000, 100)) {
+            merged = reassembler.addChunk(chunk, 100);
+        }
+        assertArrayEquals(data, parser.parsePacket(merged).getPayload());
+    }
+
+    @Test
+    void testManyMessagesLeaveNothingBehind() throws UnknownHostException {
+        final Reassembler reassembler = new Reassembler();
+        for (int m = 0; m < 500; m++) {
+            final byte[] data = payload(250, m);
+            final List<byte[]> list = new ArrayList<>(chunks(data, "10.0.3." + (m % 7), 8000 + m % 3, 100));
+            Collections.shuffle(list, new Random(m));
+            byte[] merged = null;
+            for (byte[] chunk : list) {
+                merged = reassembler.addChunk(chunk, m);
+            }
+            assertArrayEquals(data, parser.parsePacket(merged).getPayload());
+        }
+        assertEquals(0, reassembler.getPendingMessages());
+        assertEquals(0, reassembler.getPendingBytes());
+    }
+
+    @Test
+    void testRemoveAddressDropsItsMessages() throws UnknownHostException {
+        final Reassembler reassembler = new Reassembler();
+        reassembler.addChunk(chunks(payload(300, 6), "10.0.4.1", 8000, 100).get(0), 0);
+        reassembler.addChunk(chunks(payload(300, 7), "10.0.4.2", 8000, 100).get(0), 0);
+        final PacketView view = new PacketView();
+        view.wrap(chunks(payload(10, 8), "10.0.4.1", 8000, 100).get(0));
+        reassembler.removeAddress(view.getIpAddress());
+        assertEquals(1, reassembler.getPendingMessages());
+    }
+
+    @Test
+    void testModuleDeadlineGivesUpEarly() throws UnknownHostException {
+        final Reassembler reassembler = new Reassembler();
+        reassembler.setTtl(ModuleType.SCREENSHARING.ordinal(), 500);
+        final PacketInfo screen = new PacketInfo();
+        screen.setModule(ModuleType.SCREENSHARING.ordinal());
+        screen.setIpAddress(InetAddress.getByName("10.0.6.1"));
+        screen.setPayload(payload(300, 9));
+        reassembler.addChunk(chunkManager.chunk(screen, 100).get(0), 0);
+        reassembler.addChunk(chunks(payload(300, 10), "10.0.6.2", 8000, 100).get(0), 0);
+        assertEquals(2, reassembler.getPendingMessages());
+        reassembler.evictExpired(1000);
+        assertEquals(1, reassembler.getPendingMessages());
+        assertEquals(1, reassembler.getEvictedMessages());
+    }
+
+    @Test
+    void testCompletedLatestAbandonsStalledOlder() throws UnknownHostException {
+        final Reassembler reassembler = new Reassembler();
+        final Vector<byte[]> older = latestChunks(payload(500, 11), "10.0.0.1", 8000);
+        final Vector<byte[]> plain = chunks(payload(300, 12), "10.0.0.1", 8000, 100);
+        final byte[] data = payload(300, 13);
+        final Vector<byte[]> newer = latestChunks(data, "10.0.0.1", 8000);
+        assertNull(reassembler.addChunk(older.get(0), 0));
+        assertNull(reassembler.addChunk(older.get(1), 0));
+        assertNull(reassembler.addChunk(plain.get(0), 0));
+        byte[] merged = null;
+        for (byte[] chunk : newer) {
+            merged = reassembler.addChunk(chunk, 0);
+        }
+        assertArrayEquals(data, parser.parsePacket(merged).getPayload());
+        assertEquals(1, reassembler.getSupersededMessages());
+        assertEquals(1, reassembler.getPendingMessages());
+    }
+
+    @Test
+    void testInterleavedLatestMessageIsKept() throws UnknownHostException {
+        final Reassembler reassembler = new Reassembler();
+        final byte[] first = payload(300, 14);
+        final Vector<byte[]> one = latestChunks(first, "10.0.0.1", 8000);
+        final Vector<byte[]> other = latestChunks(payload(300, 15), "10.0.0.1", 8000);
+        assertNull(reassembler.addChunk(one.get(0), 0));
+        assertNull(reassembler.addChunk(other.get(0), 0));
+        assertNull(reassembler.addChunk(one.get(1), 0));
+        assertNull(reassembler.addChunk(other.get(1), 0));
+        assertNotNull(reassembler.addChunk(other.get(2), 0));
+        assertEquals(0, reassembler.getSupersededMessages());
+        final byte[] merged = reassembler.addChunk(one.get(2), 0);
+        assertArrayEquals(first, parser.parsePacket(merged).getPayload());
+    }
+
+    /**
+     * Two devices share a screen through the same relay, so their chunks
+     * come over one connection with the same module and stream. A frame of
+     * one completing never abandons the partial frame of the other, only
+     * the older frame of its own sender.
+     */
+    @Test
+    void testLatestOfConcurrentSendersKeptApart() throws UnknownHostException {
+        final Reassembler reassembler = new Reassembler();
+        final ClientNode relay = new ClientNode("10.0.0.1", 8000);
+        final ClientNode first = new ClientNode("10.0.0.21", 7000);
+        final ClientNode second = new ClientNode("10.0.0.22", 7000);
+        final byte[] firstFrame = payload(300, 16);
+        final Vector<byte[]> firstOld = latestChunks(payload(300, 17), "10.0.0.2", 6000, first, 1);
+        final Vector<byte[]> firstNew = latestChunks(firstFrame, "10.0.0.2", 6000, first, 1);
+        final Vector<byte[]> secondOld = latestChunks(payload(300, 18), "10.0.0.2", 6000, second, 1);
+        final Vector<byte[]> secondNew = latestChunks(payload(300, 19), "10.0.0.2", 6000, second, 1);
+        final PacketView view = new PacketView();
+        assertNull(reassembler.addChunk(view.wrap(firstOld.get(0)), relay, 0));
+        assertNull(reassembler.addChunk(view.wrap(secondOld.get(0)), relay, 0));
+        for (byte[] chunk : secondNew) {
+            reassembler.addChunk(view.wrap(chunk), relay, 0);
+        }
+        assertEquals(1, reassembler.getSupersededMessages());
+        assertEquals(1, reassembler.getPendingMessages());
+        assertNull(reassembler.addChunk(view.wrap(firstOld.get(1)), relay, 0));
+        PacketView merged = null;
+        for (byte[] chunk : firstNew) {
+            merged = reassembler.addChunk(view.wrap(chunk), relay, 0);
+        }
+        assertNotNull(merged);
+        assertEquals(1, merged.getLatest());
+        assertEquals(1, merged.getStream());
+        assertEquals("10.0.0.21", PacketView.ipToString(merged.getOriginIpAddress()));
+        assertEquals(first.port(), merged.getOriginPortNum());
+        assertArrayEquals(firstFrame, merged.copyPayload());
+        assertEquals(2, reassembler.getSupersededMessages());
+        assertEquals(0, reassembler.getPendingMessages());
+    }
+
+    @Test
+    void testLatestOfOtherStreamKept() throws UnknownHostException {
+        final Reassembler reassembler = new Reassembler();
+        final ClientNode origin = new ClientNode("10.0.0.21", 7000);
+        final Vector<byte[]> screen = latestChunks(payload(300, 20), "10.0.0.2", 6000, origin, 1);
+        final Vector<byte[]> camera = latestChunks(payload(300, 21), "10.0.0.2", 6000, origin, 2);
+        assertNull(reassembler.addChunk(screen.get(0), 0));
+        for (byte[] chunk : camera) {
+            reassembler.addChunk(chunk, 0);
+        }
+        assertEquals(0, reassembler.getSupersededMessages());
+        assertEquals(1, reassembler.getPendingMessages());
+    }
+}
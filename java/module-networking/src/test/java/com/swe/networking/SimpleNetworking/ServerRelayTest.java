@@ -0,0 +1,148 @@
+package com.swe.networking.SimpleNetworking;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.swe.core.ClientNode;
+import com.swe.networking.FrameListener;
+import com.swe.networking.ModuleType;
+import com.swe.networking.NetworkConnectionType;
+import com.swe.networking.PacketInfo;
+import com.swe.networking.PacketParser;
+import com.swe.networking.SimulatedCommunicator;
+import com.swe.networking.SimulatedNetwork;
+
+/**
+ * Test class for the relay of the simple networking server.
+ */
+public class ServerRelayTest {
+
+    private static final ClientNode SERVER = new ClientNode("10.4.0.1", 9000);
+
+    private static final ClientNode A = new ClientNode("10.4.0.2", 9000);
+
+    private static final ClientNode B = new ClientNode("10.4.0.3", 9000);
+
+    private static final ClientNode C = new ClientNode("10.4.0.4", 9000);
+
+    /**
+     * Collects the bytes of every packet of a node.
+     */
+    private static final class Recorder implements FrameListener {
+        private final List<byte[]> packets = new ArrayList<>();
+
+        @Override
+        public void onFrame(final ClientNode sender, final ByteBuffer frame) {
+            final byte[] packet = new byte[frame.remaining()];
+            frame.get(packet);
+            packets.add(packet);
+        }
+    }
+
+    private SimulatedNetwork network;
+    private Server server;
+    private Recorder[] recorders;
+    private Client[] clients;
+
+    private static byte[] packet(final ClientNode addr, final int broadcast, final byte[] payload)
+            throws UnknownHostException {
+        return packet(addr, NetworkConnectionType.MODULE, broadcast, payload);
+    }
+
+    private static byte[] packet(final ClientNode addr, final NetworkConnectionType type, final int broadcast,
+            final byte[] payload) throws UnknownHostException {
+        final PacketInfo info = new PacketInfo();
+        info.setModule(ModuleType.CHAT.ordinal());
+        info.setConnectionType(type.ordinal());
+        info.setBroadcast(broadcast);
+        info.setIpAddress(InetAddress.getByName(addr.hostName()));
+        info.setPortNum(addr.port());
+        info.setChunkLength(1);
+        info.setPayload(payload);
+        info.setLength(PacketParser.getHeaderSize() + payload.length);
+        return PacketParser.getPacketParser().createPkt(info);
+    }
+
+    @BeforeEach
+    void setUp() {
+        SimpleNetworking.getSimpleNetwork().resetSimpleNetworking();
+        network = new SimulatedNetwork(1);
+        final SimulatedCommunicator serverNode = network.attach(SERVER);
+        server = new Server(SERVER, serverNode);
+        serverNode.setListener(server);
+        final ClientNode[] addrs = {A, B, C};
+        recorders = new Recorder[addrs.length];
+        clients = new Client[addrs.length];
+        for (int i = 0; i < addrs.length; i++) {
+            final SimulatedCommunicator node = network.attach(addrs[i]);
+            recorders[i] = new Recorder();
+            node.setListener(recorders[i]);
+            clients[i] = new Client(addrs[i], SERVER, node);
+        }
+        network.runUntilIdle(100);
+    }
+
+    @Test
+    void testHelloRegistersMembers() {
+        assertEquals(Set.of(A, B, C), server.getMembers());
+    }
+
+    @Test
+    void testUnicastIsForwardedUnchanged() throws UnknownHostException {
+        final byte[] data = packet(B, 0, new byte[] {1, 2, 3});
+        network.attach(new ClientNode("10.4.0.9", 9000)).sendData(data, SERVER);
+        network.runUntilIdle(100);
+        assertEquals(0, recorders[0].packets.size());
+        assertEquals(1, recorders[1].packets.size());
+        assertArrayEquals(data, recorders[1].packets.get(0));
+        assertEquals(0, recorders[2].packets.size());
+    }
+
+    @Test
+    void testBroadcastIsUploadedOnceAndFannedOut() throws UnknownHostException {
+        final byte[][] received = new byte[1][];
+        SimpleNetworking.getSimpleNetwork().subscribe(ModuleType.CHAT, data -> received[0] = data);
+        final long sentBefore = network.getPacketsSent(A);
+        final byte[] data = packet(A, 1, new byte[] {4, 5, 6});
+        clients[0].broadcast(data, SERVER);
+        network.runUntilIdle(100);
+        assertEquals(1, network.getPacketsSent(A) - sentBefore);
+        assertEquals(0, recorders[0].packets.size());
+        assertArrayEquals(data, recorders[1].packets.get(0));
+        assertArrayEquals(data, recorders[2].packets.get(0));
+        assertArrayEquals(new byte[] {4, 5, 6}, received[0]);
+    }
+
+    @Test
+    void testServerBroadcastReachesEveryMember() throws UnknownHostException {
+        final byte[] data = packet(SERVER, 1, new byte[] {7});
+        server.broadcast(data, SERVER);
+        network.runUntilIdle(100);
+        for (Recorder recorder : recorders) {
+            assertEquals(1, recorder.packets.size());
+            assertArrayEquals(data, recorder.packets.get(0));
+        }
+    }
+
+    @Test
+    void testCloseRemovesMember() throws UnknownHostException {
+        network.attach(new ClientNode("10.4.0.9", 9000))
+                .sendData(packet(B, NetworkConnectionType.CLOSE, 0, new byte[0]), SERVER);
+        network.runUntilIdle(100);
+        assertEquals(Set.of(A, C), server.getMembers());
+        server.broadcast(packet(SERVER, 1, new byte[] {8}), SERVER);
+        network.runUntilIdle(100);
+        assertTrue(recorders[1].packets.isEmpty());
+    }
+}
@@ -0,0 +1,495 @@
+package com.swe.networking;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Test class for the simulated network, with meetings of 50 to 200 nodes
+ * measuring the broadcast latency, the relay load of the cluster servers
+ * and the time to recover after a cluster server drops.
+ */
+public class SimulatedNetworkTest {
+
+    private static final long MS = SimulatedNetwork.MICROS_PER_MILLI;
+
+    private static final ClientNode A = new ClientNode("10.3.0.1", 7000);
+
+    private static final ClientNode B = new ClientNode("10.3.0.2", 7000);
+
+    /**
+     * Collects the arrival time and first byte of every packet of a node.
+     */
+    private static final class Recorder implements FrameListener {
+        private final SimulatedNetwork network;
+        private final List<Long> times = new ArrayList<>();
+        private final List<Integer> marks = new ArrayList<>();
+
+        Recorder(final SimulatedNetwork net) {
+            this.network = net;
+        }
+
+        @Override
+        public void onFrame(final ClientNode sender, final ByteBuffer frame) {
+            times.add(network.now());
+            marks.add((int) frame.get(frame.position()));
+        }
+    }
+
+    private Recorder listen(final SimulatedNetwork network, final SimulatedCommunicator node) {
+        final Recorder recorder = new Recorder(network);
+        node.setListener(recorder);
+        return recorder;
+    }
+
+    @Test
+    void testLatencyAndBandwidthAreApplied() {
+        final SimulatedNetwork network = new SimulatedNetwork(1);
+        // 1000 bytes take 1 ms at 1 MB/s, then 10 ms on the wire
+        network.setProfile(A, B, new LinkProfile(10 * MS, 0, 0, 0, 1_000_000));
+        final SimulatedCommunicator a = network.attach(A);
+        final Recorder b = listen(network, network.attach(B));
+        for (int i = 0; i < 3; i++) {
+            final byte[] packet = new byte[1000];
+            packet[0] = (byte) i;
+            a.sendData(packet, B);
+        }
+        assertEquals(3, a.getQueueDepth(B));
+        assertEquals(3000, a.getBytesInFlight(B));
+        network.runUntilIdle(100);
+        assertEquals(List.of(11 * MS, 12 * MS, 13 * MS), b.times);
+        assertEquals(List.of(0, 1, 2), b.marks);
+        assertEquals(0, a.getQueueDepth(B));
+        assertEquals(3, a.getWriteCalls(B));
+        assertEquals(3, network.getDelivered());
+    }
+
+    @Test
+    void testJitterKeepsOrderUnlessReordering() {
+        final SimulatedNetwork network = new SimulatedNetwork(2);
+        network.setDefaultProfile(new LinkProfile(5 * MS, 20 * MS, 0, 0, 0));
+        final SimulatedCommunicator a = network.attach(A);
+        final Recorder b = listen(network, network.attach(B));
+        for (int i = 0; i < 100; i++) {
+            a.sendData(new byte[] {(byte) i}, B);
+            network.runFor(MS);
+        }
+        network.runUntilIdle(1000);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) b.marks.get(i));
+        }
+
+        final SimulatedNetwork reordering = new SimulatedNetwork(2);
+        reordering.setDefaultProfile(new LinkProfile(5 * MS, 0, 0, 0.2, 0));
+        final SimulatedCommunicator c = reordering.attach(A);
+        final Recorder d = listen(reordering, reordering.attach(B));
+        for (int i = 0; i < 100; i++) {
+            c.sendData(new byte[] {(byte) i}, B);
+            reordering.runFor(MS);
+        }
+        reordering.runUntilIdle(1000);
+        assertEquals(100, d.marks.size());
+        int inversions = 0;
+        for (int i = 1; i < 100; i++) {
+            if (d.marks.get(i) < d.marks.get(i - 1)) {
+                inversions++;
+            }
+        }
+        assertTrue(inversions > 0);
+    }
+
+    @Test
+    void testLossFollowsTheRate() {
+        final SimulatedNetwork network = new SimulatedNetwork(3);
+        network.setDefaultProfile(new LinkProfile(MS, 0, 0.1, 0, 0));
+        final SimulatedCommunicator a = network.attach(A);
+        final Recorder b = listen(network, network.attach(B));
+        for (int i = 0; i < 10_000; i++) {
+            a.sendData(new byte[] {1}, B);
+        }
+        network.runUntilIdle(20_000);
+        assertEquals(10_000, network.getLost() + b.marks.size());
+        assertTrue(network.getLost() > 900 && network.getLost() < 1100, "lost " + network.getLost());
+    }
+
+    @Test
+    void testSameSeedReplaysTheSameRun() {
+        final List<Long> first = jitteryRun(42);
+        assertEquals(first, jitteryRun(42));
+        assertFalse(first.equals(jitteryRun(43)));
+    }
+
+    private List<Long> jitteryRun(final long seed) {
+        final SimulatedNetwork network = new SimulatedNetwork(seed);
+        network.setDefaultProfile(new LinkProfile(5 * MS, 5 * MS, 0.05, 0.05, 250_000));
+        final SimulatedCommunicator a = network.attach(A);
+        final Recorder b = listen(network, network.attach(B));
+        for (int i = 0; i < 200; i++) {
+            a.sendData(new byte[100 + i], B);
+            network.runFor(MS / 2);
+        }
+        network.runUntilIdle(1000);
+        return b.times;
+    }
+
+    @Test
+    void testDetachedNodeDropsPacketsInFlight() {
+        final SimulatedNetwork network = new SimulatedNetwork(4);
+        network.setDefaultProfile(LinkProfile.ofLatency(10));
+        final SimulatedCommunicator a = network.attach(A);
+        final Recorder b = listen(network, network.attach(B));
+        a.sendData(new byte[] {1}, B);
+        network.runFor(5 * MS);
+        network.detach(B);
+        assertFalse(network.isUp(B));
+        network.runUntilIdle(10);
+        assertTrue(b.marks.isEmpty());
+        assertEquals(1, network.getDropped());
+        // the address can join again with a fresh communicator
+        final Recorder rejoined = listen(network, network.attach(B));
+        a.sendData(new byte[] {2}, B);
+        network.runUntilIdle(10);
+        assertEquals(List.of(2), rejoined.marks);
+    }
+
+    @Test
+    void testQueuedPacketsCarryTheSenderAddress() {
+        final SimulatedNetwork network = new SimulatedNetwork(5);
+        final SimulatedCommunicator a = network.attach(A);
+        final SimulatedCommunicator b = network.attach(B);
+        a.sendData(new byte[] {7, 8}, B);
+        network.runUntilIdle(10);
+        final ReceivePacket packet = b.receiveData();
+        assertEquals(A, packet.sender());
+        assertArrayEquals(new byte[] {7, 8}, packet.data());
+        b.wakeup();
+        assertNull(b.receiveData());
+    }
+
+    @Test
+    void testTimersRunOnTheVirtualClock() {
+        final SimulatedNetwork network = new SimulatedNetwork(6);
+        final List<Long> fired = new ArrayList<>();
+        network.schedule(30 * MS, () -> fired.add(network.now()));
+        network.schedule(10 * MS, () -> fired.add(network.now()));
+        assertEquals(0, network.runFor(5 * MS));
+        assertEquals(5 * MS, network.now());
+        network.runFor(100 * MS);
+        assertEquals(List.of(10 * MS, 30 * MS), fired);
+        assertEquals(105 * MS, network.now());
+    }
+
+    /**
+     * Outcome of one simulated meeting.
+     */
+    private record MeetingResult(long maxLatencyMicros, long meanLatencyMicros, long maxServerCopies,
+            long maxClientCopies, long recoveryMicros, int framesMissed) {
+    }
+
+    private static final int CLUSTER_SIZE = 10;
+
+    private static final int FANOUT = 3;
+
+    private static final long FRAME_INTERVAL = 100 * MS;
+
+    private static final long ALIVE_INTERVAL = 1000 * MS;
+
+    /**
+     * Same timeout as the client timer of the main server.
+     */
+    private static final long ALIVE_TIMEOUT = 5000 * MS;
+
+    private static final long CHECK_INTERVAL = 100 * MS;
+
+    private static final int FRAME_BYTES = 1000;
+
+    private static final long CRASH_AT = 3000 * MS;
+
+    private static final long MEETING_LENGTH = 12_000 * MS;
+
+    /**
+     * One meeting of a presenter broadcasting frames through its cluster
+     * server, relayed to every other server along the multicast tree and
+     * from each server to its cluster. The server of the second cluster,
+     * an inner node of the tree, crashes during the meeting and the main
+     * server promotes a new one once its ALIVE packets stop.
+     */
+    private static final class Meeting {
+        private final SimulatedNetwork network;
+        private final ClientNode mainServer = new ClientNode("10.3.255.254", 7000);
+        private final List<ClientNode> members = new ArrayList<>();
+        private final Map<ClientNode, SimulatedCommunicator> comms = new HashMap<>();
+        private final Map<ClientNode, MulticastTree> trees = new HashMap<>();
+        private final Map<ClientNode, Long> copies = new HashMap<>();
+        private final Map<ClientNode, Integer> version = new HashMap<>();
+        private final List<List<List<ClientNode>>> layouts = new ArrayList<>();
+        private final List<Long> sentAt = new ArrayList<>();
+        private final Map<Integer, Map<ClientNode, Long>> arrivals = new HashMap<>();
+        private final Map<ClientNode, Long> lastAlive = new HashMap<>();
+        private final ClientNode presenter;
+        private ClientNode crashed = null;
+
+        Meeting(final long seed, final int size) {
+            network = new SimulatedNetwork(seed);
+            network.setDefaultProfile(new LinkProfile(20 * MS, 5 * MS, 0, 0, 1_250_000));
+            final List<List<ClientNode>> clusters = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                final ClientNode node = new ClientNode("10.3." + (i / 250) + "." + (i % 250 + 1), 7000);
+                members.add(node);
+                if (i % CLUSTER_SIZE == 0) {
+                    clusters.add(new ArrayList<>());
+                }
+                clusters.get(clusters.size() - 1).add(node);
+            }
+            layouts.add(clusters);
+            presenter = members.get(1);
+            version.put(mainServer, 0);
+            comms.put(mainServer, network.attach(mainServer));
+            comms.get(mainServer).setListener(this::onMainServer);
+            for (ClientNode node : members) {
+                final SimulatedCommunicator comm = network.attach(node);
+                comm.setListener((sender, frame) -> onFrame(node, frame));
+                comms.put(node, comm);
+                trees.put(node, new MulticastTree(FANOUT));
+                copies.put(node, 0L);
+                version.put(node, 0);
+                lastAlive.put(node, 0L);
+            }
+            every(ALIVE_INTERVAL, this::sendAlives);
+            every(CHECK_INTERVAL, this::checkAlives);
+            every(FRAME_INTERVAL, this::sendFrame);
+            network.schedule(CRASH_AT, this::crash);
+        }
+
+        private void every(final long period, final Runnable task) {
+            network.schedule(period, () -> {
+                task.run();
+                every(period, task);
+            });
+        }
+
+        private List<ClientNode> servers(final ClientNode node) {
+            final List<ClientNode> servers = new ArrayList<>();
+            for (List<ClientNode> cluster : layouts.get(version.get(node))) {
+                servers.add(cluster.get(0));
+            }
+            return servers;
+        }
+
+        private List<ClientNode> cluster(final ClientNode node, final ClientNode member) {
+            for (List<ClientNode> cluster : layouts.get(version.get(node))) {
+                if (cluster.contains(member)) {
+                    return cluster;
+                }
+            }
+            return List.of();
+        }
+
+        private void send(final ClientNode from, final byte[] packet, final ClientNode to) {
+            copies.merge(from, 1L, Long::sum);
+            comms.get(from).sendData(packet, to);
+        }
+
+        private byte[] packet(final NetworkConnectionType kind, final int messageId, final byte[] payload) {
+            try {
+                final PacketInfo info = new PacketInfo();
+                info.setType(NetworkType.USE.ordinal());
+                info.setModule(ModuleType.SCREENSHARING.ordinal());
+                info.setConnectionType(kind.ordinal());
+                info.setBroadcast(1);
+                info.setIpAddress(InetAddress.getByName(presenter.hostName()));
+                info.setPortNum(presenter.port());
+                info.setMessageId(messageId);
+                info.setChunkLength(1);
+                info.setPayload(payload);
+                info.setLength(PacketParser.getHeaderSize() + payload.length);
+                return PacketParser.getPacketParser().createPkt(info);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void sendFrame() {
+            final int frame = sentAt.size();
+            sentAt.add(network.now());
+            arrivals.put(frame, new HashMap<>());
+            arrivals.get(frame).put(presenter, network.now());
+            final byte[] payload = new byte[FRAME_BYTES];
+            Arrays.fill(payload, (byte) frame);
+            send(presenter, packet(NetworkConnectionType.MODULE, frame, payload),
+                    cluster(presenter, presenter).get(0));
+        }
+
+        private void sendAlives() {
+            for (ClientNode node : members) {
+                if (node != crashed && servers(node).contains(node)) {
+                    comms.get(node).sendData(packet(NetworkConnectionType.ALIVE, 0, new byte[0]), mainServer);
+                }
+            }
+        }
+
+        private void onMainServer(final ClientNode sender, final ByteBuffer frame) {
+            lastAlive.put(sender, network.now());
+        }
+
+        private void checkAlives() {
+            for (ClientNode server : servers(mainServer)) {
+                if (network.now() - lastAlive.get(server) > ALIVE_TIMEOUT) {
+                    promote(server);
+                }
+            }
+        }
+
+        private void promote(final ClientNode server) {
+            final List<List<ClientNode>> next = new ArrayList<>();
+            for (List<ClientNode> cluster : layouts.get(layouts.size() - 1)) {
+                final List<ClientNode> copy = new ArrayList<>(cluster);
+                copy.remove(server);
+                if (!copy.isEmpty()) {
+                    next.add(copy);
+                }
+            }
+            layouts.add(next);
+            final int latest = layouts.size() - 1;
+            version.put(mainServer, latest);
+            for (List<ClientNode> cluster : next) {
+                lastAlive.put(cluster.get(0), network.now());
+                for (ClientNode node : cluster) {
+                    send(mainServer, packet(NetworkConnectionType.NETWORK, latest, new byte[0]), node);
+                }
+            }
+        }
+
+        private void crash() {
+            crashed = cluster(presenter, members.get(CLUSTER_SIZE)).get(0);
+            network.detach(crashed);
+        }
+
+        private void onFrame(final ClientNode self, final ByteBuffer frame) {
+            final byte[] packet = new byte[frame.remaining()];
+            frame.get(packet);
+            final PacketView view = new PacketView().wrap(packet);
+            if (view.getConnectionType() == NetworkConnectionType.NETWORK.ordinal()) {
+                version.put(self, Math.max(version.get(self), view.getMessageId()));
+                return;
+            }
+            final int id = view.getMessageId();
+            arrivals.get(id).putIfAbsent(self, network.now());
+            final List<ClientNode> servers = servers(self);
+            if (!servers.contains(self)) {
+                return;
+            }
+            final MulticastTree tree = trees.get(self);
+            try {
+                final ClientNode origin;
+                final byte[] relay;
+                if (view.getTreeRelay() == 1) {
+                    origin = view.getClientNode();
+                    if (!tree.firstSeen(origin, view)) {
+                        return;
+                    }
+                    relay = packet;
+                } else {
+                    origin = self;
+                    relay = MulticastTree.relayCopy(packet, self);
+                }
+                final byte[] local = MulticastTree.clusterCopy(relay);
+                for (ClientNode member : cluster(self, self)) {
+                    if (!member.equals(self) && !member.equals(presenter)) {
+                        send(self, local, member);
+                    }
+                }
+                for (ClientNode next : tree.forwardTargets(servers, self, origin)) {
+                    send(self, relay, next);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        MeetingResult run() {
+            network.runFor(MEETING_LENGTH);
+            long maxLatency = 0;
+            long totalLatency = 0;
+            int samples = 0;
+            long recovered = -1;
+            int missed = 0;
+            for (int frame = 0; frame < sentAt.size() - 2; frame++) {
+                final Map<ClientNode, Long> got = arrivals.get(frame);
+                int expected = members.size();
+                if (crashed != null && sentAt.get(frame) >= CRASH_AT) {
+                    expected--;
+                }
+                if (got.size() < expected) {
+                    missed++;
+                    continue;
+                }
+                long last = 0;
+                for (long at : got.values()) {
+                    last = Math.max(last, at);
+                    totalLatency += at - sentAt.get(frame);
+                    samples++;
+                }
+                maxLatency = Math.max(maxLatency, last - sentAt.get(frame));
+                if (recovered < 0 && sentAt.get(frame) >= CRASH_AT) {
+                    recovered = last - CRASH_AT;
+                }
+            }
+            long serverCopies = 0;
+            long clientCopies = 0;
+            for (ClientNode node : members) {
+                if (node.equals(crashed)) {
+                    continue;
+                }
+                if (servers(mainServer).contains(node)) {
+                    serverCopies = Math.max(serverCopies, copies.get(node));
+                } else {
+                    clientCopies = Math.max(clientCopies, copies.get(node));
+                }
+            }
+            return new MeetingResult(maxLatency, totalLatency / Math.max(1, samples),
+                    serverCopies / sentAt.size(), clientCopies / sentAt.size(), recovered, missed);
+        }
+    }
+
+    @Test
+    void testMeetingsOfFiftyToTwoHundredNodes() {
+        for (int size : new int[] {50, 100, 200}) {
+            final MeetingResult result = new Meeting(size, size).run();
+            System.out.println(size + " nodes: " + result);
+            // at most two tree hops per level plus the hops into and out of
+            // the tree, each a 1 ms send and at most 25 ms on the wire
+            final int levels = (int) Math.ceil(Math.log(size / CLUSTER_SIZE) / Math.log(FANOUT)) + 1;
+            assertTrue(result.maxLatencyMicros() <= (2L * levels + 2) * 26 * MS, "latency " + result);
+            // a server uploads to its cluster and its tree neighbours only
+            assertTrue(result.maxServerCopies() <= CLUSTER_SIZE + FANOUT + 1, "server load " + result);
+            assertEquals(1, result.maxClientCopies(), "the presenter uploads a single copy");
+            // frames are lost only between the crash and the promotion
+            assertTrue(result.recoveryMicros() >= ALIVE_TIMEOUT - ALIVE_INTERVAL, "recovery " + result);
+            assertTrue(result.recoveryMicros() <= ALIVE_TIMEOUT + ALIVE_INTERVAL + CHECK_INTERVAL
+                    + FRAME_INTERVAL + result.maxLatencyMicros(), "recovery " + result);
+            assertTrue(result.framesMissed() > 0);
+            assertTrue(result.framesMissed() <= (ALIVE_TIMEOUT + ALIVE_INTERVAL) / FRAME_INTERVAL + 2,
+                    "missed " + result);
+        }
+    }
+
+    @Test
+    void testMeetingsReplayWithTheSameSeed() {
+        assertEquals(new Meeting(7, 100).run(), new Meeting(7, 100).run());
+    }
+}
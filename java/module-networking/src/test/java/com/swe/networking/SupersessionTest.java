@@ -0,0 +1,94 @@
+package com.swe.networking;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Test class for the latest wins supersession of queued messages.
+ */
+public class SupersessionTest {
+
+    private static final int SCREEN = ModuleType.SCREENSHARING.ordinal();
+
+    private final ClientNode viewerA = new ClientNode("10.0.0.1", 7000);
+    private final ClientNode viewerB = new ClientNode("10.0.0.2", 7000);
+    private final Supersession supersession = new Supersession();
+    private final PacketView view = new PacketView();
+
+    private PacketView packet(final int messageId, final ClientNode dest, final int latest)
+            throws UnknownHostException {
+        final PacketInfo info = new PacketInfo();
+        info.setModule(SCREEN);
+        info.setLatest(latest);
+        info.setIpAddress(InetAddress.getByName(dest.hostName()));
+        info.setPortNum(dest.port());
+        info.setMessageId(messageId);
+        info.setChunkLength(2);
+        info.setLength(PacketParser.getHeaderSize());
+        info.setPayload(new byte[0]);
+        return view.wrap(PacketParser.getPacketParser().createPkt(info));
+    }
+
+    @Test
+    void testNewerMessageDropsQueuedOlder() throws UnknownHostException {
+        assertTrue(supersession.track(1, SCREEN, 0, new ClientNode[] {viewerA}, 2).isEmpty());
+        assertFalse(supersession.isSuperseded(packet(1, viewerA, 1)));
+        assertEquals(List.of(viewerA), supersession.track(2, SCREEN, 0, new ClientNode[] {viewerA}, 2));
+        assertTrue(supersession.isSuperseded(packet(1, viewerA, 1)));
+        assertFalse(supersession.isSuperseded(packet(2, viewerA, 1)));
+        assertFalse(supersession.isSuperseded(packet(2, viewerA, 1)));
+        assertEquals(1, supersession.getDroppedPackets());
+        assertEquals(1, supersession.getSupersededMessages());
+        assertFalse(supersession.isQueued(viewerA, SCREEN, 0));
+    }
+
+    @Test
+    void testOtherDestinationsAndStreamsKept() throws UnknownHostException {
+        supersession.track(1, SCREEN, 0, new ClientNode[] {viewerA, viewerB}, 1);
+        assertEquals(List.of(viewerA), supersession.track(2, SCREEN, 0, new ClientNode[] {viewerA}, 1));
+        assertTrue(supersession.track(3, SCREEN, 1, new ClientNode[] {viewerA}, 1).isEmpty());
+        assertTrue(supersession.isSuperseded(packet(1, viewerA, 1)));
+        assertFalse(supersession.isSuperseded(packet(1, viewerB, 1)));
+        assertFalse(supersession.isSuperseded(packet(3, viewerA, 1)));
+        assertTrue(supersession.isQueued(viewerA, SCREEN, 0));
+        assertFalse(supersession.isQueued(viewerB, SCREEN, 0));
+    }
+
+    @Test
+    void testSentMessageIsNotCut() throws UnknownHostException {
+        supersession.track(1, SCREEN, 0, new ClientNode[] {viewerA}, 1);
+        assertTrue(supersession.isQueued(viewerA, SCREEN, 0));
+        assertFalse(supersession.isSuperseded(packet(1, viewerA, 1)));
+        assertFalse(supersession.isQueued(viewerA, SCREEN, 0));
+        assertTrue(supersession.track(2, SCREEN, 0, new ClientNode[] {viewerA}, 1).isEmpty());
+    }
+
+    @Test
+    void testPlainPacketsPass() throws UnknownHostException {
+        supersession.track(1, SCREEN, 0, new ClientNode[] {viewerA}, 1);
+        supersession.track(2, SCREEN, 0, new ClientNode[] {viewerA}, 1);
+        assertFalse(supersession.isSuperseded(packet(1, viewerA, 0)));
+        assertFalse(supersession.isSuperseded(packet(7, viewerA, 1)));
+    }
+
+    @Test
+    void testClearedQueueLeavesNothingQueued() throws UnknownHostException {
+        supersession.track(1, SCREEN, 0, new ClientNode[] {viewerA, viewerB}, 2);
+        supersession.track(2, SCREEN, 0, new ClientNode[] {viewerA}, 2);
+        supersession.clear();
+        assertFalse(supersession.isQueued(viewerA, SCREEN, 0));
+        assertFalse(supersession.isQueued(viewerB, SCREEN, 0));
+        assertTrue(supersession.track(3, SCREEN, 0, new ClientNode[] {viewerA}, 1).isEmpty());
+        assertFalse(supersession.isSuperseded(packet(3, viewerA, 1)));
+        assertFalse(supersession.isQueued(viewerA, SCREEN, 0));
+    }
+}
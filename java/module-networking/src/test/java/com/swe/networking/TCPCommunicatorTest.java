@@ -4,10 +4,17 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.swe.core.ClientNode;
 
@@ -144,4 +151,215 @@ public class TCPCommunicatorTest {
         tcp.printKeys();
         tcp.close();
     }
+
+    /**
+     * A peer that never reads must only fill its own bounded queue while a
+     * second peer keeps receiving everything.
+     */
+    @org.junit.jupiter.api.Test
+    public void testSlowPeerOnlyDelaysItself() throws Exception {
+        final int slowPort = 8031;
+        final int fastPort = 8032;
+        final int packetSize = 10 * 1024;
+        final int packets = 1500;
+        final AtomicLong fastBytes = new AtomicLong();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        try (ServerSocket slowServer = new ServerSocket(slowPort);
+                ServerSocket fastServer = new ServerSocket(fastPort)) {
+            final Thread slowAccept = new Thread(() -> {
+                try {
+                    final Socket ignored = slowServer.accept();
+                    while (running.get()) {
+                        Thread.sleep(10);
+                    }
+                    ignored.close();
+                } catch (IOException | InterruptedException ex) {
+                }
+            });
+            final Thread fastReader = new Thread(() -> {
+                try (Socket socket = fastServer.accept()) {
+                    final byte[] buffer = new byte[64 * 1024];
+                    int read = socket.getInputStream().read(buffer);
+                    while (read > 0) {
+                        fastBytes.addAndGet(read);
+                        read = socket.getInputStream().read(buffer);
+                    }
+                } catch (IOException ex) {
+                }
+            });
+            slowAccept.start();
+            fastReader.start();
+
+            final TCPCommunicator tcp = new TCPCommunicator(8030);
+            final Thread selectorThread = new Thread(() -> {
+                while (running.get()) {
+                    tcp.receiveFrames((sender, frame) -> { });
+                }
+            });
+            selectorThread.start();
+
+            final ClientNode slow = new ClientNode("127.0.0.1", slowPort);
+            final ClientNode fast = new ClientNode("127.0.0.1", fastPort);
+            final byte[] data = new byte[packetSize];
+            final long start = System.currentTimeMillis();
+            for (int i = 0; i < packets; i++) {
+                tcp.sendData(data, slow);
+                tcp.sendData(data, fast);
+            }
+            final long sendMillis = System.currentTimeMillis() - start;
+
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (fastBytes.get() < (long) packetSize * packets && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            System.out.println("Send loop took " + sendMillis + " ms, slow peer queue "
+                    + tcp.getQueueDepth(slow) + " packets / " + tcp.getBytesInFlight(slow) + " bytes, dropped "
+                    + tcp.getDroppedPackets(slow));
+            assertEquals((long) packetSize * packets, fastBytes.get());
+            assertEquals(0, tcp.getQueueDepth(fast));
+            assertTrue(tcp.getQueueDepth(slow) > 0);
+            assertTrue(tcp.getBytesInFlight(slow) <= PeerConnection.DEFAULT_MAX_BYTES);
+            assertTrue(tcp.getDroppedPackets(slow) > 0);
+
+            running.set(false);
+            selectorThread.join(3000);
+            tcp.close();
+            slowAccept.join(3000);
+            fastReader.join(3000);
+        }
+    }
+
+    /**
+     * Sending to a peer that never answers the handshake must return at once
+     * and the queued packets must be dropped when the connect times out.
+     */
+    @org.junit.jupiter.api.Test
+    public void testSendDoesNotWaitForConnect() throws Exception {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final TCPCommunicator tcp = new TCPCommunicator(8033, 300);
+        final Thread selectorThread = new Thread(() -> {
+            while (running.get()) {
+                tcp.receiveFrames((sender, frame) -> { });
+            }
+        });
+        selectorThread.start();
+        final ClientNode unreachable = new ClientNode("10.255.255.1", 8034);
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            tcp.sendData(new byte[100], unreachable);
+        }
+        final long sendMillis = System.currentTimeMillis() - start;
+        assertTrue(sendMillis < 500, "send took " + sendMillis + " ms");
+
+        final long deadline = System.currentTimeMillis() + 3000;
+        while (tcp.getQueueDepth(unreachable) > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, tcp.getQueueDepth(unreachable));
+        running.set(false);
+        selectorThread.join(3000);
+        tcp.close();
+    }
+
+    /**
+     * A pre-dialed peer is connected before the first packet and receives
+     * what is sent afterwards.
+     */
+    @org.junit.jupiter.api.Test
+    public void testPreconnectBeforeFirstSend() throws Exception {
+        final int peerPort = 8036;
+        final String data = "Dialed ahead of time";
+        final AtomicBoolean accepted = new AtomicBoolean(false);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final StringBuilder received = new StringBuilder();
+        try (ServerSocket server = new ServerSocket(peerPort)) {
+            final Thread reader = new Thread(() -> {
+                try (Socket socket = server.accept()) {
+                    accepted.set(true);
+                    final byte[] buffer = new byte[data.length()];
+                    new DataInputStream(socket.getInputStream()).readFully(buffer);
+                    received.append(new String(buffer));
+                } catch (IOException ex) {
+                }
+            });
+            reader.start();
+            final TCPCommunicator tcp = new TCPCommunicator(8035);
+            final Thread selectorThread = new Thread(() -> {
+                while (running.get()) {
+                    tcp.receiveFrames((sender, frame) -> { });
+                }
+            });
+            selectorThread.start();
+
+            final ClientNode peer = new ClientNode("127.0.0.1", peerPort);
+            tcp.preconnect(peer);
+            final long deadline = System.currentTimeMillis() + 3000;
+            while (!accepted.get() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(accepted.get());
+            tcp.sendData(data.getBytes(), peer);
+            reader.join(3000);
+            assertEquals(data, received.toString());
+
+            running.set(false);
+            selectorThread.join(3000);
+            tcp.close();
+        }
+    }
+
+    /**
+     * With several reactors the connections are spread over their threads
+     * and every packet of every connection reaches the listener, always on
+     * the thread calling receive.
+     */
+    @org.junit.jupiter.api.Test
+    public void testReactorsDrainEveryConnection() throws Exception {
+        final int port = 8038;
+        final int senders = 4;
+        final int packets = 200;
+        final TCPCommunicator tcp = new TCPCommunicator(port, TCPCommunicator.DEFAULT_CONNECT_TIMEOUT_MILLIS, 3);
+        assertEquals(3, tcp.getReactorCount());
+        final AtomicInteger frames = new AtomicInteger();
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final Thread receiveThread = new Thread(() -> {
+            threads.add(Thread.currentThread().getName());
+            while (running.get()) {
+                tcp.receiveFrames((sender, frame) -> {
+                    threads.add(Thread.currentThread().getName());
+                    frames.incrementAndGet();
+                });
+            }
+        });
+        receiveThread.start();
+
+        final PacketInfo info = new PacketInfo();
+        info.setLength(PacketParser.getHeaderSize() + 100);
+        info.setIpAddress(InetAddress.getByName("127.0.0.1"));
+        info.setPayload(new byte[100]);
+        final byte[] packet = PacketParser.getPacketParser().createPkt(info);
+        final Socket[] sockets = new Socket[senders];
+        for (int s = 0; s < senders; s++) {
+            sockets[s] = new Socket("127.0.0.1", port);
+        }
+        for (int i = 0; i < packets; i++) {
+            for (Socket socket : sockets) {
+                socket.getOutputStream().write(packet);
+            }
+        }
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (frames.get() < senders * packets && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(senders * packets, frames.get());
+        assertEquals(Set.of(receiveThread.getName()), threads);
+
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        running.set(false);
+        tcp.close();
+        receiveThread.join(3000);
+    }
 }
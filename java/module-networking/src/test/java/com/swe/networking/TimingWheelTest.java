@@ -0,0 +1,242 @@
+package com.swe.networking;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Test class for the timing wheel and the client timer running on it.
+ */
+public class TimingWheelTest {
+
+    private static final long TICK = 10;
+
+    private long driverCpuNanos() {
+        final ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("Timing-Wheel-Thread".equals(thread.getName())) {
+                total += Math.max(0, mx.getThreadCpuTime(thread.getId()));
+            }
+        }
+        return total;
+    }
+
+    @Test
+    void testTaskRunsOnceAfterDelay() throws InterruptedException {
+        final TimingWheel wheel = new TimingWheel(TICK, 64);
+        try {
+            final CountDownLatch fired = new CountDownLatch(1);
+            final long start = System.nanoTime();
+            final long[] elapsed = new long[1];
+            final TimingWheel.Timeout timeout = wheel.schedule(() -> {
+                elapsed[0] = System.nanoTime() - start;
+                fired.countDown();
+            }, 100);
+            assertTrue(fired.await(2, TimeUnit.SECONDS));
+            final long millis = TimeUnit.NANOSECONDS.toMillis(elapsed[0]);
+            assertTrue(millis >= 100 && millis < 100 + 5 * TICK, "fired after " + millis);
+            assertTrue(timeout.isExpired());
+            assertFalse(timeout.cancel());
+            assertEquals(0, wheel.getPendingTimeouts());
+        } finally {
+            wheel.close();
+        }
+    }
+
+    @Test
+    void testCancelledTaskNeverRuns() throws InterruptedException {
+        final TimingWheel wheel = new TimingWheel(TICK, 64);
+        try {
+            final AtomicInteger runs = new AtomicInteger();
+            final TimingWheel.Timeout timeout = wheel.schedule(runs::incrementAndGet, 50);
+            assertTrue(timeout.cancel());
+            assertTrue(timeout.isCancelled());
+            Thread.sleep(150);
+            assertEquals(0, runs.get());
+            assertEquals(0, wheel.getPendingTimeouts());
+        } finally {
+            wheel.close();
+        }
+    }
+
+    @Test
+    void testDelaysLongerThanOneTurnWaitForTheirRound() throws InterruptedException {
+        final TimingWheel wheel = new TimingWheel(TICK, 8);
+        try {
+            final CountDownLatch fired = new CountDownLatch(1);
+            final long start = System.nanoTime();
+            wheel.schedule(fired::countDown, 300);
+            assertTrue(fired.await(2, TimeUnit.SECONDS));
+            final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(millis >= 300 && millis < 300 + 5 * TICK, "fired after " + millis);
+        } finally {
+            wheel.close();
+        }
+    }
+
+    @Test
+    void testPeriodicTaskRunsUntilCancelled() throws InterruptedException {
+        final TimingWheel wheel = new TimingWheel(TICK, 64);
+        try {
+            final AtomicInteger runs = new AtomicInteger();
+            final TimingWheel.Timeout timeout = wheel.scheduleAtFixedRate(runs::incrementAndGet, 20);
+            Thread.sleep(210);
+            timeout.cancel();
+            final int seen = runs.get();
+            assertTrue(seen >= 8 && seen <= 11, "runs " + seen);
+            Thread.sleep(100);
+            assertEquals(seen, runs.get());
+        } finally {
+            wheel.close();
+        }
+    }
+
+    @Test
+    void testBlockingTaskDoesNotDelayOtherTasks() throws InterruptedException {
+        final TimingWheel wheel = new TimingWheel(TICK, 64);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final CountDownLatch blocked = new CountDownLatch(1);
+            wheel.scheduleBlocking(() -> {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }, 20);
+            assertTrue(blocked.await(2, TimeUnit.SECONDS));
+            final CountDownLatch fired = new CountDownLatch(1);
+            final long start = System.nanoTime();
+            wheel.schedule(fired::countDown, 50);
+            assertTrue(fired.await(2, TimeUnit.SECONDS));
+            final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(millis < 50 + 5 * TICK, "fired after " + millis);
+        } finally {
+            release.countDown();
+            wheel.close();
+        }
+    }
+
+    @Test
+    void testPeriodicBlockingTaskSkipsTurnsWhileRunning() throws InterruptedException {
+        final TimingWheel wheel = new TimingWheel(TICK, 64);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger overlaps = new AtomicInteger();
+            final AtomicInteger runs = new AtomicInteger();
+            final TimingWheel.Timeout timeout = wheel.scheduleBlockingAtFixedRate(() -> {
+                if (running.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                runs.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            }, 20);
+            Thread.sleep(200);
+            assertEquals(1, runs.get());
+            release.countDown();
+            Thread.sleep(100);
+            timeout.cancel();
+            assertTrue(runs.get() > 1, "runs " + runs.get());
+            assertEquals(0, overlaps.get());
+        } finally {
+            release.countDown();
+            wheel.close();
+        }
+    }
+
+    @Test
+    void testClosedSharedWheelIsReplaced() {
+        final TimingWheel first = TimingWheel.getTimingWheel();
+        assertSame(first, TimingWheel.getTimingWheel());
+        TimingWheel.closeTimingWheel();
+        final TimingWheel second = TimingWheel.getTimingWheel();
+        try {
+            assertNotSame(first, second);
+        } finally {
+            TimingWheel.closeTimingWheel();
+        }
+    }
+
+    /**
+     * Monitors thousands of peers on one wheel, keeps half of them alive and
+     * checks that exactly the silent half times out, close to its deadline,
+     * with one driver thread doing little work.
+     */
+    @Test
+    void testThousandsOfPeerTimers() throws InterruptedException {
+        final int peers = 5000;
+        final long duration = 1000;
+        final TimingWheel wheel = new TimingWheel(TICK, 512);
+        final Map<ClientNode, Long> timedOut = new ConcurrentHashMap<>();
+        final CountDownLatch silent = new CountDownLatch(peers / 2);
+        final Timer timer = new Timer(duration, client -> {
+            timedOut.put(client, System.currentTimeMillis());
+            silent.countDown();
+        }, wheel);
+        try {
+            final long cpuBefore = driverCpuNanos();
+            final ClientNode[] all = new ClientNode[peers];
+            for (int i = 0; i < peers; i++) {
+                all[i] = new ClientNode("10.4." + (i / 250) + "." + (i % 250), 7000 + i);
+            }
+            final Map<ClientNode, Long> added = new ConcurrentHashMap<>();
+            for (int i = 0; i < peers; i++) {
+                added.put(all[i], System.currentTimeMillis());
+                timer.addClient(all[i]);
+                if (i % 2 == 1) {
+                    timer.updateTimeout(all[i - 1]);
+                }
+            }
+            final long end = System.currentTimeMillis() + duration * 2;
+            while (System.currentTimeMillis() < end) {
+                for (int i = 0; i < peers; i += 2) {
+                    timer.updateTimeout(all[i]);
+                }
+                Thread.sleep(TICK * 5);
+            }
+            assertTrue(silent.await(duration, TimeUnit.MILLISECONDS));
+            final Set<ClientNode> expired = timedOut.keySet();
+            assertEquals(peers / 2, expired.size());
+            long worst = 0;
+            for (ClientNode peer : expired) {
+                assertTrue(peer.port() % 2 == 1, "refreshed peer timed out " + peer);
+                final long late = timedOut.get(peer) - added.get(peer) - duration;
+                assertTrue(late >= 0, "expired early by " + -late);
+                worst = Math.max(worst, late);
+            }
+            assertEquals(peers / 2, timer.getMonitoredClients());
+            final long cpuMillis = TimeUnit.NANOSECONDS.toMillis(driverCpuNanos() - cpuBefore);
+            System.out.println(peers + " peer timers: latest expiry " + worst + " ms, wheel CPU " + cpuMillis
+                    + " ms over " + duration * 2 + " ms");
+            assertTrue(worst < 100, "latest expiry " + worst);
+            assertTrue(cpuMillis < duration, "wheel CPU " + cpuMillis);
+        } finally {
+            timer.close();
+            wheel.close();
+        }
+        assertEquals(0, timer.getMonitoredClients());
+    }
+}
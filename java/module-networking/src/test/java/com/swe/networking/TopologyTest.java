@@ -13,7 +13,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Test class for the topology class.
@@ -601,4 +604,156 @@ class TopologyTest {
 
 
    
-}
\ No newline at end of file
+
+    private NetworkStructure largeNetwork(final int numClusters, final int clusterSize) {
+        final List<List<ClientNode>> clusters = new ArrayList<>();
+        final List<ClientNode> servers = new ArrayList<>();
+        for (int i = 0; i < numClusters; i++) {
+            final List<ClientNode> cluster = new ArrayList<>();
+            for (int j = 0; j < clusterSize; j++) {
+                cluster.add(new ClientNode("10.1." + i + "." + j, 6000 + j));
+            }
+            clusters.add(cluster);
+            servers.add(cluster.get(0));
+        }
+        return new NetworkStructure(clusters, servers);
+    }
+
+    @org.junit.jupiter.api.Test
+    void testIndexedLookupsOnLargeNetwork() {
+        final Topology topology = Topology.getTopology();
+        topology.replaceNetwork(largeNetwork(50, 10));
+        assertEquals(500, topology.getAllClients().size());
+        for (int i = 0; i < 50; i++) {
+            final ClientNode server = new ClientNode("10.1." + i + ".0", 6000);
+            final ClientNode member = new ClientNode("10.1." + i + ".7", 6007);
+            assertEquals(i, topology.getClusterIndex(member));
+            assertEquals(server, topology.getServer(member));
+            assertEquals(member, topology.getDestination(server, member));
+            assertEquals(member, topology.getDestination(member, member));
+        }
+        final ClientNode outsider = new ClientNode("10.1.0.3", 6003);
+        for (int i = 1; i < 50; i++) {
+            final ClientNode member = new ClientNode("10.1." + i + ".7", 6007);
+            assertEquals(new ClientNode("10.1." + i + ".0", 6000), topology.getDestination(outsider, member));
+        }
+        assertNull(topology.getServer(new ClientNode("10.9.9.9", 6000)));
+    }
+
+    @org.junit.jupiter.api.Test
+    void testSnapshotsAreNotChangedByLaterUpdates() {
+        final Topology topology = Topology.getTopology();
+        final NetworkStructure network = largeNetwork(2, 3);
+        topology.replaceNetwork(network);
+        network.clusters().get(0).clear();
+        final List<ClientNode> before = topology.getClients(0);
+        assertEquals(3, before.size());
+        assertThrows(UnsupportedOperationException.class, () -> before.add(new ClientNode("10.2.0.1", 1)));
+
+        final ClientNode joined = new ClientNode("10.2.0.1", 6100);
+        topology.updateNetwork(new ClientNetworkRecord(joined, 0));
+        assertEquals(3, before.size());
+        assertEquals(4, topology.getClients(0).size());
+        assertEquals(0, topology.getClusterIndex(joined));
+
+        final ClientNode server = topology.getAllClusterServers().get(0);
+        topology.removeClient(new ClientNetworkRecord(server, 0));
+        assertEquals(-1, topology.getClusterIndex(server));
+        assertEquals(topology.getClients(0).get(0), topology.getAllClusterServers().get(0));
+        assertEquals(server, before.get(0));
+    }
+
+    @org.junit.jupiter.api.Test
+    void testRemovingLastClientDropsClusterAndReindexes() {
+        final Topology topology = Topology.getTopology();
+        topology.replaceNetwork(largeNetwork(3, 1));
+        final ClientNode last = new ClientNode("10.1.2.0", 6000);
+        topology.removeClient(new ClientNetworkRecord(new ClientNode("10.1.1.0", 6000), 1));
+        assertEquals(2, topology.getAllClusterServers().size());
+        assertEquals(1, topology.getClusterIndex(last));
+        assertEquals(last, topology.getServer(last));
+
+        final ClientNode added = new ClientNode("10.3.0.1", 6200);
+        assertEquals(1, topology.addClient(added));
+        assertEquals(last, topology.getServer(added));
+    }
+
+    @org.junit.jupiter.api.Test
+    void testDeltasApplyInEpochOrder() {
+        final Topology topology = Topology.getTopology();
+        topology.setAuthority(false);
+        topology.replaceNetwork(new NetworkStructure(new ArrayList<>(), new ArrayList<>()));
+        topology.replaceNetwork(largeNetwork(2, 2), 10);
+        assertEquals(10, topology.getEpoch());
+        final ClientNode first = new ClientNode("10.5.0.1", 6300);
+        final ClientNode second = new ClientNode("10.5.0.2", 6301);
+
+        assertFalse(topology.applyDelta(NetworkConnectionType.ADD, new ClientNetworkRecord(first, 0), 11));
+        assertEquals(0, topology.getClusterIndex(first));
+        assertFalse(topology.applyDelta(NetworkConnectionType.REMOVE, new ClientNetworkRecord(first, 0), 11));
+        assertEquals(0, topology.getClusterIndex(first));
+
+        assertTrue(topology.applyDelta(NetworkConnectionType.REMOVE, new ClientNetworkRecord(first, 0), 13));
+        assertFalse(topology.applyDelta(NetworkConnectionType.ADD, new ClientNetworkRecord(second, 1), 14));
+        assertEquals(0, topology.getClusterIndex(first));
+        assertEquals(-1, topology.getClusterIndex(second));
+        assertEquals(11, topology.getEpoch());
+
+        assertFalse(topology.applyDelta(NetworkConnectionType.ADD, new ClientNetworkRecord(second, 0), 12));
+        assertEquals(14, topology.getEpoch());
+        assertEquals(-1, topology.getClusterIndex(first));
+        assertEquals(1, topology.getClusterIndex(second));
+    }
+
+    @org.junit.jupiter.api.Test
+    void testSnapshotFillsGapAndOlderSnapshotIsIgnored() {
+        final Topology topology = Topology.getTopology();
+        topology.setAuthority(false);
+        topology.replaceNetwork(new NetworkStructure(new ArrayList<>(), new ArrayList<>()));
+        topology.replaceNetwork(largeNetwork(1, 2), 5);
+        final ClientNode late = new ClientNode("10.6.0.1", 6400);
+        assertTrue(topology.applyDelta(NetworkConnectionType.ADD, new ClientNetworkRecord(late, 0), 8));
+
+        final NetworkStructure atSeven = largeNetwork(2, 2);
+        topology.replaceNetwork(atSeven, 7);
+        assertEquals(8, topology.getEpoch());
+        assertEquals(0, topology.getClusterIndex(late));
+        assertEquals(5, topology.getAllClients().size());
+
+        topology.replaceNetwork(largeNetwork(1, 1), 6);
+        assertEquals(5, topology.getAllClients().size());
+    }
+
+    @org.junit.jupiter.api.Test
+    void testAddToOtherClusterMovesClient() {
+        final Topology topology = Topology.getTopology();
+        topology.setAuthority(false);
+        topology.replaceNetwork(new NetworkStructure(new ArrayList<>(), new ArrayList<>()));
+        topology.replaceNetwork(largeNetwork(3, 2), 1);
+        final ClientNode member = new ClientNode("10.1.0.1", 6001);
+        topology.updateNetwork(new ClientNetworkRecord(member, 2));
+        assertEquals(2, topology.getClusterIndex(member));
+        assertEquals(1, topology.getClients(0).size());
+        assertEquals(6, topology.getAllClients().size());
+        assertEquals(1, topology.getEpoch());
+    }
+
+    @org.junit.jupiter.api.Test
+    void testAuthorityAdvancesEpochOnEveryChange() {
+        final Topology topology = Topology.getTopology();
+        topology.setAuthority(true);
+        try {
+            topology.replaceNetwork(largeNetwork(1, 1));
+            final long start = topology.getEpoch();
+            final ClientNode joined = new ClientNode("10.7.0.1", 6500);
+            final int idx = topology.addClient(joined);
+            assertEquals(start + 1, topology.getEpoch());
+            topology.removeClient(new ClientNetworkRecord(joined, idx));
+            assertEquals(start + 2, topology.getEpoch());
+            topology.removeClient(new ClientNetworkRecord(joined, idx));
+            assertEquals(start + 2, topology.getEpoch());
+        } finally {
+            topology.setAuthority(false);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.swe.networking;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Test class for the UDP communicator and the module routing, on loopback
+ * with an artificial loss injector.
+ */
+public class UDPCommunicatorTest {
+
+    private static final String LOOPBACK = "127.0.0.1";
+
+    private final PacketParser parser = PacketParser.getPacketParser();
+
+    private byte[] packet(final ModuleType module, final int id, final int size) throws UnknownHostException {
+        final PacketInfo info = new PacketInfo();
+        info.setModule(module.ordinal());
+        info.setIpAddress(InetAddress.getByName(LOOPBACK));
+        info.setPortNum(9000);
+        info.setMessageId(id);
+        info.setChunkLength(1);
+        info.setPayload(new byte[size]);
+        ByteBuffer.wrap(info.getPayload()).putInt(0, id);
+        info.setLength(PacketParser.getHeaderSize() + size);
+        return parser.createPkt(info);
+    }
+
+    /**
+     * Receives on a background thread until the expected number of packets
+     * arrived or a second passed without any packet.
+     */
+    private Thread collect(final ProtocolBase receiver, final int expected, final List<Integer> ids) {
+        final Thread thread = new Thread(() -> {
+            final PacketView view = new PacketView();
+            long idleSince = System.currentTimeMillis();
+            while (ids.size() < expected && System.currentTimeMillis() - idleSince < 1000) {
+                if (receiver.receiveFrames((sender, frame) -> ids.add(view.wrap(frame).getMessageId()))) {
+                    idleSince = System.currentTimeMillis();
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private List<Integer> sendAndCollect(final UDPCommunicator sender, final UDPCommunicator receiver,
+            final ClientNode dest, final int count, final int expected) throws Exception {
+        final List<Integer> ids = Collections.synchronizedList(new ArrayList<>());
+        final Thread thread = collect(receiver, expected, ids);
+        sendPaced(sender, dest, count);
+        thread.join();
+        return ids;
+    }
+
+    private void sendPaced(final UDPCommunicator sender, final ClientNode dest, final int count)
+            throws Exception {
+        for (int i = 0; i < count; i++) {
+            sender.sendData(packet(ModuleType.SCREENSHARING, i, 1000), dest);
+            if (i % 10 == 9) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    @Test
+    void testLoopbackDeliversEveryPacket() throws Exception {
+        final UDPCommunicator sender = new UDPCommunicator(8040);
+        final UDPCommunicator receiver = new UDPCommunicator(8041);
+        try {
+            final List<Integer> ids = sendAndCollect(sender, receiver, new ClientNode(LOOPBACK, 8041), 100, 100);
+            assertEquals(100, new HashSet<>(ids).size());
+            assertEquals(0, receiver.getLostDatagrams(new ClientNode(LOOPBACK, 8040)));
+        } finally {
+            sender.close();
+            receiver.close();
+        }
+    }
+
+    @Test
+    void testLossWithoutFecIsCounted() throws Exception {
+        final UDPCommunicator sender = new UDPCommunicator(8042);
+        final UDPCommunicator receiver = new UDPCommunicator(8043);
+        sender.setLossInjector(seq -> seq % 10 == 3);
+        try {
+            final List<Integer> ids = sendAndCollect(sender, receiver, new ClientNode(LOOPBACK, 8043), 100, 100);
+            assertEquals(90, ids.size());
+            assertTrue(receiver.getLostDatagrams(new ClientNode(LOOPBACK, 8042)) >= 9);
+        } finally {
+            sender.close();
+            receiver.close();
+        }
+    }
+
+    @Test
+    void testParityRebuildsOneLossPerGroup() throws Exception {
+        final UDPCommunicator sender = new UDPCommunicator(8044, 4);
+        final UDPCommunicator receiver = new UDPCommunicator(8045, 4);
+        sender.setLossInjector(seq -> seq % 4 == 1);
+        try {
+            final List<Integer> ids = sendAndCollect(sender, receiver, new ClientNode(LOOPBACK, 8045), 100, 100);
+            final Set<Integer> unique = new HashSet<>(ids);
+            assertEquals(100, unique.size());
+            assertEquals(100, ids.size());
+            assertEquals(25, receiver.getPacketsRecovered());
+        } finally {
+            sender.close();
+            receiver.close();
+        }
+    }
+
+    @Test
+    void testTwoLossesInGroupStayLost() throws Exception {
+        final UDPCommunicator sender = new UDPCommunicator(8046, 4);
+        final UDPCommunicator receiver = new UDPCommunicator(8047, 4);
+        sender.setLossInjector(seq -> seq == 1 || seq == 2);
+        try {
+            final List<Integer> ids = sendAndCollect(sender, receiver, new ClientNode(LOOPBACK, 8047), 8, 6);
+            assertEquals(6, ids.size());
+            assertEquals(0, receiver.getPacketsRecovered());
+        } finally {
+            sender.close();
+            receiver.close();
+        }
+    }
+
+    @Test
+    void testScreenShareRoutedOverUdpChatOverTcp() throws Exception {
+        final UDPCommunicator senderUdp = new UDPCommunicator(8048);
+        final ModuleRoutedCommunicator sender = new ModuleRoutedCommunicator(new TCPCommunicator(8048),
+                senderUdp, ModuleType.SCREENSHARING);
+        final UDPCommunicator receiverUdp = new UDPCommunicator(8049);
+        final ModuleRoutedCommunicator receiver = new ModuleRoutedCommunicator(new TCPCommunicator(8049),
+                receiverUdp, ModuleType.SCREENSHARING);
+        try {
+            final ClientNode dest = new ClientNode(LOOPBACK, 8049);
+            final List<Integer> ids = Collections.synchronizedList(new ArrayList<>());
+            final Thread thread = collect(receiver, 20, ids);
+            for (int i = 0; i < 10; i++) {
+                sender.sendData(packet(ModuleType.SCREENSHARING, i, 500), dest);
+                sender.sendData(packet(ModuleType.CHAT, 100 + i, 50), dest);
+            }
+            thread.join();
+            assertEquals(20, new HashSet<>(ids).size());
+            assertEquals(10, senderUdp.getDatagramsSent());
+            assertEquals(10, receiverUdp.getDatagramsReceived());
+        } finally {
+            sender.close();
+            receiver.close();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.swe.networking;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.swe.core.ClientNode;
+
+/**
+ * Test class for the virtual thread transport.
+ */
+public class VirtualThreadCommunicatorTest {
+
+    private static byte[] packet(final int size, final byte fill) throws UnknownHostException {
+        final PacketInfo info = new PacketInfo();
+        info.setLength(PacketParser.getHeaderSize() + size);
+        info.setIpAddress(InetAddress.getByName("127.0.0.1"));
+        final byte[] payload = new byte[size];
+        Arrays.fill(payload, fill);
+        info.setPayload(payload);
+        return PacketParser.getPacketParser().createPkt(info);
+    }
+
+    private static void await(final AtomicInteger counter, final int expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (counter.get() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void testPacketsReachListenerOnReceivingThread() throws Exception {
+        final VirtualThreadCommunicator receiver = new VirtualThreadCommunicator(8041);
+        final VirtualThreadCommunicator sender = new VirtualThreadCommunicator(8042);
+        final VirtualThreadCommunicator other = new VirtualThreadCommunicator(8049);
+        final AtomicInteger frames = new AtomicInteger();
+        final Set<Thread> callers = ConcurrentHashMap.newKeySet();
+        final Thread loop = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                receiver.receiveFrames((source, frame) -> {
+                    callers.add(Thread.currentThread());
+                    frames.incrementAndGet();
+                });
+            }
+        });
+        loop.start();
+        final ClientNode dest = new ClientNode("127.0.0.1", 8041);
+        final byte[] small = packet(100, (byte) 1);
+        final byte[] large = packet(40 * 1024, (byte) 2);
+        for (int i = 0; i < 500; i++) {
+            if (i % 10 == 0) {
+                sender.sendData(large, dest);
+            } else {
+                sender.sendData(small, dest);
+            }
+            other.sendData(small, dest);
+        }
+        await(frames, 1000);
+        assertEquals(1000, frames.get());
+        assertEquals(Set.of(loop), callers);
+        assertTrue(sender.getWriteCalls(dest) > 0);
+        assertEquals(0, sender.getQueueDepth(dest));
+
+        loop.interrupt();
+        sender.close();
+        other.close();
+        receiver.close();
+        loop.join(3000);
+    }
+
+    @Test
+    void testPacketsBeforeListenerAreKept() throws Exception {
+        final VirtualThreadCommunicator receiver = new VirtualThreadCommunicator(8043);
+        final VirtualThreadCommunicator sender = new VirtualThreadCommunicator(8044);
+        final byte[] data = packet(64, (byte) 7);
+        sender.sendData(data, new ClientNode("127.0.0.1", 8043));
+        ReceivePacket received = receiver.receiveData();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (received == null && System.currentTimeMillis() < deadline) {
+            received = receiver.receiveData();
+        }
+        assertNotNull(received);
+        assertArrayEquals(data, received.data());
+        sender.close();
+        receiver.close();
+    }
+
+    @Test
+    void testUnreachablePeerDropsQueue() throws Exception {
+        final VirtualThreadCommunicator sender = new VirtualThreadCommunicator(8045, 300);
+        final ClientNode unreachable = new ClientNode("10.255.255.1", 8046);
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            sender.sendData(new byte[100], unreachable);
+        }
+        assertTrue(System.currentTimeMillis() - start < 500);
+        final long deadline = System.currentTimeMillis() + 3000;
+        while (sender.getQueueDepth(unreachable) > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, sender.getQueueDepth(unreachable));
+        sender.close();
+    }
+
+    @Test
+    void testCloseEndsEveryThread() throws Exception {
+        final VirtualThreadCommunicator receiver = new VirtualThreadCommunicator(8047);
+        final VirtualThreadCommunicator sender = new VirtualThreadCommunicator(8048);
+        final AtomicInteger frames = new AtomicInteger();
+        sender.sendData(packet(10, (byte) 1), new ClientNode("127.0.0.1", 8047));
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (frames.get() < 1 && System.currentTimeMillis() < deadline) {
+            receiver.receiveFrames((source, frame) -> frames.incrementAndGet());
+        }
+        final long start = System.currentTimeMillis();
+        sender.close();
+        receiver.close();
+        assertTrue(System.currentTimeMillis() - start < 3000);
+        assertEquals(1, frames.get());
+    }
+}
@@ -25,11 +25,15 @@ import com.swe.networking.AbstractNetworking;
 import com.swe.networking.MessageListener;
 import com.swe.networking.ModuleType;
 import com.swe.core.logging.SweLogger;
+import com.swe.core.metrics.LatencyHistogram;
+import com.swe.core.metrics.MetricsRegistry;
 
 import javax.sound.sampled.LineUnavailableException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.Objects;
 
@@ -38,6 +42,12 @@ import java.util.Objects;
  * - Manages Screen Capture and Video Capture
  */
 public class MediaCaptureManager implements CaptureManager {
+    /**
+     * Time to decode the patches of a received frame into the image.
+     */
+    private static final LatencyHistogram DECODE_NANOS =
+            MetricsRegistry.getMetricsRegistry().histogram("screenvideo.decode.nanos");
+
     /**
      * Port for the server.
      */
@@ -90,6 +100,36 @@ public class MediaCaptureManager implements CaptureManager {
      */
     private final SweLogger logger;
 
+    /**
+     * Whether frames are sent latest wins, see {@link Utils#LATEST_FRAMES_PROPERTY}.
+     */
+    private final boolean latestFrames = Boolean.getBoolean(Utils.LATEST_FRAMES_PROPERTY);
+
+    /**
+     * Viewers resyncing with full images since a frame to them was cut short.
+     */
+    private final Map<String, Resync> resyncing = new ConcurrentHashMap<>();
+
+    /**
+     * Resync state of a viewer. Diffs build on the frame before, so once a
+     * frame to a viewer is superseded the viewer gets full images until one
+     * reaches the wire before the next frame.
+     */
+    private enum Resync {
+        /**
+         * A frame was cut short, a full image is due.
+         */
+        CUT,
+        /**
+         * A full image was queued.
+         */
+        SENT,
+        /**
+         * Frames were skipped while the full image was queued.
+         */
+        SKIPPED
+    }
+
     /**
      * Constructor for the MediaCaptureManager.
      *
@@ -177,6 +217,7 @@ public class MediaCaptureManager implements CaptureManager {
 
     private void removeViewer(final String ip) {
         viewers.remove(ip);
+        resyncing.remove(ip);
         imageSynchronizers.remove(ip);
         audioSynchronizers.remove(ip);
     }
@@ -216,12 +257,13 @@ public class MediaCaptureManager implements CaptureManager {
                 }
             } else {
                 feed = newFeed;
+                resyncViewers();
                 // send compressedFeed
                 // logger.info("Sending to Compress");
-                sendDataToViewers(encodedFeed.compressedFeed(), Viewer::isRequireCompressed);
+                sendFrameToViewers(encodedFeed.compressedFeed(), Viewer::isRequireCompressed);
                 // send unCompressedFeed
                 // logger.info("Sending to uncompress");
-                sendDataToViewers(encodedFeed.unCompressedFeed(), viewer -> !viewer.isRequireCompressed());
+                sendFrameToViewers(encodedFeed.unCompressedFeed(), viewer -> !viewer.isRequireCompressed());
                 final double sendingFPS = (double) (Utils.SEC_IN_MS) / diff;
                 logger.info("Sent Data at " + sendingFPS + " FPS");
                 Telemetry.getTelemetry().addFps(sendingFPS);
@@ -268,6 +310,96 @@ public class MediaCaptureManager implements CaptureManager {
         // });
     }
 
+    /**
+     * Sends a frame to the viewers matching the filter. With latest wins
+     * frames a queued older frame to a viewer is superseded, which leaves
+     * the viewer to resync. Viewers resyncing get no diffs.
+     *
+     * @param frame        the encoded frame
+     * @param viewerFilter predicate to filter which viewers should receive the frame
+     */
+    private void sendFrameToViewers(final byte[] frame, final java.util.function.Predicate<Viewer> viewerFilter) {
+        if (!latestFrames) {
+            sendDataToViewers(frame, viewerFilter);
+            return;
+        }
+        if (frame == null) {
+            return;
+        }
+        final ClientNode[] clientNodes = viewers.values().stream()
+                .filter(viewerFilter)
+                .filter(viewer -> !resyncing.containsKey(viewer.getNode().hostName()))
+                .map(Viewer::getNode)
+                .toArray(ClientNode[]::new);
+        if (clientNodes.length == 0) {
+            return;
+        }
+        final ClientNode[] cut = networking.sendLatest(frame, clientNodes, ModuleType.SCREENSHARING.ordinal(), 2,
+                Utils.FRAME_STREAM);
+        for (ClientNode node : cut) {
+            logger.info("Frame to " + node.hostName() + " superseded, resyncing");
+            resyncing.put(node.hostName(), Resync.CUT);
+        }
+    }
+
+    /**
+     * Moves the resyncing viewers on, called once a frame before the frame
+     * is sent. A viewer whose full image left the queue gets diffs again.
+     * A viewer whose full image is still queued skips the frame, and gets a
+     * new full image once the queued one left. A viewer whose frame was cut
+     * gets a full image at once, superseding the queued diffs.
+     */
+    private void resyncViewers() {
+        Feed fullFeed = null;
+        for (Map.Entry<String, Resync> entry : resyncing.entrySet()) {
+            final Viewer viewer = viewers.get(entry.getKey());
+            if (viewer == null) {
+                resyncing.remove(entry.getKey());
+                continue;
+            }
+            final boolean queued = networking.isLatestQueued(viewer.getNode(), ModuleType.SCREENSHARING.ordinal(),
+                    Utils.FRAME_STREAM);
+            final Resync state = entry.getValue();
+            if (state == Resync.SENT && !queued) {
+                resyncing.remove(entry.getKey());
+                continue;
+            }
+            if (state == Resync.SENT || (state == Resync.SKIPPED && queued)) {
+                entry.setValue(Resync.SKIPPED);
+                continue;
+            }
+            if (fullFeed == null) {
+                fullFeed = videoComponent.captureFullImage();
+                if (fullFeed == null) {
+                    return;
+                }
+            }
+            final byte[] fullImage = selectFullImage(fullFeed, viewer.isRequireCompressed());
+            if (fullImage == null) {
+                continue;
+            }
+            networking.sendLatest(fullImage, new ClientNode[] {viewer.getNode()}, ModuleType.SCREENSHARING.ordinal(),
+                    2, Utils.FRAME_STREAM);
+            entry.setValue(Resync.SENT);
+        }
+    }
+
+    /**
+     * Picks the full image a viewer asked for.
+     * Use Compress if not video and asked for it.
+     *
+     * @param fullFeed       the full image in both forms
+     * @param reqCompression whether the viewer asked for compression
+     * @return the encoded full image
+     */
+    private byte[] selectFullImage(final Feed fullFeed, final boolean reqCompression) {
+        final boolean isOnlyVideoOn = videoComponent.isVideoCaptureOn() && !videoComponent.isScreenCaptureOn();
+        if (isOnlyVideoOn || reqCompression) {
+            return fullFeed.compressedFeed();
+        }
+        return fullFeed.unCompressedFeed();
+    }
+
     class ClientHandler implements MessageListener {
         /**
          * Cache for NetworkType enum.
@@ -385,8 +517,10 @@ public class MediaCaptureManager implements CaptureManager {
                         imageSynchronizer.setExpectedFeedNumber(imageSynchronizer.getExpectedFeedNumber() + 1);
 
                         try {
+                            final long decodeStart = System.nanoTime();
                             image = imageSynchronizer.synchronize(newHeight, newWidth, patches,
                                     networkPackets.compress());
+                            DECODE_NANOS.recordSince(decodeStart);
                         } catch (Exception e) {
                             logger.info(
                                     "-----------------------------=------------------------Exception "
@@ -468,15 +602,7 @@ public class MediaCaptureManager implements CaptureManager {
                 return;
             }
             // get the required type(Compress/UnCompress) from viewer list
-            // use Compress if not video and asked for it
-            final boolean isOnlyVideoOn = videoComponent.isVideoCaptureOn() && !videoComponent.isScreenCaptureOn();
-            final boolean useCompress = isOnlyVideoOn || reqCompression;
-            byte[] fullImageEncoded = null;
-            if (useCompress) {
-                fullImageEncoded = fullFeed.compressedFeed();
-            } else {
-                fullImageEncoded = fullFeed.unCompressedFeed();
-            }
+            final byte[] fullImageEncoded = selectFullImage(fullFeed, reqCompression);
             if (fullImageEncoded == null) {
                 return;
             }
@@ -148,6 +148,17 @@ public class Utils {
      */
     public static final int MAX_HEAP_SIZE = 20;
 
+    /**
+     * System property turning on latest wins sending of frames, a queued
+     * frame a newer one supersedes is dropped and the viewer resynced.
+     */
+    public static final String LATEST_FRAMES_PROPERTY = "swecomm.screen.latest";
+
+    /**
+     * Stream of the screen and video frames within the module.
+     */
+    public static final int FRAME_STREAM = 0;
+
     /**
      * Maximum tries to serialize the compressed packets.
      */
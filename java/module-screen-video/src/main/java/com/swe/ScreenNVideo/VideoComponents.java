@@ -20,6 +20,8 @@ import com.swe.core.Context;
 import com.swe.core.RPCinterface.AbstractRPC;
 import com.swe.core.logging.SweLogger;
 import com.swe.core.logging.SweLoggerFactory;
+import com.swe.core.metrics.LatencyHistogram;
+import com.swe.core.metrics.MetricsRegistry;
 
 import java.io.IOException;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -39,6 +41,24 @@ public class VideoComponents {
      */
     private static final int MAX_RUNS_WITHOUT_DIFF = 500;
 
+    /**
+     * Time to grab a frame from the capture components.
+     */
+    private static final LatencyHistogram CAPTURE_NANOS =
+            MetricsRegistry.getMetricsRegistry().histogram("screenvideo.capture.nanos");
+
+    /**
+     * Time to diff, encode and serialize a frame.
+     */
+    private static final LatencyHistogram ENCODE_NANOS =
+            MetricsRegistry.getMetricsRegistry().histogram("screenvideo.encode.nanos");
+
+    /**
+     * Serialized bytes of each compressed frame.
+     */
+    private static final LatencyHistogram FRAME_BYTES =
+            MetricsRegistry.getMetricsRegistry().histogram("screenvideo.frame.bytes");
+
     /**
      * Video codec object.
      */
@@ -79,6 +99,11 @@ public class VideoComponents {
      */
     private int videoFeedNumber = 0;
 
+    /**
+     * Whether frames are sent latest wins, see {@link Utils#LATEST_FRAMES_PROPERTY}.
+     */
+    private final boolean latestFrames = Boolean.getBoolean(Utils.LATEST_FRAMES_PROPERTY);
+
     /**
      * Audio Feed number.
      */
@@ -149,14 +174,19 @@ public class VideoComponents {
         }
 
         final FeedPatch patches = patchGenerator.generateFullImage(feed);
+        int fullImageNumber = videoFeedNumber;
+        if (latestFrames) {
+            // the full image holds the feed of the last diff sent, it takes its number so the next diff follows it
+            fullImageNumber = videoFeedNumber - 1;
+        }
 
-        final CPackets compressedNetworkPackets = new CPackets(videoFeedNumber, localIp, true, true, feed.length,
+        final CPackets compressedNetworkPackets = new CPackets(fullImageNumber, localIp, true, true, feed.length,
                 feed[0].length,
                 patches.compressedPatches());
         LOG.info("Feed number : " + compressedNetworkPackets.packetNumber());
         final byte[] compressedEncodedPatches = serializeFeed(compressedNetworkPackets);
 
-        final CPackets unCompressedNetworkPackets = new CPackets(videoFeedNumber, localIp, true, false, feed.length,
+        final CPackets unCompressedNetworkPackets = new CPackets(fullImageNumber, localIp, true, false, feed.length,
                 feed[0].length,
                 patches.unCompressedPatches());
         final byte[] unCompressedEncodedPatches = serializeFeed(unCompressedNetworkPackets);
@@ -276,6 +306,7 @@ public class VideoComponents {
         start = System.nanoTime();
 
         final int[][] newFeed = captureComponents.getFeed();
+        CAPTURE_NANOS.recordSince(start);
         if (newFeed == null) {
             if (feed != null) {
                 // previous feed exists
@@ -316,6 +347,10 @@ public class VideoComponents {
                 feed[0].length,
                 patches.unCompressedPatches());
         final byte[] unCompressedEncodedPatches = serializeFeed(unCompressedNetworkPackets);
+        ENCODE_NANOS.recordSince(curr1);
+        if (compressedEncodedPatches != null) {
+            FRAME_BYTES.record(compressedEncodedPatches.length);
+        }
 
         if (compressedEncodedPatches == null && unCompressedEncodedPatches == null) {
             // both are null
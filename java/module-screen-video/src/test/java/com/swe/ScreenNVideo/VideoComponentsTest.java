@@ -4,6 +4,7 @@
 package com.swe.ScreenNVideo;
 
 import com.swe.ScreenNVideo.Capture.BackgroundCaptureManager;
+import com.swe.ScreenNVideo.Model.CPackets;
 import com.swe.ScreenNVideo.Model.Feed;
 import com.swe.core.Context;
 import com.swe.core.RPC;
@@ -256,6 +257,30 @@ public class VideoComponentsTest {
         assertNotNull(fullFeed.unCompressedFeed(), "UnCompressed feed should exists");
     }
 
+    /**
+     * Tests the full image keeps the next feed number unless frames are sent latest wins,
+     * where it takes the number of the last diff sent.
+     */
+    @Test
+    public void testCaptureFullImage_NumberFollowsLatestFlag() {
+        final int[][] dummyFeed = createDummyFeed(FEED_DIMENSION);
+        when(mockCaptureComponents.getFeed()).thenReturn(dummyFeed);
+        videoComponents.captureScreenNVideo();
+        final Feed plainFeed = videoComponents.captureFullImage();
+        assertEquals(1, CPackets.deserialize(plainFeed.compressedFeed()).packetNumber());
+
+        System.setProperty(Utils.LATEST_FRAMES_PROPERTY, "true");
+        try {
+            final VideoComponents latest = new VideoComponents(TEST_FPS, TEST_PORT, mockCaptureComponents,
+                    mockBgManager);
+            latest.captureScreenNVideo();
+            final Feed latestFeed = latest.captureFullImage();
+            assertEquals(0, CPackets.deserialize(latestFeed.compressedFeed()).packetNumber());
+        } finally {
+            System.clearProperty(Utils.LATEST_FRAMES_PROPERTY);
+        }
+    }
+
     /**
      * Tests captureScreenNVideo when both serialized feeds are null (no patches).
      * This should trigger reinit logic if runCount exceeds MAX_RUNS_WITHOUT_DIFF.